@@ -0,0 +1,503 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.boot.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.hibernate.HibernateException;
+import org.hibernate.boot.model.naming.DatabaseIdentifier;
+import org.hibernate.boot.model.naming.Identifier;
+import org.hibernate.boot.model.naming.ObjectNameNormalizer;
+import org.hibernate.boot.model.relational.AuxiliaryDatabaseObject;
+import org.hibernate.boot.model.relational.Database;
+import org.hibernate.boot.model.relational.InitCommand;
+import org.hibernate.boot.model.relational.Namespace;
+import org.hibernate.boot.model.relational.Sequence;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.classloading.spi.ClassLoaderService;
+import org.hibernate.boot.registry.classloading.spi.ClassLoadingException;
+import org.hibernate.boot.spi.InFlightMetadataCollector;
+import org.hibernate.boot.spi.MetadataBuildingContext;
+import org.hibernate.boot.spi.MetadataBuildingOptions;
+import org.hibernate.boot.spi.MetadataImplementor;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.jdbc.env.spi.JdbcEnvironment;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.internal.FilterConfiguration;
+import org.hibernate.mapping.PersistentClass;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.TypeResolver;
+
+/**
+ * Prototype of a snapshot of the {@link MetadataImpl} built by
+ * {@code MetadataBuildingProcess}. A startup, which reads the snapshot,
+ * skips the annotation processing and the binding of the mappings and goes
+ * straight to {@code Metadata#buildSessionFactory()}.
+ *
+ * <p>{@code MetadataImpl} is {@code Serializable}, but the mapping model
+ * references objects, which are not:
+ * <ul>
+ *     <li>the service registry and the objects created from it: the
+ *     {@code MetadataBuildingOptions}, the {@code Dialect}, the
+ *     {@code JdbcEnvironment} and the build time
+ *     {@code MetadataBuildingContext} with its
+ *     {@code InFlightMetadataCollector}. They are written as placeholders
+ *     and replaced with the objects of the registry the snapshot is read
+ *     with. The collector referenced by the {@code Value}s is replaced with
+ *     the read {@code MetadataImpl}.</li>
+ *     <li>{@code Identifier}, {@code FilterConfiguration}, {@code Sequence}
+ *     and {@code Database}. They are written as their state and created
+ *     again on read.</li>
+ *     <li>the {@code IdentifierGenerator}s cached by {@code SimpleValue}.
+ *     They are not written, the session factory creates them again.</li>
+ * </ul>
+ *
+ * <p>The {@code MetadataBuildingOptions} are created from the settings of
+ * the registry, options applied to the {@code MetadataBuilder} are lost.
+ * The snapshot must be read with the classes it was written with.
+ *
+ * @author Andrej Golovnin
+ */
+public final class MetadataSnapshot {
+
+    /**
+     * The serialization recurses along the associations of the mapping
+     * model, a large model needs more than the default stack.
+     */
+    private static final long STACK_SIZE = 512L * 1024 * 1024;
+
+    private MetadataSnapshot() {
+    }
+
+    public static void write(MetadataImplementor metadata, OutputStream out)
+        throws IOException
+    {
+        onLargeStack(() -> {
+            SnapshotOutputStream oos = new SnapshotOutputStream(out);
+            oos.writeObject(metadata);
+            oos.flush();
+            return null;
+        });
+    }
+
+    /**
+     * Reads a snapshot written by
+     * {@link #write(MetadataImplementor, OutputStream)}.
+     *
+     * @param registry the registry of the session factory to build
+     */
+    public static MetadataImplementor read(StandardServiceRegistry registry,
+        InputStream in) throws IOException
+    {
+        return onLargeStack(() -> {
+            SnapshotInputStream ois = new SnapshotInputStream(in, registry);
+            try {
+                MetadataImplementor metadata =
+                    (MetadataImplementor) ois.readObject();
+                ois.metadataReference.target = metadata;
+                return metadata;
+            } catch (ClassNotFoundException e) {
+                throw new HibernateException("Could not read the metadata",
+                    e);
+            }
+        });
+    }
+
+    private static <T> T onLargeStack(Callable<T> task) throws IOException {
+        FutureTask<T> future = new FutureTask<>(task);
+        Thread thread = new Thread(null, future, "metadata-snapshot",
+            STACK_SIZE);
+        thread.start();
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private enum Placeholder {
+        SERVICE_REGISTRY,
+        BUILDING_OPTIONS,
+        BUILDING_CONTEXT,
+        OBJECT_NAME_NORMALIZER,
+        METADATA,
+        DIALECT,
+        JDBC_ENVIRONMENT
+    }
+
+    private static final class SnapshotOutputStream
+        extends ObjectOutputStream
+    {
+
+        SnapshotOutputStream(OutputStream out) throws IOException {
+            super(out);
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(Object obj) {
+            if (obj instanceof Serializable
+                && !(obj instanceof IdentifierGenerator))
+            {
+                return obj;
+            }
+            if (obj instanceof ServiceRegistry) {
+                return Placeholder.SERVICE_REGISTRY;
+            }
+            if (obj instanceof MetadataBuildingOptions) {
+                return Placeholder.BUILDING_OPTIONS;
+            }
+            if (obj instanceof MetadataBuildingContext) {
+                return Placeholder.BUILDING_CONTEXT;
+            }
+            if (obj instanceof ObjectNameNormalizer) {
+                return Placeholder.OBJECT_NAME_NORMALIZER;
+            }
+            if (obj instanceof InFlightMetadataCollector) {
+                return Placeholder.METADATA;
+            }
+            if (obj instanceof Dialect) {
+                return Placeholder.DIALECT;
+            }
+            if (obj instanceof JdbcEnvironment) {
+                return Placeholder.JDBC_ENVIRONMENT;
+            }
+            if (obj instanceof IdentifierGenerator) {
+                return null;
+            }
+            if (obj instanceof Identifier) {
+                return new IdentifierState((Identifier) obj);
+            }
+            if (obj instanceof FilterConfiguration) {
+                return new FilterConfigurationState((FilterConfiguration) obj);
+            }
+            if (obj instanceof Database) {
+                return new DatabaseState((Database) obj);
+            }
+            if (obj instanceof Sequence) {
+                return new SequenceState((Sequence) obj);
+            }
+            // Fails with NotSerializableException.
+            return obj;
+        }
+
+    }
+
+    private static final class SnapshotInputStream extends ObjectInputStream {
+
+        private final StandardServiceRegistry registry;
+        private final ClassLoaderService classLoaderService;
+        private final MetadataReference metadataReference =
+            new MetadataReference();
+        private final MetadataImplementor metadata;
+        private MetadataBuildingOptions buildingOptions;
+        private MetadataBuildingContext buildingContext;
+
+        SnapshotInputStream(InputStream in, StandardServiceRegistry registry)
+            throws IOException
+        {
+            super(in);
+            enableResolveObject(true);
+            this.registry = registry;
+            this.classLoaderService =
+                registry.getService(ClassLoaderService.class);
+            this.metadata = (MetadataImplementor) Proxy.newProxyInstance(
+                MetadataImplementor.class.getClassLoader(),
+                new Class<?>[] {MetadataImplementor.class},
+                metadataReference);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc)
+            throws IOException, ClassNotFoundException
+        {
+            try {
+                return super.resolveClass(desc);
+            } catch (ClassNotFoundException e) {
+                try {
+                    return classLoaderService.classForName(desc.getName());
+                } catch (ClassLoadingException ignored) {
+                    throw e;
+                }
+            }
+        }
+
+        @Override
+        protected Object resolveObject(Object obj) {
+            if (obj instanceof Placeholder) {
+                return resolve((Placeholder) obj);
+            }
+            if (obj instanceof IdentifierState) {
+                return ((IdentifierState) obj).toIdentifier();
+            }
+            if (obj instanceof FilterConfigurationState) {
+                return ((FilterConfigurationState) obj)
+                    .toFilterConfiguration();
+            }
+            if (obj instanceof SequenceState) {
+                return ((SequenceState) obj).toSequence();
+            }
+            if (obj instanceof DatabaseState) {
+                return ((DatabaseState) obj).toDatabase(buildingOptions(),
+                    registry.getService(JdbcEnvironment.class));
+            }
+            return obj;
+        }
+
+        private Object resolve(Placeholder placeholder) {
+            switch (placeholder) {
+                case SERVICE_REGISTRY:
+                    return registry;
+                case BUILDING_OPTIONS:
+                    return buildingOptions();
+                case BUILDING_CONTEXT:
+                    return buildingContext();
+                case OBJECT_NAME_NORMALIZER:
+                    return buildingContext().getObjectNameNormalizer();
+                case METADATA:
+                    return metadata;
+                case DIALECT:
+                    return registry.getService(JdbcEnvironment.class)
+                        .getDialect();
+                case JDBC_ENVIRONMENT:
+                    return registry.getService(JdbcEnvironment.class);
+                default:
+                    throw new IllegalStateException(placeholder.name());
+            }
+        }
+
+        private MetadataBuildingOptions buildingOptions() {
+            if (buildingOptions == null) {
+                buildingOptions =
+                    new MetadataBuilderImpl.MetadataBuildingOptionsImpl(
+                        registry);
+            }
+            return buildingOptions;
+        }
+
+        private MetadataBuildingContext buildingContext() {
+            if (buildingContext == null) {
+                MetadataBuildingOptions options = buildingOptions();
+                buildingContext = new MetadataBuildingContextRootImpl(
+                    options,
+                    new ClassLoaderAccessImpl(options.getTempClassLoader(),
+                        classLoaderService),
+                    new InFlightMetadataCollectorImpl(options,
+                        new TypeResolver()));
+            }
+            return buildingContext;
+        }
+
+    }
+
+    /**
+     * Stands in for the read {@code MetadataImpl} while it is read.
+     */
+    private static final class MetadataReference implements InvocationHandler {
+
+        private volatile MetadataImplementor target;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args)
+            throws Throwable
+        {
+            if (target == null) {
+                throw new IllegalStateException("The metadata is not read");
+            }
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+    }
+
+    private static final class IdentifierState implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String text;
+        private final boolean quoted;
+        private final boolean databaseIdentifier;
+
+        IdentifierState(Identifier identifier) {
+            this.text = identifier.getText();
+            this.quoted = identifier.isQuoted();
+            this.databaseIdentifier = identifier instanceof DatabaseIdentifier;
+        }
+
+        Identifier toIdentifier() {
+            return databaseIdentifier
+                ? new DatabaseIdentifier(text)
+                : new Identifier(text, quoted);
+        }
+
+    }
+
+    private static final class FilterConfigurationState
+        implements Serializable
+    {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+        private final String condition;
+        private final boolean autoAliasInjection;
+        private final Map<String, String> aliasTableMap;
+        private final Map<String, String> aliasEntityMap;
+        private final PersistentClass persistentClass;
+
+        FilterConfigurationState(FilterConfiguration configuration) {
+            this.name = configuration.getName();
+            this.condition = configuration.getCondition();
+            this.autoAliasInjection = configuration.useAutoAliasInjection();
+            this.aliasTableMap = fieldValue(FilterConfiguration.class,
+                "aliasTableMap", configuration);
+            this.aliasEntityMap = fieldValue(FilterConfiguration.class,
+                "aliasEntityMap", configuration);
+            this.persistentClass = fieldValue(FilterConfiguration.class,
+                "persistentClass", configuration);
+        }
+
+        FilterConfiguration toFilterConfiguration() {
+            return new FilterConfiguration(name, condition,
+                autoAliasInjection, aliasTableMap, aliasEntityMap,
+                persistentClass);
+        }
+
+    }
+
+    private static final class SequenceState implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Identifier catalog;
+        private final Identifier schema;
+        private final Identifier name;
+        private final int initialValue;
+        private final int incrementSize;
+
+        SequenceState(Sequence sequence) {
+            this.catalog = sequence.getName().getCatalogName();
+            this.schema = sequence.getName().getSchemaName();
+            this.name = sequence.getName().getSequenceName();
+            this.initialValue = sequence.getInitialValue();
+            this.incrementSize = sequence.getIncrementSize();
+        }
+
+        Sequence toSequence() {
+            return new Sequence(catalog, schema, name, initialValue,
+                incrementSize);
+        }
+
+    }
+
+    /**
+     * The namespaces of a {@code Database} with their tables and sequences.
+     */
+    private static final class DatabaseState implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Identifier[]> namespaceNames = new ArrayList<>();
+        private final List<Map<?, ?>> tables = new ArrayList<>();
+        private final List<Map<?, ?>> sequences = new ArrayList<>();
+        private final List<AuxiliaryDatabaseObject> auxiliaryDatabaseObjects;
+        private final List<InitCommand> initCommands;
+
+        DatabaseState(Database database) {
+            for (Namespace namespace : database.getNamespaces()) {
+                namespaceNames.add(new Identifier[] {
+                    namespace.getName().getCatalog(),
+                    namespace.getName().getSchema()
+                });
+                tables.add(new HashMap<>(fieldValue(Namespace.class, "tables",
+                    namespace)));
+                sequences.add(new HashMap<>(fieldValue(Namespace.class,
+                    "sequences", namespace)));
+            }
+            auxiliaryDatabaseObjects =
+                new ArrayList<>(database.getAuxiliaryDatabaseObjects());
+            initCommands = new ArrayList<>(database.getInitCommands());
+        }
+
+        Database toDatabase(MetadataBuildingOptions options,
+            JdbcEnvironment jdbcEnvironment)
+        {
+            Database database = new Database(options, jdbcEnvironment);
+            for (int i = 0; i < namespaceNames.size(); i++) {
+                Identifier[] name = namespaceNames.get(i);
+                Namespace namespace = database.locateNamespace(name[0],
+                    name[1]);
+                Map<Object, Object> namespaceTables =
+                    fieldValue(Namespace.class, "tables", namespace);
+                namespaceTables.putAll(tables.get(i));
+                Map<Object, Object> namespaceSequences =
+                    fieldValue(Namespace.class, "sequences", namespace);
+                namespaceSequences.putAll(sequences.get(i));
+            }
+            for (AuxiliaryDatabaseObject object : auxiliaryDatabaseObjects) {
+                database.addAuxiliaryDatabaseObject(object);
+            }
+            for (InitCommand initCommand : initCommands) {
+                database.addInitCommand(initCommand);
+            }
+            return database;
+        }
+
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T fieldValue(Class<?> type, String name,
+        Object target)
+    {
+        try {
+            Field field = type.getDeclaredField(name);
+            field.setAccessible(true);
+            return (T) field.get(target);
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,366 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.boot.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.BootstrapServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceInitiator;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.boot.registry.classloading.internal.ClassLoaderServiceImpl;
+import org.hibernate.boot.registry.classloading.spi.ClassLoaderService;
+import org.hibernate.boot.registry.internal.BootstrapServiceRegistryImpl;
+import org.hibernate.boot.registry.selector.internal.StrategySelectorBuilder;
+import org.hibernate.boot.spi.MetadataImplementor;
+import org.hibernate.cache.spi.access.CollectionRegionAccessStrategy;
+import org.hibernate.cache.spi.access.EntityRegionAccessStrategy;
+import org.hibernate.cache.spi.access.NaturalIdRegionAccessStrategy;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.integrator.internal.IntegratorServiceImpl;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.jmh.jdbc.MockConnectionProvider;
+import org.hibernate.jmh.model.GeneratedModel;
+import org.hibernate.mapping.Collection;
+import org.hibernate.mapping.PersistentClass;
+import org.hibernate.persister.collection.CollectionPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.persister.internal.PersisterFactoryImpl;
+import org.hibernate.persister.spi.PersisterCreationContext;
+import org.hibernate.persister.spi.PersisterFactory;
+import org.hibernate.service.spi.ServiceRegistryAwareService;
+import org.hibernate.service.spi.ServiceRegistryImplementor;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the startup of a session factory for a generated model of
+ * {@code entities} annotated entity classes against
+ * {@link MockConnectionProvider}. The {@link GeneratedModel} is compiled in
+ * the setup, so the benchmark needs a JDK.
+ *
+ * <ul>
+ *     <li>{@code buildMetadata} - {@code MetadataSources#buildMetadata()},
+ *     that is {@code MetadataBuildingProcess}.</li>
+ *     <li>{@code buildSessionFactory} - the metadata and the session
+ *     factory.</li>
+ *     <li>{@code buildSessionFactoryFromSnapshot} - reads the metadata from
+ *     a {@link MetadataSnapshot} written in the setup and builds the
+ *     session factory.</li>
+ * </ul>
+ *
+ * <p>Every invocation starts with a new service registry. The time spent
+ * in {@code MetadataBuildingProcess}, in {@link PersisterFactory} and in
+ * every {@link Integrator} found on the classpath, e.g. Envers and Search,
+ * is printed after every iteration.
+ *
+ * @author Andrej Golovnin
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@State(Scope.Benchmark)
+public class SessionFactoryBootstrapBenchmark {
+
+    @Param({"50", "500", "2000"})
+    private int entities;
+
+    private GeneratedModel model;
+    private byte[] snapshot;
+    private final BootstrapTimings timings = new BootstrapTimings();
+    private StandardServiceRegistry registry;
+    private SessionFactory sessionFactory;
+
+    @Setup
+    public void setup() throws IOException {
+        model = GeneratedModel.compile(entities);
+
+        StandardServiceRegistry snapshotRegistry = buildServiceRegistry();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            MetadataSnapshot.write(buildMetadata(snapshotRegistry), out);
+            snapshot = out.toByteArray();
+        } finally {
+            StandardServiceRegistryBuilder.destroy(snapshotRegistry);
+        }
+        timings.reset();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        model.close();
+    }
+
+    @TearDown(Level.Invocation)
+    public void close() {
+        if (sessionFactory != null) {
+            sessionFactory.close();
+            sessionFactory = null;
+        }
+        StandardServiceRegistryBuilder.destroy(registry);
+        registry = null;
+    }
+
+    @TearDown(Level.Iteration)
+    public void printTimings() {
+        System.out.println();
+        System.out.println(timings);
+        timings.reset();
+    }
+
+    @Benchmark
+    public Metadata buildMetadata() {
+        registry = buildServiceRegistry();
+        return buildMetadata(registry);
+    }
+
+    @Benchmark
+    public SessionFactory buildSessionFactory() {
+        registry = buildServiceRegistry();
+        sessionFactory = buildMetadata(registry).buildSessionFactory();
+        return sessionFactory;
+    }
+
+    @Benchmark
+    public SessionFactory buildSessionFactoryFromSnapshot() throws IOException {
+        registry = buildServiceRegistry();
+        long start = System.nanoTime();
+        MetadataImplementor metadata = MetadataSnapshot.read(registry,
+            new ByteArrayInputStream(snapshot));
+        timings.snapshot += System.nanoTime() - start;
+        sessionFactory = metadata.buildSessionFactory();
+        return sessionFactory;
+    }
+
+    private MetadataImplementor buildMetadata(
+        StandardServiceRegistry registry)
+    {
+        long start = System.nanoTime();
+        MetadataSources sources = new MetadataSources(registry);
+        for (Class<?> modelClass : model.getEntityClasses()) {
+            sources.addAnnotatedClass(modelClass);
+        }
+        MetadataImplementor metadata =
+            (MetadataImplementor) sources.buildMetadata();
+        timings.metadata += System.nanoTime() - start;
+        return metadata;
+    }
+
+    /**
+     * Builds a registry with the integrators found on the classpath, every
+     * integrator and the persister factory record their time.
+     */
+    private StandardServiceRegistry buildServiceRegistry() {
+        ClassLoaderService classLoaderService =
+            new ClassLoaderServiceImpl(model.getClassLoader());
+        List<Integrator> integrators = new ArrayList<>();
+        for (Integrator integrator : new IntegratorServiceImpl(
+            new LinkedHashSet<>(), classLoaderService).getIntegrators())
+        {
+            integrators.add(new TimedIntegrator(integrator, timings));
+        }
+        BootstrapServiceRegistry bootstrapRegistry =
+            new BootstrapServiceRegistryImpl(classLoaderService,
+                new StrategySelectorBuilder().buildSelector(
+                    classLoaderService),
+                () -> integrators);
+        return new StandardServiceRegistryBuilder(bootstrapRegistry)
+            .applySetting(AvailableSettings.DIALECT, H2Dialect.class.getName())
+            .applySetting("hibernate.temp.use_jdbc_metadata_defaults", "false")
+            .applySetting(AvailableSettings.CONNECTION_PROVIDER,
+                new MockConnectionProvider())
+            .addInitiator(new StandardServiceInitiator<PersisterFactory>() {
+
+                @Override
+                public Class<PersisterFactory> getServiceInitiated() {
+                    return PersisterFactory.class;
+                }
+
+                @Override
+                public PersisterFactory initiateService(
+                    Map configurationValues,
+                    ServiceRegistryImplementor registry)
+                {
+                    return new TimedPersisterFactory(timings);
+                }
+
+            })
+            .build();
+    }
+
+    /**
+     * Nanoseconds spent in the phases of the bootstrap since the last
+     * reset.
+     */
+    static final class BootstrapTimings {
+
+        long metadata;
+        long snapshot;
+        long persisters;
+        final Map<String, Long> integrators = new LinkedHashMap<>();
+
+        void reset() {
+            metadata = 0;
+            snapshot = 0;
+            persisters = 0;
+            integrators.clear();
+        }
+
+        void integrator(String name, long nanos) {
+            integrators.merge(name, nanos, Long::sum);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder()
+                .append("MetadataBuildingProcess: ").append(millis(metadata))
+                .append(" ms, snapshot: ").append(millis(snapshot))
+                .append(" ms, PersisterFactory: ").append(millis(persisters))
+                .append(" ms");
+            for (Map.Entry<String, Long> e : integrators.entrySet()) {
+                sb.append(", ").append(e.getKey()).append(": ")
+                    .append(millis(e.getValue())).append(" ms");
+            }
+            return sb.toString();
+        }
+
+        private static long millis(long nanos) {
+            return TimeUnit.NANOSECONDS.toMillis(nanos);
+        }
+
+    }
+
+    static final class TimedPersisterFactory
+        implements PersisterFactory, ServiceRegistryAwareService
+    {
+
+        private final PersisterFactoryImpl delegate =
+            new PersisterFactoryImpl();
+        private final BootstrapTimings timings;
+
+        TimedPersisterFactory(BootstrapTimings timings) {
+            this.timings = timings;
+        }
+
+        @Override
+        public void injectServices(ServiceRegistryImplementor registry) {
+            delegate.injectServices(registry);
+        }
+
+        @Override
+        public EntityPersister createEntityPersister(
+            PersistentClass entityBinding,
+            EntityRegionAccessStrategy entityCacheAccessStrategy,
+            NaturalIdRegionAccessStrategy naturalIdCacheAccessStrategy,
+            PersisterCreationContext creationContext)
+        {
+            long start = System.nanoTime();
+            try {
+                return delegate.createEntityPersister(entityBinding,
+                    entityCacheAccessStrategy, naturalIdCacheAccessStrategy,
+                    creationContext);
+            } finally {
+                timings.persisters += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public CollectionPersister createCollectionPersister(
+            Collection collectionBinding,
+            CollectionRegionAccessStrategy cacheAccessStrategy,
+            PersisterCreationContext creationContext)
+        {
+            long start = System.nanoTime();
+            try {
+                return delegate.createCollectionPersister(collectionBinding,
+                    cacheAccessStrategy, creationContext);
+            } finally {
+                timings.persisters += System.nanoTime() - start;
+            }
+        }
+
+    }
+
+    // JaccIntegrator of Hibernate contributes its service only through the
+    // deprecated ServiceContributingIntegrator, so the wrapper needs it too.
+    @SuppressWarnings("deprecation")
+    static final class TimedIntegrator implements
+        org.hibernate.integrator.spi.ServiceContributingIntegrator
+    {
+
+        private final Integrator delegate;
+        private final BootstrapTimings timings;
+
+        TimedIntegrator(Integrator delegate, BootstrapTimings timings) {
+            this.delegate = delegate;
+            this.timings = timings;
+        }
+
+        @Override
+        public void prepareServices(
+            StandardServiceRegistryBuilder serviceRegistryBuilder)
+        {
+            if (delegate instanceof
+                org.hibernate.integrator.spi.ServiceContributingIntegrator)
+            {
+                ((org.hibernate.integrator.spi.ServiceContributingIntegrator)
+                    delegate).prepareServices(serviceRegistryBuilder);
+            }
+        }
+
+        @Override
+        public void integrate(Metadata metadata,
+            SessionFactoryImplementor sessionFactory,
+            SessionFactoryServiceRegistry serviceRegistry)
+        {
+            long start = System.nanoTime();
+            try {
+                delegate.integrate(metadata, sessionFactory, serviceRegistry);
+            } finally {
+                timings.integrator(delegate.getClass().getSimpleName(),
+                    System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public void disintegrate(SessionFactoryImplementor sessionFactory,
+            SessionFactoryServiceRegistry serviceRegistry)
+        {
+            delegate.disintegrate(sessionFactory, serviceRegistry);
+        }
+
+    }
+
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.cache.spi;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.persistence.Cacheable;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cache.spi.access.EntityRegionAccessStrategy;
+import org.hibernate.cache.spi.access.SoftLock;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.jmh.cache.LocalRegionFactory;
+import org.hibernate.jmh.cache.TinyLfuRegionFactory;
+import org.hibernate.jmh.jdbc.MockConnectionProvider;
+import org.hibernate.persister.entity.EntityPersister;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a {@code READ_WRITE} entity region accessed by 64 threads with
+ * Zipfian distributed keys. Every read which misses the cache is followed
+ * by {@code putFromLoad()}, like a {@code Session#get()} loading the entity
+ * from the database. {@code get} runs readers only, the {@code readWrite}
+ * group runs 63 readers against a single writer, which updates entities
+ * with the soft lock protocol ({@code lockItem()} and
+ * {@code afterUpdate()}).
+ *
+ * <p>{@code regionFactory} selects the second level cache:
+ * <ul>
+ *     <li>{@code LOCAL} - {@link LocalRegionFactory}, an unbounded
+ *     {@code ConcurrentHashMap} per region with soft locks guarded by
+ *     a {@code ReentrantReadWriteLock} per region. hibernate-core ships no
+ *     caching {@code RegionFactory}, this is the design of
+ *     {@code CachingRegionFactory} from hibernate-testing.</li>
+ *     <li>{@code TINY_LFU} - {@link TinyLfuRegionFactory}, a bounded
+ *     {@code TinyLfuMap} per region with lock-free soft locks. It holds
+ *     10% of the entities, the hit ratio is printed after every
+ *     iteration.</li>
+ * </ul>
+ *
+ * <p>{@code skew} is the exponent of the Zipfian distribution, 0.99 is the
+ * default of YCSB.
+ *
+ * @author Andrej Golovnin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10, time = 3)
+@Measurement(iterations = 10, time = 3)
+@State(Scope.Benchmark)
+public class RegionFactoryBenchmark {
+
+    private static final int THREADS = 64;
+
+    private static final int ITEMS = 100_000;
+
+    private static final int MAXIMUM_SIZE = ITEMS / 10;
+
+    private static final int SAMPLES = 1 << 20;
+
+    private static final Object VALUE = "value";
+
+    public enum RegionFactoryType {
+        LOCAL, TINY_LFU
+    }
+
+    @Param({"LOCAL", "TINY_LFU"})
+    private RegionFactoryType regionFactory;
+
+    @Param({"0.8", "0.99"})
+    private double skew;
+
+    private SessionFactoryImplementor sessionFactory;
+    private EntityRegionAccessStrategy cacheAccess;
+    private Region region;
+    private Object[] cacheKeys;
+    private int[] samples;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    @Setup
+    public void setup() {
+        sessionFactory = buildSessionFactory(
+            regionFactory == RegionFactoryType.LOCAL
+                ? new LocalRegionFactory()
+                : new TinyLfuRegionFactory(MAXIMUM_SIZE));
+        EntityPersister persister = sessionFactory.getMetamodel()
+            .entityPersister(Item.class);
+        cacheAccess = persister.getCacheAccessStrategy();
+        region = cacheAccess.getRegion();
+        cacheKeys = new Object[ITEMS];
+        for (int i = 0; i < ITEMS; i++) {
+            cacheKeys[i] = cacheAccess.generateCacheKey((long) i, persister,
+                sessionFactory, null);
+        }
+        samples = zipfian(ITEMS, skew, SAMPLES, new Random(42));
+    }
+
+    @TearDown
+    public void tearDown() {
+        sessionFactory.close();
+    }
+
+    @TearDown(Level.Iteration)
+    public void printHitRatio() {
+        long h = hits.sumThenReset();
+        long m = misses.sumThenReset();
+        System.out.printf("hit ratio: %.1f%%, entries: %d%n",
+            100.0 * h / Math.max(1, h + m),
+            region.getElementCountInMemory());
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int position;
+
+        @Setup
+        public void setup() {
+            position = ThreadLocalRandom.current().nextInt(SAMPLES);
+        }
+
+        int next(int[] samples) {
+            int i = position;
+            position = (i + 1) & (SAMPLES - 1);
+            return samples[i];
+        }
+
+    }
+
+    @Benchmark
+    @Threads(THREADS)
+    public Object get(Cursor cursor) {
+        return read(cursor);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(THREADS - 1)
+    public Object readWriteGet(Cursor cursor) {
+        return read(cursor);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public boolean readWriteUpdate(Cursor cursor) {
+        Object key = cacheKeys[cursor.next(samples)];
+        SoftLock lock = cacheAccess.lockItem(null, key, null);
+        return cacheAccess.afterUpdate(null, key, VALUE, null, null, lock);
+    }
+
+    /**
+     * The region factories do not use the session, so {@code null} is
+     * passed instead of one session per thread.
+     */
+    private Object read(Cursor cursor) {
+        Object key = cacheKeys[cursor.next(samples)];
+        long txTimestamp = region.nextTimestamp();
+        Object value = cacheAccess.get(null, key, txTimestamp);
+        if (value != null) {
+            hits.increment();
+            return value;
+        }
+        misses.increment();
+        cacheAccess.putFromLoad(null, key, VALUE, txTimestamp, null, false);
+        return VALUE;
+    }
+
+    /**
+     * Generates ranks in {@code [0, n)} with the Zipfian distribution using
+     * the method of Gray et al., "Quickly Generating Billion-Record Synthetic
+     * Databases", which is also used by YCSB. The skew must be in
+     * {@code (0, 1)}.
+     */
+    static int[] zipfian(int n, double skew, int count, Random random) {
+        double zetan = 0;
+        for (int i = 1; i <= n; i++) {
+            zetan += 1 / Math.pow(i, skew);
+        }
+        double zeta2 = 1 + 1 / Math.pow(2, skew);
+        double alpha = 1 / (1 - skew);
+        double eta = (1 - Math.pow(2.0 / n, 1 - skew)) / (1 - zeta2 / zetan);
+        int[] ranks = new int[count];
+        for (int i = 0; i < count; i++) {
+            double u = random.nextDouble();
+            double uz = u * zetan;
+            if (uz < 1) {
+                ranks[i] = 0;
+            } else if (uz < zeta2) {
+                ranks[i] = 1;
+            } else {
+                ranks[i] = Math.min(n - 1,
+                    (int) (n * Math.pow(eta * u - eta + 1, alpha)));
+            }
+        }
+        return ranks;
+    }
+
+    private static SessionFactoryImplementor buildSessionFactory(
+        RegionFactory regionFactory)
+    {
+        StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
+            .applySetting(AvailableSettings.DIALECT, H2Dialect.class.getName())
+            .applySetting("hibernate.temp.use_jdbc_metadata_defaults", "false")
+            .applySetting(AvailableSettings.CONNECTION_PROVIDER,
+                new MockConnectionProvider())
+            .applySetting(AvailableSettings.USE_SECOND_LEVEL_CACHE, "true")
+            .applySetting(AvailableSettings.CACHE_REGION_FACTORY,
+                regionFactory)
+            .build();
+        try {
+            return (SessionFactoryImplementor) new MetadataSources(registry)
+                .addAnnotatedClass(Item.class)
+                .buildMetadata()
+                .buildSessionFactory();
+        } catch (RuntimeException e) {
+            StandardServiceRegistryBuilder.destroy(registry);
+            throw e;
+        }
+    }
+
+    @Entity
+    @Cacheable
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+    public static class Item {
+
+        @Id
+        private Long id;
+
+        private String name;
+
+    }
+
+}
@@ -0,0 +1,430 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.cache.spi.entry;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.Cacheable;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+import org.hibernate.EmptyInterceptor;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.Immutable;
+import org.hibernate.annotations.Persister;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cache.spi.access.EntityRegionAccessStrategy;
+import org.hibernate.cache.spi.access.NaturalIdRegionAccessStrategy;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.jmh.cache.LocalRegionFactory;
+import org.hibernate.jmh.jdbc.MockConnectionProvider;
+import org.hibernate.mapping.PersistentClass;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.persister.entity.SingleTableEntityPersister;
+import org.hibernate.persister.spi.PersisterCreationContext;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.type.EntityType;
+import org.hibernate.type.Type;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the second level cache entries of an immutable entity with 32
+ * properties and a many-to-one association: building and putting an entry
+ * into the cache, getting it from the cache, assembling the entity from it
+ * and {@code Session#get()} with a cache hit. The cache is
+ * {@link LocalRegionFactory}, so the cost of a cache provider is excluded.
+ *
+ * <p>{@code entries} selects the format of the cache entries:
+ * <ul>
+ *     <li>{@code STANDARD} - {@link StandardCacheEntryImpl} with the
+ *     disassembled state.</li>
+ *     <li>{@code STRUCTURED} - the same, stored as a map by
+ *     {@link StructuredCacheEntry}.</li>
+ *     <li>{@code REFERENCE} - {@link ReferenceCacheEntryImpl}, which stores
+ *     the entity instance itself. Hibernate uses reference entries only for
+ *     immutable entities without any associations and would fall back to
+ *     standard entries for this entity. {@link ReferenceCachingEntityPersister}
+ *     is a prototype which allows them for immutable entities with to-one
+ *     associations to immutable entities as well.</li>
+ * </ul>
+ *
+ * @author Andrej Golovnin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10, time = 3)
+@Measurement(iterations = 10, time = 3)
+@State(Scope.Benchmark)
+public class CacheEntryBenchmark {
+
+    private static final int PRODUCTS = 1000;
+
+    private static final int CATEGORIES = 10;
+
+    public enum Entries {
+        STANDARD, STRUCTURED, REFERENCE
+    }
+
+    @Param({"STANDARD", "STRUCTURED", "REFERENCE"})
+    private Entries entries;
+
+    private SessionFactoryImplementor sessionFactory;
+    private Session session;
+    private EntityPersister persister;
+    private EntityRegionAccessStrategy cacheAccess;
+    private CacheEntryStructure structure;
+    private Product[] products;
+    private Object[][] states;
+    private Object[] cacheKeys;
+    private int index;
+
+    @Setup
+    public void setup() {
+        sessionFactory = buildSessionFactory(entries);
+        session = sessionFactory.openSession();
+        persister = sessionFactory.getMetamodel().entityPersister(Product.class);
+        cacheAccess = persister.getCacheAccessStrategy();
+        structure = persister.getCacheEntryStructure();
+
+        EntityPersister categoryPersister = sessionFactory.getMetamodel()
+            .entityPersister(Category.class);
+        Category[] categories = new Category[CATEGORIES];
+        for (int i = 0; i < CATEGORIES; i++) {
+            Category category = new Category(i + 1L, "Category " + i);
+            categories[i] = category;
+            put(categoryPersister, category, category.id,
+                categoryPersister.getPropertyValues(category));
+        }
+
+        products = new Product[PRODUCTS];
+        states = new Object[PRODUCTS][];
+        cacheKeys = new Object[PRODUCTS];
+        Type[] types = persister.getPropertyTypes();
+        for (int i = 0; i < PRODUCTS; i++) {
+            Product product = new Product();
+            product.id = i + 1L;
+            Object[] state = new Object[types.length];
+            for (int j = 0; j < types.length; j++) {
+                state[j] = value(types[j], i, j, categories);
+            }
+            persister.setPropertyValues(product, state);
+            products[i] = product;
+            states[i] = state;
+            cacheKeys[i] = put(persister, product, product.id, state);
+        }
+        CacheEntry entry = persister.buildCacheEntry(products[0], states[0],
+            null, sessionImplementor());
+        if (entry.isReferenceEntry() != (entries == Entries.REFERENCE)) {
+            throw new IllegalStateException("Unexpected cache entry "
+                + entry.getClass().getName() + " for " + entries);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        session.close();
+        sessionFactory.close();
+    }
+
+    @Benchmark
+    public boolean put() {
+        int i = nextIndex();
+        CacheEntry entry = persister.buildCacheEntry(products[i], states[i],
+            null, sessionImplementor());
+        return cacheAccess.putFromLoad(sessionImplementor(), cacheKeys[i],
+            structure.structure(entry), 0L, null, false);
+    }
+
+    @Benchmark
+    public CacheEntry get() {
+        return (CacheEntry) structure.destructure(cacheAccess.get(
+            sessionImplementor(), cacheKeys[nextIndex()], 0L), sessionFactory);
+    }
+
+    @Benchmark
+    public Object getAndAssemble() {
+        int i = nextIndex();
+        CacheEntry entry = (CacheEntry) structure.destructure(cacheAccess.get(
+            sessionImplementor(), cacheKeys[i], 0L), sessionFactory);
+        if (entry.isReferenceEntry()) {
+            return ((ReferenceCacheEntryImpl) entry).getReference();
+        }
+        Serializable id = products[i].id;
+        Object instance = persister.instantiate(id, sessionImplementor());
+        ((StandardCacheEntryImpl) entry).assemble(instance, id, persister,
+            EmptyInterceptor.INSTANCE, (EventSource) session);
+        return instance;
+    }
+
+    @Benchmark
+    public Product sessionGet() {
+        Product product = session.get(Product.class, products[nextIndex()].id);
+        session.clear();
+        return product;
+    }
+
+    private Object put(EntityPersister persister, Object entity, Long id,
+        Object[] state)
+    {
+        SharedSessionContractImplementor s = sessionImplementor();
+        EntityRegionAccessStrategy access = persister.getCacheAccessStrategy();
+        Object cacheKey = access.generateCacheKey(id, persister, sessionFactory,
+            null);
+        CacheEntry entry = persister.buildCacheEntry(entity, state, null, s);
+        access.putFromLoad(s, cacheKey,
+            persister.getCacheEntryStructure().structure(entry), 0L, null,
+            false);
+        return cacheKey;
+    }
+
+    private int nextIndex() {
+        int i = index;
+        index = i + 1 == PRODUCTS ? 0 : i + 1;
+        return i;
+    }
+
+    private SharedSessionContractImplementor sessionImplementor() {
+        return (SharedSessionContractImplementor) session;
+    }
+
+    private static Object value(Type type, int row, int column,
+        Category[] categories)
+    {
+        Class<?> javaType = type.getReturnedClass();
+        if (javaType == Category.class) {
+            return categories[row % categories.length];
+        } else if (javaType == String.class) {
+            return "Value " + row + "/" + column;
+        } else if (javaType == Long.class) {
+            return (long) row * column;
+        } else if (javaType == Integer.class) {
+            return row + column;
+        } else if (javaType == BigDecimal.class) {
+            return BigDecimal.valueOf(row * 100L + column, 2);
+        } else if (javaType == Date.class) {
+            return new Date(1466000000000L + row);
+        }
+        throw new IllegalArgumentException(type.getName());
+    }
+
+    private static SessionFactoryImplementor buildSessionFactory(
+        Entries entries)
+    {
+        StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
+            .applySetting(AvailableSettings.DIALECT, H2Dialect.class.getName())
+            .applySetting("hibernate.temp.use_jdbc_metadata_defaults", "false")
+            .applySetting(AvailableSettings.CONNECTION_PROVIDER,
+                new MockConnectionProvider())
+            .applySetting(AvailableSettings.USE_SECOND_LEVEL_CACHE, "true")
+            .applySetting(AvailableSettings.CACHE_REGION_FACTORY,
+                new LocalRegionFactory())
+            .applySetting(AvailableSettings.USE_STRUCTURED_CACHE,
+                String.valueOf(entries == Entries.STRUCTURED))
+            .applySetting(AvailableSettings.USE_DIRECT_REFERENCE_CACHE_ENTRIES,
+                String.valueOf(entries == Entries.REFERENCE))
+            .build();
+        try {
+            return (SessionFactoryImplementor) new MetadataSources(registry)
+                .addAnnotatedClass(Product.class)
+                .addAnnotatedClass(Category.class)
+                .buildMetadata()
+                .buildSessionFactory();
+        } catch (RuntimeException e) {
+            StandardServiceRegistryBuilder.destroy(registry);
+            throw e;
+        }
+    }
+
+    /**
+     * Allows reference cache entries for immutable entities without
+     * collections, whose associations are to-one associations to immutable
+     * entities. As the cached instance is shared by all sessions, it must
+     * not reference a proxy, which is bound to the session that loaded it.
+     * So the decision is made per instance: if one of the associations
+     * holds a proxy, a standard cache entry is built.
+     *
+     * <p>The associated entities are shared together with the cached
+     * instance, but they are not added to the persistence context of the
+     * session which reads the cache entry.
+     */
+    public static class ReferenceCachingEntityPersister
+        extends SingleTableEntityPersister
+    {
+
+        private boolean referenceCacheEntries;
+
+        public ReferenceCachingEntityPersister(PersistentClass persistentClass,
+            EntityRegionAccessStrategy cacheAccessStrategy,
+            NaturalIdRegionAccessStrategy naturalIdRegionAccessStrategy,
+            PersisterCreationContext creationContext) throws HibernateException
+        {
+            super(persistentClass, cacheAccessStrategy,
+                naturalIdRegionAccessStrategy, creationContext);
+        }
+
+        @Override
+        protected void doPostInstantiate() {
+            super.doPostInstantiate();
+            referenceCacheEntries = shouldUseReferenceCacheEntries();
+        }
+
+        @Override
+        public boolean canUseReferenceCacheEntries() {
+            return referenceCacheEntries;
+        }
+
+        @Override
+        public CacheEntry buildCacheEntry(Object entity, Object[] state,
+            Object version, SharedSessionContractImplementor session)
+        {
+            if (referenceCacheEntries && !hasProxies(state)) {
+                return new ReferenceCacheEntryImpl(entity, this);
+            }
+            return super.buildCacheEntry(entity, state, version, session);
+        }
+
+        private boolean shouldUseReferenceCacheEntries() {
+            SessionFactoryImplementor factory = getFactory();
+            if (!factory.getSessionFactoryOptions()
+                    .isDirectReferenceCacheEntriesEnabled()
+                || factory.getSessionFactoryOptions()
+                    .isStructuredCacheEntriesEnabled()
+                || isMutable() || hasCollections())
+            {
+                return false;
+            }
+            for (Type type : getPropertyTypes()) {
+                if (type.isAssociationType()) {
+                    if (!type.isEntityType()) {
+                        return false;
+                    }
+                    EntityPersister associated = factory.getMetamodel()
+                        .entityPersister(((EntityType) type)
+                            .getAssociatedEntityName(factory));
+                    if (associated.isMutable()) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        private boolean hasProxies(Object[] state) {
+            for (Object value : state) {
+                if (value instanceof HibernateProxy) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+    }
+
+    @Entity
+    @Immutable
+    @Cacheable
+    @Cache(usage = CacheConcurrencyStrategy.READ_ONLY)
+    @Persister(impl = ReferenceCachingEntityPersister.class)
+    public static class Product {
+
+        @Id
+        private Long id;
+
+        @ManyToOne
+        private Category category;
+
+        private String name;
+        private String description;
+        private String sku;
+        private String ean;
+        private String manufacturer;
+        private String brand;
+        private String color;
+        private String size;
+        private String material;
+        private String origin;
+        private String unit;
+        private String note;
+
+        private Long stock;
+        private Long reserved;
+        private Long ordered;
+        private Long sold;
+        private Long returned;
+        private Long weight;
+        private Long width;
+        private Long height;
+
+        private BigDecimal price;
+        private BigDecimal purchasePrice;
+        private BigDecimal discount;
+        private BigDecimal tax;
+        private BigDecimal shippingCost;
+        private BigDecimal deposit;
+
+        private Integer rating;
+        private Integer reviews;
+        private Integer warranty;
+        private Integer minimumOrder;
+
+        @Temporal(TemporalType.TIMESTAMP)
+        private Date created;
+
+        @Temporal(TemporalType.TIMESTAMP)
+        private Date modified;
+
+    }
+
+    @Entity
+    @Immutable
+    @Cacheable
+    @Cache(usage = CacheConcurrencyStrategy.READ_ONLY)
+    public static class Category {
+
+        @Id
+        private Long id;
+
+        private String name;
+
+        public Category() {
+        }
+
+        Category(Long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+    }
+
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.engine.internal;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongFunction;
+import java.util.function.ToLongFunction;
+import javax.persistence.Cacheable;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+import org.hibernate.Session;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.jmh.cache.LocalRegionFactory;
+import org.hibernate.jmh.jdbc.MockDatabase;
+import org.hibernate.jmh.jdbc.MockDriver;
+import org.hibernate.jmh.jdbc.MockQuery;
+import org.hibernate.jmh.jdbc.MockResultProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@code Session#bySimpleNaturalId(...).load()} for an entity with
+ * a {@code String} natural id and an entity with a {@code long} natural id.
+ *
+ * <p>{@code tier} selects where the natural id is resolved:
+ * <ul>
+ *     <li>{@code PERSISTENCE_CONTEXT} - all entities have been loaded by the
+ *     session, the natural id is resolved by {@link NaturalIdXrefDelegate}
+ *     and the entity is found in the persistence context.</li>
+ *     <li>{@code SECOND_LEVEL_CACHE} - the session is cleared after every
+ *     load, the natural id and the entity are found in the second level
+ *     cache ({@link LocalRegionFactory}).</li>
+ *     <li>{@code DATABASE} - the session is cleared after every load and
+ *     there is no second level cache, the natural id is resolved by a query
+ *     and the entity is loaded by a second one. The database is
+ *     a {@link MockDatabase} without latency.</li>
+ * </ul>
+ *
+ * @see NaturalIdXrefBenchmark
+ *
+ * @author Andrej Golovnin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10, time = 3)
+@Measurement(iterations = 10, time = 3)
+@State(Scope.Benchmark)
+public class NaturalIdLoadBenchmark {
+
+    private static final String DATABASE_NAME = "NaturalIdLoadBenchmark";
+
+    private static final int IDS = 1024;
+
+    static final long CARD_NUMBER_OFFSET = 4_000_000_000_000_000L;
+
+    public enum Tier {
+        PERSISTENCE_CONTEXT, SECOND_LEVEL_CACHE, DATABASE
+    }
+
+    public enum NaturalIdType {
+        STRING, LONG
+    }
+
+    @Param({"PERSISTENCE_CONTEXT", "SECOND_LEVEL_CACHE", "DATABASE"})
+    private Tier tier;
+
+    @Param({"STRING", "LONG"})
+    private NaturalIdType naturalIdType;
+
+    private MockDatabase database;
+    private SessionFactoryImplementor sessionFactory;
+    private Session session;
+    private Class<?> entityClass;
+    private Object[] naturalIds;
+    private int index;
+
+    @Setup
+    public void setup() {
+        database = new MockDatabase()
+            .addResultProvider(new EntityRows("Account", "username",
+                id -> "user" + id,
+                naturalId -> Long.parseLong(
+                    ((String) naturalId).substring("user".length()))))
+            .addResultProvider(new EntityRows("Card", "number",
+                id -> CARD_NUMBER_OFFSET + id,
+                naturalId -> ((Number) naturalId).longValue()
+                    - CARD_NUMBER_OFFSET));
+        sessionFactory = buildSessionFactory(
+            MockDriver.register(DATABASE_NAME, database),
+            tier == Tier.SECOND_LEVEL_CACHE);
+        session = sessionFactory.openSession();
+        session.beginTransaction();
+
+        entityClass = naturalIdType == NaturalIdType.STRING
+            ? Account.class
+            : Card.class;
+        naturalIds = new Object[IDS];
+        for (int i = 0; i < IDS; i++) {
+            long id = i + 1L;
+            naturalIds[i] = naturalIdType == NaturalIdType.STRING
+                ? "user" + id
+                : (Object) (CARD_NUMBER_OFFSET + id);
+            // Fills the persistence context and the second level cache.
+            session.bySimpleNaturalId(entityClass).load(naturalIds[i]);
+        }
+        if (tier != Tier.PERSISTENCE_CONTEXT) {
+            session.clear();
+        }
+        database.getStatistics().reset();
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.println(database.getStatistics());
+        session.getTransaction().commit();
+        session.close();
+        sessionFactory.close();
+        MockDriver.deregister(DATABASE_NAME);
+    }
+
+    @Benchmark
+    public Object load() {
+        Object entity = session.bySimpleNaturalId(entityClass)
+            .load(naturalIds[nextIndex()]);
+        if (tier != Tier.PERSISTENCE_CONTEXT) {
+            session.clear();
+        }
+        return entity;
+    }
+
+    private int nextIndex() {
+        int i = index;
+        index = i + 1 == IDS ? 0 : i + 1;
+        return i;
+    }
+
+    private static SessionFactoryImplementor buildSessionFactory(String url,
+        boolean secondLevelCache)
+    {
+        StandardServiceRegistryBuilder builder =
+            new StandardServiceRegistryBuilder()
+                .applySetting(AvailableSettings.DIALECT,
+                    H2Dialect.class.getName())
+                .applySetting("hibernate.temp.use_jdbc_metadata_defaults",
+                    "false")
+                .applySetting(AvailableSettings.DRIVER,
+                    MockDriver.class.getName())
+                .applySetting(AvailableSettings.URL, url)
+                .applySetting(AvailableSettings.USE_SECOND_LEVEL_CACHE,
+                    String.valueOf(secondLevelCache));
+        if (secondLevelCache) {
+            builder.applySetting(AvailableSettings.CACHE_REGION_FACTORY,
+                new LocalRegionFactory());
+        }
+        StandardServiceRegistry registry = builder.build();
+        try {
+            return (SessionFactoryImplementor) new MetadataSources(registry)
+                .addAnnotatedClass(Account.class)
+                .addAnnotatedClass(Card.class)
+                .buildMetadata()
+                .buildSessionFactory();
+        } catch (RuntimeException e) {
+            StandardServiceRegistryBuilder.destroy(registry);
+            throw e;
+        }
+    }
+
+    /**
+     * Serves one row for every select from the table of an entity. The
+     * natural id resolution query has the natural id as its parameter, the
+     * entity loader the identifier. The other one is derived from it.
+     */
+    static final class EntityRows implements MockResultProvider {
+
+        private final String fromClause;
+        private final String naturalIdColumn;
+        private final String naturalIdRestriction;
+        private final LongFunction<Object> naturalIdOf;
+        private final ToLongFunction<Object> idOf;
+
+        EntityRows(String table, String naturalIdColumn,
+            LongFunction<Object> naturalIdOf,
+            ToLongFunction<Object> idOf)
+        {
+            this.fromClause = " from " + table + " ";
+            this.naturalIdColumn = naturalIdColumn;
+            this.naturalIdRestriction = naturalIdColumn + "=?";
+            this.naturalIdOf = naturalIdOf;
+            this.idOf = idOf;
+        }
+
+        @Override
+        public List<Object[]> getRows(MockQuery query) {
+            String sql = query.getSql();
+            if (!sql.contains(fromClause)) {
+                return null;
+            }
+            Object parameter = query.getParameter(1);
+            long id = sql.contains(naturalIdRestriction)
+                ? idOf.applyAsLong(parameter)
+                : ((Number) parameter).longValue();
+            Map<String, Object> values = new HashMap<>();
+            values.put("id", id);
+            values.put(naturalIdColumn, naturalIdOf.apply(id));
+            values.put("name", "Name " + id);
+            return Collections.singletonList(query.row(values));
+        }
+
+    }
+
+    @Entity(name = "Account")
+    @Cacheable
+    @Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
+    @NaturalIdCache
+    public static class Account {
+
+        @Id
+        private Long id;
+
+        @NaturalId
+        private String username;
+
+        private String name;
+
+    }
+
+    @Entity(name = "Card")
+    @Cacheable
+    @Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
+    @NaturalIdCache
+    public static class Card {
+
+        @Id
+        private Long id;
+
+        @NaturalId
+        private long number;
+
+        private String name;
+
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.engine.internal;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.Session;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.engine.internal.NaturalIdLoadBenchmark.Account;
+import org.hibernate.engine.internal.NaturalIdLoadBenchmark.Card;
+import org.hibernate.engine.internal.NaturalIdLoadBenchmark.NaturalIdType;
+import org.hibernate.engine.spi.PersistenceContext;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.jmh.jdbc.MockConnectionProvider;
+import org.hibernate.persister.entity.EntityPersister;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static org.hibernate.engine.internal.NaturalIdLoadBenchmark.CARD_NUMBER_OFFSET;
+
+/**
+ * Compares the resolution of a natural id in the persistence context by
+ * {@link NaturalIdXrefDelegate}, as done by
+ * {@code Session#bySimpleNaturalId(...).load()}, with
+ * {@link SimpleNaturalIdXrefDelegate}. The natural id of every entity is
+ * cached in the persistence context, so every lookup is a hit. Run it with
+ * {@code -prof gc} to see the allocations of a hit.
+ *
+ * @see NaturalIdLoadBenchmark
+ *
+ * @author Andrej Golovnin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10, time = 3)
+@Measurement(iterations = 10, time = 3)
+@State(Scope.Benchmark)
+public class NaturalIdXrefBenchmark {
+
+    @Param({"STRING", "LONG"})
+    private NaturalIdType naturalIdType;
+
+    @Param({"1024"})
+    private int entries;
+
+    private SessionFactoryImplementor sessionFactory;
+    private Session session;
+    private EntityPersister persister;
+    private PersistenceContext.NaturalIdHelper naturalIdHelper;
+    private SimpleNaturalIdXrefDelegate simpleXref;
+    private Object[] naturalIds;
+    private long[] longNaturalIds;
+    private int index;
+
+    @Setup
+    public void setup() {
+        sessionFactory = buildSessionFactory();
+        session = sessionFactory.openSession();
+        persister = sessionFactory.getMetamodel().entityPersister(
+            naturalIdType == NaturalIdType.STRING ? Account.class : Card.class);
+        naturalIdHelper = ((SharedSessionContractImplementor) session)
+            .getPersistenceContext().getNaturalIdHelper();
+        simpleXref = new SimpleNaturalIdXrefDelegate();
+
+        naturalIds = new Object[entries];
+        longNaturalIds = new long[entries];
+        for (int i = 0; i < entries; i++) {
+            Long id = i + 1L;
+            longNaturalIds[i] = CARD_NUMBER_OFFSET + id;
+            naturalIds[i] = naturalIdType == NaturalIdType.STRING
+                ? "user" + id
+                : (Object) longNaturalIds[i];
+            naturalIdHelper.cacheNaturalIdCrossReferenceFromLoad(persister, id,
+                new Object[] {naturalIds[i]});
+            simpleXref.cacheNaturalIdCrossReference(persister, id,
+                naturalIds[i]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        session.close();
+        sessionFactory.close();
+    }
+
+    @Benchmark
+    public Serializable naturalIdXrefDelegate() {
+        return naturalIdHelper.findCachedNaturalIdResolution(persister,
+            new Object[] {naturalIds[nextIndex()]});
+    }
+
+    @Benchmark
+    public Serializable simpleNaturalIdXrefDelegate() {
+        int i = nextIndex();
+        if (naturalIdType == NaturalIdType.LONG) {
+            return simpleXref.findCachedNaturalIdResolution(persister,
+                longNaturalIds[i]);
+        }
+        return simpleXref.findCachedNaturalIdResolution(persister,
+            naturalIds[i]);
+    }
+
+    private int nextIndex() {
+        int i = index;
+        index = i + 1 == entries ? 0 : i + 1;
+        return i;
+    }
+
+    private static SessionFactoryImplementor buildSessionFactory() {
+        StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
+            .applySetting(AvailableSettings.DIALECT, H2Dialect.class.getName())
+            .applySetting("hibernate.temp.use_jdbc_metadata_defaults", "false")
+            .applySetting(AvailableSettings.CONNECTION_PROVIDER,
+                new MockConnectionProvider())
+            .applySetting(AvailableSettings.USE_SECOND_LEVEL_CACHE, "false")
+            .build();
+        try {
+            return (SessionFactoryImplementor) new MetadataSources(registry)
+                .addAnnotatedClass(Account.class)
+                .addAnnotatedClass(Card.class)
+                .buildMetadata()
+                .buildSessionFactory();
+        } catch (RuntimeException e) {
+            StandardServiceRegistryBuilder.destroy(registry);
+            throw e;
+        }
+    }
+
+}
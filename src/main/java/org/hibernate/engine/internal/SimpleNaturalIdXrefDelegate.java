@@ -0,0 +1,349 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.engine.internal;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.type.LongType;
+import org.hibernate.type.StringType;
+import org.hibernate.type.Type;
+
+/**
+ * Prototype of the session level natural id cross reference of
+ * {@link NaturalIdXrefDelegate} for entities with a simple natural id, that
+ * is a single {@code String} or {@code long} column.
+ *
+ * <p>{@code NaturalIdXrefDelegate} wraps every natural id into
+ * a {@code CachedNaturalId}, which holds an {@code Object[]} and computes its
+ * hash code through the {@code Type}s of the natural id. It does this on
+ * every lookup, so even a hit in the persistence context allocates. This
+ * class stores the value itself: a {@code String} natural id is the key of
+ * a {@code HashMap} ({@code StringType} compares like
+ * {@code String#equals()}) and a {@code long} natural id is the key of an
+ * open addressing hash map with primitive keys. A lookup allocates
+ * nothing.
+ *
+ * <p>Invalid natural id references, which
+ * {@code NaturalIdXrefDelegate} stashes for mutable natural ids, are not
+ * supported.
+ *
+ * @author Andrej Golovnin
+ */
+public class SimpleNaturalIdXrefDelegate {
+
+    private final Map<String, ResolutionCache> resolutionCaches =
+        new HashMap<>();
+
+    /**
+     * @return {@code true}, when the natural id of the entity is a single
+     *         {@code String} or {@code long} column
+     */
+    public static boolean isSupported(EntityPersister persister) {
+        if (!persister.hasNaturalIdentifier()) {
+            return false;
+        }
+        int[] properties = persister.getNaturalIdentifierProperties();
+        if (properties.length != 1) {
+            return false;
+        }
+        Type type = persister.getPropertyTypes()[properties[0]];
+        return type instanceof StringType || type instanceof LongType;
+    }
+
+    /**
+     * Caches the cross reference between the primary key and the natural id.
+     *
+     * @return {@code true}, when the natural id was not yet cached for the
+     *         primary key
+     */
+    public boolean cacheNaturalIdCrossReference(EntityPersister persister,
+        Serializable pk, Object naturalId)
+    {
+        ResolutionCache cache = resolutionCaches.get(
+            persister.getRootEntityName());
+        if (cache == null) {
+            cache = createResolutionCache(persister);
+            resolutionCaches.put(persister.getRootEntityName(), cache);
+        }
+        return cache.cache(pk, naturalId);
+    }
+
+    /**
+     * Removes the cross reference for the primary key.
+     *
+     * @return the natural id of the removed cross reference or {@code null}
+     */
+    public Object removeNaturalIdCrossReference(EntityPersister persister,
+        Serializable pk)
+    {
+        ResolutionCache cache = resolutionCaches.get(
+            persister.getRootEntityName());
+        return cache == null ? null : cache.remove(pk);
+    }
+
+    /**
+     * @return the cached natural id of the primary key or {@code null}
+     */
+    public Object findCachedNaturalId(EntityPersister persister,
+        Serializable pk)
+    {
+        ResolutionCache cache = resolutionCaches.get(
+            persister.getRootEntityName());
+        return cache == null ? null : cache.pkToNaturalId.get(pk);
+    }
+
+    /**
+     * @return the primary key of the {@code String} natural id or
+     *         {@code null}, when it is not cached
+     */
+    public Serializable findCachedNaturalIdResolution(
+        EntityPersister persister, Object naturalId)
+    {
+        ResolutionCache cache = resolutionCaches.get(
+            persister.getRootEntityName());
+        if (cache == null) {
+            return null;
+        }
+        if (cache instanceof LongResolutionCache) {
+            return ((LongResolutionCache) cache).naturalIdToPk.get(
+                ((Number) naturalId).longValue());
+        }
+        return ((ObjectResolutionCache) cache).naturalIdToPk.get(naturalId);
+    }
+
+    /**
+     * @return the primary key of the {@code long} natural id or
+     *         {@code null}, when it is not cached
+     */
+    public Serializable findCachedNaturalIdResolution(
+        EntityPersister persister, long naturalId)
+    {
+        ResolutionCache cache = resolutionCaches.get(
+            persister.getRootEntityName());
+        if (!(cache instanceof LongResolutionCache)) {
+            return null;
+        }
+        return ((LongResolutionCache) cache).naturalIdToPk.get(naturalId);
+    }
+
+    public void clear() {
+        resolutionCaches.clear();
+    }
+
+    private static ResolutionCache createResolutionCache(
+        EntityPersister persister)
+    {
+        if (!isSupported(persister)) {
+            throw new IllegalArgumentException("The natural id of "
+                + persister.getEntityName()
+                + " is not a single String or long column");
+        }
+        Type type = persister.getPropertyTypes()[
+            persister.getNaturalIdentifierProperties()[0]];
+        return type instanceof LongType
+            ? new LongResolutionCache()
+            : new ObjectResolutionCache();
+    }
+
+    private abstract static class ResolutionCache {
+
+        final Map<Serializable, Object> pkToNaturalId = new HashMap<>();
+
+        boolean cache(Serializable pk, Object naturalId) {
+            Object previous = pkToNaturalId.put(pk, naturalId);
+            if (previous != null) {
+                if (previous.equals(naturalId)) {
+                    return false;
+                }
+                removeNaturalId(previous);
+            }
+            putNaturalId(naturalId, pk);
+            return true;
+        }
+
+        Object remove(Serializable pk) {
+            Object naturalId = pkToNaturalId.remove(pk);
+            if (naturalId != null) {
+                removeNaturalId(naturalId);
+            }
+            return naturalId;
+        }
+
+        abstract void putNaturalId(Object naturalId, Serializable pk);
+
+        abstract void removeNaturalId(Object naturalId);
+
+    }
+
+    private static final class ObjectResolutionCache extends ResolutionCache {
+
+        final Map<Object, Serializable> naturalIdToPk = new HashMap<>();
+
+        @Override
+        void putNaturalId(Object naturalId, Serializable pk) {
+            naturalIdToPk.put(naturalId, pk);
+        }
+
+        @Override
+        void removeNaturalId(Object naturalId) {
+            naturalIdToPk.remove(naturalId);
+        }
+
+    }
+
+    private static final class LongResolutionCache extends ResolutionCache {
+
+        final LongObjectHashMap<Serializable> naturalIdToPk =
+            new LongObjectHashMap<>();
+
+        @Override
+        void putNaturalId(Object naturalId, Serializable pk) {
+            naturalIdToPk.put(((Number) naturalId).longValue(), pk);
+        }
+
+        @Override
+        void removeNaturalId(Object naturalId) {
+            naturalIdToPk.remove(((Number) naturalId).longValue());
+        }
+
+    }
+
+    /**
+     * Hash map with {@code long} keys and linear probing. A slot is used,
+     * when its value is not {@code null}.
+     */
+    static final class LongObjectHashMap<V> {
+
+        private static final float LOAD_FACTOR = 0.5f;
+
+        private long[] keys;
+        private Object[] values;
+        private int mask;
+        private int size;
+        private int threshold;
+
+        LongObjectHashMap() {
+            allocate(16);
+        }
+
+        int size() {
+            return size;
+        }
+
+        @SuppressWarnings("unchecked")
+        V get(long key) {
+            int i = index(key);
+            Object value;
+            while ((value = values[i]) != null) {
+                if (keys[i] == key) {
+                    return (V) value;
+                }
+                i = (i + 1) & mask;
+            }
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        V put(long key, V value) {
+            int i = index(key);
+            Object current;
+            while ((current = values[i]) != null) {
+                if (keys[i] == key) {
+                    values[i] = value;
+                    return (V) current;
+                }
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+            if (++size > threshold) {
+                rehash();
+            }
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        V remove(long key) {
+            int i = index(key);
+            Object value;
+            while ((value = values[i]) != null) {
+                if (keys[i] == key) {
+                    shiftBack(i);
+                    size--;
+                    return (V) value;
+                }
+                i = (i + 1) & mask;
+            }
+            return null;
+        }
+
+        void clear() {
+            Arrays.fill(values, null);
+            size = 0;
+        }
+
+        /**
+         * Removes the slot and moves the following entries of the probe
+         * sequence back, so that no tombstones are needed.
+         */
+        private void shiftBack(int gap) {
+            int i = gap;
+            for (;;) {
+                i = (i + 1) & mask;
+                if (values[i] == null) {
+                    break;
+                }
+                int home = index(keys[i]);
+                // Move the entry, if its home is not between gap and i.
+                if (((i - home) & mask) >= ((i - gap) & mask)) {
+                    keys[gap] = keys[i];
+                    values[gap] = values[i];
+                    gap = i;
+                }
+            }
+            values[gap] = null;
+        }
+
+        private int index(long key) {
+            long h = key * 0x9e3779b97f4a7c15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+
+        private void rehash() {
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            allocate(oldKeys.length << 1);
+            for (int i = 0; i < oldKeys.length; i++) {
+                Object value = oldValues[i];
+                if (value != null) {
+                    int j = index(oldKeys[i]);
+                    while (values[j] != null) {
+                        j = (j + 1) & mask;
+                    }
+                    keys[j] = oldKeys[i];
+                    values[j] = value;
+                }
+            }
+        }
+
+        private void allocate(int capacity) {
+            keys = new long[capacity];
+            values = new Object[capacity];
+            mask = capacity - 1;
+            threshold = (int) (capacity * LOAD_FACTOR);
+        }
+
+    }
+
+}
@@ -0,0 +1,374 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.engine.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+import org.hibernate.LockMode;
+import org.hibernate.Session;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.EntityKey;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.engine.spi.Status;
+import org.hibernate.persister.entity.EntityPersister;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link StatefulPersistenceContext} for large sessions: lookups by
+ * {@code EntityKey} and by entity instance in a populated context, the time
+ * to populate an empty context and the time to clear a populated context.
+ * {@link EntityKeyOpenHashMap} is a compact open addressing alternative for
+ * {@code entitiesByKey}.
+ *
+ * <p>The retained heap per managed entity is printed during the setup of
+ * every trial. It doesn't include the entity instances and the keys.
+ * For 1M entities run the benchmark with a large heap, e.g.
+ * {@code -jvmArgsAppend -Xmx4g}.
+ *
+ * @author Andrej Golovnin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10, time = 3)
+@Measurement(iterations = 10, time = 3)
+@State(Scope.Benchmark)
+public class StatefulPersistenceContextBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    private int size;
+
+    private SessionFactoryImplementor sessionFactory;
+    private Session session;
+    private EntityPersister persister;
+    private Item[] entities;
+    private EntityKey[] keys;
+    private Object[][] states;
+    private StatefulPersistenceContext persistenceContext;
+    private Map<EntityKey, Object> entitiesByKey;
+    private EntityKeyOpenHashMap<Object> entitiesByKeyOpenHashMap;
+    private int index;
+
+    @Setup
+    public void setup() {
+        sessionFactory = buildSessionFactory();
+        session = sessionFactory.openSession();
+        persister = sessionFactory.getMetamodel().entityPersister(Item.class);
+        entities = new Item[size];
+        keys = new EntityKey[size];
+        states = new Object[size][];
+        for (int i = 0; i < size; i++) {
+            Item item = new Item(i + 1L, "Item " + i);
+            entities[i] = item;
+            keys[i] = new EntityKey(item.id, persister);
+            states[i] = new Object[] {item.name};
+        }
+
+        long usedHeap = usedHeap();
+        persistenceContext = newPersistenceContext();
+        populate(persistenceContext);
+        printFootprint("StatefulPersistenceContext", usedHeap);
+
+        usedHeap = usedHeap();
+        entitiesByKey = new HashMap<>();
+        populate(entitiesByKey);
+        printFootprint("entitiesByKey (HashMap)", usedHeap);
+
+        usedHeap = usedHeap();
+        entitiesByKeyOpenHashMap = new EntityKeyOpenHashMap<>();
+        populate(entitiesByKeyOpenHashMap);
+        printFootprint("entitiesByKey (EntityKeyOpenHashMap)", usedHeap);
+    }
+
+    @TearDown
+    public void tearDown() {
+        persistenceContext.clear();
+        session.close();
+        sessionFactory.close();
+    }
+
+    @Benchmark
+    public Object getEntity() {
+        return persistenceContext.getEntity(keys[nextIndex()]);
+    }
+
+    @Benchmark
+    public EntityEntry getEntry() {
+        return persistenceContext.getEntry(entities[nextIndex()]);
+    }
+
+    @Benchmark
+    public Object hashMapGet() {
+        return entitiesByKey.get(keys[nextIndex()]);
+    }
+
+    @Benchmark
+    public Object openHashMapGet() {
+        return entitiesByKeyOpenHashMap.get(keys[nextIndex()]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 20)
+    public StatefulPersistenceContext addEntity(EmptyContext empty) {
+        populate(empty.persistenceContext);
+        return empty.persistenceContext;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 20)
+    public Map<EntityKey, Object> hashMapPut(EmptyContext empty) {
+        populate(empty.entitiesByKey);
+        return empty.entitiesByKey;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 20)
+    public EntityKeyOpenHashMap<Object> openHashMapPut(EmptyContext empty) {
+        populate(empty.entitiesByKeyOpenHashMap);
+        return empty.entitiesByKeyOpenHashMap;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 20)
+    public void clear(PopulatedContext populated) {
+        populated.persistenceContext.clear();
+    }
+
+    private int nextIndex() {
+        int i = index;
+        index = i + 1 == size ? 0 : i + 1;
+        return i;
+    }
+
+    StatefulPersistenceContext newPersistenceContext() {
+        return new StatefulPersistenceContext(
+            (SharedSessionContractImplementor) session);
+    }
+
+    void populate(StatefulPersistenceContext context) {
+        for (int i = 0; i < size; i++) {
+            context.addEntity(entities[i], Status.MANAGED, states[i], keys[i],
+                null, LockMode.NONE, true, persister, false);
+        }
+    }
+
+    private void populate(Map<EntityKey, Object> map) {
+        for (int i = 0; i < size; i++) {
+            map.put(keys[i], entities[i]);
+        }
+    }
+
+    private void populate(EntityKeyOpenHashMap<Object> map) {
+        for (int i = 0; i < size; i++) {
+            map.put(keys[i], entities[i]);
+        }
+    }
+
+    private void printFootprint(String name, long usedHeapBefore) {
+        long bytes = usedHeap() - usedHeapBefore;
+        System.out.println(name + ": " + (bytes / size)
+            + " bytes per managed entity");
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static SessionFactoryImplementor buildSessionFactory() {
+        StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
+            .applySetting(AvailableSettings.DIALECT, H2Dialect.class.getName())
+            .applySetting("hibernate.temp.use_jdbc_metadata_defaults", "false")
+            .build();
+        try {
+            return (SessionFactoryImplementor) new MetadataSources(registry)
+                .addAnnotatedClass(Item.class)
+                .buildMetadata()
+                .buildSessionFactory();
+        } catch (RuntimeException e) {
+            StandardServiceRegistryBuilder.destroy(registry);
+            throw e;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class EmptyContext {
+
+        StatefulPersistenceContext persistenceContext;
+        Map<EntityKey, Object> entitiesByKey;
+        EntityKeyOpenHashMap<Object> entitiesByKeyOpenHashMap;
+
+        @Setup(Level.Invocation)
+        public void setup(StatefulPersistenceContextBenchmark benchmark) {
+            persistenceContext = benchmark.newPersistenceContext();
+            entitiesByKey = new HashMap<>();
+            entitiesByKeyOpenHashMap = new EntityKeyOpenHashMap<>();
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            persistenceContext.clear();
+        }
+
+    }
+
+    @State(Scope.Thread)
+    public static class PopulatedContext {
+
+        StatefulPersistenceContext persistenceContext;
+
+        @Setup(Level.Invocation)
+        public void setup(StatefulPersistenceContextBenchmark benchmark) {
+            persistenceContext = benchmark.newPersistenceContext();
+            benchmark.populate(persistenceContext);
+        }
+
+    }
+
+    @Entity
+    public static class Item {
+
+        @Id
+        private Long id;
+
+        private String name;
+
+        public Item() {
+        }
+
+        Item(Long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+    }
+
+    /**
+     * Open addressing hash map with linear probing for {@code EntityKey}s.
+     * Keys and values are stored in two arrays, so there is no node object
+     * per entry. {@code EntityKey} caches its hash code, so we never have to
+     * recompute it during probing and resizing.
+     */
+    public static final class EntityKeyOpenHashMap<V> {
+
+        private static final int INITIAL_CAPACITY = 16;
+
+        private EntityKey[] keys = new EntityKey[INITIAL_CAPACITY];
+        private Object[] values = new Object[INITIAL_CAPACITY];
+        private int size;
+
+        @SuppressWarnings("unchecked")
+        public V get(EntityKey key) {
+            int mask = keys.length - 1;
+            int i = spread(key.hashCode()) & mask;
+            EntityKey k;
+            while ((k = keys[i]) != null) {
+                if (k == key || k.equals(key)) {
+                    return (V) values[i];
+                }
+                i = (i + 1) & mask;
+            }
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        public V put(EntityKey key, V value) {
+            if ((size + 1) * 3 > keys.length * 2) {
+                resize(keys.length * 2);
+            }
+            int mask = keys.length - 1;
+            int i = spread(key.hashCode()) & mask;
+            EntityKey k;
+            while ((k = keys[i]) != null) {
+                if (k == key || k.equals(key)) {
+                    V old = (V) values[i];
+                    values[i] = value;
+                    return old;
+                }
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+            size++;
+            return null;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public void clear() {
+            keys = new EntityKey[INITIAL_CAPACITY];
+            values = new Object[INITIAL_CAPACITY];
+            size = 0;
+        }
+
+        private void resize(int capacity) {
+            EntityKey[] oldKeys = keys;
+            Object[] oldValues = values;
+            keys = new EntityKey[capacity];
+            values = new Object[capacity];
+            int mask = capacity - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                EntityKey key = oldKeys[j];
+                if (key != null) {
+                    int i = spread(key.hashCode()) & mask;
+                    while (keys[i] != null) {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = key;
+                    values[i] = oldValues[j];
+                }
+            }
+        }
+
+        private static int spread(int h) {
+            h *= 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+    }
+
+}
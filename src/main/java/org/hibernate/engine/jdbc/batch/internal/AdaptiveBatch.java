@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.engine.jdbc.batch.internal;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.hibernate.HibernateException;
+import org.hibernate.engine.jdbc.batch.spi.BatchKey;
+import org.hibernate.engine.jdbc.spi.JdbcCoordinator;
+import org.hibernate.resource.jdbc.spi.JdbcObserver;
+
+/**
+ * {@link BatchingBatch}, which takes its batch size from the measured cost
+ * of its statements, see {@link AdaptiveBatchBuilder}. A batch with more
+ * than one statement uses the smallest batch size of its statements.
+ *
+ * @author Andrej Golovnin
+ */
+public class AdaptiveBatch extends AbstractBatchImpl {
+
+    private final AdaptiveBatchBuilder builder;
+    private final int initialBatchSize;
+    private final Map<String, AdaptiveBatchBuilder.StatementCost> costs =
+        new HashMap<>();
+
+    private int batchSize;
+    private int batchPosition;
+    private int statementPosition;
+    private String currentStatementSql;
+    private PreparedStatement currentStatement;
+
+    public AdaptiveBatch(BatchKey key, JdbcCoordinator jdbcCoordinator,
+        AdaptiveBatchBuilder builder, int initialBatchSize)
+    {
+        super(key, jdbcCoordinator);
+        if (!key.getExpectation().canBeBatched()) {
+            throw new HibernateException(
+                "attempting to batch an operation which cannot be batched");
+        }
+        this.builder = builder;
+        this.initialBatchSize = initialBatchSize;
+        this.batchSize = initialBatchSize;
+    }
+
+    @Override
+    public PreparedStatement getBatchStatement(String sql, boolean callable) {
+        currentStatementSql = sql;
+        currentStatement = super.getBatchStatement(sql, callable);
+        AdaptiveBatchBuilder.StatementCost cost = costs.get(sql);
+        if (cost == null) {
+            cost = builder.cost(sql, initialBatchSize);
+            costs.put(sql, cost);
+        }
+        if (statementPosition == 0 && batchPosition == 0) {
+            batchSize = cost.batchSize;
+        } else {
+            batchSize = Math.min(batchSize, cost.batchSize);
+        }
+        return currentStatement;
+    }
+
+    @Override
+    public void addToBatch() {
+        try {
+            currentStatement.addBatch();
+        } catch (SQLException e) {
+            throw sqlExceptionHelper().convert(e, "could not perform addBatch",
+                currentStatementSql);
+        }
+        statementPosition++;
+        if (statementPosition >= getKey().getBatchedStatementCount()) {
+            statementPosition = 0;
+            if (++batchPosition >= batchSize) {
+                notifyObserversImplicitExecution();
+                performExecution();
+            }
+        }
+    }
+
+    @Override
+    protected void doExecuteBatch() {
+        if (batchPosition > 0) {
+            performExecution();
+        }
+    }
+
+    private void performExecution() {
+        JdbcObserver observer = getJdbcCoordinator().getJdbcSessionOwner()
+            .getJdbcSessionContext().getObserver();
+        try {
+            for (Map.Entry<String, PreparedStatement> entry
+                : getStatements().entrySet())
+            {
+                PreparedStatement statement = entry.getValue();
+                int[] rowCounts;
+                long start = System.nanoTime();
+                try {
+                    observer.jdbcExecuteBatchStart();
+                    rowCounts = statement.executeBatch();
+                } catch (SQLException e) {
+                    throw sqlExceptionHelper().convert(e,
+                        "could not execute batch", entry.getKey());
+                } finally {
+                    observer.jdbcExecuteBatchEnd();
+                }
+                AdaptiveBatchBuilder.StatementCost cost =
+                    costs.get(entry.getKey());
+                if (cost != null) {
+                    cost.record(batchPosition, System.nanoTime() - start);
+                }
+                checkRowCounts(rowCounts, statement);
+            }
+        } catch (RuntimeException e) {
+            abortBatch();
+            throw e;
+        } finally {
+            batchPosition = 0;
+        }
+    }
+
+    private void checkRowCounts(int[] rowCounts, PreparedStatement statement) {
+        try {
+            for (int i = 0; i < rowCounts.length; i++) {
+                getKey().getExpectation()
+                    .verifyOutcome(rowCounts[i], statement, i);
+            }
+        } catch (SQLException e) {
+            throw sqlExceptionHelper().convert(e,
+                "could not verify the row counts of the batch",
+                currentStatementSql);
+        }
+    }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.engine.jdbc.batch.internal;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.hibernate.engine.jdbc.batch.spi.Batch;
+import org.hibernate.engine.jdbc.batch.spi.BatchKey;
+import org.hibernate.engine.jdbc.spi.JdbcCoordinator;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+
+/**
+ * Prototype of a {@code BatchBuilder}, which tunes the JDBC batch size per
+ * statement at runtime. Install it with
+ * {@code hibernate.jdbc.batch.builder} set to the name of this class.
+ *
+ * <p>The batches of {@link AdaptiveBatch} report how long every
+ * {@code executeBatch()} of a statement took for how many rows. From these
+ * measurements the builder estimates the fixed cost of a round trip and the
+ * cost per row of the statement with an exponentially weighted linear
+ * regression. The batch size of the statement is then the smallest size,
+ * for which the round trip costs at most {@link #TARGET_OVERHEAD} percent
+ * of the batch: a statement on a slow network gets large batches, a
+ * statement, whose rows are expensive, small ones. To keep the regression
+ * solvable the sizes alternate a quarter above and below the target.
+ *
+ * <p>{@code hibernate.jdbc.batch_size} is the batch size of a statement
+ * until it has been measured, with a size of 1 or less batching stays
+ * disabled. {@link #MAX_BATCH_SIZE} limits the sizes.
+ *
+ * @author Andrej Golovnin
+ */
+public class AdaptiveBatchBuilder extends BatchBuilderImpl {
+
+    /**
+     * The maximal batch size, 1000 by default.
+     */
+    public static final String MAX_BATCH_SIZE =
+        "hibernate.jdbc.batch.adaptive.max_size";
+
+    /**
+     * The share of the round trip in the cost of a batch in percent, 10 by
+     * default.
+     */
+    public static final String TARGET_OVERHEAD =
+        "hibernate.jdbc.batch.adaptive.target_overhead";
+
+    private final ConcurrentMap<String, StatementCost> costs =
+        new ConcurrentHashMap<>();
+
+    private int maxBatchSize = 1000;
+    private int targetOverhead = 10;
+
+    @Override
+    public void configure(Map configurationValues) {
+        super.configure(configurationValues);
+        maxBatchSize = ConfigurationHelper.getInt(MAX_BATCH_SIZE,
+            configurationValues, maxBatchSize);
+        targetOverhead = ConfigurationHelper.getInt(TARGET_OVERHEAD,
+            configurationValues, targetOverhead);
+    }
+
+    @Override
+    public Batch buildBatch(BatchKey key, JdbcCoordinator jdbcCoordinator) {
+        Integer sessionBatchSize =
+            jdbcCoordinator.getJdbcSessionOwner().getJdbcBatchSize();
+        int initialBatchSize = sessionBatchSize == null
+            ? getJdbcBatchSize()
+            : sessionBatchSize;
+        if (initialBatchSize > 1) {
+            return new AdaptiveBatch(key, jdbcCoordinator, this,
+                Math.min(initialBatchSize, maxBatchSize));
+        }
+        return new NonBatchingBatch(key, jdbcCoordinator);
+    }
+
+    /**
+     * @return the current batch sizes by statement
+     */
+    public Map<String, Integer> getBatchSizes() {
+        Map<String, Integer> batchSizes = new TreeMap<>();
+        costs.forEach((sql, cost) -> batchSizes.put(sql, cost.batchSize));
+        return batchSizes;
+    }
+
+    StatementCost cost(String sql, int initialBatchSize) {
+        StatementCost cost = costs.get(sql);
+        if (cost == null) {
+            cost = costs.computeIfAbsent(sql,
+                s -> new StatementCost(initialBatchSize));
+        }
+        return cost;
+    }
+
+    /**
+     * The measured cost of the batches of a statement.
+     */
+    final class StatementCost {
+
+        private static final double WEIGHT = 0.05;
+
+        private double rows;
+        private double nanos;
+        private double rowsSquared;
+        private double rowsTimesNanos;
+        private boolean measured;
+        private boolean above;
+        private int target;
+
+        volatile int batchSize;
+
+        StatementCost(int initialBatchSize) {
+            this.target = initialBatchSize;
+            this.batchSize = initialBatchSize;
+        }
+
+        synchronized void record(int batchRows, long batchNanos) {
+            if (!measured) {
+                rows = batchRows;
+                nanos = batchNanos;
+                rowsSquared = (double) batchRows * batchRows;
+                rowsTimesNanos = (double) batchRows * batchNanos;
+                measured = true;
+            } else {
+                rows += WEIGHT * (batchRows - rows);
+                nanos += WEIGHT * (batchNanos - nanos);
+                rowsSquared += WEIGHT
+                    * ((double) batchRows * batchRows - rowsSquared);
+                rowsTimesNanos += WEIGHT
+                    * ((double) batchRows * batchNanos - rowsTimesNanos);
+            }
+            batchSize = nextBatchSize();
+        }
+
+        private int nextBatchSize() {
+            double variance = rowsSquared - rows * rows;
+            if (variance > 1) {
+                double nanosPerRow =
+                    (rowsTimesNanos - rows * nanos) / variance;
+                double roundTripNanos = nanos - nanosPerRow * rows;
+                if (nanosPerRow <= 0) {
+                    // The rows are free, only the round trips count.
+                    target = maxBatchSize;
+                } else if (roundTripNanos > 0) {
+                    target = (int) Math.min(maxBatchSize,
+                        Math.ceil(roundTripNanos * (100 - targetOverhead)
+                            / targetOverhead / nanosPerRow));
+                }
+            }
+            above = !above;
+            int step = Math.max(1, target / 4);
+            return Math.max(2, Math.min(maxBatchSize,
+                above ? target + step : target - step));
+        }
+
+    }
+
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.engine.jdbc.batch.internal;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.Session;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.engine.jdbc.batch.spi.Batch;
+import org.hibernate.engine.jdbc.batch.spi.BatchBuilder;
+import org.hibernate.engine.jdbc.batch.spi.BatchKey;
+import org.hibernate.engine.jdbc.spi.JdbcCoordinator;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.jdbc.Expectations;
+import org.hibernate.jmh.jdbc.JdbcStatistics;
+import org.hibernate.jmh.jdbc.MockConnectionProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the rows per second, which a session pushes through the
+ * {@link Batch}es of the {@link BatchBuilder} to a database with a latency
+ * of {@code roundTrip} microseconds per round trip and of one microsecond
+ * per row. Every invocation executes {@value #ROWS} rows in one transaction,
+ * inserts and updates alternate after {@code runLength} rows. Like the
+ * persisters do, the benchmark asks the {@link JdbcCoordinator} for the
+ * batch of every row, so a change of the statement executes the current
+ * batch.
+ *
+ * <p>{@code batching}:
+ * <ul>
+ *     <li>{@code 10}, {@code 50}, {@code 250}, {@code 1000} -
+ *     {@link BatchBuilderImpl} with this {@code hibernate.jdbc.batch_size},
+ *     i.e. {@link BatchingBatch}.</li>
+ *     <li>{@code adaptive} - {@link AdaptiveBatchBuilder} starting with a
+ *     batch size of 50.</li>
+ * </ul>
+ *
+ * <p>The JDBC statistics and the batch sizes chosen by
+ * {@link AdaptiveBatchBuilder} are printed at the end of every trial.
+ *
+ * @author Andrej Golovnin
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 10, time = 3)
+@Measurement(iterations = 10, time = 3)
+@State(Scope.Benchmark)
+public class BatchBenchmark {
+
+    private static final int ROWS = 10_000;
+
+    private static final String INSERT_SQL =
+        "insert into Item (name, price, id) values (?, ?, ?)";
+    private static final String UPDATE_SQL =
+        "update Item set name=?, price=? where id=?";
+
+    private static final BatchKey INSERT_KEY =
+        new BasicBatchKey("Item#INSERT", Expectations.BASIC);
+    private static final BatchKey UPDATE_KEY =
+        new BasicBatchKey("Item#UPDATE", Expectations.BASIC);
+
+    @Param({"10", "50", "250", "1000", "adaptive"})
+    private String batching;
+
+    @Param({"1", "100", "10000"})
+    private int runLength;
+
+    @Param({"20", "200"})
+    private int roundTrip;
+
+    private SessionFactoryImplementor sessionFactory;
+    private JdbcStatistics statistics;
+    private AdaptiveBatchBuilder adaptiveBatchBuilder;
+    private long id;
+
+    @Setup
+    public void setup() {
+        MockConnectionProvider connectionProvider = new MockConnectionProvider();
+        connectionProvider.getDatabase()
+            .setLatency(roundTrip, TimeUnit.MICROSECONDS)
+            .setRowLatency(1, TimeUnit.MICROSECONDS);
+        statistics = connectionProvider.getStatistics();
+        StandardServiceRegistryBuilder builder = new StandardServiceRegistryBuilder()
+            .applySetting(AvailableSettings.DIALECT, H2Dialect.class.getName())
+            .applySetting("hibernate.temp.use_jdbc_metadata_defaults", "false")
+            .applySetting(AvailableSettings.CONNECTION_PROVIDER, connectionProvider);
+        if ("adaptive".equals(batching)) {
+            builder.applySetting(AvailableSettings.STATEMENT_BATCH_SIZE, "50")
+                .applySetting(BatchBuilderInitiator.BUILDER,
+                    AdaptiveBatchBuilder.class.getName());
+        } else {
+            builder.applySetting(AvailableSettings.STATEMENT_BATCH_SIZE, batching);
+        }
+        StandardServiceRegistry registry = builder.build();
+        try {
+            sessionFactory = (SessionFactoryImplementor) new MetadataSources(registry)
+                .buildMetadata()
+                .buildSessionFactory();
+        } catch (RuntimeException e) {
+            StandardServiceRegistryBuilder.destroy(registry);
+            throw e;
+        }
+        BatchBuilder batchBuilder = sessionFactory.getServiceRegistry()
+            .getService(BatchBuilder.class);
+        if (batchBuilder instanceof AdaptiveBatchBuilder) {
+            adaptiveBatchBuilder = (AdaptiveBatchBuilder) batchBuilder;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.println();
+        System.out.println(statistics);
+        if (adaptiveBatchBuilder != null) {
+            System.out.println("Batch sizes: "
+                + adaptiveBatchBuilder.getBatchSizes());
+        }
+        sessionFactory.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public long executeRows() throws SQLException {
+        try (Session session = sessionFactory.openSession()) {
+            session.beginTransaction();
+            JdbcCoordinator jdbcCoordinator =
+                ((SessionImplementor) session).getJdbcCoordinator();
+            for (int i = 0; i < ROWS; i++) {
+                boolean insert = i / runLength % 2 == 0;
+                Batch batch = jdbcCoordinator.getBatch(
+                    insert ? INSERT_KEY : UPDATE_KEY);
+                PreparedStatement statement = batch.getBatchStatement(
+                    insert ? INSERT_SQL : UPDATE_SQL, false);
+                statement.setString(1, "Item " + id);
+                statement.setLong(2, id % 1000);
+                statement.setLong(3, id++);
+                batch.addToBatch();
+            }
+            jdbcCoordinator.executeBatch();
+            session.getTransaction().commit();
+        }
+        return id;
+    }
+
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.engine.query.spi;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import org.hibernate.Filter;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.internal.FilterImpl;
+import org.hibernate.jmh.cache.TinyLfuMap;
+
+/**
+ * Prototype of the HQL part of {@link QueryPlanCache} without locks on the
+ * hit path.
+ *
+ * <p>{@code QueryPlanCache} creates a new {@code HQLQueryPlanKey} for every
+ * lookup, including a {@code HashSet} of {@code DynamicFilterKey}s with
+ * a {@code HashMap} per enabled filter, and looks it up in
+ * {@code BoundedConcurrentHashMap}, whose LIRS eviction takes the lock of
+ * the segment on hits too. This cache:
+ * <ul>
+ *     <li>stores the plans in a {@link TinyLfuMap}, which reads from
+ *     a {@code ConcurrentHashMap} and records hits in lossy buffers,</li>
+ *     <li>looks up the plan with a {@link PlanKey} recycled per thread,
+ *     which computes the hash code and compares the enabled filters
+ *     directly from the {@code Filter}s of the session. An immutable copy
+ *     of the key is only created, when a new plan is put into the
+ *     cache.</li>
+ * </ul>
+ *
+ * @author Andrej Golovnin
+ */
+public class ConcurrentQueryPlanCache {
+
+    private final SessionFactoryImplementor factory;
+    private final ConcurrentMap<PlanKey, HQLQueryPlan> plans;
+    private final ThreadLocal<PlanKey> lookupKeys =
+        ThreadLocal.withInitial(PlanKey::new);
+
+    public ConcurrentQueryPlanCache(SessionFactoryImplementor factory,
+        int maxSize)
+    {
+        this.factory = factory;
+        this.plans = new TinyLfuMap<>(maxSize);
+    }
+
+    public HQLQueryPlan getHQLQueryPlan(String queryString, boolean shallow,
+        Map<String, Filter> enabledFilters)
+    {
+        PlanKey key = lookupKeys.get().lookup(queryString, shallow,
+            enabledFilters);
+        try {
+            HQLQueryPlan plan = plans.get(key);
+            if (plan == null) {
+                plan = new HQLQueryPlan(queryString, shallow, enabledFilters,
+                    factory);
+                HQLQueryPlan prior = plans.putIfAbsent(key.copy(), plan);
+                if (prior != null) {
+                    plan = prior;
+                }
+            }
+            return plan;
+        } finally {
+            key.release();
+        }
+    }
+
+    public int size() {
+        return plans.size();
+    }
+
+    public void cleanup() {
+        plans.clear();
+    }
+
+    /**
+     * Key of a query plan. A lookup key references the enabled filters of
+     * the session, a stored key holds the names of the filters and the value
+     * counts of their parameters, like {@code DynamicFilterKey}. A stored key
+     * is a copy of a lookup key with the same hash code, both can be
+     * compared with each other.
+     */
+    static final class PlanKey {
+
+        private String query;
+        private boolean shallow;
+        private Map<String, Filter> enabledFilters;
+        private Map<String, Map<String, Integer>> filterKeys;
+        private int hashCode;
+
+        PlanKey lookup(String query, boolean shallow,
+            Map<String, Filter> enabledFilters)
+        {
+            this.query = query;
+            this.shallow = shallow;
+            this.enabledFilters = enabledFilters == null
+                ? Collections.emptyMap()
+                : enabledFilters;
+            this.filterKeys = null;
+            int hash = 0;
+            for (Filter filter : this.enabledFilters.values()) {
+                hash += filterHashCode(filter.getName(),
+                    parameterHashCode(((FilterImpl) filter).getParameters()));
+            }
+            this.hashCode = hashCode(query, shallow, hash);
+            return this;
+        }
+
+        void release() {
+            query = null;
+            enabledFilters = null;
+        }
+
+        PlanKey copy() {
+            Map<String, Map<String, Integer>> keys;
+            if (enabledFilters.isEmpty()) {
+                keys = Collections.emptyMap();
+            } else {
+                keys = new HashMap<>();
+                for (Filter filter : enabledFilters.values()) {
+                    Map<String, Integer> counts = new HashMap<>();
+                    for (Map.Entry<String, ?> e
+                        : ((FilterImpl) filter).getParameters().entrySet())
+                    {
+                        counts.put(e.getKey(), valueCount(e.getValue()));
+                    }
+                    keys.put(filter.getName(), counts);
+                }
+            }
+            PlanKey copy = new PlanKey();
+            copy.query = query;
+            copy.shallow = shallow;
+            copy.filterKeys = keys;
+            copy.hashCode = hashCode;
+            return copy;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PlanKey)) {
+                return false;
+            }
+            PlanKey other = (PlanKey) o;
+            if (hashCode != other.hashCode || shallow != other.shallow
+                || !query.equals(other.query))
+            {
+                return false;
+            }
+            if (filterKeys != null && other.filterKeys != null) {
+                return filterKeys.equals(other.filterKeys);
+            }
+            if (filterKeys != null) {
+                return other.sameFilters(filterKeys);
+            }
+            if (other.filterKeys != null) {
+                return sameFilters(other.filterKeys);
+            }
+            return copy().filterKeys.equals(other.copy().filterKeys);
+        }
+
+        private boolean sameFilters(Map<String, Map<String, Integer>> keys) {
+            if (enabledFilters.size() != keys.size()) {
+                return false;
+            }
+            for (Filter filter : enabledFilters.values()) {
+                Map<String, Integer> counts = keys.get(filter.getName());
+                Map<String, ?> parameters =
+                    ((FilterImpl) filter).getParameters();
+                if (counts == null || counts.size() != parameters.size()) {
+                    return false;
+                }
+                for (Map.Entry<String, ?> e : parameters.entrySet()) {
+                    Integer count = counts.get(e.getKey());
+                    if (count == null
+                        || count != valueCount(e.getValue()))
+                    {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        private static int parameterHashCode(Map<String, ?> parameters) {
+            int hash = 0;
+            for (Map.Entry<String, ?> e : parameters.entrySet()) {
+                hash += e.getKey().hashCode() ^ valueCount(e.getValue());
+            }
+            return hash;
+        }
+
+        private static int filterHashCode(String name, int parameterHash) {
+            return 31 * name.hashCode() + parameterHash;
+        }
+
+        private static int hashCode(String query, boolean shallow,
+            int filterHash)
+        {
+            int hash = query.hashCode();
+            hash = 29 * hash + (shallow ? 1 : 0);
+            return 29 * hash + filterHash;
+        }
+
+        private static int valueCount(Object value) {
+            return value instanceof Collection
+                ? ((Collection<?>) value).size()
+                : 1;
+        }
+
+    }
+
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.engine.query.spi;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+import org.hibernate.Filter;
+import org.hibernate.Session;
+import org.hibernate.annotations.FilterDef;
+import org.hibernate.annotations.FilterDefs;
+import org.hibernate.annotations.Filters;
+import org.hibernate.annotations.ParamDef;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.jmh.jdbc.MockConnectionProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@code getHQLQueryPlan()} of {@link QueryPlanCache} and of the
+ * prototype {@link ConcurrentQueryPlanCache} with 48 threads running the
+ * same 500 HQL queries, every thread starting at a different query.
+ *
+ * <p>{@code maxPlans} is the size of both caches: with 2048 (the default of
+ * Hibernate) every lookup is a hit, with 256 the lookups are a mix of hits
+ * and misses, and a miss translates the query. {@code filters} selects the
+ * enabled filters of the session: {@code NONE} or {@code TENANT_AND_REGIONS},
+ * a filter with a single parameter and a filter with a parameter list.
+ *
+ * @author Andrej Golovnin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10, time = 3)
+@Measurement(iterations = 10, time = 3)
+@State(Scope.Benchmark)
+public class QueryPlanCacheBenchmark {
+
+    private static final int THREADS = 48;
+
+    private static final int QUERIES = 500;
+
+    public enum EnabledFilters {
+        NONE, TENANT_AND_REGIONS
+    }
+
+    @Param({"2048", "256"})
+    private int maxPlans;
+
+    @Param({"NONE", "TENANT_AND_REGIONS"})
+    private EnabledFilters filters;
+
+    private SessionFactoryImplementor sessionFactory;
+    private Session session;
+    private QueryPlanCache queryPlanCache;
+    private ConcurrentQueryPlanCache concurrentQueryPlanCache;
+    private Map<String, Filter> enabledFilters;
+    private String[] queries;
+
+    @Setup
+    public void setup() {
+        sessionFactory = buildSessionFactory(maxPlans);
+        session = sessionFactory.openSession();
+        if (filters == EnabledFilters.TENANT_AND_REGIONS) {
+            session.enableFilter("tenant").setParameter("tenantId", 42L);
+            session.enableFilter("regions").setParameterList("regionIds",
+                Arrays.asList(1L, 2L, 3L));
+        }
+        enabledFilters = ((SharedSessionContractImplementor) session)
+            .getLoadQueryInfluencers().getEnabledFilters();
+        queryPlanCache = new QueryPlanCache(sessionFactory);
+        concurrentQueryPlanCache = new ConcurrentQueryPlanCache(sessionFactory,
+            maxPlans);
+        queries = queries(QUERIES);
+        for (String query : queries) {
+            queryPlanCache.getHQLQueryPlan(query, false, enabledFilters);
+            concurrentQueryPlanCache.getHQLQueryPlan(query, false,
+                enabledFilters);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        session.close();
+        sessionFactory.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int position;
+
+        @Setup
+        public void setup() {
+            position = ThreadLocalRandom.current().nextInt(QUERIES);
+        }
+
+        int next() {
+            int i = position;
+            position = i + 1 == QUERIES ? 0 : i + 1;
+            return i;
+        }
+
+    }
+
+    @Benchmark
+    @Threads(THREADS)
+    public HQLQueryPlan queryPlanCache(Cursor cursor) {
+        return queryPlanCache.getHQLQueryPlan(queries[cursor.next()], false,
+            enabledFilters);
+    }
+
+    @Benchmark
+    @Threads(THREADS)
+    public HQLQueryPlan concurrentQueryPlanCache(Cursor cursor) {
+        return concurrentQueryPlanCache.getHQLQueryPlan(
+            queries[cursor.next()], false, enabledFilters);
+    }
+
+    /**
+     * Generates up to 930 distinct queries with restrictions on every
+     * combination of some properties and different orderings, like the
+     * queries of a search form.
+     */
+    static String[] queries(int count) {
+        String[][] templates = {
+            {"select c from Customer c where ", "c.",
+                "name", "email", "city", "active", "created"},
+            {"select o from PurchaseOrder o where ", "o.",
+                "status", "total", "created", "customer.name",
+                "customer.city"},
+            {"select o from PurchaseOrder o join fetch o.customer c where ",
+                "c.", "name", "email", "city", "active", "created"}
+        };
+        List<String> queries = new ArrayList<>(count);
+        for (int order = 0; queries.size() < count; order++) {
+            for (String[] template : templates) {
+                int properties = template.length - 2;
+                for (int mask = 1; mask < 1 << properties; mask++) {
+                    StringBuilder sb = new StringBuilder(template[0]);
+                    String separator = "";
+                    for (int p = 0; p < properties; p++) {
+                        if ((mask & 1 << p) != 0) {
+                            sb.append(separator).append(template[1])
+                                .append(template[p + 2]).append(" = :p")
+                                .append(p);
+                            separator = " and ";
+                        }
+                    }
+                    sb.append(" order by ").append(template[1])
+                        .append(template[2 + order % properties])
+                        .append(order / properties % 2 == 0
+                            ? " asc"
+                            : " desc");
+                    queries.add(sb.toString());
+                    if (queries.size() == count) {
+                        return queries.toArray(new String[count]);
+                    }
+                }
+            }
+        }
+        return queries.toArray(new String[count]);
+    }
+
+    private static SessionFactoryImplementor buildSessionFactory(
+        int maxPlans)
+    {
+        StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
+            .applySetting(AvailableSettings.DIALECT, H2Dialect.class.getName())
+            .applySetting("hibernate.temp.use_jdbc_metadata_defaults", "false")
+            .applySetting(AvailableSettings.CONNECTION_PROVIDER,
+                new MockConnectionProvider())
+            .applySetting(AvailableSettings.QUERY_PLAN_CACHE_MAX_SIZE,
+                String.valueOf(maxPlans))
+            .build();
+        try {
+            return (SessionFactoryImplementor) new MetadataSources(registry)
+                .addAnnotatedClass(Customer.class)
+                .addAnnotatedClass(PurchaseOrder.class)
+                .buildMetadata()
+                .buildSessionFactory();
+        } catch (RuntimeException e) {
+            StandardServiceRegistryBuilder.destroy(registry);
+            throw e;
+        }
+    }
+
+    @Entity(name = "Customer")
+    @FilterDefs({
+        @FilterDef(name = "tenant",
+            parameters = @ParamDef(name = "tenantId", type = "long")),
+        @FilterDef(name = "regions",
+            parameters = @ParamDef(name = "regionIds", type = "long"))
+    })
+    @Filters({
+        @org.hibernate.annotations.Filter(name = "tenant",
+            condition = "tenantId = :tenantId"),
+        @org.hibernate.annotations.Filter(name = "regions",
+            condition = "regionId in (:regionIds)")
+    })
+    public static class Customer {
+
+        @Id
+        private Long id;
+
+        private Long tenantId;
+
+        private Long regionId;
+
+        private String name;
+
+        private String email;
+
+        private String city;
+
+        private boolean active;
+
+        @Temporal(TemporalType.TIMESTAMP)
+        private Date created;
+
+    }
+
+    @Entity(name = "PurchaseOrder")
+    @org.hibernate.annotations.Filter(name = "tenant",
+        condition = "tenantId = :tenantId")
+    public static class PurchaseOrder {
+
+        @Id
+        private Long id;
+
+        private Long tenantId;
+
+        @ManyToOne
+        private Customer customer;
+
+        private String status;
+
+        private BigDecimal total;
+
+        @Temporal(TemporalType.TIMESTAMP)
+        private Date created;
+
+    }
+
+}
@@ -0,0 +1,424 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.engine.spi;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+
+import org.hibernate.Session;
+import org.hibernate.action.internal.AbstractEntityInsertAction;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.jmh.jdbc.JdbcStatistics;
+import org.hibernate.jmh.jdbc.MockConnectionProvider;
+import org.hibernate.type.Type;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link ActionQueue#sortActions()} and
+ * {@link ActionQueue#executeActions()} for a session with many queued
+ * {@code EntityInsertAction}s. The entities form a graph of customers,
+ * orders, order lines and products and are persisted in the order of the
+ * graph, so without ordering every insert uses a different statement than
+ * the previous one. The statements are executed against
+ * {@link MockConnectionProvider} with a JDBC batch size of 50.
+ *
+ * <p>{@code ordering}:
+ * <ul>
+ *     <li>{@code NONE} - {@code hibernate.order_inserts=false}</li>
+ *     <li>{@code DEFAULT} - {@code hibernate.order_inserts=true} with
+ *     {@code ActionQueue.InsertActionSorter}</li>
+ *     <li>{@code TOPOLOGICAL} - {@code hibernate.order_inserts=true} with
+ *     {@link TopologicalInsertActionSorter}</li>
+ * </ul>
+ *
+ * <p>The JDBC calls of the last iteration are printed at the end of every
+ * trial.
+ *
+ * @author Andrej Golovnin
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@State(Scope.Benchmark)
+public class ActionQueueBenchmark {
+
+    private static final int BATCH_SIZE = 50;
+    private static final int PRODUCTS = 100;
+    private static final int ORDERS_PER_CUSTOMER = 4;
+    private static final int LINES_PER_ORDER = 8;
+
+    /**
+     * Number of insert actions per customer.
+     */
+    private static final int ACTIONS_PER_CUSTOMER =
+        1 + ORDERS_PER_CUSTOMER * (1 + LINES_PER_ORDER);
+
+    @Param({"10000", "100000", "500000"})
+    private int actions;
+
+    @Param({"NONE", "DEFAULT", "TOPOLOGICAL"})
+    private String ordering;
+
+    private SessionFactoryImplementor sessionFactory;
+    private JdbcStatistics statistics;
+
+    @Setup
+    public void setup() {
+        MockConnectionProvider connectionProvider = new MockConnectionProvider();
+        statistics = connectionProvider.getStatistics();
+        StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
+            .applySetting(AvailableSettings.DIALECT, H2Dialect.class.getName())
+            .applySetting("hibernate.temp.use_jdbc_metadata_defaults", "false")
+            .applySetting(AvailableSettings.CONNECTION_PROVIDER, connectionProvider)
+            .applySetting(AvailableSettings.STATEMENT_BATCH_SIZE, BATCH_SIZE)
+            .applySetting(AvailableSettings.ORDER_INSERTS, !"NONE".equals(ordering))
+            .build();
+        try {
+            sessionFactory = (SessionFactoryImplementor) new MetadataSources(registry)
+                .addAnnotatedClass(Customer.class)
+                .addAnnotatedClass(PurchaseOrder.class)
+                .addAnnotatedClass(OrderLine.class)
+                .addAnnotatedClass(Product.class)
+                .buildMetadata()
+                .buildSessionFactory();
+        } catch (RuntimeException e) {
+            StandardServiceRegistryBuilder.destroy(registry);
+            throw e;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.println();
+        System.out.println(statistics);
+        sessionFactory.close();
+    }
+
+    @Benchmark
+    public ActionQueue sortActions(QueuedInserts inserts) {
+        inserts.actionQueue.sortActions();
+        return inserts.actionQueue;
+    }
+
+    @Benchmark
+    public ActionQueue executeActions(SortedInserts inserts) {
+        inserts.actionQueue.executeActions();
+        return inserts.actionQueue;
+    }
+
+    @Benchmark
+    public ActionQueue sortAndExecuteActions(QueuedInserts inserts) {
+        inserts.actionQueue.sortActions();
+        inserts.actionQueue.executeActions();
+        return inserts.actionQueue;
+    }
+
+    /**
+     * A session with all entities of the graph persisted, but not flushed.
+     */
+    @State(Scope.Thread)
+    public static class QueuedInserts {
+
+        Session session;
+        ActionQueue actionQueue;
+
+        @Setup(Level.Invocation)
+        public void setup(ActionQueueBenchmark benchmark) throws Exception {
+            session = benchmark.openSessionWithQueuedInserts();
+            actionQueue = ((SessionImplementor) session).getActionQueue();
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            session.getTransaction().rollback();
+            session.close();
+        }
+
+    }
+
+    /**
+     * The same as {@link QueuedInserts}, but the actions are already sorted.
+     */
+    @State(Scope.Thread)
+    public static class SortedInserts {
+
+        Session session;
+        ActionQueue actionQueue;
+
+        @Setup(Level.Invocation)
+        public void setup(ActionQueueBenchmark benchmark) throws Exception {
+            session = benchmark.openSessionWithQueuedInserts();
+            actionQueue = ((SessionImplementor) session).getActionQueue();
+            actionQueue.sortActions();
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            session.getTransaction().rollback();
+            session.close();
+        }
+
+    }
+
+    Session openSessionWithQueuedInserts() throws Exception {
+        Session session = sessionFactory.openSession();
+        session.beginTransaction();
+        if ("TOPOLOGICAL".equals(ordering)) {
+            ActionQueue actionQueue = ((SessionImplementor) session).getActionQueue();
+            Field insertions = ActionQueue.class.getDeclaredField("insertions");
+            insertions.setAccessible(true);
+            insertions.set(actionQueue,
+                new ExecutableList<>(new TopologicalInsertActionSorter()));
+        }
+        persistGraph(session, actions);
+        statistics.reset();
+        return session;
+    }
+
+    static void persistGraph(Session session, int actions) {
+        Product[] products = new Product[PRODUCTS];
+        for (int i = 0; i < PRODUCTS; i++) {
+            products[i] = new Product(i, "Product " + i);
+            session.persist(products[i]);
+        }
+        long orderId = 0;
+        long lineId = 0;
+        int customers = Math.max(1, (actions - PRODUCTS) / ACTIONS_PER_CUSTOMER);
+        for (int c = 0; c < customers; c++) {
+            Customer customer = new Customer(c, "Customer " + c);
+            session.persist(customer);
+            for (int o = 0; o < ORDERS_PER_CUSTOMER; o++) {
+                PurchaseOrder order = new PurchaseOrder(orderId++, customer);
+                session.persist(order);
+                for (int l = 0; l < LINES_PER_ORDER; l++) {
+                    Product product = products[(int) (lineId % PRODUCTS)];
+                    session.persist(new OrderLine(lineId++, order, product, l + 1));
+                }
+            }
+        }
+    }
+
+    /**
+     * Orders the insert actions in linear time. Every action gets a level:
+     * {@code 0} if it doesn't reference any other entity inserted in this
+     * flush, otherwise one more than the highest level of the referenced
+     * entities. The actions are emitted level by level and grouped by entity
+     * name within a level, so parents are always inserted before their
+     * children and every group can be sent as one JDBC batch.
+     *
+     * <p>Like {@code ActionQueue.InsertActionSorter} it only follows direct
+     * entity references in the state of an entity. References which form a
+     * cycle are ignored.
+     */
+    public static final class TopologicalInsertActionSorter
+        implements ExecutableList.Sorter<AbstractEntityInsertAction>
+    {
+
+        private static final int UNVISITED = 0;
+        private static final int IN_PROGRESS = -1;
+
+        @Override
+        public void sort(List<AbstractEntityInsertAction> actions) {
+            int size = actions.size();
+            AbstractEntityInsertAction[] array =
+                actions.toArray(new AbstractEntityInsertAction[size]);
+            Map<Object, Integer> indexByInstance = new IdentityHashMap<>(size);
+            for (int i = 0; i < size; i++) {
+                indexByInstance.put(array[i].getInstance(), i);
+            }
+
+            // The level of an action plus one, so 0 can mean "not visited".
+            int[] levels = new int[size];
+            int[] maxDependencyLevels = new int[size];
+            int[] nextProperty = new int[size];
+            int[] stack = new int[size];
+            int maxLevel = 0;
+            for (int start = 0; start < size; start++) {
+                if (levels[start] != UNVISITED) {
+                    continue;
+                }
+                int top = 0;
+                stack[top] = start;
+                levels[start] = IN_PROGRESS;
+                while (top >= 0) {
+                    int current = stack[top];
+                    int dependency = nextDependency(array[current],
+                        current, nextProperty, indexByInstance);
+                    while (dependency >= 0 && levels[dependency] != UNVISITED) {
+                        if (levels[dependency] > 0) {
+                            maxDependencyLevels[current] = Math.max(
+                                maxDependencyLevels[current], levels[dependency]);
+                        }
+                        dependency = nextDependency(array[current],
+                            current, nextProperty, indexByInstance);
+                    }
+                    if (dependency >= 0) {
+                        // Revisit the same property after the dependency
+                        // got its level.
+                        nextProperty[current]--;
+                        levels[dependency] = IN_PROGRESS;
+                        stack[++top] = dependency;
+                    } else {
+                        levels[current] = maxDependencyLevels[current] + 1;
+                        maxLevel = Math.max(maxLevel, levels[current]);
+                        top--;
+                    }
+                }
+            }
+
+            List<Map<String, List<AbstractEntityInsertAction>>> batches =
+                new ArrayList<>(maxLevel);
+            for (int level = 0; level < maxLevel; level++) {
+                batches.add(new LinkedHashMap<>());
+            }
+            for (int i = 0; i < size; i++) {
+                batches.get(levels[i] - 1)
+                    .computeIfAbsent(array[i].getEntityName(), k -> new ArrayList<>())
+                    .add(array[i]);
+            }
+            actions.clear();
+            for (Map<String, List<AbstractEntityInsertAction>> batch : batches) {
+                for (List<AbstractEntityInsertAction> group : batch.values()) {
+                    actions.addAll(group);
+                }
+            }
+        }
+
+        /**
+         * @return the index of the next action the given action depends on,
+         *         starting with the property {@code nextProperty[index]},
+         *         or {@code -1} if there are no more dependencies
+         */
+        private static int nextDependency(AbstractEntityInsertAction action,
+            int index, int[] nextProperty, Map<Object, Integer> indexByInstance)
+        {
+            Object[] state = action.getState();
+            Type[] types = action.getPersister().getPropertyTypes();
+            while (nextProperty[index] < types.length) {
+                int property = nextProperty[index]++;
+                Object value = state[property];
+                if (value != null && types[property].isEntityType()) {
+                    Integer dependency = indexByInstance.get(value);
+                    if (dependency != null && dependency != index) {
+                        return dependency;
+                    }
+                }
+            }
+            return -1;
+        }
+
+    }
+
+    @Entity
+    public static class Customer {
+
+        @Id
+        private long id;
+
+        private String name;
+
+        public Customer() {
+        }
+
+        Customer(long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+    }
+
+    @Entity
+    public static class PurchaseOrder {
+
+        @Id
+        private long id;
+
+        @ManyToOne
+        private Customer customer;
+
+        public PurchaseOrder() {
+        }
+
+        PurchaseOrder(long id, Customer customer) {
+            this.id = id;
+            this.customer = customer;
+        }
+
+    }
+
+    @Entity
+    public static class OrderLine {
+
+        @Id
+        private long id;
+
+        @ManyToOne
+        private PurchaseOrder order;
+
+        @ManyToOne
+        private Product product;
+
+        private int quantity;
+
+        public OrderLine() {
+        }
+
+        OrderLine(long id, PurchaseOrder order, Product product, int quantity) {
+            this.id = id;
+            this.order = order;
+            this.product = product;
+            this.quantity = quantity;
+        }
+
+    }
+
+    @Entity
+    public static class Product {
+
+        @Id
+        private long id;
+
+        private String name;
+
+        public Product() {
+        }
+
+        Product(long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+    }
+
+}
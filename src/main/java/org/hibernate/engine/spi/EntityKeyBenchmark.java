@@ -16,18 +16,28 @@ import java.sql.SQLException;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import javax.persistence.Embeddable;
+import javax.persistence.EmbeddedId;
+import javax.persistence.Entity;
 
 import org.hibernate.EntityMode;
 import org.hibernate.HibernateException;
 import org.hibernate.LockMode;
 import org.hibernate.LockOptions;
 import org.hibernate.MappingException;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
 import org.hibernate.bytecode.spi.BytecodeEnhancementMetadata;
 import org.hibernate.cache.spi.access.EntityRegionAccessStrategy;
 import org.hibernate.cache.spi.access.NaturalIdRegionAccessStrategy;
 import org.hibernate.cache.spi.entry.CacheEntry;
 import org.hibernate.cache.spi.entry.CacheEntryStructure;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.H2Dialect;
 import org.hibernate.engine.jdbc.Size;
 import org.hibernate.id.IdentifierGenerator;
 import org.hibernate.internal.FilterAliasGenerator;
@@ -39,31 +49,193 @@ import org.hibernate.persister.walking.spi.EntityIdentifierDefinition;
 import org.hibernate.tuple.entity.EntityMetamodel;
 import org.hibernate.tuple.entity.EntityTuplizer;
 import org.hibernate.type.ForeignKeyDirection;
+import org.hibernate.type.LongType;
+import org.hibernate.type.StringType;
 import org.hibernate.type.Type;
+import org.hibernate.type.UUIDBinaryType;
 import org.hibernate.type.VersionType;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
 import org.openjdk.jmh.annotations.Measurement;
 import org.openjdk.jmh.annotations.Mode;
 import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
 import org.openjdk.jmh.annotations.Warmup;
 
 /**
+ * Measures the constructor and {@code #equals()} of {@link EntityKey} and
+ * the hash code of the identifier, which the constructor computes, for
+ * different identifier types. {@code MOCK} uses a mock type, {@code LONG},
+ * {@code UUID} and {@code STRING} use the corresponding basic types of
+ * Hibernate and {@code COMPONENT} uses the real {@code ComponentType} of
+ * a three column embedded id.
+ *
  * @author Andrej Golovnin
  */
 @BenchmarkMode(Mode.AverageTime)
 @OutputTimeUnit(TimeUnit.NANOSECONDS)
 @Warmup(iterations = 10, time = 3)
 @Measurement(iterations = 10, time = 3)
+@State(Scope.Benchmark)
 public class EntityKeyBenchmark {
 
     private static final Type IDENTIFIER_TYPE = new MockIdentifierType();
-    private static final EntityPersister PERSISTER = new MockEntityPersister();
-    private static final Long IDENTIFIER = 100000L;
+
+    @Param({"MOCK", "LONG", "UUID", "STRING", "COMPONENT"})
+    private String identifierType;
+
+    private SessionFactoryImplementor sessionFactory;
+    private EntityPersister persister;
+    private Serializable identifier;
+    private EntityKey entityKey;
+    private EntityKey equalEntityKey;
+
+    @Setup
+    public void setup() {
+        long id = 100000L;
+        Type type;
+        switch (identifierType) {
+            case "MOCK":
+                type = IDENTIFIER_TYPE;
+                identifier = id;
+                break;
+            case "LONG":
+                type = LongType.INSTANCE;
+                identifier = id;
+                break;
+            case "UUID":
+                type = UUIDBinaryType.INSTANCE;
+                identifier = new UUID(0x5A4E3C2B1A098765L, id);
+                break;
+            case "STRING":
+                type = StringType.INSTANCE;
+                identifier = "ORDER-" + id;
+                break;
+            case "COMPONENT":
+                sessionFactory = buildSessionFactory();
+                type = sessionFactory.getMetamodel()
+                    .entityPersister(OrderLine.class)
+                    .getIdentifierType();
+                identifier = new OrderLineId(id, "ORDER-" + id, 7);
+                break;
+            default:
+                throw new IllegalArgumentException(identifierType);
+        }
+        persister = new MockEntityPersister(type);
+        entityKey = new EntityKey(identifier, persister);
+        // Use a copy of the identifier, so equals() can't take the shortcut
+        // through the reference equality of the identifiers.
+        equalEntityKey = new EntityKey(copy(identifier), persister);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (sessionFactory != null) {
+            sessionFactory.close();
+            sessionFactory = null;
+        }
+    }
 
     @Benchmark
     public EntityKey createEntityKey() {
-        return new EntityKey(IDENTIFIER, PERSISTER);
+        return new EntityKey(identifier, persister);
+    }
+
+    @Benchmark
+    public int identifierHashCode() {
+        return persister.getIdentifierType()
+            .getHashCode(identifier, persister.getFactory());
+    }
+
+    @Benchmark
+    public boolean entityKeyEquals() {
+        return entityKey.equals(equalEntityKey);
+    }
+
+    @Benchmark
+    public boolean createEntityKeyAndEquals() {
+        return new EntityKey(identifier, persister).equals(equalEntityKey);
+    }
+
+    private static Serializable copy(Serializable identifier) {
+        if (identifier instanceof Long) {
+            return new Long((Long) identifier);
+        } else if (identifier instanceof UUID) {
+            UUID uuid = (UUID) identifier;
+            return new UUID(uuid.getMostSignificantBits(),
+                uuid.getLeastSignificantBits());
+        } else if (identifier instanceof String) {
+            return new String((String) identifier);
+        }
+        OrderLineId id = (OrderLineId) identifier;
+        return new OrderLineId(id.orderId, new String(id.orderNumber), id.line);
+    }
+
+    private static SessionFactoryImplementor buildSessionFactory() {
+        StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
+            .applySetting(AvailableSettings.DIALECT, H2Dialect.class.getName())
+            .applySetting("hibernate.temp.use_jdbc_metadata_defaults", "false")
+            .build();
+        try {
+            return (SessionFactoryImplementor) new MetadataSources(registry)
+                .addAnnotatedClass(OrderLine.class)
+                .buildMetadata()
+                .buildSessionFactory();
+        } catch (RuntimeException e) {
+            StandardServiceRegistryBuilder.destroy(registry);
+            throw e;
+        }
+    }
+
+    @Entity
+    public static class OrderLine {
+
+        @EmbeddedId
+        private OrderLineId id;
+
+        private String product;
+
+    }
+
+    @Embeddable
+    public static class OrderLineId implements Serializable {
+
+        private long orderId;
+        private String orderNumber;
+        private int line;
+
+        public OrderLineId() {
+        }
+
+        OrderLineId(long orderId, String orderNumber, int line) {
+            this.orderId = orderId;
+            this.orderNumber = orderNumber;
+            this.line = line;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof OrderLineId)) {
+                return false;
+            }
+            OrderLineId other = (OrderLineId) o;
+            return orderId == other.orderId
+                && line == other.line
+                && orderNumber.equals(other.orderNumber);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(orderId, orderNumber, line);
+        }
+
     }
 
     private static final class MockIdentifierType implements Type {
@@ -131,7 +303,7 @@ public class EntityKeyBenchmark {
         public boolean isEqual(Object x, Object y,
             SessionFactoryImplementor factory) throws HibernateException
         {
-            return false;
+            return x.equals(y);
         }
 
         @Override
@@ -305,7 +477,13 @@ public class EntityKeyBenchmark {
         }
     }
 
-    private static final class MockEntityPersister implements EntityPersister {
+    static final class MockEntityPersister implements EntityPersister {
+
+        private final Type identifierType;
+
+        MockEntityPersister(Type identifierType) {
+            this.identifierType = identifierType;
+        }
 
         @Override
         public void generateEntityDefinition() {
@@ -604,7 +782,7 @@ public class EntityKeyBenchmark {
 
         @Override
         public Type getIdentifierType() {
-            return IDENTIFIER_TYPE;
+            return identifierType;
         }
 
         @Override
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.engine.spi;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.engine.spi.EntityKeyBenchmark.MockEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.type.LongType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the lookup of an entity in a persistence context through
+ * {@code new EntityKey(id, persister)} and {@code HashMap#get()} with a
+ * lookup through {@link LongEntityKeyMap}, which is keyed on the persister
+ * and the primitive {@code long} identifier and does not need to allocate
+ * anything.
+ *
+ * <p>Run it with {@code -prof gc} to see the allocation rate per operation:
+ * <pre>
+ *     java -jar target/microbenchmarks.jar EntityKeyLookupBenchmark -prof gc
+ * </pre>
+ *
+ * @author Andrej Golovnin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10, time = 3)
+@Measurement(iterations = 10, time = 3)
+@State(Scope.Benchmark)
+public class EntityKeyLookupBenchmark {
+
+    /**
+     * The identifiers start outside of the range of the {@code Long} cache,
+     * so every boxing really allocates a new {@code Long}.
+     */
+    private static final long FIRST_ID = 1000000L;
+
+    @Param({"10000"})
+    private int size;
+
+    private EntityPersister persister;
+    private Map<EntityKey, Object> entitiesByKey;
+    private LongEntityKeyMap<Object> entitiesByLongKey;
+    private long[] ids;
+    private int index;
+
+    @Setup
+    public void setup() {
+        persister = new MockEntityPersister(LongType.INSTANCE);
+        entitiesByKey = new HashMap<>();
+        entitiesByLongKey = new LongEntityKeyMap<>();
+        ids = new long[size];
+        for (int i = 0; i < size; i++) {
+            long id = FIRST_ID + i;
+            Object entity = new Object();
+            ids[i] = id;
+            entitiesByKey.put(new EntityKey(id, persister), entity);
+            entitiesByLongKey.put(persister, id, entity);
+        }
+    }
+
+    @Benchmark
+    public Object entityKeyHashMapGet() {
+        return entitiesByKey.get(new EntityKey(nextId(), persister));
+    }
+
+    @Benchmark
+    public Object entityKeyHashMapGetMiss() {
+        return entitiesByKey.get(new EntityKey(-nextId(), persister));
+    }
+
+    @Benchmark
+    public Object longEntityKeyMapGet() {
+        return entitiesByLongKey.get(persister, nextId());
+    }
+
+    @Benchmark
+    public Object longEntityKeyMapGetMiss() {
+        return entitiesByLongKey.get(persister, -nextId());
+    }
+
+    private long nextId() {
+        int i = index;
+        index = i + 1 == ids.length ? 0 : i + 1;
+        return ids[i];
+    }
+
+    /**
+     * Open addressing hash map keyed on (persister, primitive long id). The
+     * persisters are compared by reference, as there is exactly one persister
+     * per entity hierarchy. Lookups don't allocate.
+     */
+    public static final class LongEntityKeyMap<V> {
+
+        private static final int INITIAL_CAPACITY = 16;
+
+        private EntityPersister[] persisters =
+            new EntityPersister[INITIAL_CAPACITY];
+        private long[] ids = new long[INITIAL_CAPACITY];
+        private Object[] values = new Object[INITIAL_CAPACITY];
+        private int size;
+
+        @SuppressWarnings("unchecked")
+        public V get(EntityPersister persister, long id) {
+            int mask = persisters.length - 1;
+            int i = hash(persister, id) & mask;
+            EntityPersister p;
+            while ((p = persisters[i]) != null) {
+                if (p == persister && ids[i] == id) {
+                    return (V) values[i];
+                }
+                i = (i + 1) & mask;
+            }
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        public V put(EntityPersister persister, long id, V value) {
+            if ((size + 1) * 2 > persisters.length) {
+                resize(persisters.length * 2);
+            }
+            int mask = persisters.length - 1;
+            int i = hash(persister, id) & mask;
+            EntityPersister p;
+            while ((p = persisters[i]) != null) {
+                if (p == persister && ids[i] == id) {
+                    V old = (V) values[i];
+                    values[i] = value;
+                    return old;
+                }
+                i = (i + 1) & mask;
+            }
+            persisters[i] = persister;
+            ids[i] = id;
+            values[i] = value;
+            size++;
+            return null;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        private void resize(int capacity) {
+            EntityPersister[] oldPersisters = persisters;
+            long[] oldIds = ids;
+            Object[] oldValues = values;
+            persisters = new EntityPersister[capacity];
+            ids = new long[capacity];
+            values = new Object[capacity];
+            int mask = capacity - 1;
+            for (int j = 0; j < oldPersisters.length; j++) {
+                EntityPersister persister = oldPersisters[j];
+                if (persister != null) {
+                    int i = hash(persister, oldIds[j]) & mask;
+                    while (persisters[i] != null) {
+                        i = (i + 1) & mask;
+                    }
+                    persisters[i] = persister;
+                    ids[i] = oldIds[j];
+                    values[i] = oldValues[j];
+                }
+            }
+        }
+
+        private static int hash(EntityPersister persister, long id) {
+            long h = (id ^ System.identityHashCode(persister))
+                * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+
+    }
+
+}
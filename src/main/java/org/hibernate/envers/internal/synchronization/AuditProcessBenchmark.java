@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.envers.internal.synchronization;
+
+import java.util.concurrent.TimeUnit;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.BootstrapServiceRegistryBuilder;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.envers.Audited;
+import org.hibernate.envers.boot.internal.EnversService;
+import org.hibernate.envers.configuration.EnversSettings;
+import org.hibernate.envers.strategy.BatchedAuditStrategy;
+import org.hibernate.jmh.jdbc.JdbcStatistics;
+import org.hibernate.jmh.jdbc.MockConnectionProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a transaction, which updates {@code entities} detached audited
+ * entities and commits, i.e. the flush of the updates and the
+ * {@link AuditProcess} Envers runs before the completion of the
+ * transaction. The statements are executed against
+ * {@link MockConnectionProvider} with a JDBC batch size of 50.
+ *
+ * <p>{@code audit}:
+ * <ul>
+ *     <li>{@code NONE} - Envers is disabled, the baseline.</li>
+ *     <li>{@code DEFAULT} - {@code DefaultAuditStrategy} saves the audit
+ *     rows in the session.</li>
+ *     <li>{@code BATCHED} - {@link BatchedAuditStrategy} adds the audit rows
+ *     to the JDBC batch directly.</li>
+ * </ul>
+ *
+ * <p>{@code modifiedFlags} enables
+ * {@code org.hibernate.envers.global_with_modified_flag}. The setup prints
+ * the JDBC calls of one transaction. Run it with {@code -prof gc} for the
+ * allocations Envers adds.
+ *
+ * @author Andrej Golovnin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10, time = 3)
+@Measurement(iterations = 10, time = 3)
+@State(Scope.Benchmark)
+public class AuditProcessBenchmark {
+
+    private static final int BATCH_SIZE = 50;
+
+    @Param({"10", "100", "1000"})
+    private int entities;
+
+    @Param({"false", "true"})
+    private boolean modifiedFlags;
+
+    @Param({"NONE", "DEFAULT", "BATCHED"})
+    private String audit;
+
+    private SessionFactory sessionFactory;
+    private JdbcStatistics statistics;
+    private PurchaseOrder[] orders;
+    private int revision;
+
+    @Setup
+    public void setup() {
+        MockConnectionProvider connectionProvider = new MockConnectionProvider();
+        statistics = connectionProvider.getStatistics();
+        BootstrapServiceRegistryBuilder bootstrap =
+            new BootstrapServiceRegistryBuilder();
+        if ("BATCHED".equals(audit)) {
+            bootstrap.applyIntegrator(BatchedAuditStrategy.INTEGRATOR);
+        }
+        StandardServiceRegistryBuilder builder =
+            new StandardServiceRegistryBuilder(bootstrap.build())
+            .applySetting(AvailableSettings.DIALECT, H2Dialect.class.getName())
+            .applySetting("hibernate.temp.use_jdbc_metadata_defaults", "false")
+            .applySetting(AvailableSettings.CONNECTION_PROVIDER, connectionProvider)
+            .applySetting(AvailableSettings.STATEMENT_BATCH_SIZE, BATCH_SIZE)
+            .applySetting(EnversService.INTEGRATION_ENABLED,
+                !"NONE".equals(audit))
+            .applySetting(EnversSettings.GLOBAL_WITH_MODIFIED_FLAG,
+                modifiedFlags);
+        if ("BATCHED".equals(audit)) {
+            builder.applySetting(EnversSettings.AUDIT_STRATEGY,
+                BatchedAuditStrategy.class.getName());
+        }
+        StandardServiceRegistry registry = builder.build();
+        try {
+            sessionFactory = new MetadataSources(registry)
+                .addAnnotatedClass(PurchaseOrder.class)
+                .buildMetadata()
+                .buildSessionFactory();
+        } catch (RuntimeException e) {
+            StandardServiceRegistryBuilder.destroy(registry);
+            throw e;
+        }
+        orders = new PurchaseOrder[entities];
+        for (int i = 0; i < entities; i++) {
+            orders[i] = new PurchaseOrder(i, "Customer " + i % 100, i * 10L);
+        }
+
+        statistics.reset();
+        updateOrders();
+        System.out.println();
+        System.out.println("JDBC calls of one transaction: " + statistics);
+    }
+
+    @TearDown
+    public void tearDown() {
+        sessionFactory.close();
+    }
+
+    @Benchmark
+    public PurchaseOrder[] updateOrders() {
+        String status = "STATUS-" + revision++ % 4;
+        try (Session session = sessionFactory.openSession()) {
+            session.beginTransaction();
+            for (PurchaseOrder order : orders) {
+                order.status = status;
+                session.update(order);
+            }
+            session.getTransaction().commit();
+        }
+        return orders;
+    }
+
+    @Entity
+    @Audited
+    public static class PurchaseOrder {
+
+        @Id
+        private long id;
+
+        private String customer;
+
+        private String status;
+
+        private long amount;
+
+        public PurchaseOrder() {
+        }
+
+        PurchaseOrder(long id, String customer, long amount) {
+            this.id = id;
+            this.customer = customer;
+            this.amount = amount;
+        }
+
+    }
+
+}
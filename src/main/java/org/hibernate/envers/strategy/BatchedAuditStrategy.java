@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.envers.strategy;
+
+import java.io.Serializable;
+import java.util.Collections;
+
+import org.hibernate.Session;
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.envers.boot.internal.EnversService;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.FlushEventListener;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+
+/**
+ * Prototype of an {@link AuditStrategy}, which writes the audit rows of
+ * entities through the JDBC batch of their audit table instead of saving
+ * them in the session.
+ *
+ * <p>{@link DefaultAuditStrategy} saves every audit row with
+ * {@code Session#save()}: the row gets an entity entry, a snapshot and an
+ * insert action, is dirty checked by every later flush of the session and
+ * is evicted again after the transaction. This strategy dehydrates the row
+ * and passes it to {@code EntityPersister#insert()} directly, so the rows of
+ * an audit table are added to one JDBC batch of
+ * {@code hibernate.jdbc.batch_size} rows. {@code AuditProcess} already
+ * merges the work units of an entity into one row per revision.
+ *
+ * <p>The revision entity saved before the first row is flushed first. The
+ * last batch is executed by the flush {@code AuditProcess} ends with, for
+ * that install {@link #INTEGRATOR} together with the strategy.
+ *
+ * <p>The collection change rows are still saved by
+ * {@link DefaultAuditStrategy}.
+ *
+ * @author Andrej Golovnin
+ */
+public class BatchedAuditStrategy extends DefaultAuditStrategy {
+
+    /**
+     * Executes the pending JDBC batch at the end of every flush.
+     */
+    public static final Integrator INTEGRATOR = new BatchIntegrator();
+
+    @Override
+    public void perform(Session session, String entityName,
+        EnversService enversService, Serializable id, Object data,
+        Object revision)
+    {
+        SessionImplementor source = (SessionImplementor) session;
+        if (source.getActionQueue().hasAnyQueuedActions()) {
+            // The revision entity must be inserted before the audit rows
+            // referencing it.
+            session.flush();
+        }
+        String auditEntityName = enversService.getAuditEntitiesConfiguration()
+            .getAuditEntityName(entityName);
+        EntityPersister persister = source.getFactory().getMetamodel()
+            .entityPersister(auditEntityName);
+        Serializable auditId = persister.getIdentifier(data, source);
+        Object[] state = persister.getPropertyValuesToInsert(data,
+            Collections.emptyMap(), source);
+        persister.insert(auditId, state, data, source);
+    }
+
+    private static final class BatchIntegrator implements Integrator {
+
+        private static final FlushEventListener EXECUTE_BATCH =
+            event -> event.getSession().getJdbcCoordinator().executeBatch();
+
+        @Override
+        public void integrate(Metadata metadata,
+            SessionFactoryImplementor sessionFactory,
+            SessionFactoryServiceRegistry serviceRegistry)
+        {
+            serviceRegistry.getService(EventListenerRegistry.class)
+                .appendListeners(EventType.FLUSH, EXECUTE_BATCH);
+        }
+
+        @Override
+        public void disintegrate(SessionFactoryImplementor sessionFactory,
+            SessionFactoryServiceRegistry serviceRegistry)
+        {
+        }
+
+    }
+
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.event.internal;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.BootstrapServiceRegistryBuilder;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.engine.spi.SelfDirtinessTracker;
+import org.hibernate.jmh.jdbc.MockConnectionProvider;
+import org.hibernate.jmh.jdbc.MockDatabase;
+import org.hibernate.jmh.jdbc.MockQuery;
+import org.hibernate.jmh.jdbc.MockResultProvider;
+import org.hibernate.jmh.model.WideModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the flush of a session with {@code entities} loaded entities of
+ * a {@link WideModel}, whose dirty state is found by comparing the property
+ * values with the snapshots of the loaded state, with the flush of the same
+ * entities enhanced for dirty tracking, which the flush asks for their dirty
+ * properties through {@link SelfDirtinessTracker}.
+ *
+ * <ul>
+ *     <li>{@code flush} - no entity is modified.</li>
+ *     <li>{@code modifyAndFlush} - one property of every
+ *     {@value #MODIFIED_EVERY}th entity is modified before the flush.</li>
+ * </ul>
+ *
+ * <p>The setup prints the heap retained by the session per loaded entity.
+ * Hibernate 5.2 keeps the loaded state of enhanced entities too, so the
+ * difference is the one of the enhanced fields and of the entity entries.
+ *
+ * @author Andrej Golovnin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10, time = 3)
+@Measurement(iterations = 10, time = 3)
+@State(Scope.Benchmark)
+public class DirtyTrackingFlushBenchmark {
+
+    private static final int ENTITY_CLASSES = 4;
+    private static final int PROPERTIES = 30;
+    private static final int MODIFIED_EVERY = 100;
+
+    @Param({"10000", "100000"})
+    private int entities;
+
+    @Param({"snapshot", "enhanced"})
+    private String dirtyChecking;
+
+    private WideModel model;
+    private StandardServiceRegistry registry;
+    private SessionFactory sessionFactory;
+    private Session session;
+    private Object[] loaded;
+    private Method[] setters;
+    private int round;
+
+    @Setup
+    public void setup() throws Exception {
+        boolean enhanced = "enhanced".equals(dirtyChecking);
+        model = WideModel.compile(ENTITY_CLASSES, PROPERTIES, enhanced);
+        registry = new StandardServiceRegistryBuilder(
+                new BootstrapServiceRegistryBuilder()
+                    .applyClassLoader(model.getClassLoader())
+                    .build())
+            .applySetting(AvailableSettings.DIALECT, H2Dialect.class.getName())
+            .applySetting("hibernate.temp.use_jdbc_metadata_defaults", "false")
+            .applySetting(AvailableSettings.CONNECTION_PROVIDER,
+                new MockConnectionProvider(new MockDatabase()
+                    .addResultProvider(
+                        new WideRows(entities / ENTITY_CLASSES))))
+            .build();
+        try {
+            MetadataSources sources = new MetadataSources(registry);
+            for (Class<?> entityClass : model.getEntityClasses()) {
+                sources.addAnnotatedClass(entityClass);
+            }
+            sessionFactory = sources.buildMetadata().buildSessionFactory();
+        } catch (RuntimeException e) {
+            StandardServiceRegistryBuilder.destroy(registry);
+            throw e;
+        }
+        session = sessionFactory.openSession();
+        session.beginTransaction();
+
+        List<Object> entityList = new ArrayList<>(entities);
+        List<Method> setterList = new ArrayList<>(entities);
+        long before = usedHeap();
+        for (Class<?> entityClass : model.getEntityClasses()) {
+            Method setter = entityClass.getMethod(
+                "setP00", WideModel.propertyType(0));
+            for (Object entity : session.createQuery(
+                "from " + entityClass.getSimpleName()).list())
+            {
+                if (entity instanceof SelfDirtinessTracker != enhanced) {
+                    throw new IllegalStateException("The entity "
+                        + entity.getClass() + " is not " + dirtyChecking);
+                }
+                entityList.add(entity);
+                setterList.add(setter);
+            }
+        }
+        long retained = usedHeap() - before;
+        loaded = entityList.toArray();
+        setters = setterList.toArray(new Method[setterList.size()]);
+        System.out.println();
+        System.out.println("Retained heap per entity (" + dirtyChecking
+            + "): " + retained / loaded.length + " bytes");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        session.getTransaction().rollback();
+        session.close();
+        sessionFactory.close();
+        StandardServiceRegistryBuilder.destroy(registry);
+        model.close();
+    }
+
+    @Benchmark
+    public void flush() {
+        session.flush();
+    }
+
+    @Benchmark
+    public void modifyAndFlush() throws ReflectiveOperationException {
+        String value = "Modified " + round++;
+        for (int i = 0; i < loaded.length; i += MODIFIED_EVERY) {
+            setters[i].invoke(loaded[i], value);
+        }
+        session.flush();
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage()
+            .getUsed();
+    }
+
+    /**
+     * Serves {@code rows} rows for the query of every table of the model.
+     */
+    private static final class WideRows implements MockResultProvider {
+
+        private final int rows;
+        private final Map<String, Object> values = new HashMap<>();
+
+        WideRows(int rows) {
+            this.rows = rows;
+            for (int i = 0; i < PROPERTIES; i++) {
+                values.put(WideModel.propertyName(i),
+                    value(WideModel.propertyType(i), i));
+            }
+        }
+
+        @Override
+        public List<Object[]> getRows(MockQuery query) {
+            if (!query.getSql().contains(" from wideentity")) {
+                return null;
+            }
+            List<Object[]> result = new ArrayList<>(rows);
+            Map<String, Object> row = new HashMap<>(values);
+            for (long id = 1; id <= rows; id++) {
+                row.put("id", id);
+                row.put(WideModel.propertyName(0), "Value " + id);
+                result.add(query.row(row));
+            }
+            return result;
+        }
+
+        private static Object value(Class<?> type, int index) {
+            if (type == String.class) {
+                return "Value " + index;
+            } else if (type == long.class) {
+                return 1000L + index;
+            } else if (type == BigDecimal.class) {
+                return new BigDecimal(index).movePointLeft(2);
+            } else if (type == int.class) {
+                return index;
+            } else if (type == boolean.class) {
+                return index % 2 == 0;
+            }
+            return new Timestamp(1451606400000L + index);
+        }
+
+    }
+
+}
@@ -0,0 +1,466 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.hql.internal.ast;
+
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.hibernate.LockMode;
+import org.hibernate.engine.spi.QueryParameters;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.hql.internal.ast.tree.FromElement;
+import org.hibernate.hql.internal.ast.tree.SelectClause;
+import org.hibernate.hql.spi.ParameterTranslations;
+import org.hibernate.loader.DefaultEntityAliases;
+import org.hibernate.loader.custom.CustomLoader;
+import org.hibernate.loader.custom.CustomQuery;
+import org.hibernate.loader.custom.Return;
+import org.hibernate.loader.custom.RootReturn;
+import org.hibernate.loader.custom.ScalarReturn;
+import org.hibernate.loader.hql.QueryLoader;
+import org.hibernate.param.DynamicFilterParameterSpecification;
+import org.hibernate.param.NamedParameterSpecification;
+import org.hibernate.param.ParameterSpecification;
+import org.hibernate.param.PositionalParameterSpecification;
+import org.hibernate.persister.entity.Loadable;
+import org.hibernate.type.Type;
+
+/**
+ * Serializable result of the translation of a HQL select query by
+ * {@link QueryTranslatorImpl}: the SQL, the parameters in the order of their
+ * JDBC bind positions, the parameter metadata and the returns of the query.
+ * It is all a {@link PrecompiledQueryTranslator} needs to create an
+ * {@code HQLQueryPlan} and to execute the query with a {@link CustomLoader}
+ * instead of the {@link QueryLoader}, which needs the AST of the query.
+ *
+ * <p>Only queries, which return entities without fetches or single column
+ * scalars, can be precompiled. {@link #of(QueryTranslatorImpl, Map,
+ * SessionFactoryImplementor)} returns {@code null} for all other queries:
+ * fetch joins, {@code select new}, DML and parameters other than named,
+ * positional and filter parameters.
+ *
+ * <p>The types are serialized with the query. An {@code EntityType} holds
+ * the session factory, which is resolved through the
+ * {@code SessionFactoryRegistry} on deserialization: by its UUID in the same
+ * JVM and by its name ({@code hibernate.session_factory_name}) in another
+ * one.
+ *
+ * @author Andrej Golovnin
+ */
+public final class PrecompiledQuery implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Field FILTER_NAME =
+        filterSpecificationField("filterName");
+    private static final Field FILTER_PARAMETER_NAME =
+        filterSpecificationField("parameterName");
+
+    private final String sql;
+    private final Set<Serializable> querySpaces;
+    private final Map<?, ?> substitutions;
+    private final Type[] returnTypes;
+    private final String[] returnAliases;
+    private final String[][] columnNames;
+    private final Parameters parameters;
+    private final Binding[] bindings;
+    private final String[] entityNames;
+    private final String[] entityAliases;
+    private final String[] entitySuffixes;
+
+    private PrecompiledQuery(QueryTranslatorImpl translator, Map<?, ?>
+        substitutions, Binding[] bindings, String[] entityNames,
+        String[] entityAliases, String[] entitySuffixes)
+    {
+        this.sql = translator.getSQLString();
+        this.querySpaces = translator.getQuerySpaces();
+        this.substitutions = substitutions;
+        this.returnTypes = translator.getReturnTypes();
+        this.returnAliases = translator.getReturnAliases();
+        this.columnNames = translator.getColumnNames();
+        this.parameters = new Parameters(translator.getParameterTranslations());
+        this.bindings = bindings;
+        this.entityNames = entityNames;
+        this.entityAliases = entityAliases;
+        this.entitySuffixes = entitySuffixes;
+    }
+
+    /**
+     * @param translator the compiled translator of a query
+     * @param substitutions the query substitutions used for the compilation
+     * @return the precompiled query or {@code null}, when the query cannot
+     *         be executed without its AST
+     */
+    public static PrecompiledQuery of(QueryTranslatorImpl translator,
+        Map<?, ?> substitutions, SessionFactoryImplementor factory)
+    {
+        if (translator.isManipulationStatement()
+            || translator.isShallowQuery()
+            || translator.containsCollectionFetches()
+            || translator.getEntityGraphQueryHint() != null)
+        {
+            return null;
+        }
+        Binding[] bindings = bindings(
+            translator.getCollectedParameterSpecifications());
+        if (bindings == null) {
+            return null;
+        }
+        SelectClause select = translator.getSqlAST().getWalker()
+            .getSelectClause();
+        if (select.getAggregatedSelectExpression() != null
+            || !(select.getCollectionFromElements() == null
+                || select.getCollectionFromElements().isEmpty()))
+        {
+            return null;
+        }
+        Type[] types = translator.getReturnTypes();
+        if (select.isScalarSelect()) {
+            String[][] columns = translator.getColumnNames();
+            for (int i = 0; i < types.length; i++) {
+                if (types[i].isEntityType() || columns[i].length != 1) {
+                    return null;
+                }
+            }
+            return new PrecompiledQuery(translator, substitutions, bindings,
+                null, null, null);
+        }
+        List<?> elements = select.getFromElementsForLoad();
+        if (elements.size() != types.length) {
+            return null;
+        }
+        String[] aliases = new String[elements.size()];
+        for (int i = 0; i < aliases.length; i++) {
+            FromElement element = (FromElement) elements.get(i);
+            if (element.isFetch() || element.isAllPropertyFetch()
+                || element.getQueryableCollection() != null)
+            {
+                return null;
+            }
+            aliases[i] = element.getClassAlias() == null
+                ? "generatedAlias" + i
+                : element.getClassAlias();
+        }
+        QueryLoader loader = new QueryLoader(translator, factory, select);
+        Loadable[] persisters = loader.getEntityPersisters();
+        String[] names = new String[persisters.length];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = persisters[i].getEntityName();
+        }
+        return new PrecompiledQuery(translator, substitutions, bindings,
+            names, aliases, loader.getSuffixes().clone());
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public Set<Serializable> getQuerySpaces() {
+        return querySpaces;
+    }
+
+    /**
+     * @return {@code true}, when the query was compiled with the same query
+     *         substitutions
+     */
+    public boolean isCompiledWith(Map<?, ?> substitutions) {
+        return Objects.equals(this.substitutions, substitutions);
+    }
+
+    public Type[] getReturnTypes() {
+        return returnTypes;
+    }
+
+    public String[] getReturnAliases() {
+        return returnAliases;
+    }
+
+    public String[][] getColumnNames() {
+        return columnNames;
+    }
+
+    public ParameterTranslations getParameterTranslations() {
+        return parameters;
+    }
+
+    /**
+     * Creates the loader of the query. It binds the parameters like
+     * {@link QueryLoader}, every other work is done by
+     * {@link CustomLoader}.
+     */
+    public CustomLoader createLoader(SessionFactoryImplementor factory) {
+        List<Return> returns = new ArrayList<>(returnTypes.length);
+        if (entityNames != null) {
+            for (int i = 0; i < entityNames.length; i++) {
+                Loadable persister = (Loadable) factory.getMetamodel()
+                    .entityPersister(entityNames[i]);
+                returns.add(new RootReturn(entityAliases[i], entityNames[i],
+                    new DefaultEntityAliases(persister, entitySuffixes[i]),
+                    LockMode.NONE));
+            }
+        } else {
+            for (int i = 0; i < returnTypes.length; i++) {
+                returns.add(new ScalarReturn(returnTypes[i],
+                    columnNames[i][0]));
+            }
+        }
+        List<ParameterSpecification> specifications =
+            new ArrayList<>(bindings.length);
+        for (Binding binding : bindings) {
+            specifications.add(binding.toSpecification());
+        }
+        return new Loader(new Query(returns), factory, specifications);
+    }
+
+    private static Binding[] bindings(
+        List<ParameterSpecification> specifications)
+    {
+        Binding[] bindings = new Binding[specifications.size()];
+        for (int i = 0; i < bindings.length; i++) {
+            ParameterSpecification specification = specifications.get(i);
+            Type type = specification.getExpectedType();
+            if (specification instanceof NamedParameterSpecification) {
+                bindings[i] = new Binding(null,
+                    ((NamedParameterSpecification) specification).getName(),
+                    -1, type);
+            } else if (specification
+                instanceof PositionalParameterSpecification)
+            {
+                bindings[i] = new Binding(null, null,
+                    ((PositionalParameterSpecification) specification)
+                        .getHqlPosition(),
+                    type);
+            } else if (specification
+                instanceof DynamicFilterParameterSpecification)
+            {
+                bindings[i] = new Binding(
+                    fieldValue(FILTER_NAME, specification),
+                    fieldValue(FILTER_PARAMETER_NAME, specification),
+                    -1, type);
+            } else {
+                return null;
+            }
+        }
+        return bindings;
+    }
+
+    /**
+     * {@code DynamicFilterParameterSpecification} has no getters for the
+     * names of the filter and of its parameter.
+     */
+    private static Field filterSpecificationField(String name) {
+        try {
+            Field field = DynamicFilterParameterSpecification.class
+                .getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String fieldValue(Field field, Object target) {
+        try {
+            return (String) field.get(target);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * A parameter at a bind position: a filter parameter, when
+     * {@code filterName} is set, otherwise a named or a positional
+     * parameter.
+     */
+    private static final class Binding implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String filterName;
+        private final String name;
+        private final int position;
+        private final Type type;
+
+        Binding(String filterName, String name, int position, Type type) {
+            this.filterName = filterName;
+            this.name = name;
+            this.position = position;
+            this.type = type;
+        }
+
+        ParameterSpecification toSpecification() {
+            if (filterName != null) {
+                return new DynamicFilterParameterSpecification(filterName,
+                    name, type);
+            }
+            ParameterSpecification specification = name != null
+                ? new NamedParameterSpecification(0, 0, name)
+                : new PositionalParameterSpecification(0, 0, position);
+            specification.setExpectedType(type);
+            return specification;
+        }
+
+    }
+
+    /**
+     * Copy of the {@link ParameterTranslations} of the translator.
+     */
+    private static final class Parameters
+        implements ParameterTranslations, Serializable
+    {
+
+        private static final long serialVersionUID = 1L;
+
+        private final boolean supportsOrdinalParameterMetadata;
+        private final int[] ordinalLocations;
+        private final Type[] ordinalTypes;
+        private final Map<String, int[]> namedLocations = new HashMap<>();
+        private final Map<String, Type> namedTypes = new HashMap<>();
+
+        Parameters(ParameterTranslations translations) {
+            supportsOrdinalParameterMetadata =
+                translations.supportsOrdinalParameterMetadata();
+            int count = translations.getOrdinalParameterCount();
+            ordinalLocations = new int[count];
+            ordinalTypes = new Type[count];
+            for (int i = 0; i < count; i++) {
+                ordinalLocations[i] =
+                    translations.getOrdinalParameterSqlLocation(i);
+                ordinalTypes[i] =
+                    translations.getOrdinalParameterExpectedType(i);
+            }
+            for (Object name : translations.getNamedParameterNames()) {
+                namedLocations.put((String) name,
+                    translations.getNamedParameterSqlLocations((String) name));
+                namedTypes.put((String) name,
+                    translations.getNamedParameterExpectedType((String) name));
+            }
+        }
+
+        @Override
+        public boolean supportsOrdinalParameterMetadata() {
+            return supportsOrdinalParameterMetadata;
+        }
+
+        @Override
+        public int getOrdinalParameterCount() {
+            return ordinalLocations.length;
+        }
+
+        @Override
+        public int getOrdinalParameterSqlLocation(int ordinalPosition) {
+            return ordinalLocations[ordinalPosition];
+        }
+
+        @Override
+        public Type getOrdinalParameterExpectedType(int ordinalPosition) {
+            return ordinalTypes[ordinalPosition];
+        }
+
+        @Override
+        public Set getNamedParameterNames() {
+            return namedLocations.keySet();
+        }
+
+        @Override
+        public int[] getNamedParameterSqlLocations(String name) {
+            return namedLocations.get(name);
+        }
+
+        @Override
+        public Type getNamedParameterExpectedType(String name) {
+            return namedTypes.get(name);
+        }
+
+    }
+
+    private final class Query implements CustomQuery {
+
+        private final List<Return> returns;
+
+        Query(List<Return> returns) {
+            this.returns = returns;
+        }
+
+        @Override
+        public String getSQL() {
+            return sql;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Set<String> getQuerySpaces() {
+            return (Set<String>) (Set<?>) querySpaces;
+        }
+
+        @Override
+        public Map getNamedParameterBindPoints() {
+            Map<String, List<Integer>> bindPoints = new HashMap<>();
+            for (Map.Entry<String, int[]> e
+                : parameters.namedLocations.entrySet())
+            {
+                List<Integer> locations = new ArrayList<>();
+                for (int location : e.getValue()) {
+                    locations.add(location);
+                }
+                bindPoints.put(e.getKey(), locations);
+            }
+            return bindPoints;
+        }
+
+        @Override
+        public List<Return> getCustomQueryReturns() {
+            return returns;
+        }
+
+    }
+
+    /**
+     * {@link CustomLoader}, which binds the parameters in the order of the
+     * collected parameter specifications, like {@link QueryLoader}. The SQL
+     * of a HQL query contains the filter parameters already as JDBC
+     * parameters.
+     */
+    private static final class Loader extends CustomLoader {
+
+        private final List<ParameterSpecification> specifications;
+
+        Loader(CustomQuery query, SessionFactoryImplementor factory,
+            List<ParameterSpecification> specifications)
+        {
+            super(query, factory);
+            this.specifications = specifications;
+        }
+
+        @Override
+        protected int bindParameterValues(PreparedStatement statement,
+            QueryParameters queryParameters, int startIndex,
+            SharedSessionContractImplementor session) throws SQLException
+        {
+            int position = startIndex;
+            for (ParameterSpecification specification : specifications) {
+                position += specification.bind(statement, queryParameters,
+                    session, position);
+            }
+            return position - startIndex;
+        }
+
+    }
+
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.hql.internal.ast;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hibernate.HibernateException;
+import org.hibernate.engine.spi.QueryParameters;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.hql.spi.ParameterTranslations;
+import org.hibernate.hql.spi.QueryTranslator;
+import org.hibernate.hql.spi.QueryTranslatorFactory;
+import org.hibernate.loader.custom.CustomLoader;
+import org.hibernate.query.spi.ScrollableResultsImplementor;
+import org.hibernate.type.Type;
+
+/**
+ * {@link QueryTranslator} of a {@link PrecompiledQuery}. {@link #compile}
+ * does not parse the query, it creates the loader of the precompiled query.
+ *
+ * <p>A shallow query, used by {@code Query#iterate()}, or a query compiled
+ * with other query substitutions is translated by the delegate.
+ *
+ * @author Andrej Golovnin
+ */
+public class PrecompiledQueryTranslator implements QueryTranslator {
+
+    private final String queryIdentifier;
+    private final String queryString;
+    private final Map enabledFilters;
+    private final SessionFactoryImplementor factory;
+    private final PrecompiledQuery query;
+    private final QueryTranslatorFactory delegateFactory;
+
+    private CustomLoader loader;
+    private QueryTranslator delegate;
+
+    public PrecompiledQueryTranslator(String queryIdentifier,
+        String queryString, Map enabledFilters,
+        SessionFactoryImplementor factory, PrecompiledQuery query,
+        QueryTranslatorFactory delegateFactory)
+    {
+        this.queryIdentifier = queryIdentifier;
+        this.queryString = queryString;
+        this.enabledFilters = enabledFilters;
+        this.factory = factory;
+        this.query = query;
+        this.delegateFactory = delegateFactory;
+    }
+
+    @Override
+    public void compile(Map replacements, boolean shallow) {
+        if (loader != null || delegate != null) {
+            return;
+        }
+        if (shallow || !query.isCompiledWith(replacements)) {
+            delegate = delegateFactory.createQueryTranslator(queryIdentifier,
+                queryString, enabledFilters, factory, null);
+            delegate.compile(replacements, shallow);
+        } else {
+            loader = query.createLoader(factory);
+        }
+    }
+
+    @Override
+    public List list(SharedSessionContractImplementor session,
+        QueryParameters queryParameters) throws HibernateException
+    {
+        if (delegate != null) {
+            return delegate.list(session, queryParameters);
+        }
+        return loader.list(session, queryParameters);
+    }
+
+    @Override
+    public Iterator iterate(QueryParameters queryParameters,
+        EventSource session) throws HibernateException
+    {
+        if (delegate != null) {
+            return delegate.iterate(queryParameters, session);
+        }
+        throw new UnsupportedOperationException(
+            "iterate() needs a shallow query: " + queryString);
+    }
+
+    @Override
+    public ScrollableResultsImplementor scroll(
+        QueryParameters queryParameters,
+        SharedSessionContractImplementor session) throws HibernateException
+    {
+        if (delegate != null) {
+            return delegate.scroll(queryParameters, session);
+        }
+        return loader.scroll(queryParameters, session);
+    }
+
+    @Override
+    public int executeUpdate(QueryParameters queryParameters,
+        SharedSessionContractImplementor session) throws HibernateException
+    {
+        if (delegate != null) {
+            return delegate.executeUpdate(queryParameters, session);
+        }
+        throw new UnsupportedOperationException(
+            "Not a DML statement: " + queryString);
+    }
+
+    @Override
+    public Set<Serializable> getQuerySpaces() {
+        return delegate != null
+            ? delegate.getQuerySpaces()
+            : query.getQuerySpaces();
+    }
+
+    @Override
+    public String getQueryIdentifier() {
+        return queryIdentifier;
+    }
+
+    @Override
+    public String getSQLString() {
+        return delegate != null ? delegate.getSQLString() : query.getSql();
+    }
+
+    @Override
+    public List<String> collectSqlStrings() {
+        return delegate != null
+            ? delegate.collectSqlStrings()
+            : Collections.singletonList(query.getSql());
+    }
+
+    @Override
+    public String getQueryString() {
+        return queryString;
+    }
+
+    @Override
+    public Map getEnabledFilters() {
+        return enabledFilters;
+    }
+
+    @Override
+    public Type[] getReturnTypes() {
+        return delegate != null
+            ? delegate.getReturnTypes()
+            : query.getReturnTypes();
+    }
+
+    @Override
+    public String[] getReturnAliases() {
+        return delegate != null
+            ? delegate.getReturnAliases()
+            : query.getReturnAliases();
+    }
+
+    @Override
+    public String[][] getColumnNames() {
+        return delegate != null
+            ? delegate.getColumnNames()
+            : query.getColumnNames();
+    }
+
+    @Override
+    public ParameterTranslations getParameterTranslations() {
+        return delegate != null
+            ? delegate.getParameterTranslations()
+            : query.getParameterTranslations();
+    }
+
+    @Override
+    public void validateScrollability() throws HibernateException {
+        if (delegate != null) {
+            delegate.validateScrollability();
+        }
+    }
+
+    @Override
+    public boolean containsCollectionFetches() {
+        return delegate != null && delegate.containsCollectionFetches();
+    }
+
+    @Override
+    public boolean isManipulationStatement() {
+        return delegate != null && delegate.isManipulationStatement();
+    }
+
+    @Override
+    public Class getDynamicInstantiationResultType() {
+        return delegate != null
+            ? delegate.getDynamicInstantiationResultType()
+            : null;
+    }
+
+}
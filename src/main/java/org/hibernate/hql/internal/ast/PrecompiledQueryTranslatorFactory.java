@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.hql.internal.ast;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.hibernate.HibernateException;
+import org.hibernate.engine.query.spi.EntityGraphQueryHint;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.hql.internal.QuerySplitter;
+import org.hibernate.hql.spi.FilterTranslator;
+import org.hibernate.hql.spi.QueryTranslator;
+import org.hibernate.hql.spi.QueryTranslatorFactory;
+import org.hibernate.internal.FilterImpl;
+
+/**
+ * Prototype of a {@link QueryTranslatorFactory}, which loads precompiled
+ * queries at startup instead of parsing them on the first use.
+ *
+ * <p>{@link #precompile(SessionFactoryImplementor, Collection, Collection,
+ * OutputStream)} translates the queries of an application, e.g. at build
+ * time, and writes the {@link PrecompiledQuery}s of them.
+ * {@link #load(InputStream)} reads them at startup. A query with
+ * a precompiled translation for the enabled filters of the session gets
+ * a {@link PrecompiledQueryTranslator}, all other queries are translated by
+ * {@link ASTQueryTranslatorFactory}. So are the queries of a session with
+ * a filter parameter bound to a list of values, because the SQL contains
+ * a placeholder per value, while a precompiled query has only one.
+ *
+ * <p>Install it with {@code hibernate.query.factory_class} and get it from
+ * the service registry of the session factory to load the queries.
+ *
+ * @author Andrej Golovnin
+ */
+public class PrecompiledQueryTranslatorFactory
+    implements QueryTranslatorFactory
+{
+
+    private final QueryTranslatorFactory delegate =
+        ASTQueryTranslatorFactory.INSTANCE;
+
+    private volatile Map<QueryKey, PrecompiledQuery> queries =
+        Collections.emptyMap();
+
+    /**
+     * Translates the queries for every combination of enabled filters and
+     * writes the precompiled queries to the stream. Queries, which cannot
+     * be precompiled, are skipped.
+     *
+     * @param filterCombinations the names of the filters enabled together
+     * @return the number of precompiled queries
+     */
+    public static int precompile(SessionFactoryImplementor factory,
+        Collection<String> queries, Collection<Set<String>> filterCombinations,
+        OutputStream out) throws IOException
+    {
+        Map<?, ?> substitutions = factory.getSessionFactoryOptions()
+            .getQuerySubstitutions();
+        Map<QueryKey, PrecompiledQuery> precompiled = new HashMap<>();
+        for (Set<String> filterNames : filterCombinations) {
+            Map<String, FilterImpl> filters = new HashMap<>();
+            for (String name : filterNames) {
+                filters.put(name,
+                    new FilterImpl(factory.getFilterDefinition(name)));
+            }
+            for (String query : queries) {
+                for (String concreteQuery
+                    : QuerySplitter.concreteQueries(query, factory))
+                {
+                    QueryTranslatorImpl translator = new QueryTranslatorImpl(
+                        query, concreteQuery, filters, factory);
+                    translator.compile(substitutions, false);
+                    PrecompiledQuery precompiledQuery = PrecompiledQuery.of(
+                        translator, substitutions, factory);
+                    if (precompiledQuery != null) {
+                        precompiled.put(
+                            new QueryKey(concreteQuery, filterNames),
+                            precompiledQuery);
+                    }
+                }
+            }
+        }
+        ObjectOutputStream oos = new ObjectOutputStream(out);
+        oos.writeObject(precompiled);
+        oos.flush();
+        return precompiled.size();
+    }
+
+    /**
+     * Replaces the precompiled queries with the ones from the stream.
+     *
+     * @return the number of loaded queries
+     */
+    @SuppressWarnings("unchecked")
+    public int load(InputStream in) throws IOException {
+        try {
+            Map<QueryKey, PrecompiledQuery> loaded =
+                (Map<QueryKey, PrecompiledQuery>)
+                    new ObjectInputStream(in).readObject();
+            queries = loaded;
+            return loaded.size();
+        } catch (ClassNotFoundException e) {
+            throw new HibernateException(
+                "Could not load the precompiled queries", e);
+        }
+    }
+
+    public int size() {
+        return queries.size();
+    }
+
+    @Override
+    public QueryTranslator createQueryTranslator(String queryIdentifier,
+        String queryString, Map filters, SessionFactoryImplementor factory,
+        EntityGraphQueryHint entityGraphQueryHint)
+    {
+        PrecompiledQuery query = entityGraphQueryHint == null
+            && !hasParameterList(filters)
+            ? queries.get(new QueryKey(queryString, filters.keySet()))
+            : null;
+        if (query == null) {
+            return delegate.createQueryTranslator(queryIdentifier,
+                queryString, filters, factory, entityGraphQueryHint);
+        }
+        return new PrecompiledQueryTranslator(queryIdentifier, queryString,
+            filters, factory, query, delegate);
+    }
+
+    @Override
+    public FilterTranslator createFilterTranslator(String queryIdentifier,
+        String queryString, Map filters, SessionFactoryImplementor factory)
+    {
+        return delegate.createFilterTranslator(queryIdentifier, queryString,
+            filters, factory);
+    }
+
+    private static boolean hasParameterList(Map<?, ?> filters) {
+        for (Object filter : filters.values()) {
+            for (Object value
+                : ((FilterImpl) filter).getParameters().values())
+            {
+                if (value instanceof Collection) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Key of a precompiled query: the concrete query and the names of the
+     * enabled filters. The SQL of a query contains only the conditions of
+     * the enabled filters, their parameters are bound at execution.
+     */
+    static final class QueryKey implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String query;
+        private final Set<?> filterNames;
+
+        QueryKey(String query, Set<?> filterNames) {
+            this.query = query;
+            this.filterNames = filterNames;
+        }
+
+        private Object writeReplace() {
+            // The lookup keys reference the key set of the enabled filters.
+            return new QueryKey(query, new HashSet<>(filterNames));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * query.hashCode() + filterNames.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof QueryKey)) {
+                return false;
+            }
+            QueryKey other = (QueryKey) o;
+            return query.equals(other.query)
+                && filterNames.equals(other.filterNames);
+        }
+
+    }
+
+}
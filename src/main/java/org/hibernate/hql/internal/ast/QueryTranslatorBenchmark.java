@@ -0,0 +1,372 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.hql.internal.ast;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+import javax.persistence.OneToMany;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+import org.hibernate.Filter;
+import org.hibernate.Session;
+import org.hibernate.annotations.FilterDef;
+import org.hibernate.annotations.FilterDefs;
+import org.hibernate.annotations.Filters;
+import org.hibernate.annotations.ParamDef;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.engine.query.spi.HQLQueryPlan;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.hql.spi.QueryTranslator;
+import org.hibernate.hql.spi.QueryTranslatorFactory;
+import org.hibernate.jmh.jdbc.MockConnectionProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the translation of HQL queries on a miss of the query plan
+ * cache. The corpus contains queries with joins, subqueries, aggregations,
+ * named parameters and a fetch join, a {@code select new} and an update.
+ * The {@code tenant} filter is enabled. The setup checks the SQL of the
+ * precompiled queries with the {@code region} filter enabled too, whose
+ * parameter is a list.
+ *
+ * <ul>
+ *     <li>{@code translate} - compiles the queries with
+ *     {@link ASTQueryTranslatorFactory}: parsing, semantic analysis and SQL
+ *     generation.</li>
+ *     <li>{@code hqlQueryPlan} - creates the {@link HQLQueryPlan}s of the
+ *     queries, as {@code QueryPlanCache} does on a miss.</li>
+ *     <li>{@code precompiledHqlQueryPlan} - loads the queries precompiled
+ *     in the setup with {@link PrecompiledQueryTranslatorFactory}, as an
+ *     application would do at startup, and creates the
+ *     {@code HQLQueryPlan}s. The queries, which cannot be precompiled (the
+ *     fetch join, {@code select new} and the update), are translated.</li>
+ * </ul>
+ *
+ * <p>The scores are per query. The numbers are for a warm JVM, run it with
+ * {@code -bm ss -wi 0 -i 1 -f 20} for the first translation after the
+ * start.
+ *
+ * @author Andrej Golovnin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10, time = 3)
+@Measurement(iterations = 10, time = 3)
+@State(Scope.Benchmark)
+public class QueryTranslatorBenchmark {
+
+    private static final int QUERY_COUNT = 15;
+
+    static final String[] QUERIES = {
+        "select c from Customer c where c.email = :email",
+        "select c from Customer c where c.city = :city and c.active = true"
+            + " order by c.name",
+        "select o from PurchaseOrder o join o.customer c"
+            + " where c.name like :name and o.created >= :since"
+            + " order by o.created desc",
+        "select o from PurchaseOrder o join fetch o.customer"
+            + " where o.status in (:statuses)",
+        "select c.name, sum(l.quantity * l.price) from Customer c"
+            + " join c.orders o join o.lines l"
+            + " where o.created between :from and :to group by c.name"
+            + " having sum(l.quantity * l.price) > :minimum order by 2 desc",
+        "select count(o) from PurchaseOrder o"
+            + " where o.customer.id = :customerId and o.status <> 'CANCELLED'",
+        "select c from Customer c where exists (select o.id"
+            + " from PurchaseOrder o where o.customer = c"
+            + " and o.total > :total)",
+        "select p from Product p where p.id in (select l.product.id"
+            + " from OrderLine l join l.order o where o.created >= :since"
+            + " group by l.product.id having count(l) > :count)",
+        "select o, c from PurchaseOrder o join o.customer c"
+            + " where c.city = :city",
+        "select l from OrderLine l join l.order o join l.product p"
+            + " where o.customer.id = :customerId and p.category = :category",
+        "select new map(p.name as name, p.price as price) from Product p"
+            + " where p.category = :category",
+        "select c from Customer c where c.created < :before"
+            + " and not exists (select o.id from PurchaseOrder o"
+            + " where o.customer = c)",
+        "select max(o.total), min(o.total), avg(o.total)"
+            + " from PurchaseOrder o where o.customer.city = :city",
+        "select o from PurchaseOrder o where o.total > (select avg(o2.total)"
+            + " from PurchaseOrder o2 where o2.customer = o.customer)",
+        "update PurchaseOrder o set o.status = :status"
+            + " where o.created < :before"
+    };
+
+    private static final int PRECOMPILABLE_QUERIES = QUERIES.length - 3;
+
+    private static final Set<String> TENANT_AND_REGION =
+        new HashSet<>(Arrays.asList("tenant", "region"));
+
+    private SessionFactoryImplementor sessionFactory;
+    private SessionFactoryImplementor precompiledSessionFactory;
+    private Session session;
+    private Map<String, Filter> enabledFilters;
+    private Map<?, ?> substitutions;
+    private PrecompiledQueryTranslatorFactory precompiledTranslatorFactory;
+    private byte[] precompiledQueries;
+
+    @Setup
+    public void setup() throws IOException {
+        sessionFactory = buildSessionFactory(new ASTQueryTranslatorFactory());
+        precompiledSessionFactory = buildSessionFactory(
+            new PrecompiledQueryTranslatorFactory());
+        session = sessionFactory.openSession();
+        session.enableFilter("tenant").setParameter("tenantId", 42L);
+        enabledFilters = ((SharedSessionContractImplementor) session)
+            .getLoadQueryInfluencers().getEnabledFilters();
+        substitutions = sessionFactory.getSessionFactoryOptions()
+            .getQuerySubstitutions();
+
+        // The build time step.
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int precompiled = PrecompiledQueryTranslatorFactory.precompile(
+            precompiledSessionFactory, Arrays.asList(QUERIES),
+            Arrays.asList(enabledFilters.keySet(), TENANT_AND_REGION), out);
+        if (QUERIES.length != QUERY_COUNT
+            || precompiled != 2 * PRECOMPILABLE_QUERIES)
+        {
+            throw new IllegalStateException("Precompiled " + precompiled
+                + " of " + 2 * QUERIES.length + " queries");
+        }
+        precompiledQueries = out.toByteArray();
+        precompiledTranslatorFactory = (PrecompiledQueryTranslatorFactory)
+            precompiledSessionFactory.getServiceRegistry()
+                .getService(QueryTranslatorFactory.class);
+        precompiledTranslatorFactory.load(
+            new ByteArrayInputStream(precompiledQueries));
+        assertSameSql(enabledFilters);
+        try (Session regionSession = sessionFactory.openSession()) {
+            regionSession.enableFilter("tenant").setParameter("tenantId", 42L);
+            Filter region = regionSession.enableFilter("region")
+                .setParameterList("regionIds", new Long[] {1L});
+            Map<String, Filter> filters =
+                ((SharedSessionContractImplementor) regionSession)
+                    .getLoadQueryInfluencers().getEnabledFilters();
+            assertSameSql(filters);
+            region.setParameterList("regionIds", new Long[] {1L, 2L, 3L});
+            assertSameSql(filters);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        session.close();
+        sessionFactory.close();
+        precompiledSessionFactory.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERY_COUNT)
+    public void translate(Blackhole bh) {
+        for (String query : QUERIES) {
+            QueryTranslator translator = ASTQueryTranslatorFactory.INSTANCE
+                .createQueryTranslator(query, query, enabledFilters,
+                    sessionFactory, null);
+            translator.compile(substitutions, false);
+            bh.consume(translator);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERY_COUNT)
+    public void hqlQueryPlan(Blackhole bh) {
+        for (String query : QUERIES) {
+            bh.consume(new HQLQueryPlan(query, false, enabledFilters,
+                sessionFactory));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERY_COUNT)
+    public void precompiledHqlQueryPlan(Blackhole bh) throws IOException {
+        precompiledTranslatorFactory.load(
+            new ByteArrayInputStream(precompiledQueries));
+        for (String query : QUERIES) {
+            bh.consume(new HQLQueryPlan(query, false, enabledFilters,
+                precompiledSessionFactory));
+        }
+    }
+
+    /**
+     * Checks that the precompiled plans execute the SQL of the translated
+     * ones.
+     */
+    private void assertSameSql(Map<String, Filter> filters) {
+        for (String query : QUERIES) {
+            HQLQueryPlan translated = new HQLQueryPlan(query, false,
+                filters, sessionFactory);
+            HQLQueryPlan precompiled = new HQLQueryPlan(query, false,
+                filters, precompiledSessionFactory);
+            List<String> expected = Arrays.asList(translated.getSqlStrings());
+            List<String> actual = Arrays.asList(precompiled.getSqlStrings());
+            if (!expected.equals(actual)) {
+                throw new IllegalStateException("Expected " + expected
+                    + ", got " + actual);
+            }
+        }
+    }
+
+    private static SessionFactoryImplementor buildSessionFactory(
+        QueryTranslatorFactory queryTranslatorFactory)
+    {
+        StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
+            .applySetting(AvailableSettings.DIALECT, H2Dialect.class.getName())
+            .applySetting("hibernate.temp.use_jdbc_metadata_defaults", "false")
+            .applySetting(AvailableSettings.CONNECTION_PROVIDER,
+                new MockConnectionProvider())
+            .applySetting(AvailableSettings.QUERY_TRANSLATOR,
+                queryTranslatorFactory)
+            .build();
+        try {
+            return (SessionFactoryImplementor) new MetadataSources(registry)
+                .addAnnotatedClass(Customer.class)
+                .addAnnotatedClass(PurchaseOrder.class)
+                .addAnnotatedClass(OrderLine.class)
+                .addAnnotatedClass(Product.class)
+                .buildMetadata()
+                .buildSessionFactory();
+        } catch (RuntimeException e) {
+            StandardServiceRegistryBuilder.destroy(registry);
+            throw e;
+        }
+    }
+
+    @Entity(name = "Customer")
+    @FilterDefs({
+        @FilterDef(name = "tenant",
+            parameters = @ParamDef(name = "tenantId", type = "long")),
+        @FilterDef(name = "region",
+            parameters = @ParamDef(name = "regionIds", type = "long"))
+    })
+    @Filters({
+        @org.hibernate.annotations.Filter(name = "tenant",
+            condition = "tenantId = :tenantId"),
+        @org.hibernate.annotations.Filter(name = "region",
+            condition = "regionId in (:regionIds)")
+    })
+    public static class Customer {
+
+        @Id
+        private Long id;
+
+        private Long tenantId;
+
+        private Long regionId;
+
+        private String name;
+
+        private String email;
+
+        private String city;
+
+        private boolean active;
+
+        @Temporal(TemporalType.TIMESTAMP)
+        private Date created;
+
+        @OneToMany(mappedBy = "customer")
+        private List<PurchaseOrder> orders;
+
+    }
+
+    @Entity(name = "PurchaseOrder")
+    @org.hibernate.annotations.Filter(name = "tenant",
+        condition = "tenantId = :tenantId")
+    public static class PurchaseOrder {
+
+        @Id
+        private Long id;
+
+        private Long tenantId;
+
+        @ManyToOne
+        private Customer customer;
+
+        private String status;
+
+        private BigDecimal total;
+
+        @Temporal(TemporalType.TIMESTAMP)
+        private Date created;
+
+        @OneToMany(mappedBy = "order")
+        private List<OrderLine> lines;
+
+    }
+
+    @Entity(name = "OrderLine")
+    public static class OrderLine {
+
+        @Id
+        private Long id;
+
+        @ManyToOne
+        private PurchaseOrder order;
+
+        @ManyToOne
+        private Product product;
+
+        private int quantity;
+
+        private BigDecimal price;
+
+    }
+
+    @Entity(name = "Product")
+    @org.hibernate.annotations.Filter(name = "tenant",
+        condition = "tenantId = :tenantId")
+    public static class Product {
+
+        @Id
+        private Long id;
+
+        private Long tenantId;
+
+        private String name;
+
+        private String category;
+
+        private BigDecimal price;
+
+    }
+
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.id.enhanced;
+
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hibernate.HibernateException;
+import org.hibernate.id.IdentifierGeneratorHelper;
+import org.hibernate.id.IntegralDataTypeHolder;
+
+/**
+ * Prototype of a lock-free {@link PooledLoOptimizer}. Like the pooled-lo
+ * optimizer it treats a value of the database sequence or table as the
+ * lowest id of a pool of {@code incrementSize} ids.
+ *
+ * <p>{@link PooledLoOptimizer#generate(AccessCallback)} is
+ * {@code synchronized}. Here the pool is an immutable upper limit and an
+ * {@link AtomicLong} with the next id, an id or a range of ids is taken with
+ * one {@code getAndAdd()}. Only the refill of an exhausted pool is done by a
+ * single thread, elected by a compare-and-set, the other threads wait for
+ * the new pool.
+ *
+ * <p>With a {@code threadBlockSize} greater than 1 a thread takes a block of
+ * ids from the pool at a time and hands them out without atomic
+ * operations, like {@link PooledLoThreadLocalOptimizer} does with whole
+ * pools. The ids left in the block of a thread are lost, when the thread
+ * generates an id for another tenant.
+ *
+ * <p>Use it with the {@code optimizer} parameter of
+ * {@link SequenceStyleGenerator} or {@link TableGenerator} set to the name
+ * of this class or of {@link ThreadBlocks}.
+ *
+ * @author Andrej Golovnin
+ */
+public class CasPooledLoOptimizer extends AbstractOptimizer {
+
+    private final int threadBlockSize;
+    private final Pool defaultPool = new Pool();
+    private final ConcurrentMap<String, Pool> tenantPools =
+        new ConcurrentHashMap<>();
+    private final ThreadLocal<ThreadBlock> threadBlocks =
+        ThreadLocal.withInitial(ThreadBlock::new);
+
+    private volatile IntegralDataTypeHolder lastSourceValue;
+
+    public CasPooledLoOptimizer(Class returnClass, int incrementSize) {
+        this(returnClass, incrementSize, 1);
+    }
+
+    public CasPooledLoOptimizer(Class returnClass, int incrementSize,
+        int threadBlockSize)
+    {
+        super(returnClass, incrementSize);
+        if (incrementSize < 1) {
+            throw new HibernateException(
+                "increment size cannot be less than 1");
+        }
+        this.threadBlockSize =
+            Math.max(1, Math.min(threadBlockSize, incrementSize));
+    }
+
+    @Override
+    public Serializable generate(AccessCallback callback) {
+        Pool pool = pool(callback.getTenantIdentifier());
+        if (threadBlockSize == 1) {
+            while (true) {
+                Range range = pool.current;
+                if (range != null) {
+                    long id = range.next.getAndIncrement();
+                    if (id < range.upperLimit) {
+                        return toValue(id);
+                    }
+                }
+                refill(pool, range, callback);
+            }
+        }
+        ThreadBlock block = threadBlocks.get();
+        if (block.pool != pool || block.next >= block.upperLimit) {
+            while (true) {
+                Range range = pool.current;
+                if (range != null) {
+                    long first = range.next.getAndAdd(threadBlockSize);
+                    if (first < range.upperLimit) {
+                        block.pool = pool;
+                        block.next = first;
+                        block.upperLimit = Math.min(first + threadBlockSize,
+                            range.upperLimit);
+                        break;
+                    }
+                }
+                refill(pool, range, callback);
+            }
+        }
+        return toValue(block.next++);
+    }
+
+    @Override
+    public IntegralDataTypeHolder getLastSourceValue() {
+        return lastSourceValue;
+    }
+
+    @Override
+    public boolean applyIncrementSizeToSourceValues() {
+        return true;
+    }
+
+    private Pool pool(String tenantIdentifier) {
+        if (tenantIdentifier == null) {
+            return defaultPool;
+        }
+        return tenantPools.computeIfAbsent(tenantIdentifier, t -> new Pool());
+    }
+
+    /**
+     * Replaces the exhausted range of the pool with the next range of the
+     * source, or waits until another thread has replaced it.
+     */
+    private void refill(Pool pool, Range exhausted, AccessCallback callback) {
+        if (pool.refilling.compareAndSet(false, true)) {
+            try {
+                if (pool.current == exhausted) {
+                    IntegralDataTypeHolder value = callback.getNextValue();
+                    lastSourceValue = value.copy();
+                    long first = value.makeValue().longValue();
+                    pool.current = new Range(first, first + incrementSize);
+                }
+            } finally {
+                pool.refilling.set(false);
+            }
+        } else {
+            while (pool.current == exhausted && pool.refilling.get()) {
+                Thread.yield();
+            }
+        }
+    }
+
+    private Serializable toValue(long id) {
+        if (returnClass == Long.class) {
+            return id;
+        }
+        if (returnClass == Integer.class) {
+            return (int) id;
+        }
+        return IdentifierGeneratorHelper.getIntegralDataTypeHolder(returnClass)
+            .initialize(id).makeValue();
+    }
+
+    /**
+     * The ids of a tenant.
+     */
+    private static final class Pool {
+
+        final AtomicBoolean refilling = new AtomicBoolean();
+
+        volatile Range current;
+
+    }
+
+    /**
+     * The ids from one value of the source.
+     */
+    private static final class Range {
+
+        final AtomicLong next;
+        final long upperLimit;
+
+        Range(long first, long upperLimit) {
+            this.next = new AtomicLong(first);
+            this.upperLimit = upperLimit;
+        }
+
+    }
+
+    /**
+     * The ids taken by a thread.
+     */
+    private static final class ThreadBlock {
+
+        Pool pool;
+        long next;
+        long upperLimit;
+
+    }
+
+    /**
+     * {@link CasPooledLoOptimizer} with blocks of an eighth of the increment
+     * size per thread.
+     */
+    public static class ThreadBlocks extends CasPooledLoOptimizer {
+
+        public ThreadBlocks(Class returnClass, int incrementSize) {
+            super(returnClass, incrementSize, incrementSize / 8);
+        }
+
+    }
+
+}
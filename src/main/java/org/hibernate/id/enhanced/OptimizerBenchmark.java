@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.id.enhanced;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hibernate.id.IdentifierGeneratorHelper;
+import org.hibernate.id.IntegralDataTypeHolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link Optimizer#generate(AccessCallback)} called by 64 threads
+ * with a stub of a database sequence, which hands out its values without
+ * any delay. So the benchmark shows the cost of the optimizers themselves,
+ * mostly the contention on their state.
+ *
+ * <p>{@code optimizer}:
+ * <ul>
+ *     <li>{@code hilo}, {@code pooled}, {@code pooled-lo},
+ *     {@code pooled-lotl} - the optimizers of Hibernate.</li>
+ *     <li>{@code cas} - {@link CasPooledLoOptimizer}.</li>
+ *     <li>{@code cas-thread-blocks} -
+ *     {@link CasPooledLoOptimizer.ThreadBlocks}.</li>
+ * </ul>
+ *
+ * <p>The optimizers are created by {@link OptimizerFactory}, the prototypes
+ * by their class names.
+ *
+ * @author Andrej Golovnin
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10, time = 3)
+@Measurement(iterations = 10, time = 3)
+@Threads(64)
+@State(Scope.Benchmark)
+public class OptimizerBenchmark {
+
+    @Param({"hilo", "pooled", "pooled-lo", "pooled-lotl", "cas",
+        "cas-thread-blocks"})
+    private String optimizer;
+
+    @Param({"50", "1000"})
+    private int incrementSize;
+
+    private Optimizer instance;
+    private AccessCallback sequence;
+
+    @Setup
+    public void setup() {
+        instance = OptimizerFactory.buildOptimizer(optimizerName(),
+            Long.class, incrementSize, 1L);
+        if (instance instanceof NoopOptimizer) {
+            throw new IllegalStateException(
+                "Unknown optimizer: " + optimizer);
+        }
+        sequence = new StubSequence(
+            instance.applyIncrementSizeToSourceValues() ? incrementSize : 1);
+    }
+
+    @Benchmark
+    public Serializable generate() {
+        return instance.generate(sequence);
+    }
+
+    private String optimizerName() {
+        switch (optimizer) {
+            case "cas":
+                return CasPooledLoOptimizer.class.getName();
+            case "cas-thread-blocks":
+                return CasPooledLoOptimizer.ThreadBlocks.class.getName();
+            default:
+                return optimizer;
+        }
+    }
+
+    /**
+     * A sequence starting with 1.
+     */
+    private static final class StubSequence implements AccessCallback {
+
+        private final AtomicLong value = new AtomicLong(1);
+        private final long increment;
+
+        StubSequence(long increment) {
+            this.increment = increment;
+        }
+
+        @Override
+        public IntegralDataTypeHolder getNextValue() {
+            return IdentifierGeneratorHelper
+                .getIntegralDataTypeHolder(Long.class)
+                .initialize(value.getAndAdd(increment));
+        }
+
+        @Override
+        public String getTenantIdentifier() {
+            return null;
+        }
+
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.jmh.cache;
+
+/**
+ * Count-Min sketch with four bit counters, which estimates how often a key
+ * has been accessed recently. Every key has a counter in four rows, the
+ * estimate is the minimum of them. When the number of increments reaches
+ * ten times the capacity, all counters are halved, so that the history
+ * fades out (the "reset" of TinyLFU).
+ *
+ * <p>The sketch is not thread-safe, {@link TinyLfuMap} calls it only while
+ * holding its eviction lock.
+ *
+ * @author Andrej Golovnin
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+        0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int size;
+
+    FrequencySketch(int capacity) {
+        int length = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.table = new long[length];
+        this.tableMask = length - 1;
+        this.sampleSize = 10 * Math.max(1, capacity);
+    }
+
+    /**
+     * @return the estimated number of recent accesses of the key, at most 15
+     */
+    int frequency(int hash) {
+        int frequency = Integer.MAX_VALUE;
+        for (int row = 0; row < SEEDS.length; row++) {
+            long h = indexHash(hash, row);
+            int index = (int) (h >>> 32) & tableMask;
+            int offset = (int) (h & 15) << 2;
+            frequency = Math.min(frequency,
+                (int) ((table[index] >>> offset) & 15));
+        }
+        return frequency;
+    }
+
+    /**
+     * Records an access of the key.
+     */
+    void increment(int hash) {
+        boolean added = false;
+        for (int row = 0; row < SEEDS.length; row++) {
+            long h = indexHash(hash, row);
+            int index = (int) (h >>> 32) & tableMask;
+            int offset = (int) (h & 15) << 2;
+            long mask = 15L << offset;
+            if ((table[index] & mask) != mask) {
+                table[index] += 1L << offset;
+                added = true;
+            }
+        }
+        if (added && ++size == sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size >>>= 1;
+    }
+
+    private static long indexHash(int hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        return h ^ (h >>> 29);
+    }
+
+}
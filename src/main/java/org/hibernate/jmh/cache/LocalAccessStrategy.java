@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.jmh.cache;
+
+import java.util.concurrent.ConcurrentMap;
+
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.internal.DefaultCacheKeysFactory;
+import org.hibernate.cache.spi.access.AccessType;
+import org.hibernate.cache.spi.access.CollectionRegionAccessStrategy;
+import org.hibernate.cache.spi.access.EntityRegionAccessStrategy;
+import org.hibernate.cache.spi.access.NaturalIdRegionAccessStrategy;
+import org.hibernate.cache.spi.access.SoftLock;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.persister.collection.CollectionPersister;
+import org.hibernate.persister.entity.EntityPersister;
+
+/**
+ * Access strategy for all kinds of {@link LocalRegion}s. It behaves like
+ * {@code NONSTRICT_READ_WRITE}: entries are put after the insert and removed
+ * after an update, there are no soft locks. The cache keys are created by
+ * {@code DefaultCacheKeysFactory}.
+ *
+ * @author Andrej Golovnin
+ */
+public class LocalAccessStrategy implements EntityRegionAccessStrategy,
+    NaturalIdRegionAccessStrategy, CollectionRegionAccessStrategy
+{
+
+    private final LocalRegion region;
+    private final AccessType accessType;
+    protected final ConcurrentMap<Object, Object> map;
+
+    protected LocalAccessStrategy(LocalRegion region, AccessType accessType) {
+        this.region = region;
+        this.accessType = accessType;
+        this.map = region.getMap();
+    }
+
+    public AccessType getAccessType() {
+        return accessType;
+    }
+
+    @Override
+    public LocalRegion getRegion() {
+        return region;
+    }
+
+    @Override
+    public Object generateCacheKey(Object id, EntityPersister persister,
+        SessionFactoryImplementor factory, String tenantIdentifier)
+    {
+        return DefaultCacheKeysFactory.createEntityKey(id, persister, factory,
+            tenantIdentifier);
+    }
+
+    @Override
+    public Object generateCacheKey(Object id, CollectionPersister persister,
+        SessionFactoryImplementor factory, String tenantIdentifier)
+    {
+        return DefaultCacheKeysFactory.createCollectionKey(id, persister,
+            factory, tenantIdentifier);
+    }
+
+    @Override
+    public Object generateCacheKey(Object[] naturalIdValues,
+        EntityPersister persister, SharedSessionContractImplementor session)
+    {
+        return DefaultCacheKeysFactory.createNaturalIdKey(naturalIdValues,
+            persister, session);
+    }
+
+    @Override
+    public Object getCacheKeyId(Object cacheKey) {
+        return DefaultCacheKeysFactory.getEntityId(cacheKey);
+    }
+
+    @Override
+    public Object[] getNaturalIdValues(Object cacheKey) {
+        return DefaultCacheKeysFactory.getNaturalIdValues(cacheKey);
+    }
+
+    @Override
+    public Object get(SharedSessionContractImplementor session, Object key,
+        long txTimestamp) throws CacheException
+    {
+        return map.get(key);
+    }
+
+    @Override
+    public boolean putFromLoad(SharedSessionContractImplementor session,
+        Object key, Object value, long txTimestamp, Object version)
+        throws CacheException
+    {
+        return putFromLoad(session, key, value, txTimestamp, version, false);
+    }
+
+    @Override
+    public boolean putFromLoad(SharedSessionContractImplementor session,
+        Object key, Object value, long txTimestamp, Object version,
+        boolean minimalPutOverride) throws CacheException
+    {
+        if (minimalPutOverride && map.containsKey(key)) {
+            return false;
+        }
+        map.put(key, value);
+        return true;
+    }
+
+    @Override
+    public SoftLock lockItem(SharedSessionContractImplementor session,
+        Object key, Object version) throws CacheException
+    {
+        return null;
+    }
+
+    @Override
+    public SoftLock lockRegion() throws CacheException {
+        return null;
+    }
+
+    @Override
+    public void unlockItem(SharedSessionContractImplementor session,
+        Object key, SoftLock lock) throws CacheException
+    {
+        map.remove(key);
+    }
+
+    @Override
+    public void unlockRegion(SoftLock lock) throws CacheException {
+        map.clear();
+    }
+
+    @Override
+    public void remove(SharedSessionContractImplementor session, Object key)
+        throws CacheException
+    {
+        map.remove(key);
+    }
+
+    @Override
+    public void removeAll() throws CacheException {
+        map.clear();
+    }
+
+    @Override
+    public void evict(Object key) throws CacheException {
+        map.remove(key);
+    }
+
+    @Override
+    public void evictAll() throws CacheException {
+        map.clear();
+    }
+
+    @Override
+    public boolean insert(SharedSessionContractImplementor session, Object key,
+        Object value, Object version) throws CacheException
+    {
+        return false;
+    }
+
+    @Override
+    public boolean afterInsert(SharedSessionContractImplementor session,
+        Object key, Object value, Object version) throws CacheException
+    {
+        map.put(key, value);
+        return true;
+    }
+
+    @Override
+    public boolean update(SharedSessionContractImplementor session, Object key,
+        Object value, Object currentVersion, Object previousVersion)
+        throws CacheException
+    {
+        return false;
+    }
+
+    @Override
+    public boolean afterUpdate(SharedSessionContractImplementor session,
+        Object key, Object value, Object currentVersion,
+        Object previousVersion, SoftLock lock) throws CacheException
+    {
+        map.remove(key);
+        return false;
+    }
+
+    @Override
+    public boolean insert(SharedSessionContractImplementor session, Object key,
+        Object value) throws CacheException
+    {
+        return false;
+    }
+
+    @Override
+    public boolean afterInsert(SharedSessionContractImplementor session,
+        Object key, Object value) throws CacheException
+    {
+        map.put(key, value);
+        return true;
+    }
+
+    @Override
+    public boolean update(SharedSessionContractImplementor session, Object key,
+        Object value) throws CacheException
+    {
+        return false;
+    }
+
+    @Override
+    public boolean afterUpdate(SharedSessionContractImplementor session,
+        Object key, Object value, SoftLock lock) throws CacheException
+    {
+        map.remove(key);
+        return false;
+    }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.jmh.cache;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.spi.CacheDataDescription;
+import org.hibernate.cache.spi.CollectionRegion;
+import org.hibernate.cache.spi.EntityRegion;
+import org.hibernate.cache.spi.NaturalIdRegion;
+import org.hibernate.cache.spi.QueryResultsRegion;
+import org.hibernate.cache.spi.TimestampsRegion;
+import org.hibernate.cache.spi.access.AccessType;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+
+/**
+ * A region of {@link LocalRegionFactory}. The same class is used for all
+ * kinds of regions, the access strategy is created by the region factory.
+ *
+ * @author Andrej Golovnin
+ */
+public class LocalRegion implements EntityRegion, NaturalIdRegion,
+    CollectionRegion, QueryResultsRegion, TimestampsRegion
+{
+
+    private final LocalRegionFactory regionFactory;
+    private final String name;
+    private final CacheDataDescription metadata;
+    private final ConcurrentMap<Object, Object> map;
+
+    LocalRegion(LocalRegionFactory regionFactory, String name,
+        CacheDataDescription metadata, ConcurrentMap<Object, Object> map)
+    {
+        this.regionFactory = regionFactory;
+        this.name = name;
+        this.metadata = metadata;
+        this.map = map;
+    }
+
+    ConcurrentMap<Object, Object> getMap() {
+        return map;
+    }
+
+    @Override
+    public LocalAccessStrategy buildAccessStrategy(AccessType accessType)
+        throws CacheException
+    {
+        return regionFactory.buildAccessStrategy(this, accessType);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void destroy() throws CacheException {
+        map.clear();
+    }
+
+    @Override
+    public boolean contains(Object key) {
+        return map.containsKey(key);
+    }
+
+    @Override
+    public long getSizeInMemory() {
+        return -1;
+    }
+
+    @Override
+    public long getElementCountInMemory() {
+        return map.size();
+    }
+
+    @Override
+    public long getElementCountOnDisk() {
+        return 0;
+    }
+
+    @Override
+    public Map toMap() {
+        return Collections.unmodifiableMap(map);
+    }
+
+    @Override
+    public long nextTimestamp() {
+        return regionFactory.nextTimestamp();
+    }
+
+    @Override
+    public int getTimeout() {
+        return 60000;
+    }
+
+    @Override
+    public boolean isTransactionAware() {
+        return false;
+    }
+
+    @Override
+    public CacheDataDescription getCacheDataDescription() {
+        return metadata;
+    }
+
+    @Override
+    public Object get(SharedSessionContractImplementor session, Object key)
+        throws CacheException
+    {
+        return map.get(key);
+    }
+
+    @Override
+    public void put(SharedSessionContractImplementor session, Object key,
+        Object value) throws CacheException
+    {
+        map.put(key, value);
+    }
+
+    @Override
+    public void evict(Object key) throws CacheException {
+        map.remove(key);
+    }
+
+    @Override
+    public void evictAll() throws CacheException {
+        map.clear();
+    }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.jmh.cache;
+
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.hibernate.boot.spi.SessionFactoryOptions;
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.spi.CacheDataDescription;
+import org.hibernate.cache.spi.CollectionRegion;
+import org.hibernate.cache.spi.EntityRegion;
+import org.hibernate.cache.spi.NaturalIdRegion;
+import org.hibernate.cache.spi.QueryResultsRegion;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.cache.spi.TimestampsRegion;
+import org.hibernate.cache.spi.access.AccessType;
+
+/**
+ * {@code RegionFactory} for the second level cache which keeps all regions
+ * on the heap of the JVM without any eviction, so the benchmarks measure
+ * Hibernate and not a cache provider. Pass an instance of it as
+ * {@code hibernate.cache.region.factory_class}:
+ * <pre>
+ *     new StandardServiceRegistryBuilder()
+ *         .applySetting(AvailableSettings.USE_SECOND_LEVEL_CACHE, "true")
+ *         .applySetting(AvailableSettings.CACHE_REGION_FACTORY, regionFactory)
+ * </pre>
+ *
+ * <p>The data of a region is stored in the {@code ConcurrentMap} returned by
+ * {@link #createMap(String)}, subclasses may override it to plug in
+ * a different map implementation. {@code READ_WRITE} regions use soft locks
+ * guarded by a lock per region, like {@code CachingRegionFactory} from
+ * hibernate-testing.
+ *
+ * @author Andrej Golovnin
+ */
+public class LocalRegionFactory implements RegionFactory {
+
+    private final ConcurrentMap<String, LocalRegion> regions =
+        new ConcurrentHashMap<>();
+
+    private SessionFactoryOptions options;
+
+    @Override
+    public void start(SessionFactoryOptions settings, Properties properties)
+        throws CacheException
+    {
+        this.options = settings;
+    }
+
+    @Override
+    public void stop() {
+        regions.clear();
+    }
+
+    public SessionFactoryOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * @return the region with the given name or {@code null}, when there is
+     *         no such region
+     */
+    public LocalRegion getRegion(String regionName) {
+        return regions.get(regionName);
+    }
+
+    @Override
+    public boolean isMinimalPutsEnabledByDefault() {
+        return false;
+    }
+
+    @Override
+    public AccessType getDefaultAccessType() {
+        return AccessType.NONSTRICT_READ_WRITE;
+    }
+
+    @Override
+    public long nextTimestamp() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public EntityRegion buildEntityRegion(String regionName,
+        Properties properties, CacheDataDescription metadata)
+        throws CacheException
+    {
+        return buildRegion(regionName, metadata);
+    }
+
+    @Override
+    public NaturalIdRegion buildNaturalIdRegion(String regionName,
+        Properties properties, CacheDataDescription metadata)
+        throws CacheException
+    {
+        return buildRegion(regionName, metadata);
+    }
+
+    @Override
+    public CollectionRegion buildCollectionRegion(String regionName,
+        Properties properties, CacheDataDescription metadata)
+        throws CacheException
+    {
+        return buildRegion(regionName, metadata);
+    }
+
+    @Override
+    public QueryResultsRegion buildQueryResultsRegion(String regionName,
+        Properties properties) throws CacheException
+    {
+        return buildRegion(regionName, null);
+    }
+
+    @Override
+    public TimestampsRegion buildTimestampsRegion(String regionName,
+        Properties properties) throws CacheException
+    {
+        return buildRegion(regionName, null);
+    }
+
+    /**
+     * Creates the map for the data of a region.
+     */
+    protected ConcurrentMap<Object, Object> createMap(String regionName) {
+        return new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Creates the access strategy for a region. {@code READ_WRITE} uses
+     * {@link LockingReadWriteAccessStrategy}, all other access types use
+     * {@link LocalAccessStrategy}.
+     */
+    protected LocalAccessStrategy buildAccessStrategy(LocalRegion region,
+        AccessType accessType)
+    {
+        if (accessType == AccessType.READ_WRITE) {
+            return new LockingReadWriteAccessStrategy(region);
+        }
+        return new LocalAccessStrategy(region, accessType);
+    }
+
+    private LocalRegion buildRegion(String regionName,
+        CacheDataDescription metadata)
+    {
+        LocalRegion region = new LocalRegion(this, regionName, metadata,
+            createMap(regionName));
+        regions.put(regionName, region);
+        return region;
+    }
+
+}
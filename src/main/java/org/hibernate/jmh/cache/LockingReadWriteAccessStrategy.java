@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.jmh.cache;
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.spi.access.SoftLock;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+
+/**
+ * {@code READ_WRITE} access strategy which guards the soft lock protocol of
+ * {@link ReadWriteAccessStrategy} with a {@code ReentrantReadWriteLock} per
+ * region, like {@code AbstractReadWriteAccessStrategy} from hibernate-testing:
+ * {@code get()} takes the read lock, all other operations take the write
+ * lock. It is the baseline for {@link ReadWriteAccessStrategy}.
+ *
+ * @author Andrej Golovnin
+ */
+public class LockingReadWriteAccessStrategy extends ReadWriteAccessStrategy {
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ReentrantReadWriteLock.ReadLock readLock = lock.readLock();
+    private final ReentrantReadWriteLock.WriteLock writeLock =
+        lock.writeLock();
+
+    public LockingReadWriteAccessStrategy(LocalRegion region) {
+        super(region);
+    }
+
+    @Override
+    public Object get(SharedSessionContractImplementor session, Object key,
+        long txTimestamp) throws CacheException
+    {
+        readLock.lock();
+        try {
+            return super.get(session, key, txTimestamp);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean putFromLoad(SharedSessionContractImplementor session,
+        Object key, Object value, long txTimestamp, Object version,
+        boolean minimalPutOverride) throws CacheException
+    {
+        writeLock.lock();
+        try {
+            return super.putFromLoad(session, key, value, txTimestamp, version,
+                minimalPutOverride);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public SoftLock lockItem(SharedSessionContractImplementor session,
+        Object key, Object version) throws CacheException
+    {
+        writeLock.lock();
+        try {
+            return super.lockItem(session, key, version);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void unlockItem(SharedSessionContractImplementor session,
+        Object key, SoftLock lock) throws CacheException
+    {
+        writeLock.lock();
+        try {
+            super.unlockItem(session, key, lock);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean afterInsert(SharedSessionContractImplementor session,
+        Object key, Object value, Object version) throws CacheException
+    {
+        writeLock.lock();
+        try {
+            return super.afterInsert(session, key, value, version);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean afterUpdate(SharedSessionContractImplementor session,
+        Object key, Object value, Object currentVersion,
+        Object previousVersion, SoftLock lock) throws CacheException
+    {
+        writeLock.lock();
+        try {
+            return super.afterUpdate(session, key, value, currentVersion,
+                previousVersion, lock);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+}
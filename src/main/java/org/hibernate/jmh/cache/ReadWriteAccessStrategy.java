@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.jmh.cache;
+
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.spi.CacheDataDescription;
+import org.hibernate.cache.spi.access.AccessType;
+import org.hibernate.cache.spi.access.SoftLock;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+
+/**
+ * {@code READ_WRITE} access strategy for {@link LocalRegion}s without any
+ * lock. It implements the soft lock protocol of
+ * {@code AbstractReadWriteAccessStrategy} from hibernate-testing, but the
+ * entries are immutable and every state transition is a compare-and-set on
+ * the {@code ConcurrentMap} of the region: a reader never blocks and
+ * a writer only retries when another writer has changed the same key.
+ *
+ * <p>A failed compare-and-set in {@code putFromLoad} and {@code afterInsert}
+ * is not retried, the value is simply not cached, because another
+ * transaction has touched the entry in the meantime.
+ *
+ * @author Andrej Golovnin
+ */
+public class ReadWriteAccessStrategy extends LocalAccessStrategy {
+
+    private final UUID uuid = UUID.randomUUID();
+    private final AtomicLong nextLockId = new AtomicLong();
+    private final Comparator versionComparator;
+
+    public ReadWriteAccessStrategy(LocalRegion region) {
+        super(region, AccessType.READ_WRITE);
+        CacheDataDescription metadata = region.getCacheDataDescription();
+        this.versionComparator =
+            metadata == null ? null : metadata.getVersionComparator();
+    }
+
+    @Override
+    public Object get(SharedSessionContractImplementor session, Object key,
+        long txTimestamp) throws CacheException
+    {
+        Object entry = map.get(key);
+        if (entry instanceof Item && ((Item) entry).isReadable(txTimestamp)) {
+            return ((Item) entry).value;
+        }
+        return null;
+    }
+
+    @Override
+    public boolean putFromLoad(SharedSessionContractImplementor session,
+        Object key, Object value, long txTimestamp, Object version,
+        boolean minimalPutOverride) throws CacheException
+    {
+        Object entry = map.get(key);
+        Item item = new Item(value, version, nextTimestamp());
+        if (entry == null) {
+            return map.putIfAbsent(key, item) == null;
+        }
+        if (minimalPutOverride && entry instanceof Item) {
+            return false;
+        }
+        return isWriteable(entry, txTimestamp, version)
+            && map.replace(key, entry, item);
+    }
+
+    @Override
+    public SoftLock lockItem(SharedSessionContractImplementor session,
+        Object key, Object version) throws CacheException
+    {
+        long timeout = nextTimestamp() + getRegion().getTimeout();
+        for (;;) {
+            Object entry = map.get(key);
+            Lock lock;
+            if (entry instanceof Lock) {
+                lock = ((Lock) entry).lock(timeout);
+            } else {
+                Object lockedVersion =
+                    entry == null ? version : ((Item) entry).version;
+                lock = new Lock(uuid, nextLockId.getAndIncrement(),
+                    lockedVersion, timeout);
+            }
+            if (compareAndSet(key, entry, lock)) {
+                return lock;
+            }
+        }
+    }
+
+    @Override
+    public void unlockItem(SharedSessionContractImplementor session,
+        Object key, SoftLock lock) throws CacheException
+    {
+        for (;;) {
+            Object entry = map.get(key);
+            if (entry instanceof Lock && ((Lock) entry).isUnlockable(lock)) {
+                if (compareAndSet(key, entry,
+                    ((Lock) entry).unlock(nextTimestamp())))
+                {
+                    return;
+                }
+            } else if (handleLockExpiry(key, entry)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public SoftLock lockRegion() throws CacheException {
+        return null;
+    }
+
+    @Override
+    public void unlockRegion(SoftLock lock) throws CacheException {
+        map.clear();
+    }
+
+    @Override
+    public boolean afterInsert(SharedSessionContractImplementor session,
+        Object key, Object value, Object version) throws CacheException
+    {
+        return map.putIfAbsent(key, new Item(value, version, nextTimestamp()))
+            == null;
+    }
+
+    @Override
+    public boolean afterUpdate(SharedSessionContractImplementor session,
+        Object key, Object value, Object currentVersion,
+        Object previousVersion, SoftLock lock) throws CacheException
+    {
+        for (;;) {
+            Object entry = map.get(key);
+            if (entry instanceof Lock && ((Lock) entry).isUnlockable(lock)) {
+                Lock current = (Lock) entry;
+                if (current.concurrent) {
+                    if (compareAndSet(key, entry,
+                        current.unlock(nextTimestamp())))
+                    {
+                        return false;
+                    }
+                } else if (map.replace(key, entry,
+                    new Item(value, currentVersion, nextTimestamp())))
+                {
+                    return true;
+                }
+            } else if (handleLockExpiry(key, entry)) {
+                return false;
+            }
+        }
+    }
+
+    @Override
+    public boolean afterInsert(SharedSessionContractImplementor session,
+        Object key, Object value) throws CacheException
+    {
+        return afterInsert(session, key, value, null);
+    }
+
+    @Override
+    public boolean afterUpdate(SharedSessionContractImplementor session,
+        Object key, Object value, SoftLock lock) throws CacheException
+    {
+        return afterUpdate(session, key, value, null, null, lock);
+    }
+
+    private long nextTimestamp() {
+        return getRegion().nextTimestamp();
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean isWriteable(Object entry, long txTimestamp,
+        Object version)
+    {
+        if (entry instanceof Lock) {
+            return ((Lock) entry).isWriteable(txTimestamp, version,
+                versionComparator);
+        }
+        Item item = (Item) entry;
+        return item.version != null && versionComparator != null
+            && versionComparator.compare(item.version, version) < 0;
+    }
+
+    /**
+     * Replaces the entry with an unlocked lock, which keeps the possibly
+     * stale value out of the cache until the timeout of the region has
+     * passed. It is used when the soft lock of a transaction has been
+     * replaced in the meantime.
+     */
+    private boolean handleLockExpiry(Object key, Object entry) {
+        long timestamp = nextTimestamp() + getRegion().getTimeout();
+        Lock lock = new Lock(uuid, nextLockId.getAndIncrement(), null,
+            timestamp).unlock(timestamp);
+        return compareAndSet(key, entry, lock);
+    }
+
+    private boolean compareAndSet(Object key, Object expected, Object entry) {
+        if (expected == null) {
+            return map.putIfAbsent(key, entry) == null;
+        }
+        return map.replace(key, expected, entry);
+    }
+
+    /**
+     * A cached value. It is readable by transactions which have been started
+     * after the value was put into the cache.
+     */
+    static final class Item {
+
+        final Object value;
+        final Object version;
+        final long timestamp;
+
+        Item(Object value, Object version, long timestamp) {
+            this.value = value;
+            this.version = version;
+            this.timestamp = timestamp;
+        }
+
+        boolean isReadable(long txTimestamp) {
+            return txTimestamp > timestamp;
+        }
+
+    }
+
+    /**
+     * An immutable soft lock. Locking and unlocking create a copy with
+     * the same lock id, so a transaction recognizes its own lock even when
+     * other transactions have locked the entry concurrently. Neither
+     * {@code Item} nor {@code Lock} override {@code equals()}, as
+     * {@code ConcurrentMap.replace()} must compare the entries by identity.
+     */
+    static final class Lock implements SoftLock {
+
+        private final UUID sourceUuid;
+        private final long lockId;
+        final Object version;
+        final long timeout;
+        final int multiplicity;
+        final boolean concurrent;
+        final long unlockTimestamp;
+
+        Lock(UUID sourceUuid, long lockId, Object version, long timeout) {
+            this(sourceUuid, lockId, version, timeout, 1, false, 0);
+        }
+
+        private Lock(UUID sourceUuid, long lockId, Object version,
+            long timeout, int multiplicity, boolean concurrent,
+            long unlockTimestamp)
+        {
+            this.sourceUuid = sourceUuid;
+            this.lockId = lockId;
+            this.version = version;
+            this.timeout = timeout;
+            this.multiplicity = multiplicity;
+            this.concurrent = concurrent;
+            this.unlockTimestamp = unlockTimestamp;
+        }
+
+        Lock lock(long newTimeout) {
+            return new Lock(sourceUuid, lockId, version, newTimeout,
+                multiplicity + 1, true, unlockTimestamp);
+        }
+
+        Lock unlock(long timestamp) {
+            int newMultiplicity = multiplicity - 1;
+            return new Lock(sourceUuid, lockId, version, timeout,
+                newMultiplicity, concurrent,
+                newMultiplicity == 0 ? timestamp : unlockTimestamp);
+        }
+
+        @SuppressWarnings("unchecked")
+        boolean isWriteable(long txTimestamp, Object newVersion,
+            Comparator versionComparator)
+        {
+            if (txTimestamp > timeout) {
+                return true;
+            }
+            if (multiplicity > 0) {
+                return false;
+            }
+            return version == null || versionComparator == null
+                ? txTimestamp > unlockTimestamp
+                : versionComparator.compare(version, newVersion) < 0;
+        }
+
+        /**
+         * @return {@code true}, when the given lock is a copy of this lock
+         */
+        boolean isUnlockable(SoftLock lock) {
+            if (!(lock instanceof Lock)) {
+                return false;
+            }
+            Lock other = (Lock) lock;
+            return lockId == other.lockId && sourceUuid.equals(other.sourceUuid);
+        }
+
+    }
+
+}
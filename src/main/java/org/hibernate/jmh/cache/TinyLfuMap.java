@@ -0,0 +1,582 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.jmh.cache;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded {@code ConcurrentMap} with W-TinyLFU eviction.
+ *
+ * <p>The entries are stored in a {@code ConcurrentHashMap}, so {@code get()}
+ * never blocks. The eviction policy is only changed while holding a single
+ * eviction lock:
+ * <ul>
+ *     <li>Reads are recorded in lossy ring buffers, one per stripe selected
+ *     by the thread id. A full buffer drops the read and tries to drain all
+ *     buffers into the policy, but never waits for the eviction lock.</li>
+ *     <li>Writes of new keys and removals are applied to the policy
+ *     immediately under the eviction lock. Updates of existing keys only
+ *     replace the value of the node and are recorded like reads.</li>
+ * </ul>
+ *
+ * <p>The policy consists of an admission window (1% of the capacity) and
+ * a main space, both in LRU order. The main space is segmented into
+ * a probation (20%) and a protected (80%) segment, a hit in the probation
+ * segment promotes the entry to the protected segment. An entry leaving the
+ * window is a candidate for the main space: when the map is full, it is
+ * only admitted, if {@link FrequencySketch} estimates that it has been used
+ * more often than the least recently used entry of the probation segment.
+ *
+ * <p>{@code null} keys and values are not supported.
+ *
+ * @author Andrej Golovnin
+ */
+public class TinyLfuMap<K, V> extends AbstractMap<K, V>
+    implements ConcurrentMap<K, V>
+{
+
+    private static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final ConcurrentHashMap<K, Node<K, V>> data;
+    private final ReadBuffer<K, V>[] readBuffers;
+    private final int readBufferMask;
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    // Guarded by evictionLock.
+    private final FrequencySketch sketch;
+    private final AccessOrderDeque<K, V> window = new AccessOrderDeque<>();
+    private final AccessOrderDeque<K, V> probation = new AccessOrderDeque<>();
+    private final AccessOrderDeque<K, V> protectedDeque =
+        new AccessOrderDeque<>();
+    private final int maximumSize;
+    private final int windowMaximum;
+    private final int protectedMaximum;
+    private int windowSize;
+    private int protectedSize;
+    private int size;
+
+    private transient Set<Entry<K, V>> entrySet;
+
+    @SuppressWarnings("unchecked")
+    public TinyLfuMap(int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException(
+                "maximumSize must be positive: " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+        this.windowMaximum = Math.max(1, maximumSize / 100);
+        this.protectedMaximum = (maximumSize - windowMaximum) * 80 / 100;
+        this.data = new ConcurrentHashMap<>(Math.min(maximumSize, 1 << 16));
+        this.sketch = new FrequencySketch(maximumSize);
+        int stripes = Integer.highestOneBit(Math.max(1, NCPU - 1)) << 1;
+        this.readBuffers = new ReadBuffer[stripes];
+        for (int i = 0; i < stripes; i++) {
+            readBuffers[i] = new ReadBuffer<>();
+        }
+        this.readBufferMask = stripes - 1;
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    @Override
+    public int size() {
+        return data.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return data.isEmpty();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return data.containsKey(key);
+    }
+
+    @Override
+    public V get(Object key) {
+        Node<K, V> node = data.get(key);
+        if (node == null) {
+            return null;
+        }
+        afterRead(node);
+        return node.value;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return put(key, value, false);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return put(key, value, true);
+    }
+
+    private V put(K key, V value, boolean onlyIfAbsent) {
+        Objects.requireNonNull(value);
+        Node<K, V> node = null;
+        for (;;) {
+            Node<K, V> prior = data.get(key);
+            if (prior == null) {
+                if (node == null) {
+                    node = new Node<>(key, value);
+                }
+                prior = data.putIfAbsent(key, node);
+                if (prior == null) {
+                    afterAdd(node);
+                    return null;
+                }
+            }
+            V oldValue = prior.value;
+            if (oldValue == null) {
+                // The node has been removed concurrently.
+                continue;
+            }
+            if (onlyIfAbsent || prior.casValue(oldValue, value)) {
+                afterRead(prior);
+                return oldValue;
+            }
+        }
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        Objects.requireNonNull(oldValue);
+        Objects.requireNonNull(newValue);
+        Node<K, V> node = data.get(key);
+        if (node == null) {
+            return false;
+        }
+        for (;;) {
+            V value = node.value;
+            if (value == null || !value.equals(oldValue)) {
+                return false;
+            }
+            if (node.casValue(value, newValue)) {
+                afterRead(node);
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        Objects.requireNonNull(value);
+        Node<K, V> node = data.get(key);
+        if (node == null) {
+            return null;
+        }
+        for (;;) {
+            V oldValue = node.value;
+            if (oldValue == null) {
+                return null;
+            }
+            if (node.casValue(oldValue, value)) {
+                afterRead(node);
+                return oldValue;
+            }
+        }
+    }
+
+    @Override
+    public V remove(Object key) {
+        Node<K, V> node = data.remove(key);
+        if (node == null) {
+            return null;
+        }
+        V oldValue = node.retire();
+        afterRemove(node);
+        return oldValue;
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        Node<K, V> node = data.get(key);
+        if (node == null || value == null) {
+            return false;
+        }
+        V current = node.value;
+        if (current == null || !current.equals(value)
+            || !node.casValue(current, null))
+        {
+            return false;
+        }
+        data.remove(key, node);
+        afterRemove(node);
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        evictionLock.lock();
+        try {
+            for (Node<K, V> node : data.values()) {
+                evictNode(node);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        Set<Entry<K, V>> es = entrySet;
+        return es != null ? es : (entrySet = new EntrySet());
+    }
+
+    private void afterRead(Node<K, V> node) {
+        ReadBuffer<K, V> buffer = readBuffers[
+            (int) Thread.currentThread().getId() & readBufferMask];
+        if (!buffer.offer(node) && evictionLock.tryLock()) {
+            try {
+                drainReadBuffers();
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    private void afterAdd(Node<K, V> node) {
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+            if (node.value == null || node.queue >= 0) {
+                // Removed before the policy has seen it.
+                return;
+            }
+            sketch.increment(node.hash);
+            node.queue = WINDOW;
+            window.addLast(node);
+            windowSize++;
+            size++;
+            evict();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void afterRemove(Node<K, V> node) {
+        evictionLock.lock();
+        try {
+            unlink(node);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    // Guarded by evictionLock.
+    private void drainReadBuffers() {
+        for (ReadBuffer<K, V> buffer : readBuffers) {
+            buffer.drainTo(this);
+        }
+    }
+
+    // Guarded by evictionLock.
+    private void onAccess(Node<K, V> node) {
+        if (node.value == null) {
+            return;
+        }
+        sketch.increment(node.hash);
+        switch (node.queue) {
+            case WINDOW:
+                window.moveToBack(node);
+                break;
+            case PROBATION:
+                probation.remove(node);
+                node.queue = PROTECTED;
+                protectedDeque.addLast(node);
+                protectedSize++;
+                if (protectedSize > protectedMaximum) {
+                    Node<K, V> demoted = protectedDeque.pollFirst();
+                    protectedSize--;
+                    demoted.queue = PROBATION;
+                    probation.addLast(demoted);
+                }
+                break;
+            case PROTECTED:
+                protectedDeque.moveToBack(node);
+                break;
+            default:
+                // Not yet added to the policy.
+        }
+    }
+
+    // Guarded by evictionLock.
+    private void evict() {
+        int candidates = 0;
+        while (windowSize > windowMaximum) {
+            Node<K, V> node = window.pollFirst();
+            windowSize--;
+            node.queue = PROBATION;
+            probation.addLast(node);
+            candidates++;
+        }
+        while (size > maximumSize) {
+            Node<K, V> victim = probation.peekFirst();
+            Node<K, V> candidate = candidates > 0 ? probation.peekLast() : null;
+            if (victim == null) {
+                victim = protectedDeque.peekFirst();
+            } else if (candidate != null && candidate != victim
+                && sketch.frequency(candidate.hash)
+                <= sketch.frequency(victim.hash))
+            {
+                victim = candidate;
+                candidates--;
+            }
+            evictNode(victim);
+        }
+    }
+
+    // Guarded by evictionLock.
+    private void evictNode(Node<K, V> node) {
+        // Retire first, so that a concurrent put() does not update the
+        // value of a node which is about to disappear.
+        node.retire();
+        data.remove(node.key, node);
+        unlink(node);
+    }
+
+    // Guarded by evictionLock.
+    private void unlink(Node<K, V> node) {
+        switch (node.queue) {
+            case WINDOW:
+                window.remove(node);
+                windowSize--;
+                break;
+            case PROBATION:
+                probation.remove(node);
+                break;
+            case PROTECTED:
+                protectedDeque.remove(node);
+                protectedSize--;
+                break;
+            default:
+                return;
+        }
+        node.queue = -2;
+        size--;
+    }
+
+    /**
+     * Entry of the map. The value is {@code null} once the node has been
+     * removed from the map.
+     */
+    static final class Node<K, V> {
+
+        @SuppressWarnings("rawtypes")
+        private static final AtomicReferenceFieldUpdater<Node, Object> VALUE =
+            AtomicReferenceFieldUpdater.newUpdater(Node.class, Object.class,
+                "value");
+
+        final K key;
+        final int hash;
+        volatile V value;
+
+        // Guarded by evictionLock. -1 = not yet added, -2 = removed.
+        int queue = -1;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        Node(K key, V value) {
+            this.key = key;
+            this.hash = spread(key.hashCode());
+            this.value = value;
+        }
+
+        boolean casValue(V expected, V newValue) {
+            return VALUE.compareAndSet(this, expected, newValue);
+        }
+
+        @SuppressWarnings("unchecked")
+        V retire() {
+            return (V) VALUE.getAndSet(this, null);
+        }
+
+        private static int spread(int h) {
+            h ^= h >>> 17;
+            h *= 0xed5ad4bb;
+            h ^= h >>> 11;
+            return h;
+        }
+
+    }
+
+    /**
+     * Doubly linked list of nodes in access order, the least recently used
+     * node is the first one.
+     */
+    static final class AccessOrderDeque<K, V> {
+
+        private Node<K, V> first;
+        private Node<K, V> last;
+
+        Node<K, V> peekFirst() {
+            return first;
+        }
+
+        Node<K, V> peekLast() {
+            return last;
+        }
+
+        Node<K, V> pollFirst() {
+            Node<K, V> node = first;
+            if (node != null) {
+                remove(node);
+            }
+            return node;
+        }
+
+        void addLast(Node<K, V> node) {
+            node.prev = last;
+            node.next = null;
+            if (last == null) {
+                first = node;
+            } else {
+                last.next = node;
+            }
+            last = node;
+        }
+
+        void remove(Node<K, V> node) {
+            if (node.prev == null) {
+                first = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                last = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+        }
+
+        void moveToBack(Node<K, V> node) {
+            if (node != last) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+    }
+
+    /**
+     * Lossy single consumer ring buffer for the reads of a stripe. Producers
+     * claim a slot with a compare-and-set on the write counter and give up
+     * on contention, the consumer is the owner of the eviction lock.
+     */
+    static final class ReadBuffer<K, V> {
+
+        private static final int SIZE = 16;
+        private static final int MASK = SIZE - 1;
+
+        private final AtomicReferenceArray<Node<K, V>> slots =
+            new AtomicReferenceArray<>(SIZE);
+        private final AtomicLong writeCounter = new AtomicLong();
+        private volatile long readCounter;
+
+        /**
+         * @return {@code false}, when the buffer is full and should be
+         *         drained
+         */
+        boolean offer(Node<K, V> node) {
+            long head = readCounter;
+            long tail = writeCounter.get();
+            if (tail - head >= SIZE) {
+                return false;
+            }
+            if (writeCounter.compareAndSet(tail, tail + 1)) {
+                slots.lazySet((int) tail & MASK, node);
+            }
+            return true;
+        }
+
+        void drainTo(TinyLfuMap<K, V> map) {
+            long head = readCounter;
+            long tail = writeCounter.get();
+            for (; head < tail; head++) {
+                int index = (int) head & MASK;
+                Node<K, V> node = slots.get(index);
+                if (node == null) {
+                    // The producer has not yet published the node.
+                    break;
+                }
+                slots.lazySet(index, null);
+                map.onAccess(node);
+            }
+            readCounter = head;
+        }
+
+    }
+
+    final class EntrySet extends AbstractSet<Entry<K, V>> {
+
+        @Override
+        public int size() {
+            return data.size();
+        }
+
+        @Override
+        public void clear() {
+            TinyLfuMap.this.clear();
+        }
+
+        @Override
+        public Iterator<Entry<K, V>> iterator() {
+            Iterator<Node<K, V>> nodes = data.values().iterator();
+            return new Iterator<Entry<K, V>>() {
+
+                private K lastKey;
+
+                @Override
+                public boolean hasNext() {
+                    return nodes.hasNext();
+                }
+
+                @Override
+                public Entry<K, V> next() {
+                    Node<K, V> node = nodes.next();
+                    lastKey = node.key;
+                    return new SimpleImmutableEntry<>(node.key, node.value);
+                }
+
+                @Override
+                public void remove() {
+                    if (lastKey == null) {
+                        throw new IllegalStateException();
+                    }
+                    TinyLfuMap.this.remove(lastKey);
+                    lastKey = null;
+                }
+
+            };
+        }
+
+    }
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.jmh.cache;
+
+import java.util.concurrent.ConcurrentMap;
+
+import org.hibernate.cache.spi.access.AccessType;
+
+/**
+ * {@link LocalRegionFactory} for read-heavy workloads. Every region is
+ * a {@link TinyLfuMap} bounded to the given number of entries and
+ * {@code READ_WRITE} regions use the lock-free
+ * {@link ReadWriteAccessStrategy}, so readers of hot entities never block.
+ *
+ * @author Andrej Golovnin
+ */
+public class TinyLfuRegionFactory extends LocalRegionFactory {
+
+    private final int maximumSize;
+
+    public TinyLfuRegionFactory(int maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    @Override
+    protected ConcurrentMap<Object, Object> createMap(String regionName) {
+        return new TinyLfuMap<>(maximumSize);
+    }
+
+    @Override
+    protected LocalAccessStrategy buildAccessStrategy(LocalRegion region,
+        AccessType accessType)
+    {
+        if (accessType == AccessType.READ_WRITE) {
+            return new ReadWriteAccessStrategy(region);
+        }
+        return super.buildAccessStrategy(region, accessType);
+    }
+
+}
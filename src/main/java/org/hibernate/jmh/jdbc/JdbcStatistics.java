@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.jmh.jdbc;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the JDBC calls made against the mock JDBC objects of this package.
+ * The counters may be updated from many threads.
+ *
+ * @author Andrej Golovnin
+ */
+public final class JdbcStatistics {
+
+    private final LongAdder connections = new LongAdder();
+    private final LongAdder preparedStatements = new LongAdder();
+    private final LongAdder executedQueries = new LongAdder();
+    private final LongAdder executedUpdates = new LongAdder();
+    private final LongAdder addedBatches = new LongAdder();
+    private final LongAdder executedBatches = new LongAdder();
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder rollbacks = new LongAdder();
+
+    public long getConnections() {
+        return connections.sum();
+    }
+
+    public long getPreparedStatements() {
+        return preparedStatements.sum();
+    }
+
+    public long getExecutedQueries() {
+        return executedQueries.sum();
+    }
+
+    public long getExecutedUpdates() {
+        return executedUpdates.sum();
+    }
+
+    public long getAddedBatches() {
+        return addedBatches.sum();
+    }
+
+    public long getExecutedBatches() {
+        return executedBatches.sum();
+    }
+
+    public long getCommits() {
+        return commits.sum();
+    }
+
+    public long getRollbacks() {
+        return rollbacks.sum();
+    }
+
+    /**
+     * @return the number of statements sent to the database, i.e. the number
+     *         of executed queries, updates and batches
+     */
+    public long getRoundTrips() {
+        return getExecutedQueries() + getExecutedUpdates() + getExecutedBatches();
+    }
+
+    public void reset() {
+        connections.reset();
+        preparedStatements.reset();
+        executedQueries.reset();
+        executedUpdates.reset();
+        addedBatches.reset();
+        executedBatches.reset();
+        commits.reset();
+        rollbacks.reset();
+    }
+
+    void connectionOpened() {
+        connections.increment();
+    }
+
+    void statementPrepared() {
+        preparedStatements.increment();
+    }
+
+    void queryExecuted() {
+        executedQueries.increment();
+    }
+
+    void updateExecuted() {
+        executedUpdates.increment();
+    }
+
+    void batchAdded() {
+        addedBatches.increment();
+    }
+
+    void batchExecuted() {
+        executedBatches.increment();
+    }
+
+    void committed() {
+        commits.increment();
+    }
+
+    void rolledBack() {
+        rollbacks.increment();
+    }
+
+    @Override
+    public String toString() {
+        return "JdbcStatistics[connections=" + getConnections()
+            + ", preparedStatements=" + getPreparedStatements()
+            + ", executedQueries=" + getExecutedQueries()
+            + ", executedUpdates=" + getExecutedUpdates()
+            + ", addedBatches=" + getAddedBatches()
+            + ", executedBatches=" + getExecutedBatches()
+            + ", commits=" + getCommits()
+            + ", rollbacks=" + getRollbacks()
+            + "]";
+    }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.jmh.jdbc;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.service.UnknownUnwrapTypeException;
+
+/**
+ * {@code ConnectionProvider} which hands out {@link MockConnection}s to a
+ * {@link MockDatabase}. Use it together with a dialect and
+ * {@code hibernate.temp.use_jdbc_metadata_defaults} set to {@code false}, so
+ * Hibernate doesn't ask the connection for the database metadata:
+ * <pre>
+ *     new StandardServiceRegistryBuilder()
+ *         .applySetting(AvailableSettings.DIALECT, H2Dialect.class.getName())
+ *         .applySetting("hibernate.temp.use_jdbc_metadata_defaults", "false")
+ *         .applySetting(AvailableSettings.CONNECTION_PROVIDER, provider)
+ * </pre>
+ *
+ * @author Andrej Golovnin
+ */
+public class MockConnectionProvider implements ConnectionProvider {
+
+    private final MockDatabase database;
+
+    public MockConnectionProvider() {
+        this(new MockDatabase());
+    }
+
+    public MockConnectionProvider(JdbcStatistics statistics) {
+        this(new MockDatabase(statistics));
+    }
+
+    public MockConnectionProvider(MockDatabase database) {
+        this.database = database;
+    }
+
+    public MockDatabase getDatabase() {
+        return database;
+    }
+
+    public JdbcStatistics getStatistics() {
+        return database.getStatistics();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return new MockConnection(database);
+    }
+
+    @Override
+    public void closeConnection(Connection conn) throws SQLException {
+        conn.close();
+    }
+
+    @Override
+    public boolean supportsAggressiveRelease() {
+        return false;
+    }
+
+    @Override
+    public boolean isUnwrappableAs(Class unwrapType) {
+        return unwrapType.isInstance(this);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> unwrapType) {
+        if (unwrapType.isInstance(this)) {
+            return (T) this;
+        }
+        throw new UnknownUnwrapTypeException(unwrapType);
+    }
+
+}
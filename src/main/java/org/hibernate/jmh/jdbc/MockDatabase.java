@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.jmh.jdbc;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.hibernate.jmh.jdbc.MockQuery.Columns;
+
+/**
+ * The "database" behind {@link MockConnection}s. It doesn't store anything:
+ * queries are answered by the registered {@link MockResultProvider}s, all
+ * updates affect exactly one row. Sequence queries ({@code next value for}
+ * and {@code nextval}) and generated keys are served from a counter.
+ *
+ * <p>By default a round trip to the database costs nothing. Use
+ * {@link #setLatency(long, TimeUnit)} to simulate the network latency of a
+ * real database: latencies below one millisecond are spun, so they are
+ * reasonably accurate, longer latencies park the calling thread.
+ * {@link #setRowLatency(long, TimeUnit)} adds the time the database needs
+ * per row of an update or of a batch.
+ *
+ * @author Andrej Golovnin
+ */
+public class MockDatabase {
+
+    private static final Columns SEQUENCE_COLUMNS =
+        new Columns(new String[] {"nextval"}, new String[] {"nextval"});
+
+    private static final long SPIN_LIMIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final JdbcStatistics statistics;
+    private final List<MockResultProvider> resultProviders =
+        new CopyOnWriteArrayList<>();
+    private final ConcurrentMap<String, Columns> columnsBySql =
+        new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    private volatile long latencyNanos;
+    private volatile long rowLatencyNanos;
+
+    public MockDatabase() {
+        this(new JdbcStatistics());
+    }
+
+    public MockDatabase(JdbcStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    public JdbcStatistics getStatistics() {
+        return statistics;
+    }
+
+    public MockDatabase addResultProvider(MockResultProvider provider) {
+        resultProviders.add(provider);
+        return this;
+    }
+
+    public long getLatency(TimeUnit unit) {
+        return unit.convert(latencyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public MockDatabase setLatency(long latency, TimeUnit unit) {
+        this.latencyNanos = unit.toNanos(latency);
+        return this;
+    }
+
+    public long getRowLatency(TimeUnit unit) {
+        return unit.convert(rowLatencyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public MockDatabase setRowLatency(long latency, TimeUnit unit) {
+        this.rowLatencyNanos = unit.toNanos(latency);
+        return this;
+    }
+
+    /**
+     * Returns the next value of the one and only sequence of the database.
+     */
+    public long nextValue() {
+        return sequence.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of distinct queries executed so far, i.e. the size
+     * the statement cache of a real database would have.
+     */
+    public int getDistinctQueries() {
+        return columnsBySql.size();
+    }
+
+    MockQuery newQuery(String sql, Object[] parameters) {
+        Columns columns = columnsBySql.get(sql);
+        if (columns == null) {
+            columns = isSequenceQuery(sql) ? SEQUENCE_COLUMNS : Columns.parse(sql);
+            columnsBySql.putIfAbsent(sql, columns);
+        }
+        return new MockQuery(sql, parameters, columns);
+    }
+
+    List<Object[]> getRows(MockQuery query) {
+        for (MockResultProvider provider : resultProviders) {
+            List<Object[]> rows = provider.getRows(query);
+            if (rows != null) {
+                return rows;
+            }
+        }
+        if (query.getColumns() == SEQUENCE_COLUMNS) {
+            return Collections.singletonList(new Object[] {nextValue()});
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Simulates the latency of one round trip to the database.
+     */
+    void roundTrip() {
+        roundTrip(1);
+    }
+
+    /**
+     * Simulates the latency of one round trip to the database, which
+     * affects the given number of rows.
+     */
+    void roundTrip(int rows) {
+        long latency = latencyNanos + rows * rowLatencyNanos;
+        if (latency <= 0) {
+            return;
+        }
+        if (latency >= SPIN_LIMIT_NANOS) {
+            LockSupport.parkNanos(latency);
+            return;
+        }
+        long deadline = System.nanoTime() + latency;
+        while (System.nanoTime() < deadline) {
+            // spin
+        }
+    }
+
+    private static boolean isSequenceQuery(String sql) {
+        String lowerCaseSql = sql.toLowerCase(Locale.ROOT);
+        return lowerCaseSql.contains("next value for")
+            || lowerCaseSql.contains("nextval");
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.jmh.jdbc;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+/**
+ * JDBC driver for {@link MockDatabase}s. The URLs have the form
+ * {@code jdbc:mock:<name>}, where the name is the one used to register the
+ * database. So a session factory can be booted with the connection pool
+ * built into Hibernate:
+ * <pre>
+ *     String url = MockDriver.register("persons", database);
+ *     new StandardServiceRegistryBuilder()
+ *         .applySetting(AvailableSettings.DIALECT, H2Dialect.class.getName())
+ *         .applySetting("hibernate.temp.use_jdbc_metadata_defaults", "false")
+ *         .applySetting(AvailableSettings.DRIVER, MockDriver.class.getName())
+ *         .applySetting(AvailableSettings.URL, url)
+ * </pre>
+ *
+ * @author Andrej Golovnin
+ */
+public class MockDriver implements Driver {
+
+    public static final String URL_PREFIX = "jdbc:mock:";
+
+    private static final ConcurrentMap<String, MockDatabase> DATABASES =
+        new ConcurrentHashMap<>();
+
+    static {
+        try {
+            DriverManager.registerDriver(new MockDriver());
+        } catch (SQLException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Registers the database under the given name.
+     *
+     * @return the JDBC URL of the database
+     */
+    public static String register(String name, MockDatabase database) {
+        DATABASES.put(name, database);
+        return URL_PREFIX + name;
+    }
+
+    public static void deregister(String name) {
+        DATABASES.remove(name);
+    }
+
+    @Override
+    public Connection connect(String url, Properties info) throws SQLException {
+        if (!acceptsURL(url)) {
+            return null;
+        }
+        String name = url.substring(URL_PREFIX.length());
+        MockDatabase database = DATABASES.get(name);
+        if (database == null) {
+            throw new SQLException("Unknown mock database: " + name);
+        }
+        return new MockConnection(database);
+    }
+
+    @Override
+    public boolean acceptsURL(String url) throws SQLException {
+        return url != null && url.startsWith(URL_PREFIX);
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info)
+        throws SQLException
+    {
+        return new DriverPropertyInfo[0];
+    }
+
+    @Override
+    public int getMajorVersion() {
+        return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+        return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+        return false;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+}
@@ -0,0 +1,668 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.jmh.jdbc;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+
+/**
+ * In-memory {@code PreparedStatement} which is also used for plain
+ * statements. Updates always report one affected row, batches report one
+ * affected row per added statement. Queries return the rows served by the
+ * {@link MockDatabase} of the connection for the SQL and the bound
+ * parameters. Every execution is one simulated round trip.
+ *
+ * @author Andrej Golovnin
+ */
+public class MockPreparedStatement implements PreparedStatement {
+
+    private static final Object[] NO_PARAMETERS = new Object[0];
+
+    private final MockConnection connection;
+    private final String sql;
+    private final MockDatabase database;
+    private final JdbcStatistics statistics;
+
+    private Object[] parameters = NO_PARAMETERS;
+    private int parameterCount;
+    private MockResultSet resultSet;
+    private int batchSize;
+    private boolean closed;
+
+    public MockPreparedStatement(MockConnection connection, String sql) {
+        this.connection = connection;
+        this.sql = sql;
+        this.database = connection.getDatabase();
+        this.statistics = database.getStatistics();
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    @Override
+    public ResultSet executeQuery() throws SQLException {
+        return executeQuery(sql);
+    }
+
+    @Override
+    public ResultSet executeQuery(String sql) throws SQLException {
+        statistics.queryExecuted();
+        database.roundTrip();
+        MockQuery query = database.newQuery(sql,
+            Arrays.copyOf(parameters, parameterCount));
+        resultSet = new MockResultSet(this, query.getColumns().labels,
+            database.getRows(query));
+        return resultSet;
+    }
+
+    @Override
+    public int executeUpdate() throws SQLException {
+        statistics.updateExecuted();
+        database.roundTrip();
+        return 1;
+    }
+
+    @Override
+    public int executeUpdate(String sql) throws SQLException {
+        return executeUpdate();
+    }
+
+    @Override
+    public int executeUpdate(String sql, int autoGeneratedKeys)
+        throws SQLException
+    {
+        return executeUpdate();
+    }
+
+    @Override
+    public int executeUpdate(String sql, int[] columnIndexes)
+        throws SQLException
+    {
+        return executeUpdate();
+    }
+
+    @Override
+    public int executeUpdate(String sql, String[] columnNames)
+        throws SQLException
+    {
+        return executeUpdate();
+    }
+
+    @Override
+    public boolean execute() throws SQLException {
+        executeUpdate();
+        return false;
+    }
+
+    @Override
+    public boolean execute(String sql) throws SQLException {
+        return execute();
+    }
+
+    @Override
+    public boolean execute(String sql, int autoGeneratedKeys)
+        throws SQLException
+    {
+        return execute();
+    }
+
+    @Override
+    public boolean execute(String sql, int[] columnIndexes)
+        throws SQLException
+    {
+        return execute();
+    }
+
+    @Override
+    public boolean execute(String sql, String[] columnNames)
+        throws SQLException
+    {
+        return execute();
+    }
+
+    @Override
+    public ResultSet getResultSet() throws SQLException {
+        return resultSet;
+    }
+
+    @Override
+    public int getUpdateCount() throws SQLException {
+        return -1;
+    }
+
+    @Override
+    public void addBatch() throws SQLException {
+        statistics.batchAdded();
+        batchSize++;
+    }
+
+    @Override
+    public void addBatch(String sql) throws SQLException {
+        addBatch();
+    }
+
+    @Override
+    public void clearBatch() throws SQLException {
+        batchSize = 0;
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException {
+        statistics.batchExecuted();
+        database.roundTrip(batchSize);
+        int[] rowCounts = new int[batchSize];
+        Arrays.fill(rowCounts, 1);
+        batchSize = 0;
+        return rowCounts;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return connection;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        closed = true;
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return closed;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return (T) this;
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this);
+    }
+
+    @Override
+    public void setNull(int parameterIndex, int sqlType) throws SQLException {
+        bind(parameterIndex, null);
+    }
+
+    @Override
+    public void setBoolean(int parameterIndex, boolean x) throws SQLException {
+        bind(parameterIndex, x);
+    }
+
+    @Override
+    public void setByte(int parameterIndex, byte x) throws SQLException {
+        bind(parameterIndex, x);
+    }
+
+    @Override
+    public void setShort(int parameterIndex, short x) throws SQLException {
+        bind(parameterIndex, x);
+    }
+
+    @Override
+    public void setInt(int parameterIndex, int x) throws SQLException {
+        bind(parameterIndex, x);
+    }
+
+    @Override
+    public void setLong(int parameterIndex, long x) throws SQLException {
+        bind(parameterIndex, x);
+    }
+
+    @Override
+    public void setFloat(int parameterIndex, float x) throws SQLException {
+        bind(parameterIndex, x);
+    }
+
+    @Override
+    public void setDouble(int parameterIndex, double x) throws SQLException {
+        bind(parameterIndex, x);
+    }
+
+    @Override
+    public void setBigDecimal(int parameterIndex, BigDecimal x)
+        throws SQLException
+    {
+        bind(parameterIndex, x);
+    }
+
+    @Override
+    public void setString(int parameterIndex, String x) throws SQLException {
+        bind(parameterIndex, x);
+    }
+
+    @Override
+    public void setBytes(int parameterIndex, byte[] x) throws SQLException {
+        bind(parameterIndex, x);
+    }
+
+    @Override
+    public void setDate(int parameterIndex, Date x) throws SQLException {
+        bind(parameterIndex, x);
+    }
+
+    @Override
+    public void setTime(int parameterIndex, Time x) throws SQLException {
+        bind(parameterIndex, x);
+    }
+
+    @Override
+    public void setTimestamp(int parameterIndex, Timestamp x)
+        throws SQLException
+    {
+        bind(parameterIndex, x);
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream x, int length)
+        throws SQLException
+    {
+        bind(parameterIndex, x);
+    }
+
+    @Override
+    public void setUnicodeStream(int parameterIndex, InputStream x, int length)
+        throws SQLException
+    {
+        bind(parameterIndex, x);
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream x, int length)
+        throws SQLException
+    {
+        bind(parameterIndex, x);
+    }
+
+    @Override
+    public void clearParameters() throws SQLException {
+        Arrays.fill(parameters, null);
+        parameterCount = 0;
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x, int targetSqlType)
+        throws SQLException
+    {
+        bind(parameterIndex, x);
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x) throws SQLException {
+        bind(parameterIndex, x);
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader reader,
+        int length)
+        throws SQLException
+    {
+        bind(parameterIndex, reader);
+    }
+
+    @Override
+    public void setRef(int parameterIndex, Ref x) throws SQLException {
+        bind(parameterIndex, x);
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, Blob x) throws SQLException {
+        bind(parameterIndex, x);
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Clob x) throws SQLException {
+        bind(parameterIndex, x);
+    }
+
+    @Override
+    public void setArray(int parameterIndex, Array x) throws SQLException {
+        bind(parameterIndex, x);
+    }
+
+    @Override
+    public ResultSetMetaData getMetaData() throws SQLException {
+        return null;
+    }
+
+    @Override
+    public void setDate(int parameterIndex, Date x, Calendar cal)
+        throws SQLException
+    {
+        bind(parameterIndex, x);
+    }
+
+    @Override
+    public void setTime(int parameterIndex, Time x, Calendar cal)
+        throws SQLException
+    {
+        bind(parameterIndex, x);
+    }
+
+    @Override
+    public void setTimestamp(int parameterIndex, Timestamp x, Calendar cal)
+        throws SQLException
+    {
+        bind(parameterIndex, x);
+    }
+
+    @Override
+    public void setNull(int parameterIndex, int sqlType, String typeName)
+        throws SQLException
+    {
+        bind(parameterIndex, null);
+    }
+
+    @Override
+    public void setURL(int parameterIndex, URL x) throws SQLException {
+        bind(parameterIndex, x);
+    }
+
+    @Override
+    public ParameterMetaData getParameterMetaData() throws SQLException {
+        return null;
+    }
+
+    @Override
+    public void setRowId(int parameterIndex, RowId x) throws SQLException {
+        bind(parameterIndex, x);
+    }
+
+    @Override
+    public void setNString(int parameterIndex, String value)
+        throws SQLException
+    {
+        bind(parameterIndex, value);
+    }
+
+    @Override
+    public void setNCharacterStream(int parameterIndex, Reader value,
+        long length)
+        throws SQLException
+    {
+        bind(parameterIndex, value);
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, NClob value) throws SQLException {
+        bind(parameterIndex, value);
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Reader reader, long length)
+        throws SQLException
+    {
+        bind(parameterIndex, reader);
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, InputStream inputStream,
+        long length)
+        throws SQLException
+    {
+        bind(parameterIndex, inputStream);
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, Reader reader, long length)
+        throws SQLException
+    {
+        bind(parameterIndex, reader);
+    }
+
+    @Override
+    public void setSQLXML(int parameterIndex, SQLXML xmlObject)
+        throws SQLException
+    {
+        bind(parameterIndex, xmlObject);
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x, int targetSqlType,
+        int scaleOrLength)
+        throws SQLException
+    {
+        bind(parameterIndex, x);
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream x, long length)
+        throws SQLException
+    {
+        bind(parameterIndex, x);
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream x, long length)
+        throws SQLException
+    {
+        bind(parameterIndex, x);
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader reader,
+        long length)
+        throws SQLException
+    {
+        bind(parameterIndex, reader);
+    }
+
+    @Override
+    public void setAsciiStream(int parameterIndex, InputStream x)
+        throws SQLException
+    {
+        bind(parameterIndex, x);
+    }
+
+    @Override
+    public void setBinaryStream(int parameterIndex, InputStream x)
+        throws SQLException
+    {
+        bind(parameterIndex, x);
+    }
+
+    @Override
+    public void setCharacterStream(int parameterIndex, Reader reader)
+        throws SQLException
+    {
+        bind(parameterIndex, reader);
+    }
+
+    @Override
+    public void setNCharacterStream(int parameterIndex, Reader value)
+        throws SQLException
+    {
+        bind(parameterIndex, value);
+    }
+
+    @Override
+    public void setClob(int parameterIndex, Reader reader) throws SQLException {
+        bind(parameterIndex, reader);
+    }
+
+    @Override
+    public void setBlob(int parameterIndex, InputStream inputStream)
+        throws SQLException
+    {
+        bind(parameterIndex, inputStream);
+    }
+
+    @Override
+    public void setNClob(int parameterIndex, Reader reader)
+        throws SQLException
+    {
+        bind(parameterIndex, reader);
+    }
+
+    @Override
+    public int getMaxFieldSize() throws SQLException {
+        return 0;
+    }
+
+    @Override
+    public void setMaxFieldSize(int max) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public int getMaxRows() throws SQLException {
+        return 0;
+    }
+
+    @Override
+    public void setMaxRows(int max) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void setEscapeProcessing(boolean enable) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public int getQueryTimeout() throws SQLException {
+        return 0;
+    }
+
+    @Override
+    public void setQueryTimeout(int seconds) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void cancel() throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        return null;
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void setCursorName(String name) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public boolean getMoreResults() throws SQLException {
+        return false;
+    }
+
+    @Override
+    public void setFetchDirection(int direction) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public int getFetchDirection() throws SQLException {
+        return 0;
+    }
+
+    @Override
+    public void setFetchSize(int rows) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public int getFetchSize() throws SQLException {
+        return 0;
+    }
+
+    @Override
+    public int getResultSetConcurrency() throws SQLException {
+        return 0;
+    }
+
+    @Override
+    public int getResultSetType() throws SQLException {
+        return 0;
+    }
+
+    @Override
+    public boolean getMoreResults(int current) throws SQLException {
+        return false;
+    }
+
+    @Override
+    public ResultSet getGeneratedKeys() throws SQLException {
+        return new MockResultSet(this, new String[] {"id"},
+            Collections.singletonList(new Object[] {database.nextValue()}));
+    }
+
+    @Override
+    public int getResultSetHoldability() throws SQLException {
+        return 0;
+    }
+
+    @Override
+    public void setPoolable(boolean poolable) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public boolean isPoolable() throws SQLException {
+        return false;
+    }
+
+    @Override
+    public void closeOnCompletion() throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public boolean isCloseOnCompletion() throws SQLException {
+        return false;
+    }
+
+    private void bind(int parameterIndex, Object value) {
+        if (parameterIndex > parameters.length) {
+            parameters = Arrays.copyOf(parameters,
+                Math.max(parameterIndex, parameters.length * 2));
+        }
+        parameters[parameterIndex - 1] = value;
+        parameterCount = Math.max(parameterCount, parameterIndex);
+    }
+
+}
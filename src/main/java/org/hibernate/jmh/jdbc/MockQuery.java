@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.jmh.jdbc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A query executed against a {@link MockDatabase}: the SQL, the bound
+ * parameters and the columns of the select clause.
+ *
+ * <p>The columns are parsed from the top level select clause of the SQL
+ * generated by Hibernate, e.g. for
+ * {@code select person0_.id as id1_0_0_, person0_.name as name2_0_0_ from ...}
+ * the column names are {@code id} and {@code name} and the column labels are
+ * {@code id1_0_0_} and {@code name2_0_0_}. The parsing is done once per SQL
+ * string by {@link MockDatabase}.
+ *
+ * @author Andrej Golovnin
+ */
+public final class MockQuery {
+
+    private final String sql;
+    private final Object[] parameters;
+    private final Columns columns;
+
+    MockQuery(String sql, Object[] parameters, Columns columns) {
+        this.sql = sql;
+        this.parameters = parameters;
+        this.columns = columns;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public int getParameterCount() {
+        return parameters.length;
+    }
+
+    /**
+     * @param index the index of the parameter, the first parameter is 1
+     */
+    public Object getParameter(int index) {
+        return parameters[index - 1];
+    }
+
+    public String[] getColumnNames() {
+        return columns.names.clone();
+    }
+
+    public String[] getColumnLabels() {
+        return columns.labels.clone();
+    }
+
+    Columns getColumns() {
+        return columns;
+    }
+
+    /**
+     * Returns the index of the column with the given name ignoring the case,
+     * the first column is 1, or 0, when there is no such column.
+     */
+    public int indexOfColumn(String columnName) {
+        String[] names = columns.names;
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equalsIgnoreCase(columnName)) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Creates a row for this query from the values keyed by the column names.
+     * The case of the column names is ignored, columns without a value are
+     * {@code null}.
+     */
+    public Object[] row(Map<String, ?> valuesByColumnName) {
+        String[] names = columns.names;
+        Object[] row = new Object[names.length];
+        for (Map.Entry<String, ?> entry : valuesByColumnName.entrySet()) {
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equalsIgnoreCase(entry.getKey())) {
+                    row[i] = entry.getValue();
+                }
+            }
+        }
+        return row;
+    }
+
+    @Override
+    public String toString() {
+        return sql;
+    }
+
+    /**
+     * The parsed select clause of a SQL string.
+     */
+    static final class Columns {
+
+        static final Columns NONE = new Columns(new String[0], new String[0]);
+
+        final String[] names;
+        final String[] labels;
+
+        Columns(String[] names, String[] labels) {
+            this.names = names;
+            this.labels = labels;
+        }
+
+        static Columns parse(String sql) {
+            String lowerCaseSql = sql.toLowerCase(Locale.ROOT);
+            int start = lowerCaseSql.indexOf("select ");
+            if (start < 0) {
+                return NONE;
+            }
+            start += "select ".length();
+            if (lowerCaseSql.startsWith("distinct ", start)) {
+                start += "distinct ".length();
+            }
+            List<String> names = new ArrayList<>();
+            List<String> labels = new ArrayList<>();
+            int depth = 0;
+            int itemStart = start;
+            for (int i = start; i < sql.length(); i++) {
+                char c = sql.charAt(i);
+                if (c == '(') {
+                    depth++;
+                } else if (c == ')') {
+                    depth--;
+                } else if (depth == 0 && c == ',') {
+                    addColumn(sql.substring(itemStart, i), names, labels);
+                    itemStart = i + 1;
+                } else if (depth == 0 && lowerCaseSql.startsWith(" from ", i)) {
+                    addColumn(sql.substring(itemStart, i), names, labels);
+                    return new Columns(names.toArray(new String[0]),
+                        labels.toArray(new String[0]));
+                }
+            }
+            addColumn(sql.substring(itemStart), names, labels);
+            return new Columns(names.toArray(new String[0]),
+                labels.toArray(new String[0]));
+        }
+
+        private static void addColumn(String item, List<String> names,
+            List<String> labels)
+        {
+            String expression = item.trim();
+            String label = expression;
+            int as = expression.toLowerCase(Locale.ROOT).lastIndexOf(" as ");
+            if (as > 0) {
+                label = expression.substring(as + " as ".length()).trim();
+                expression = expression.substring(0, as).trim();
+            }
+            int dot = expression.lastIndexOf('.');
+            if (dot > 0 && expression.indexOf('(') < 0) {
+                expression = expression.substring(dot + 1);
+            }
+            names.add(expression);
+            labels.add(label);
+        }
+
+    }
+
+}
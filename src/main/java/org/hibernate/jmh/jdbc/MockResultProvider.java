@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.jmh.jdbc;
+
+import java.util.List;
+
+/**
+ * Serves the canned rows for the queries executed against a
+ * {@link MockDatabase}.
+ *
+ * @author Andrej Golovnin
+ */
+public interface MockResultProvider {
+
+    /**
+     * Returns the rows for the given query. The values in a row must be in
+     * the order of {@link MockQuery#getColumnLabels()}.
+     *
+     * @param query the executed query
+     * @return the rows of the result or {@code null}, when the provider
+     *         doesn't know the query
+     */
+    List<Object[]> getRows(MockQuery query);
+
+}
@@ -0,0 +1,1209 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.jmh.jdbc;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory {@code ResultSet} over a list of rows. A column can be accessed
+ * by its index or by its label, the labels are usually taken from the
+ * select clause of the query by {@link MockQuery}. Values are converted
+ * with the usual JDBC conversions where it is cheap to do so.
+ *
+ * @author Andrej Golovnin
+ */
+public class MockResultSet implements ResultSet {
+
+    private final Statement statement;
+    private final String[] labels;
+    private final List<Object[]> rows;
+    private final Map<String, Integer> indexByLabel;
+
+    private int row = -1;
+    private Object[] current;
+    private boolean wasNull;
+    private boolean closed;
+
+    public MockResultSet(Statement statement, String[] labels,
+        List<Object[]> rows)
+    {
+        this.statement = statement;
+        this.labels = labels;
+        this.rows = rows;
+        this.indexByLabel = new HashMap<>(labels.length * 2);
+        for (int i = 0; i < labels.length; i++) {
+            indexByLabel.putIfAbsent(labels[i], i + 1);
+        }
+    }
+
+    @Override
+    public boolean next() throws SQLException {
+        if (++row < rows.size()) {
+            current = rows.get(row);
+            return true;
+        }
+        row = rows.size();
+        current = null;
+        return false;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        closed = true;
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return closed;
+    }
+
+    @Override
+    public boolean wasNull() throws SQLException {
+        return wasNull;
+    }
+
+    @Override
+    public int findColumn(String columnLabel) throws SQLException {
+        Integer index = indexByLabel.get(columnLabel);
+        if (index != null) {
+            return index;
+        }
+        for (int i = 0; i < labels.length; i++) {
+            if (labels[i].equalsIgnoreCase(columnLabel)) {
+                return i + 1;
+            }
+        }
+        throw new SQLException("Unknown column: " + columnLabel);
+    }
+
+    @Override
+    public String getString(int columnIndex) throws SQLException {
+        Object value = value(columnIndex);
+        return value == null ? null : value.toString();
+    }
+
+    @Override
+    public boolean getBoolean(int columnIndex) throws SQLException {
+        Object value = value(columnIndex);
+        if (value == null) {
+            return false;
+        } else if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        return number(value).intValue() != 0;
+    }
+
+    @Override
+    public byte getByte(int columnIndex) throws SQLException {
+        Object value = value(columnIndex);
+        return value == null ? 0 : number(value).byteValue();
+    }
+
+    @Override
+    public short getShort(int columnIndex) throws SQLException {
+        Object value = value(columnIndex);
+        return value == null ? 0 : number(value).shortValue();
+    }
+
+    @Override
+    public int getInt(int columnIndex) throws SQLException {
+        Object value = value(columnIndex);
+        return value == null ? 0 : number(value).intValue();
+    }
+
+    @Override
+    public long getLong(int columnIndex) throws SQLException {
+        Object value = value(columnIndex);
+        return value == null ? 0L : number(value).longValue();
+    }
+
+    @Override
+    public float getFloat(int columnIndex) throws SQLException {
+        Object value = value(columnIndex);
+        return value == null ? 0.0f : number(value).floatValue();
+    }
+
+    @Override
+    public double getDouble(int columnIndex) throws SQLException {
+        Object value = value(columnIndex);
+        return value == null ? 0.0d : number(value).doubleValue();
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(int columnIndex) throws SQLException {
+        Object value = value(columnIndex);
+        if (value == null || value instanceof BigDecimal) {
+            return (BigDecimal) value;
+        }
+        return new BigDecimal(value.toString());
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(int columnIndex, int scale)
+        throws SQLException
+    {
+        BigDecimal value = getBigDecimal(columnIndex);
+        return value == null ? null : value.setScale(scale, RoundingMode.HALF_UP);
+    }
+
+    @Override
+    public byte[] getBytes(int columnIndex) throws SQLException {
+        return (byte[]) value(columnIndex);
+    }
+
+    @Override
+    public Date getDate(int columnIndex) throws SQLException {
+        Object value = value(columnIndex);
+        if (value == null || value instanceof Date) {
+            return (Date) value;
+        }
+        return new Date(((java.util.Date) value).getTime());
+    }
+
+    @Override
+    public Date getDate(int columnIndex, Calendar cal) throws SQLException {
+        return getDate(columnIndex);
+    }
+
+    @Override
+    public Time getTime(int columnIndex) throws SQLException {
+        Object value = value(columnIndex);
+        if (value == null || value instanceof Time) {
+            return (Time) value;
+        }
+        return new Time(((java.util.Date) value).getTime());
+    }
+
+    @Override
+    public Time getTime(int columnIndex, Calendar cal) throws SQLException {
+        return getTime(columnIndex);
+    }
+
+    @Override
+    public Timestamp getTimestamp(int columnIndex) throws SQLException {
+        Object value = value(columnIndex);
+        if (value == null || value instanceof Timestamp) {
+            return (Timestamp) value;
+        }
+        return new Timestamp(((java.util.Date) value).getTime());
+    }
+
+    @Override
+    public Timestamp getTimestamp(int columnIndex, Calendar cal)
+        throws SQLException
+    {
+        return getTimestamp(columnIndex);
+    }
+
+    @Override
+    public Object getObject(int columnIndex) throws SQLException {
+        return value(columnIndex);
+    }
+
+    @Override
+    public Object getObject(int columnIndex, Map<String, Class<?>> map)
+        throws SQLException
+    {
+        return value(columnIndex);
+    }
+
+    @Override
+    public <T> T getObject(int columnIndex, Class<T> type)
+        throws SQLException
+    {
+        return type.cast(value(columnIndex));
+    }
+
+    @Override
+    public String getString(String columnLabel) throws SQLException {
+        return getString(findColumn(columnLabel));
+    }
+
+    @Override
+    public boolean getBoolean(String columnLabel) throws SQLException {
+        return getBoolean(findColumn(columnLabel));
+    }
+
+    @Override
+    public byte getByte(String columnLabel) throws SQLException {
+        return getByte(findColumn(columnLabel));
+    }
+
+    @Override
+    public short getShort(String columnLabel) throws SQLException {
+        return getShort(findColumn(columnLabel));
+    }
+
+    @Override
+    public int getInt(String columnLabel) throws SQLException {
+        return getInt(findColumn(columnLabel));
+    }
+
+    @Override
+    public long getLong(String columnLabel) throws SQLException {
+        return getLong(findColumn(columnLabel));
+    }
+
+    @Override
+    public float getFloat(String columnLabel) throws SQLException {
+        return getFloat(findColumn(columnLabel));
+    }
+
+    @Override
+    public double getDouble(String columnLabel) throws SQLException {
+        return getDouble(findColumn(columnLabel));
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(String columnLabel) throws SQLException {
+        return getBigDecimal(findColumn(columnLabel));
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(String columnLabel, int scale)
+        throws SQLException
+    {
+        return getBigDecimal(findColumn(columnLabel), scale);
+    }
+
+    @Override
+    public byte[] getBytes(String columnLabel) throws SQLException {
+        return getBytes(findColumn(columnLabel));
+    }
+
+    @Override
+    public Date getDate(String columnLabel) throws SQLException {
+        return getDate(findColumn(columnLabel));
+    }
+
+    @Override
+    public Date getDate(String columnLabel, Calendar cal) throws SQLException {
+        return getDate(findColumn(columnLabel), cal);
+    }
+
+    @Override
+    public Time getTime(String columnLabel) throws SQLException {
+        return getTime(findColumn(columnLabel));
+    }
+
+    @Override
+    public Time getTime(String columnLabel, Calendar cal) throws SQLException {
+        return getTime(findColumn(columnLabel), cal);
+    }
+
+    @Override
+    public Timestamp getTimestamp(String columnLabel) throws SQLException {
+        return getTimestamp(findColumn(columnLabel));
+    }
+
+    @Override
+    public Timestamp getTimestamp(String columnLabel, Calendar cal)
+        throws SQLException
+    {
+        return getTimestamp(findColumn(columnLabel), cal);
+    }
+
+    @Override
+    public Object getObject(String columnLabel) throws SQLException {
+        return getObject(findColumn(columnLabel));
+    }
+
+    @Override
+    public Object getObject(String columnLabel, Map<String, Class<?>> map)
+        throws SQLException
+    {
+        return getObject(findColumn(columnLabel), map);
+    }
+
+    @Override
+    public <T> T getObject(String columnLabel, Class<T> type)
+        throws SQLException
+    {
+        return getObject(findColumn(columnLabel), type);
+    }
+
+    @Override
+    public ResultSetMetaData getMetaData() throws SQLException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public Statement getStatement() throws SQLException {
+        return statement;
+    }
+
+    @Override
+    public int getType() throws SQLException {
+        return TYPE_FORWARD_ONLY;
+    }
+
+    @Override
+    public int getConcurrency() throws SQLException {
+        return CONCUR_READ_ONLY;
+    }
+
+    @Override
+    public int getRow() throws SQLException {
+        return row >= 0 && row < rows.size() ? row + 1 : 0;
+    }
+
+    @Override
+    public boolean isBeforeFirst() throws SQLException {
+        return row < 0 && !rows.isEmpty();
+    }
+
+    @Override
+    public boolean isAfterLast() throws SQLException {
+        return row >= rows.size() && !rows.isEmpty();
+    }
+
+    @Override
+    public boolean isFirst() throws SQLException {
+        return row == 0 && !rows.isEmpty();
+    }
+
+    @Override
+    public boolean isLast() throws SQLException {
+        return row == rows.size() - 1;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return (T) this;
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this);
+    }
+
+    @Override
+    public InputStream getAsciiStream(int columnIndex) throws SQLException {
+        return null;
+    }
+
+    @Override
+    public InputStream getUnicodeStream(int columnIndex) throws SQLException {
+        return null;
+    }
+
+    @Override
+    public InputStream getBinaryStream(int columnIndex) throws SQLException {
+        return null;
+    }
+
+    @Override
+    public InputStream getAsciiStream(String columnLabel) throws SQLException {
+        return null;
+    }
+
+    @Override
+    public InputStream getUnicodeStream(String columnLabel)
+        throws SQLException
+    {
+        return null;
+    }
+
+    @Override
+    public InputStream getBinaryStream(String columnLabel) throws SQLException {
+        return null;
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        return null;
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public String getCursorName() throws SQLException {
+        return null;
+    }
+
+    @Override
+    public Reader getCharacterStream(int columnIndex) throws SQLException {
+        return null;
+    }
+
+    @Override
+    public Reader getCharacterStream(String columnLabel) throws SQLException {
+        return null;
+    }
+
+    @Override
+    public void beforeFirst() throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void afterLast() throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public boolean first() throws SQLException {
+        return false;
+    }
+
+    @Override
+    public boolean last() throws SQLException {
+        return false;
+    }
+
+    @Override
+    public boolean absolute(int row) throws SQLException {
+        return false;
+    }
+
+    @Override
+    public boolean relative(int rows) throws SQLException {
+        return false;
+    }
+
+    @Override
+    public boolean previous() throws SQLException {
+        return false;
+    }
+
+    @Override
+    public void setFetchDirection(int direction) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public int getFetchDirection() throws SQLException {
+        return 0;
+    }
+
+    @Override
+    public void setFetchSize(int rows) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public int getFetchSize() throws SQLException {
+        return 0;
+    }
+
+    @Override
+    public boolean rowUpdated() throws SQLException {
+        return false;
+    }
+
+    @Override
+    public boolean rowInserted() throws SQLException {
+        return false;
+    }
+
+    @Override
+    public boolean rowDeleted() throws SQLException {
+        return false;
+    }
+
+    @Override
+    public void updateNull(int columnIndex) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void updateBoolean(int columnIndex, boolean x) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void updateByte(int columnIndex, byte x) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void updateShort(int columnIndex, short x) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void updateInt(int columnIndex, int x) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void updateLong(int columnIndex, long x) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void updateFloat(int columnIndex, float x) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void updateDouble(int columnIndex, double x) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void updateBigDecimal(int columnIndex, BigDecimal x)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateString(int columnIndex, String x) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void updateBytes(int columnIndex, byte[] x) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void updateDate(int columnIndex, Date x) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void updateTime(int columnIndex, Time x) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void updateTimestamp(int columnIndex, Timestamp x)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateAsciiStream(int columnIndex, InputStream x, int length)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateBinaryStream(int columnIndex, InputStream x, int length)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateCharacterStream(int columnIndex, Reader x, int length)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateObject(int columnIndex, Object x, int scaleOrLength)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateObject(int columnIndex, Object x) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void updateNull(String columnLabel) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void updateBoolean(String columnLabel, boolean x)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateByte(String columnLabel, byte x) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void updateShort(String columnLabel, short x) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void updateInt(String columnLabel, int x) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void updateLong(String columnLabel, long x) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void updateFloat(String columnLabel, float x) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void updateDouble(String columnLabel, double x) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void updateBigDecimal(String columnLabel, BigDecimal x)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateString(String columnLabel, String x) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void updateBytes(String columnLabel, byte[] x) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void updateDate(String columnLabel, Date x) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void updateTime(String columnLabel, Time x) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void updateTimestamp(String columnLabel, Timestamp x)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateAsciiStream(String columnLabel, InputStream x, int length)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateBinaryStream(String columnLabel, InputStream x,
+        int length)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateCharacterStream(String columnLabel, Reader reader,
+        int length)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateObject(String columnLabel, Object x, int scaleOrLength)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateObject(String columnLabel, Object x) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void insertRow() throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void updateRow() throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void deleteRow() throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void refreshRow() throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void cancelRowUpdates() throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void moveToInsertRow() throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void moveToCurrentRow() throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public Ref getRef(int columnIndex) throws SQLException {
+        return null;
+    }
+
+    @Override
+    public Blob getBlob(int columnIndex) throws SQLException {
+        return null;
+    }
+
+    @Override
+    public Clob getClob(int columnIndex) throws SQLException {
+        return null;
+    }
+
+    @Override
+    public Array getArray(int columnIndex) throws SQLException {
+        return null;
+    }
+
+    @Override
+    public Ref getRef(String columnLabel) throws SQLException {
+        return null;
+    }
+
+    @Override
+    public Blob getBlob(String columnLabel) throws SQLException {
+        return null;
+    }
+
+    @Override
+    public Clob getClob(String columnLabel) throws SQLException {
+        return null;
+    }
+
+    @Override
+    public Array getArray(String columnLabel) throws SQLException {
+        return null;
+    }
+
+    @Override
+    public URL getURL(int columnIndex) throws SQLException {
+        return null;
+    }
+
+    @Override
+    public URL getURL(String columnLabel) throws SQLException {
+        return null;
+    }
+
+    @Override
+    public void updateRef(int columnIndex, Ref x) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void updateRef(String columnLabel, Ref x) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void updateBlob(int columnIndex, Blob x) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void updateBlob(String columnLabel, Blob x) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void updateClob(int columnIndex, Clob x) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void updateClob(String columnLabel, Clob x) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void updateArray(int columnIndex, Array x) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void updateArray(String columnLabel, Array x) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public RowId getRowId(int columnIndex) throws SQLException {
+        return null;
+    }
+
+    @Override
+    public RowId getRowId(String columnLabel) throws SQLException {
+        return null;
+    }
+
+    @Override
+    public void updateRowId(int columnIndex, RowId x) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void updateRowId(String columnLabel, RowId x) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public int getHoldability() throws SQLException {
+        return 0;
+    }
+
+    @Override
+    public void updateNString(int columnIndex, String nString)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateNString(String columnLabel, String nString)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateNClob(int columnIndex, NClob nClob) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void updateNClob(String columnLabel, NClob nClob)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public NClob getNClob(int columnIndex) throws SQLException {
+        return null;
+    }
+
+    @Override
+    public NClob getNClob(String columnLabel) throws SQLException {
+        return null;
+    }
+
+    @Override
+    public SQLXML getSQLXML(int columnIndex) throws SQLException {
+        return null;
+    }
+
+    @Override
+    public SQLXML getSQLXML(String columnLabel) throws SQLException {
+        return null;
+    }
+
+    @Override
+    public void updateSQLXML(int columnIndex, SQLXML xmlObject)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateSQLXML(String columnLabel, SQLXML xmlObject)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public String getNString(int columnIndex) throws SQLException {
+        return null;
+    }
+
+    @Override
+    public String getNString(String columnLabel) throws SQLException {
+        return null;
+    }
+
+    @Override
+    public Reader getNCharacterStream(int columnIndex) throws SQLException {
+        return null;
+    }
+
+    @Override
+    public Reader getNCharacterStream(String columnLabel) throws SQLException {
+        return null;
+    }
+
+    @Override
+    public void updateNCharacterStream(int columnIndex, Reader x, long length)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateNCharacterStream(String columnLabel, Reader reader,
+        long length)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateAsciiStream(int columnIndex, InputStream x, long length)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateBinaryStream(int columnIndex, InputStream x, long length)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateCharacterStream(int columnIndex, Reader x, long length)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateAsciiStream(String columnLabel, InputStream x,
+        long length)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateBinaryStream(String columnLabel, InputStream x,
+        long length)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateCharacterStream(String columnLabel, Reader reader,
+        long length)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateBlob(int columnIndex, InputStream inputStream,
+        long length)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateBlob(String columnLabel, InputStream inputStream,
+        long length)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateClob(int columnIndex, Reader reader, long length)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateClob(String columnLabel, Reader reader, long length)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateNClob(int columnIndex, Reader reader, long length)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateNClob(String columnLabel, Reader reader, long length)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateNCharacterStream(int columnIndex, Reader x)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateNCharacterStream(String columnLabel, Reader reader)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateAsciiStream(int columnIndex, InputStream x)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateBinaryStream(int columnIndex, InputStream x)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateCharacterStream(int columnIndex, Reader x)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateAsciiStream(String columnLabel, InputStream x)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateBinaryStream(String columnLabel, InputStream x)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateCharacterStream(String columnLabel, Reader reader)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateBlob(int columnIndex, InputStream inputStream)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateBlob(String columnLabel, InputStream inputStream)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateClob(int columnIndex, Reader reader) throws SQLException {
+        // NOP
+    }
+
+    @Override
+    public void updateClob(String columnLabel, Reader reader)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateNClob(int columnIndex, Reader reader)
+        throws SQLException
+    {
+        // NOP
+    }
+
+    @Override
+    public void updateNClob(String columnLabel, Reader reader)
+        throws SQLException
+    {
+        // NOP
+    }
+
+
+    private Object value(int columnIndex) throws SQLException {
+        if (current == null) {
+            throw new SQLException("No current row");
+        }
+        Object value = current[columnIndex - 1];
+        wasNull = value == null;
+        return value;
+    }
+
+    private static Number number(Object value) {
+        if (value instanceof Number) {
+            return (Number) value;
+        } else if (value instanceof Boolean) {
+            return (Boolean) value ? 1 : 0;
+        }
+        return new BigDecimal(value.toString());
+    }
+
+}
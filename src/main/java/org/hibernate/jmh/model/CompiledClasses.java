@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.jmh.model;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/**
+ * Classes compiled at runtime into a temporary directory with the system
+ * Java compiler and loaded by {@link #getClassLoader()}. {@link #close()}
+ * deletes them.
+ *
+ * @author Andrej Golovnin
+ */
+final class CompiledClasses implements Closeable {
+
+    /**
+     * Rewrites the bytecode of a compiled class before it is loaded.
+     */
+    interface BytecodeProcessor {
+
+        /**
+         * @param className the name of the class
+         * @param bytecode the compiled class
+         * @param classLoader a class loader, which sees the compiled classes
+         * @return the bytecode to load
+         */
+        byte[] process(String className, byte[] bytecode,
+            ClassLoader classLoader) throws IOException;
+
+    }
+
+    private final Path directory;
+    private final URLClassLoader classLoader;
+    private final List<Class<?>> classes;
+
+    private CompiledClasses(Path directory, URLClassLoader classLoader,
+        List<Class<?>> classes)
+    {
+        this.directory = directory;
+        this.classLoader = classLoader;
+        this.classes = Collections.unmodifiableList(classes);
+    }
+
+    /**
+     * Compiles the sources, processes the class files with the processor,
+     * if there is one, and loads the classes.
+     *
+     * @param sources the sources keyed by the names of their classes
+     * @param processor the processor of the class files or {@code null}
+     */
+    static CompiledClasses compile(Map<String, String> sources,
+        BytecodeProcessor processor) throws IOException
+    {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException(
+                "The generated model needs the Java compiler of a JDK");
+        }
+        Path directory = Files.createTempDirectory("model");
+        URLClassLoader classLoader = null;
+        try {
+            List<String> arguments = new ArrayList<>(Arrays.asList(
+                "-proc:none", "-nowarn", "-d", directory.toString(),
+                "-classpath", System.getProperty("java.class.path")));
+            for (Map.Entry<String, String> e : sources.entrySet()) {
+                Path source = file(directory, e.getKey(), ".java");
+                Files.createDirectories(source.getParent());
+                Files.write(source,
+                    e.getValue().getBytes(StandardCharsets.UTF_8));
+                arguments.add(source.toString());
+            }
+            if (compiler.run(null, null, null,
+                arguments.toArray(new String[arguments.size()])) != 0)
+            {
+                throw new IllegalStateException("Could not compile the model");
+            }
+            if (processor != null) {
+                process(directory, sources.keySet(), processor);
+            }
+            classLoader = newClassLoader(directory);
+            List<Class<?>> classes = new ArrayList<>(sources.size());
+            for (String className : sources.keySet()) {
+                classes.add(classLoader.loadClass(className));
+            }
+            return new CompiledClasses(directory, classLoader, classes);
+        } catch (ClassNotFoundException e) {
+            classLoader.close();
+            delete(directory);
+            throw new IllegalStateException(e);
+        } catch (IOException | RuntimeException e) {
+            if (classLoader != null) {
+                classLoader.close();
+            }
+            delete(directory);
+            throw e;
+        }
+    }
+
+    ClassLoader getClassLoader() {
+        return classLoader;
+    }
+
+    /**
+     * @return the classes in the order of their sources
+     */
+    List<Class<?>> getClasses() {
+        return classes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        classLoader.close();
+        delete(directory);
+    }
+
+    private static void process(Path directory, Iterable<String> classNames,
+        BytecodeProcessor processor) throws IOException
+    {
+        try (URLClassLoader loader = newClassLoader(directory)) {
+            for (String className : classNames) {
+                Path classFile = file(directory, className, ".class");
+                Files.write(classFile, processor.process(className,
+                    Files.readAllBytes(classFile), loader));
+            }
+        }
+    }
+
+    private static URLClassLoader newClassLoader(Path directory)
+        throws IOException
+    {
+        return new URLClassLoader(new URL[] {directory.toUri().toURL()},
+            CompiledClasses.class.getClassLoader());
+    }
+
+    private static Path file(Path directory, String className,
+        String extension)
+    {
+        return directory.resolve(
+            className.replace('.', File.separatorChar) + extension);
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile)
+                .forEach(File::delete);
+        }
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.jmh.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A model of annotated entity classes generated and compiled at runtime
+ * for the startup benchmarks. Every entity has a sequence generated id,
+ * a version, six basic properties, a lazy many-to-one to the previous
+ * entity and a one-to-many to the next one.
+ *
+ * <p>The classes are compiled with the system Java compiler, so a JDK is
+ * needed, and loaded by {@link #getClassLoader()}. {@link #close()} deletes
+ * them.
+ *
+ * @author Andrej Golovnin
+ */
+public final class GeneratedModel implements Closeable {
+
+    private static final String PACKAGE = "org.hibernate.jmh.model.entities";
+
+    private final CompiledClasses classes;
+
+    private GeneratedModel(CompiledClasses classes) {
+        this.classes = classes;
+    }
+
+    /**
+     * Generates and compiles a model of {@code entities} classes.
+     */
+    public static GeneratedModel compile(int entities) throws IOException {
+        Map<String, String> sources = new LinkedHashMap<>();
+        for (int i = 0; i < entities; i++) {
+            sources.put(PACKAGE + "." + entityName(i),
+                entitySource(i, entities));
+        }
+        return new GeneratedModel(CompiledClasses.compile(sources, null));
+    }
+
+    public ClassLoader getClassLoader() {
+        return classes.getClassLoader();
+    }
+
+    public List<Class<?>> getEntityClasses() {
+        return classes.getClasses();
+    }
+
+    @Override
+    public void close() throws IOException {
+        classes.close();
+    }
+
+    private static String entityName(int index) {
+        return String.format("Entity%04d", index);
+    }
+
+    private static String entitySource(int index, int count) {
+        String name = entityName(index);
+        String table = name.toLowerCase();
+        StringBuilder sb = new StringBuilder()
+            .append("package ").append(PACKAGE).append(";\n")
+            .append("import java.math.BigDecimal;\n")
+            .append("import java.util.Date;\n")
+            .append("import java.util.Set;\n")
+            .append("import javax.persistence.*;\n")
+            .append("@Entity(name = \"").append(name).append("\")\n")
+            .append("@Table(name = \"").append(table).append("\")\n")
+            .append("public class ").append(name).append(" {\n")
+            .append("  @Id\n")
+            .append("  @GeneratedValue(strategy = GenerationType.SEQUENCE,")
+            .append(" generator = \"").append(table).append("_seq\")\n")
+            .append("  @SequenceGenerator(name = \"").append(table)
+            .append("_seq\", sequenceName = \"").append(table)
+            .append("_seq\", allocationSize = 50)\n")
+            .append("  private Long id;\n")
+            .append("  @Version\n")
+            .append("  private int version;\n")
+            .append("  @Column(nullable = false, length = 100)\n")
+            .append("  private String name;\n")
+            .append("  private String description;\n")
+            .append("  @Column(precision = 19, scale = 2)\n")
+            .append("  private BigDecimal amount;\n")
+            .append("  private long counter;\n")
+            .append("  private boolean active;\n")
+            .append("  @Temporal(TemporalType.TIMESTAMP)\n")
+            .append("  private Date created;\n");
+        if (index > 0) {
+            sb.append("  @ManyToOne(fetch = FetchType.LAZY)\n")
+                .append("  private ").append(entityName(index - 1))
+                .append(" parent;\n");
+        }
+        if (index < count - 1) {
+            sb.append("  @OneToMany(mappedBy = \"parent\")\n")
+                .append("  private Set<").append(entityName(index + 1))
+                .append("> children;\n");
+        }
+        return sb.append("}\n").toString();
+    }
+
+}
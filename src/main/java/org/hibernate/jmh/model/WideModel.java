@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.jmh.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javassist.CtClass;
+import javassist.CtField;
+import org.hibernate.bytecode.enhance.spi.DefaultEnhancementContext;
+import org.hibernate.bytecode.enhance.spi.Enhancer;
+
+/**
+ * A model of wide annotated entity classes generated and compiled at
+ * runtime, optionally enhanced with the {@link Enhancer} of Hibernate like
+ * the {@code hibernate-enhance-maven-plugin} does at build time. Every entity
+ * has an assigned {@code Long} id and {@code properties} basic properties
+ * {@code p00}, {@code p01}, ... of the types {@link #PROPERTY_TYPES} in turn,
+ * accessed by field, with public getters and setters.
+ *
+ * <p>The enhancement is the one of the plugin with
+ * {@code enableDirtyTracking} only: the classes implement
+ * {@code ManagedEntity} and {@code SelfDirtinessTracker}, but are not
+ * enhanced for lazy loading.
+ *
+ * <p>The classes are compiled with the system Java compiler, so a JDK is
+ * needed, and loaded by {@link #getClassLoader()}. {@link #close()} deletes
+ * them.
+ *
+ * @author Andrej Golovnin
+ */
+public final class WideModel implements Closeable {
+
+    /**
+     * The types of the properties, the first property is a {@code String}.
+     */
+    public static final List<Class<?>> PROPERTY_TYPES =
+        Collections.unmodifiableList(Arrays.asList(String.class, long.class,
+            BigDecimal.class, int.class, Date.class, boolean.class));
+
+    private static final String PACKAGE =
+        "org.hibernate.jmh.model.wide";
+
+    private final CompiledClasses classes;
+
+    private WideModel(CompiledClasses classes) {
+        this.classes = classes;
+    }
+
+    /**
+     * Generates and compiles a model of {@code entities} classes with
+     * {@code properties} properties each and enhances them, if
+     * {@code enhance} is {@code true}.
+     */
+    public static WideModel compile(int entities, int properties,
+        boolean enhance) throws IOException
+    {
+        Map<String, String> sources = new LinkedHashMap<>();
+        for (int i = 0; i < entities; i++) {
+            sources.put(PACKAGE + "." + entityName(i),
+                entitySource(i, properties));
+        }
+        return new WideModel(CompiledClasses.compile(sources,
+            enhance ? WideModel::enhance : null));
+    }
+
+    public ClassLoader getClassLoader() {
+        return classes.getClassLoader();
+    }
+
+    public List<Class<?>> getEntityClasses() {
+        return classes.getClasses();
+    }
+
+    /**
+     * @return the name of the property and of its column
+     */
+    public static String propertyName(int index) {
+        return String.format("p%02d", index);
+    }
+
+    /**
+     * @return the type of the property
+     */
+    public static Class<?> propertyType(int index) {
+        return PROPERTY_TYPES.get(index % PROPERTY_TYPES.size());
+    }
+
+    @Override
+    public void close() throws IOException {
+        classes.close();
+    }
+
+    private static byte[] enhance(String className, byte[] bytecode,
+        ClassLoader classLoader)
+    {
+        return new Enhancer(new DefaultEnhancementContext() {
+
+            @Override
+            public ClassLoader getLoadingClassLoader() {
+                return classLoader;
+            }
+
+            @Override
+            public boolean hasLazyLoadableAttributes(CtClass ctClass) {
+                return false;
+            }
+
+            @Override
+            public boolean isLazyLoadable(CtField field) {
+                return false;
+            }
+
+        }).enhance(className, bytecode);
+    }
+
+    private static String entityName(int index) {
+        return String.format("WideEntity%02d", index);
+    }
+
+    private static String entitySource(int index, int properties) {
+        String name = entityName(index);
+        StringBuilder sb = new StringBuilder()
+            .append("package ").append(PACKAGE).append(";\n")
+            .append("import javax.persistence.*;\n")
+            .append("@Entity(name = \"").append(name).append("\")\n")
+            .append("@Table(name = \"").append(name.toLowerCase())
+            .append("\")\n")
+            .append("public class ").append(name).append(" {\n")
+            .append("  @Id\n")
+            .append("  private Long id;\n");
+        for (int i = 0; i < properties; i++) {
+            Class<?> type = propertyType(i);
+            if (type == BigDecimal.class) {
+                sb.append("  @Column(precision = 19, scale = 2)\n");
+            } else if (type == Date.class) {
+                sb.append("  @Temporal(TemporalType.TIMESTAMP)\n");
+            }
+            sb.append("  private ").append(type.getName()).append(' ')
+                .append(propertyName(i)).append(";\n");
+        }
+        sb.append("  public Long getId() { return id; }\n")
+            .append("  public void setId(Long id) { this.id = id; }\n");
+        for (int i = 0; i < properties; i++) {
+            String type = propertyType(i).getName();
+            String property = propertyName(i);
+            String accessor = Character.toUpperCase(property.charAt(0))
+                + property.substring(1);
+            sb.append("  public ").append(type).append(" get")
+                .append(accessor).append("() { return ").append(property)
+                .append("; }\n")
+                .append("  public void set").append(accessor).append('(')
+                .append(type).append(" value) { this.").append(property)
+                .append(" = value; }\n");
+        }
+        return sb.append("}\n").toString();
+    }
+
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.loader.entity;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.Cacheable;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+import org.hibernate.Session;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.jmh.cache.LocalRegionFactory;
+import org.hibernate.jmh.jdbc.MockConnectionProvider;
+import org.hibernate.jmh.jdbc.MockDatabase;
+import org.hibernate.jmh.jdbc.MockQuery;
+import org.hibernate.jmh.jdbc.MockResultProvider;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.persister.entity.PaddedMultiLoadSingleTableEntityPersister;
+import org.hibernate.persister.internal.StandardPersisterClassResolver;
+import org.hibernate.persister.spi.PersisterClassResolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@code Session#byMultipleIds(Class)} with session checking
+ * enabled. Every invocation loads between 1 and {@code ids} entities in
+ * a new session, the numbers of ids are spread log-uniformly like the
+ * requests of a REST endpoint. The database is a {@link MockDatabase}
+ * without latency.
+ *
+ * <p>{@code cached} selects where the entities with an even id are found:
+ * <ul>
+ *     <li>{@code NONE} - nowhere, all entities are loaded from the
+ *     database.</li>
+ *     <li>{@code SESSION} - in the persistence context, loaded before the
+ *     invocation.</li>
+ *     <li>{@code SECOND_LEVEL_CACHE} - in the second level cache
+ *     ({@link LocalRegionFactory}).</li>
+ * </ul>
+ *
+ * <p>{@code loader}:
+ * <ul>
+ *     <li>{@code DYNAMIC} - {@link DynamicBatchingEntityLoaderBuilder}, the
+ *     multi-load of Hibernate.</li>
+ *     <li>{@code PADDED} - {@link PaddedMultiLoader}, which pads the IN-lists
+ *     to powers of two and reads the second level cache.</li>
+ * </ul>
+ *
+ * <p>The JDBC statistics and the number of distinct queries, i.e. the
+ * entries of the statement caches of the JDBC driver and of the database,
+ * are printed at the end of every trial.
+ *
+ * @author Andrej Golovnin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10, time = 3)
+@Measurement(iterations = 10, time = 3)
+@State(Scope.Benchmark)
+public class MultiLoadBenchmark {
+
+    private static final int REQUESTS = 1024;
+
+    public enum Cached {
+        NONE, SESSION, SECOND_LEVEL_CACHE
+    }
+
+    @Param({"10", "100", "1000", "5000"})
+    private int ids;
+
+    @Param({"NONE", "SESSION", "SECOND_LEVEL_CACHE"})
+    private Cached cached;
+
+    @Param({"DYNAMIC", "PADDED"})
+    private String loader;
+
+    private MockDatabase database;
+    private SessionFactoryImplementor sessionFactory;
+    private Long[][] requests;
+    private Long[] evenIds;
+    private int request;
+
+    private Session session;
+    private Long[] requestIds;
+
+    @Setup
+    public void setup() {
+        database = new MockDatabase().addResultProvider(new ItemRows());
+        StandardServiceRegistryBuilder builder = new StandardServiceRegistryBuilder()
+            .applySetting(AvailableSettings.DIALECT, H2Dialect.class.getName())
+            .applySetting("hibernate.temp.use_jdbc_metadata_defaults", "false")
+            .applySetting(AvailableSettings.CONNECTION_PROVIDER,
+                new MockConnectionProvider(database))
+            .applySetting(AvailableSettings.USE_SECOND_LEVEL_CACHE,
+                String.valueOf(cached == Cached.SECOND_LEVEL_CACHE));
+        if (cached == Cached.SECOND_LEVEL_CACHE) {
+            builder.applySetting(AvailableSettings.CACHE_REGION_FACTORY,
+                new LocalRegionFactory());
+        }
+        if ("PADDED".equals(loader)) {
+            builder.addService(PersisterClassResolver.class,
+                new PaddedMultiLoadPersisterClassResolver());
+        }
+        StandardServiceRegistry registry = builder.build();
+        try {
+            sessionFactory = (SessionFactoryImplementor) new MetadataSources(registry)
+                .addAnnotatedClass(Item.class)
+                .buildMetadata()
+                .buildSessionFactory();
+        } catch (RuntimeException e) {
+            StandardServiceRegistryBuilder.destroy(registry);
+            throw e;
+        }
+
+        Random random = new Random(42);
+        requests = new Long[REQUESTS][];
+        for (int i = 0; i < REQUESTS; i++) {
+            int size = (int) Math.round(Math.pow(ids, random.nextDouble()));
+            requests[i] = new Long[Math.max(1, size)];
+            for (int j = 0; j < requests[i].length; j++) {
+                requests[i][j] = j + 1L;
+            }
+        }
+        evenIds = new Long[ids / 2];
+        for (int i = 0; i < evenIds.length; i++) {
+            evenIds[i] = 2L * (i + 1);
+        }
+        if (cached == Cached.SECOND_LEVEL_CACHE) {
+            try (Session session = sessionFactory.openSession()) {
+                session.byMultipleIds(Item.class).multiLoad(evenIds);
+            }
+        }
+        database.getStatistics().reset();
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.println();
+        System.out.println(database.getStatistics());
+        System.out.println("Distinct queries: "
+            + database.getDistinctQueries());
+        sessionFactory.close();
+    }
+
+    @Setup(Level.Invocation)
+    public void openSession() {
+        session = sessionFactory.openSession();
+        if (cached == Cached.SESSION) {
+            session.byMultipleIds(Item.class).multiLoad(evenIds);
+        }
+        requestIds = requests[request];
+        request = (request + 1) % REQUESTS;
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeSession() {
+        session.close();
+    }
+
+    @Benchmark
+    public List<Item> multiLoad() {
+        return session.byMultipleIds(Item.class)
+            .enableSessionCheck(true)
+            .multiLoad(requestIds);
+    }
+
+    /**
+     * Resolves {@link PaddedMultiLoadSingleTableEntityPersister} for the
+     * single table entities.
+     */
+    private static final class PaddedMultiLoadPersisterClassResolver
+        extends StandardPersisterClassResolver
+    {
+
+        @Override
+        public Class<? extends EntityPersister> singleTableEntityPersister() {
+            return PaddedMultiLoadSingleTableEntityPersister.class;
+        }
+
+    }
+
+    /**
+     * Serves a row for every distinct id a query of the items asks for.
+     */
+    private static final class ItemRows implements MockResultProvider {
+
+        @Override
+        public List<Object[]> getRows(MockQuery query) {
+            if (!query.getSql().contains(" from Item ")) {
+                return null;
+            }
+            Set<Object> itemIds = new LinkedHashSet<>();
+            for (int i = 1; i <= query.getParameterCount(); i++) {
+                itemIds.add(query.getParameter(i));
+            }
+            List<Object[]> rows = new ArrayList<>(itemIds.size());
+            Map<String, Object> values = new HashMap<>();
+            for (Object id : itemIds) {
+                long value = ((Number) id).longValue();
+                values.put("id", value);
+                values.put("name", "Item " + value);
+                values.put("price", value * 10);
+                rows.add(query.row(values));
+            }
+            return rows;
+        }
+
+    }
+
+    @Entity(name = "Item")
+    @Cacheable
+    @Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
+    public static class Item {
+
+        @Id
+        private Long id;
+
+        private String name;
+
+        private long price;
+
+    }
+
+}
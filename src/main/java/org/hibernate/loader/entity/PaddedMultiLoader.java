@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.loader.entity;
+
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.hibernate.LockMode;
+import org.hibernate.LockOptions;
+import org.hibernate.cache.spi.access.EntityRegionAccessStrategy;
+import org.hibernate.engine.spi.EntityKey;
+import org.hibernate.engine.spi.LoadQueryInfluencers;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.persister.entity.MultiLoadOptions;
+import org.hibernate.persister.entity.OuterJoinLoadable;
+
+/**
+ * Prototype of {@link DynamicBatchingEntityLoaderBuilder#multiLoad(
+ * OuterJoinLoadable, Serializable[], SharedSessionContractImplementor,
+ * MultiLoadOptions)}, which pads the IN-lists of its queries.
+ *
+ * <p>{@code DynamicBatchingEntityLoaderBuilder} renders an IN-list with
+ * exactly as many parameters as there are ids to load, so every number of
+ * ids is a statement of its own for the statement caches of the JDBC driver
+ * and of the database. Here the IN-list of a chunk is padded to the next
+ * power of two by repeating the last id, {@code n} ids need at most
+ * {@code log2(n) + 1} statements. The dialect limits the size of a chunk as
+ * before, a chunk of the maximal size is not padded.
+ *
+ * <p>{@code DynamicBatchingEntityLoaderBuilder} also builds a new loader,
+ * i.e. walks the associations and renders the SQL template, for every chunk
+ * and expands the template for every query. Here a chunk is loaded by an
+ * {@link EntityLoader} for its padded size like a batch of the legacy batch
+ * loaders. The loaders for {@code LockMode.NONE} without filters and fetch
+ * profiles are built once per size.
+ *
+ * <p>With session checking enabled the entities in the second level cache
+ * are taken from there instead of being loaded by the query.
+ *
+ * @author Andrej Golovnin
+ */
+public class PaddedMultiLoader {
+
+    private final OuterJoinLoadable persister;
+
+    private final ConcurrentMap<Integer, EntityLoader> defaultLoaders =
+        new ConcurrentHashMap<>();
+
+    public PaddedMultiLoader(OuterJoinLoadable persister) {
+        this.persister = persister;
+    }
+
+    public List<Object> multiLoad(Serializable[] ids,
+        SharedSessionContractImplementor session,
+        MultiLoadOptions loadOptions)
+    {
+        List<Object> result = new ArrayList<>(ids.length);
+        if (loadOptions.isSessionCheckingEnabled()) {
+            ids = resolveCachedEntities(ids, session, result);
+            if (ids.length == 0) {
+                return result;
+            }
+        }
+        LockOptions lockOptions = loadOptions.getLockOptions() == null
+            ? new LockOptions(LockMode.NONE)
+            : loadOptions.getLockOptions();
+        int maxBatchSize;
+        if (loadOptions.getBatchSize() != null
+            && loadOptions.getBatchSize() > 0)
+        {
+            maxBatchSize = loadOptions.getBatchSize();
+        } else {
+            maxBatchSize = session.getJdbcServices().getJdbcEnvironment()
+                .getDialect().getDefaultBatchLoadSizingStrategy()
+                .determineOptimalBatchLoadSize(
+                    persister.getIdentifierType().getColumnSpan(
+                        session.getFactory()),
+                    paddedSize(ids.length));
+        }
+        int position = 0;
+        while (position < ids.length) {
+            int size = Math.min(ids.length - position, maxBatchSize);
+            Serializable[] chunk = new Serializable[
+                Math.min(paddedSize(size), maxBatchSize)];
+            System.arraycopy(ids, position, chunk, 0, size);
+            Arrays.fill(chunk, size, chunk.length, ids[position + size - 1]);
+            List<?> batch = loader(chunk.length, lockOptions, session)
+                .loadEntityBatch(session, chunk, persister.getIdentifierType(),
+                    null, null, null, persister, lockOptions);
+            result.addAll(batch);
+            position += size;
+        }
+        return result;
+    }
+
+    /**
+     * Adds the entities of the persistence context and of the second level
+     * cache to the result and returns the ids to load.
+     */
+    private Serializable[] resolveCachedEntities(Serializable[] ids,
+        SharedSessionContractImplementor session, List<Object> result)
+    {
+        EntityRegionAccessStrategy cacheAccess =
+            persister.hasCache() && session.getCacheMode().isGetEnabled()
+                ? persister.getCacheAccessStrategy()
+                : null;
+        List<Serializable> idsToLoad = new ArrayList<>(ids.length);
+        for (Serializable id : ids) {
+            Object entity = session.getPersistenceContext()
+                .getEntity(new EntityKey(id, persister));
+            if (entity == null && cacheAccess != null) {
+                Object cacheKey = cacheAccess.generateCacheKey(id, persister,
+                    session.getFactory(), session.getTenantIdentifier());
+                if (cacheAccess.get(session, cacheKey,
+                    session.getTimestamp()) != null)
+                {
+                    entity = session.internalLoad(persister.getEntityName(),
+                        id, true, true);
+                }
+            }
+            if (entity == null) {
+                idsToLoad.add(id);
+            } else {
+                result.add(entity);
+            }
+        }
+        return idsToLoad.toArray((Serializable[]) Array.newInstance(
+            ids.getClass().getComponentType(), idsToLoad.size()));
+    }
+
+    private EntityLoader loader(int batchSize, LockOptions lockOptions,
+        SharedSessionContractImplementor session)
+    {
+        LoadQueryInfluencers influencers = session.getLoadQueryInfluencers();
+        if (lockOptions.getLockMode() != LockMode.NONE
+            || influencers.hasEnabledFilters()
+            || influencers.hasEnabledFetchProfiles()
+            || influencers.getInternalFetchProfile() != null)
+        {
+            return new EntityLoader(persister, batchSize, lockOptions,
+                session.getFactory(), influencers);
+        }
+        EntityLoader loader = defaultLoaders.get(batchSize);
+        if (loader == null) {
+            loader = defaultLoaders.computeIfAbsent(batchSize,
+                size -> new EntityLoader(persister, size, lockOptions,
+                    session.getFactory(), LoadQueryInfluencers.NONE));
+        }
+        return loader;
+    }
+
+    private static int paddedSize(int size) {
+        return size <= 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+    }
+
+}
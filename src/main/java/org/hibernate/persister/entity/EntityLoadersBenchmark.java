@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.persister.entity;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.BootstrapServiceRegistryBuilder;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.jmh.jdbc.MockConnectionProvider;
+import org.hibernate.jmh.model.GeneratedModel;
+import org.hibernate.persister.internal.LazyLoadersPersisterClassResolver;
+import org.hibernate.persister.spi.PersisterClassResolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the entity persisters creating their loaders eagerly in
+ * {@code postInstantiate()} with the persisters of
+ * {@link LazyLoadersPersisterClassResolver} creating them on the first use,
+ * for a {@link GeneratedModel} of {@code entities} classes.
+ *
+ * <ul>
+ *     <li>{@code buildSessionFactory} - the startup.</li>
+ *     <li>{@code firstLoad} - {@code Session#get()} of one entity of
+ *     {@value #FIRST_LOADS} entity classes in a new session factory, that
+ *     is the first use of their {@code LockMode.NONE} loaders.</li>
+ * </ul>
+ *
+ * <p>The setup prints the heap retained by the session factory per entity
+ * persister. Run it with {@code -prof gc} for the allocations of the
+ * startup.
+ *
+ * @author Andrej Golovnin
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@State(Scope.Benchmark)
+public class EntityLoadersBenchmark {
+
+    private static final int FIRST_LOADS = 100;
+
+    @Param({"600"})
+    private int entities;
+
+    @Param({"eager", "lazy"})
+    private String loaders;
+
+    private GeneratedModel model;
+    private StandardServiceRegistry registry;
+    private Metadata metadata;
+    private SessionFactory sessionFactory;
+    private SessionFactory loadSessionFactory;
+
+    @Setup
+    public void setup() throws IOException {
+        model = GeneratedModel.compile(entities);
+        printRetainedHeap();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        model.close();
+    }
+
+    @Setup(Level.Iteration)
+    public void buildMetadata() {
+        registry = buildServiceRegistry();
+        metadata = buildMetadata(registry);
+        loadSessionFactory = metadata.buildSessionFactory();
+    }
+
+    @TearDown(Level.Iteration)
+    public void close() {
+        if (sessionFactory != null) {
+            sessionFactory.close();
+            sessionFactory = null;
+        }
+        loadSessionFactory.close();
+        StandardServiceRegistryBuilder.destroy(registry);
+    }
+
+    @Benchmark
+    public SessionFactory buildSessionFactory() {
+        sessionFactory = metadata.buildSessionFactory();
+        return sessionFactory;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FIRST_LOADS)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void firstLoad(Blackhole bh) {
+        List<Class<?>> entityClasses = model.getEntityClasses();
+        try (Session session = loadSessionFactory.openSession()) {
+            for (int i = 0; i < FIRST_LOADS; i++) {
+                bh.consume(session.get(
+                    entityClasses.get(i * entities / FIRST_LOADS), 1L));
+            }
+        }
+    }
+
+    private void printRetainedHeap() {
+        StandardServiceRegistry registry = buildServiceRegistry();
+        try {
+            Metadata metadata = buildMetadata(registry);
+            long before = usedHeap();
+            SessionFactory factory = metadata.buildSessionFactory();
+            long retained = usedHeap() - before;
+            factory.close();
+            System.out.println();
+            System.out.println("Retained heap per entity persister ("
+                + loaders + " loaders): " + retained / entities + " bytes");
+        } finally {
+            StandardServiceRegistryBuilder.destroy(registry);
+        }
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage()
+            .getUsed();
+    }
+
+    private Metadata buildMetadata(StandardServiceRegistry registry) {
+        MetadataSources sources = new MetadataSources(registry);
+        for (Class<?> entityClass : model.getEntityClasses()) {
+            sources.addAnnotatedClass(entityClass);
+        }
+        return sources.buildMetadata();
+    }
+
+    private StandardServiceRegistry buildServiceRegistry() {
+        StandardServiceRegistryBuilder builder =
+            new StandardServiceRegistryBuilder(
+                new BootstrapServiceRegistryBuilder()
+                    .applyClassLoader(model.getClassLoader())
+                    .build())
+            .applySetting(AvailableSettings.DIALECT, H2Dialect.class.getName())
+            .applySetting("hibernate.temp.use_jdbc_metadata_defaults", "false")
+            .applySetting(AvailableSettings.CONNECTION_PROVIDER,
+                new MockConnectionProvider());
+        if ("lazy".equals(loaders)) {
+            builder.addService(PersisterClassResolver.class,
+                new LazyLoadersPersisterClassResolver());
+        }
+        return builder.build();
+    }
+
+}
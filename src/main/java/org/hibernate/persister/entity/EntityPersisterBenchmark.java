@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.persister.entity;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+import org.hibernate.LockMode;
+import org.hibernate.Session;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.jmh.jdbc.MockConnection;
+import org.hibernate.jmh.jdbc.MockDatabase;
+import org.hibernate.jmh.jdbc.MockDriver;
+import org.hibernate.jmh.jdbc.MockQuery;
+import org.hibernate.jmh.jdbc.MockResultProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures {@code load()}, {@code insert()} and {@code update()} of
+ * {@link AbstractEntityPersister} end to end: SQL generation, parameter
+ * binding and the hydration of the result set. The session factory is a real
+ * one, booted with the connection pool built into Hibernate against a
+ * {@link MockDatabase} through {@link MockDriver}. The database serves canned
+ * rows and costs nothing, unless {@code latency} (in microseconds per round
+ * trip) is set.
+ *
+ * <p>{@code jdbcSelect} executes the SQL of the entity loader directly on a
+ * mock connection and is the baseline for {@code load}: the difference is
+ * the overhead of Hibernate.
+ *
+ * @author Andrej Golovnin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10, time = 3)
+@Measurement(iterations = 10, time = 3)
+@State(Scope.Benchmark)
+public class EntityPersisterBenchmark {
+
+    private static final String DATABASE_NAME = "EntityPersisterBenchmark";
+
+    private static final int IDS = 1024;
+
+    @Param({"0", "50"})
+    private long latency;
+
+    private MockDatabase database;
+    private PersonRows personRows;
+    private SessionFactoryImplementor sessionFactory;
+    private Session session;
+    private EntityPersister persister;
+    private Person person;
+    private Object[] fields;
+    private Connection connection;
+    private String selectSql;
+    private int columnCount;
+    private long id;
+
+    @Setup
+    public void setup() throws SQLException {
+        personRows = new PersonRows();
+        database = new MockDatabase()
+            .addResultProvider(personRows)
+            .setLatency(latency, TimeUnit.MICROSECONDS);
+        sessionFactory = buildSessionFactory(
+            MockDriver.register(DATABASE_NAME, database));
+        session = sessionFactory.openSession();
+        session.beginTransaction();
+        persister = sessionFactory.getMetamodel().entityPersister(Person.class);
+        person = new Person(1L);
+        fields = persister.getPropertyValues(person);
+
+        // Executes the loader once to get its SQL for the JDBC baseline.
+        session.get(Person.class, 1L);
+        session.clear();
+        selectSql = personRows.selectSql;
+        columnCount = personRows.columnCount;
+        connection = new MockConnection(database);
+        database.getStatistics().reset();
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        System.out.println(database.getStatistics());
+        connection.close();
+        session.getTransaction().commit();
+        session.close();
+        sessionFactory.close();
+        MockDriver.deregister(DATABASE_NAME);
+    }
+
+    @Benchmark
+    public Object load() {
+        Object entity = persister.load(nextId(), null, LockMode.NONE,
+            (SharedSessionContractImplementor) session);
+        session.clear();
+        return entity;
+    }
+
+    @Benchmark
+    public Person sessionGet() {
+        Person entity = session.get(Person.class, nextId());
+        session.clear();
+        return entity;
+    }
+
+    @Benchmark
+    public void insert() {
+        persister.insert(nextId(), fields, person,
+            (SharedSessionContractImplementor) session);
+    }
+
+    @Benchmark
+    public void update() {
+        persister.update(nextId(), fields, null, false, null, null, person,
+            null, (SharedSessionContractImplementor) session);
+    }
+
+    @Benchmark
+    public void jdbcSelect(Blackhole bh) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(selectSql)) {
+            ps.setLong(1, nextId());
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    for (int i = 1; i <= columnCount; i++) {
+                        bh.consume(rs.getObject(i));
+                    }
+                }
+            }
+        }
+    }
+
+    private Long nextId() {
+        long i = id;
+        id = i + 1 == IDS ? 0 : i + 1;
+        return i + 1;
+    }
+
+    private static SessionFactoryImplementor buildSessionFactory(String url) {
+        StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
+            .applySetting(AvailableSettings.DIALECT, H2Dialect.class.getName())
+            .applySetting("hibernate.temp.use_jdbc_metadata_defaults", "false")
+            .applySetting(AvailableSettings.DRIVER, MockDriver.class.getName())
+            .applySetting(AvailableSettings.URL, url)
+            .build();
+        try {
+            return (SessionFactoryImplementor) new MetadataSources(registry)
+                .addAnnotatedClass(Person.class)
+                .buildMetadata()
+                .buildSessionFactory();
+        } catch (RuntimeException e) {
+            StandardServiceRegistryBuilder.destroy(registry);
+            throw e;
+        }
+    }
+
+    /**
+     * Serves one row for every select from the {@code Person} table. The
+     * row is created once per SQL string from {@link #VALUES}, only the
+     * identifier is taken from the first parameter of the query.
+     */
+    static final class PersonRows implements MockResultProvider {
+
+        private static final Map<String, Object> VALUES = new HashMap<>();
+
+        static {
+            VALUES.put("firstName", "John");
+            VALUES.put("lastName", "Doe");
+            VALUES.put("email", "john.doe@example.com");
+            VALUES.put("age", 42);
+            VALUES.put("salary", new BigDecimal("4200.00"));
+            VALUES.put("birthday", java.sql.Date.valueOf("1974-01-01"));
+        }
+
+        private final ConcurrentMap<String, CannedRow> rowsBySql =
+            new ConcurrentHashMap<>();
+
+        volatile String selectSql;
+        volatile int columnCount;
+
+        @Override
+        public List<Object[]> getRows(MockQuery query) {
+            String sql = query.getSql();
+            CannedRow cannedRow = rowsBySql.get(sql);
+            if (cannedRow == null) {
+                if (!sql.contains(" from Person ")) {
+                    return null;
+                }
+                cannedRow = new CannedRow(query.row(VALUES),
+                    query.indexOfColumn("id") - 1);
+                rowsBySql.put(sql, cannedRow);
+                selectSql = sql;
+                columnCount = cannedRow.values.length;
+            }
+            Object[] row = cannedRow.values.clone();
+            row[cannedRow.idIndex] = query.getParameter(1);
+            return Collections.singletonList(row);
+        }
+
+        private static final class CannedRow {
+
+            final Object[] values;
+            final int idIndex;
+
+            CannedRow(Object[] values, int idIndex) {
+                this.values = values;
+                this.idIndex = idIndex;
+            }
+
+        }
+
+    }
+
+    @Entity(name = "Person")
+    public static class Person {
+
+        @Id
+        private Long id;
+
+        private String firstName;
+
+        private String lastName;
+
+        private String email;
+
+        private int age;
+
+        private BigDecimal salary;
+
+        @Temporal(TemporalType.DATE)
+        private Date birthday;
+
+        public Person() {
+        }
+
+        Person(Long id) {
+            this.id = id;
+            this.firstName = "John";
+            this.lastName = "Doe";
+            this.email = "john.doe@example.com";
+            this.age = 42;
+            this.salary = new BigDecimal("4200.00");
+            this.birthday = java.sql.Date.valueOf("1974-01-01");
+        }
+
+    }
+
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.persister.entity;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+import org.hibernate.Session;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.bytecode.enhance.spi.LazyPropertyInitializer;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.tuple.NonIdentifierAttribute;
+import org.hibernate.type.Type;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the flush time dirty check of {@link AbstractEntityPersister}
+ * for an entity with 48 properties. Every operation checks one entity,
+ * {@code dirtyPercent} is the percentage of entities with modified
+ * properties.
+ *
+ * <p>{@code TypeHelper#findDirty()} returns {@code null} for clean entities,
+ * but allocates two {@code int[]} for every dirty entity, the first one
+ * with the length of all properties. {@link DirtyMask} is a prototype which
+ * writes the dirty properties into a reusable bit mask instead and never
+ * allocates. Run the benchmark with {@code -prof gc} to see the difference.
+ *
+ * @author Andrej Golovnin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10, time = 3)
+@Measurement(iterations = 10, time = 3)
+@State(Scope.Benchmark)
+public class FindDirtyBenchmark {
+
+    private static final int ENTITIES = 1000;
+
+    /**
+     * Number of modified properties of a dirty entity.
+     */
+    private static final int MODIFIED_PROPERTIES = 3;
+
+    @Param({"0", "10", "50", "100"})
+    private int dirtyPercent;
+
+    private SessionFactoryImplementor sessionFactory;
+    private Session session;
+    private AbstractEntityPersister persister;
+    private WideEntity[] entities;
+    private Object[][] loadedStates;
+    private Object[][] currentStates;
+    private DirtyMask dirtyMask;
+
+    @Setup
+    public void setup() {
+        sessionFactory = buildSessionFactory();
+        session = sessionFactory.openSession();
+        persister = (AbstractEntityPersister) sessionFactory.getMetamodel()
+            .entityPersister(WideEntity.class);
+        Type[] types = persister.getPropertyTypes();
+        Random random = new Random(42L);
+        entities = new WideEntity[ENTITIES];
+        loadedStates = new Object[ENTITIES][];
+        currentStates = new Object[ENTITIES][];
+        for (int i = 0; i < ENTITIES; i++) {
+            Object[] loadedState = new Object[types.length];
+            for (int j = 0; j < types.length; j++) {
+                loadedState[j] = value(types[j], i * types.length + j);
+            }
+            // Unmodified properties refer to the same instances as the
+            // loaded state, just like after Type#deepCopy() for immutable
+            // values.
+            Object[] currentState = loadedState.clone();
+            if (i * 100 < dirtyPercent * ENTITIES) {
+                for (int k = 0; k < MODIFIED_PROPERTIES; k++) {
+                    int j = random.nextInt(types.length);
+                    currentState[j] = value(types[j], -(i * types.length + j) - 1);
+                }
+            }
+            entities[i] = new WideEntity();
+            loadedStates[i] = loadedState;
+            currentStates[i] = currentState;
+        }
+        dirtyMask = new DirtyMask(types.length);
+    }
+
+    @TearDown
+    public void tearDown() {
+        session.close();
+        sessionFactory.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ENTITIES)
+    public int findDirty() {
+        SharedSessionContractImplementor s =
+            (SharedSessionContractImplementor) session;
+        int dirty = 0;
+        for (int i = 0; i < ENTITIES; i++) {
+            int[] dirtyProperties = persister.findDirty(
+                currentStates[i], loadedStates[i], entities[i], s);
+            if (dirtyProperties != null) {
+                dirty += dirtyProperties.length;
+            }
+        }
+        return dirty;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ENTITIES)
+    public int dirtyMaskFindDirty() {
+        SharedSessionContractImplementor s =
+            (SharedSessionContractImplementor) session;
+        int dirty = 0;
+        for (int i = 0; i < ENTITIES; i++) {
+            if (dirtyMask.findDirty(persister, currentStates[i],
+                loadedStates[i], entities[i], s))
+            {
+                dirty += dirtyMask.cardinality();
+            }
+        }
+        return dirty;
+    }
+
+    private static Object value(Type type, int seed) {
+        Class<?> returnedClass = type.getReturnedClass();
+        if (returnedClass == String.class) {
+            return "Value " + seed;
+        } else if (returnedClass == Integer.class) {
+            return seed;
+        } else if (returnedClass == Long.class) {
+            return seed * 1000L;
+        } else if (returnedClass == BigDecimal.class) {
+            return BigDecimal.valueOf(seed, 2);
+        } else if (returnedClass == Boolean.class) {
+            return seed % 2 == 0;
+        } else if (Date.class.isAssignableFrom(returnedClass)) {
+            return new Date(1000000000000L + seed);
+        }
+        throw new IllegalArgumentException(returnedClass.getName());
+    }
+
+    private static SessionFactoryImplementor buildSessionFactory() {
+        StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
+            .applySetting(AvailableSettings.DIALECT, H2Dialect.class.getName())
+            .applySetting("hibernate.temp.use_jdbc_metadata_defaults", "false")
+            .build();
+        try {
+            return (SessionFactoryImplementor) new MetadataSources(registry)
+                .addAnnotatedClass(WideEntity.class)
+                .buildMetadata()
+                .buildSessionFactory();
+        } catch (RuntimeException e) {
+            StandardServiceRegistryBuilder.destroy(registry);
+            throw e;
+        }
+    }
+
+    /**
+     * Reusable result of a dirty check. {@link #findDirty} follows the
+     * semantics of {@code TypeHelper#findDirty()}, but sets a bit for every
+     * dirty property instead of collecting the indexes in a new array.
+     * An instance must not be shared between threads.
+     */
+    public static final class DirtyMask {
+
+        private final long[] words;
+        private int cardinality;
+
+        public DirtyMask(int propertySpan) {
+            words = new long[(propertySpan + 63) >>> 6];
+        }
+
+        public boolean findDirty(AbstractEntityPersister persister,
+            Object[] currentState, Object[] previousState, Object entity,
+            SharedSessionContractImplementor session)
+        {
+            NonIdentifierAttribute[] properties =
+                persister.getEntityMetamodel().getProperties();
+            boolean[][] includeColumns = persister.getPropertyColumnUpdateable();
+            boolean anyUninitializedProperties =
+                persister.hasUninitializedLazyProperties(entity);
+            clear();
+            for (int i = 0; i < properties.length; i++) {
+                boolean dirty =
+                    currentState[i] != LazyPropertyInitializer.UNFETCHED_PROPERTY
+                    && properties[i].isDirtyCheckable(anyUninitializedProperties)
+                    && properties[i].getType().isDirty(previousState[i],
+                        currentState[i], includeColumns[i], session);
+                if (dirty) {
+                    words[i >>> 6] |= 1L << i;
+                    cardinality++;
+                }
+            }
+            return cardinality > 0;
+        }
+
+        public boolean isDirty(int property) {
+            return (words[property >>> 6] & (1L << property)) != 0;
+        }
+
+        public int cardinality() {
+            return cardinality;
+        }
+
+        /**
+         * @return the index of the next dirty property starting with
+         *         {@code fromProperty} or {@code -1}
+         */
+        public int nextDirty(int fromProperty) {
+            int u = fromProperty >>> 6;
+            if (u >= words.length) {
+                return -1;
+            }
+            long word = words[u] & (-1L << fromProperty);
+            while (true) {
+                if (word != 0) {
+                    return (u << 6) + Long.numberOfTrailingZeros(word);
+                }
+                if (++u == words.length) {
+                    return -1;
+                }
+                word = words[u];
+            }
+        }
+
+        private void clear() {
+            if (cardinality > 0) {
+                for (int i = 0; i < words.length; i++) {
+                    words[i] = 0L;
+                }
+                cardinality = 0;
+            }
+        }
+
+    }
+
+    @Entity
+    public static class WideEntity {
+
+        @Id
+        private Long id;
+
+        private String string01;
+        private String string02;
+        private String string03;
+        private String string04;
+        private String string05;
+        private String string06;
+        private String string07;
+        private String string08;
+        private String string09;
+        private String string10;
+        private String string11;
+        private String string12;
+        private String string13;
+        private String string14;
+        private String string15;
+        private String string16;
+        private Integer integer01;
+        private Integer integer02;
+        private Integer integer03;
+        private Integer integer04;
+        private Integer integer05;
+        private Integer integer06;
+        private Integer integer07;
+        private Integer integer08;
+        private Long long01;
+        private Long long02;
+        private Long long03;
+        private Long long04;
+        private Long long05;
+        private Long long06;
+        private Long long07;
+        private Long long08;
+        private BigDecimal decimal01;
+        private BigDecimal decimal02;
+        private BigDecimal decimal03;
+        private BigDecimal decimal04;
+        private BigDecimal decimal05;
+        private BigDecimal decimal06;
+        private BigDecimal decimal07;
+        private BigDecimal decimal08;
+        private Boolean flag01;
+        private Boolean flag02;
+        private Boolean flag03;
+        private Boolean flag04;
+        private Date date01;
+        private Date date02;
+        private Date date03;
+        private Date date04;
+    }
+
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.persister.entity;
+
+import java.util.AbstractMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.hibernate.LockMode;
+import org.hibernate.engine.spi.CascadingActions;
+import org.hibernate.loader.entity.CascadeEntityLoader;
+import org.hibernate.loader.entity.UniqueEntityLoader;
+
+/**
+ * The loaders of an {@link AbstractEntityPersister} by lock mode and by
+ * internal fetch profile, created on the first use instead of eagerly by
+ * {@code AbstractEntityPersister#createLoaders()}.
+ *
+ * <p>The map answers {@link #get(Object)} for the keys filled by
+ * {@code createLoaders()}: every {@link LockMode} except
+ * {@code LockMode.WRITE} and the {@code merge} and {@code refresh}
+ * profiles. A loader is created once under the lock of the map, reads of
+ * created loaders do not lock.
+ *
+ * @author Andrej Golovnin
+ */
+final class LazyEntityLoaders extends AbstractMap<Object, UniqueEntityLoader> {
+
+    private static final LockMode[] LOCK_MODES = LockMode.values();
+
+    private static final String MERGE = "merge";
+    private static final String REFRESH = "refresh";
+
+    private static final int MERGE_INDEX = LOCK_MODES.length;
+    private static final int REFRESH_INDEX = LOCK_MODES.length + 1;
+
+    private final AbstractEntityPersister persister;
+    private final AtomicReferenceArray<UniqueEntityLoader> loaders =
+        new AtomicReferenceArray<>(LOCK_MODES.length + 2);
+
+    LazyEntityLoaders(AbstractEntityPersister persister) {
+        this.persister = persister;
+    }
+
+    @Override
+    public UniqueEntityLoader get(Object key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        UniqueEntityLoader loader = loaders.get(index);
+        if (loader == null) {
+            synchronized (this) {
+                loader = loaders.get(index);
+                if (loader == null) {
+                    loader = create(index);
+                    loaders.set(index, loader);
+                }
+            }
+        }
+        return loader;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Returns the created loaders.
+     */
+    @Override
+    public Set<Entry<Object, UniqueEntityLoader>> entrySet() {
+        Map<Object, UniqueEntityLoader> created = new LinkedHashMap<>();
+        for (int i = 0; i < loaders.length(); i++) {
+            UniqueEntityLoader loader = loaders.get(i);
+            if (loader != null) {
+                created.put(keyOf(i), loader);
+            }
+        }
+        return created.entrySet();
+    }
+
+    private UniqueEntityLoader create(int index) {
+        if (index == MERGE_INDEX) {
+            return new CascadeEntityLoader(persister, CascadingActions.MERGE,
+                persister.getFactory());
+        }
+        if (index == REFRESH_INDEX) {
+            return new CascadeEntityLoader(persister,
+                CascadingActions.REFRESH, persister.getFactory());
+        }
+        LockMode lockMode = LOCK_MODES[index];
+        switch (lockMode) {
+            case NONE:
+            case READ:
+            case OPTIMISTIC:
+            case OPTIMISTIC_FORCE_INCREMENT:
+                return persister.createEntityLoader(lockMode);
+            case UPGRADE:
+            case UPGRADE_NOWAIT:
+            case UPGRADE_SKIPLOCKED:
+            case FORCE:
+            case PESSIMISTIC_READ:
+            case PESSIMISTIC_WRITE:
+            case PESSIMISTIC_FORCE_INCREMENT:
+                return isForUpdateDisabled()
+                    ? get(LockMode.READ)
+                    : persister.createEntityLoader(lockMode);
+            default:
+                // createLoaders() has no loader for LockMode.WRITE.
+                return null;
+        }
+    }
+
+    /**
+     * As in {@code createLoaders()}: the outer joins to the subclass tables
+     * cannot be locked with {@code for update}.
+     */
+    private boolean isForUpdateDisabled() {
+        return persister.getSubclassTableSpan() > 1
+            && persister.hasSubclasses()
+            && !persister.getFactory().getJdbcServices().getJdbcEnvironment()
+                .getDialect().supportsOuterJoinForUpdate();
+    }
+
+    private static int indexOf(Object key) {
+        if (key instanceof LockMode) {
+            return ((LockMode) key).ordinal();
+        }
+        if (MERGE.equals(key)) {
+            return MERGE_INDEX;
+        }
+        if (REFRESH.equals(key)) {
+            return REFRESH_INDEX;
+        }
+        return -1;
+    }
+
+    private static Object keyOf(int index) {
+        if (index == MERGE_INDEX) {
+            return MERGE;
+        }
+        if (index == REFRESH_INDEX) {
+            return REFRESH;
+        }
+        return LOCK_MODES[index];
+    }
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.persister.entity;
+
+import java.util.Map;
+
+import org.hibernate.HibernateException;
+import org.hibernate.cache.spi.access.EntityRegionAccessStrategy;
+import org.hibernate.cache.spi.access.NaturalIdRegionAccessStrategy;
+import org.hibernate.mapping.PersistentClass;
+import org.hibernate.persister.spi.PersisterCreationContext;
+
+/**
+ * {@link JoinedSubclassEntityPersister}, which creates its loaders on the first
+ * use, see {@link LazyEntityLoaders}.
+ *
+ * @author Andrej Golovnin
+ */
+public class LazyLoadersJoinedSubclassEntityPersister
+    extends JoinedSubclassEntityPersister
+{
+
+    private final LazyEntityLoaders loaders = new LazyEntityLoaders(this);
+
+    public LazyLoadersJoinedSubclassEntityPersister(
+        PersistentClass persistentClass,
+        EntityRegionAccessStrategy cacheAccessStrategy,
+        NaturalIdRegionAccessStrategy naturalIdRegionAccessStrategy,
+        PersisterCreationContext creationContext) throws HibernateException
+    {
+        super(persistentClass, cacheAccessStrategy,
+            naturalIdRegionAccessStrategy, creationContext);
+    }
+
+    @Override
+    protected void createLoaders() {
+        // Created on the first use.
+    }
+
+    @Override
+    protected Map getLoaders() {
+        return loaders;
+    }
+
+}
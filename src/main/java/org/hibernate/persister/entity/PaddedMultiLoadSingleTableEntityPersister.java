@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.persister.entity;
+
+import java.io.Serializable;
+import java.util.List;
+
+import org.hibernate.HibernateException;
+import org.hibernate.cache.spi.access.EntityRegionAccessStrategy;
+import org.hibernate.cache.spi.access.NaturalIdRegionAccessStrategy;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.loader.entity.PaddedMultiLoader;
+import org.hibernate.mapping.PersistentClass;
+import org.hibernate.persister.spi.PersisterCreationContext;
+
+/**
+ * {@link SingleTableEntityPersister}, which loads multiple entities with
+ * {@link PaddedMultiLoader}.
+ *
+ * @author Andrej Golovnin
+ */
+public class PaddedMultiLoadSingleTableEntityPersister
+    extends SingleTableEntityPersister
+{
+
+    private final PaddedMultiLoader multiLoader = new PaddedMultiLoader(this);
+
+    public PaddedMultiLoadSingleTableEntityPersister(
+        PersistentClass persistentClass,
+        EntityRegionAccessStrategy cacheAccessStrategy,
+        NaturalIdRegionAccessStrategy naturalIdRegionAccessStrategy,
+        PersisterCreationContext creationContext) throws HibernateException
+    {
+        super(persistentClass, cacheAccessStrategy,
+            naturalIdRegionAccessStrategy, creationContext);
+    }
+
+    @Override
+    public List multiLoad(Serializable[] ids,
+        SharedSessionContractImplementor session,
+        MultiLoadOptions loadOptions)
+    {
+        return multiLoader.multiLoad(ids, session, loadOptions);
+    }
+
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.persister.internal;
+
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.persister.entity.LazyLoadersJoinedSubclassEntityPersister;
+import org.hibernate.persister.entity.LazyLoadersSingleTableEntityPersister;
+import org.hibernate.persister.entity.LazyLoadersUnionSubclassEntityPersister;
+import org.hibernate.persister.spi.PersisterClassResolver;
+
+/**
+ * {@link PersisterClassResolver}, which resolves the entity persisters
+ * creating their loaders on the first use. Install it with
+ * {@code StandardServiceRegistryBuilder#addService(Class, Service)}.
+ *
+ * @author Andrej Golovnin
+ */
+public class LazyLoadersPersisterClassResolver
+    extends StandardPersisterClassResolver
+{
+
+    @Override
+    public Class<? extends EntityPersister> singleTableEntityPersister() {
+        return LazyLoadersSingleTableEntityPersister.class;
+    }
+
+    @Override
+    public Class<? extends EntityPersister> joinedSubclassEntityPersister() {
+        return LazyLoadersJoinedSubclassEntityPersister.class;
+    }
+
+    @Override
+    public Class<? extends EntityPersister> unionSubclassEntityPersister() {
+        return LazyLoadersUnionSubclassEntityPersister.class;
+    }
+
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.persister.internal;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.hibernate.boot.registry.StandardServiceInitiator;
+import org.hibernate.cache.spi.access.CollectionRegionAccessStrategy;
+import org.hibernate.cache.spi.access.EntityRegionAccessStrategy;
+import org.hibernate.cache.spi.access.NaturalIdRegionAccessStrategy;
+import org.hibernate.engine.spi.CacheImplementor;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.mapping.Collection;
+import org.hibernate.mapping.PersistentClass;
+import org.hibernate.persister.collection.CollectionPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.persister.spi.PersisterCreationContext;
+import org.hibernate.persister.spi.PersisterFactory;
+import org.hibernate.service.spi.ServiceRegistryAwareService;
+import org.hibernate.service.spi.ServiceRegistryImplementor;
+
+/**
+ * Prototype of a {@link PersisterFactory}, which constructs the persisters
+ * of a session factory on a fork-join pool.
+ *
+ * <p>{@code MetamodelImpl#initialize} asks for the persisters one by one.
+ * On the request for the first entity persister all entity persisters of
+ * the metadata are submitted to the pool, on the request for the first
+ * collection persister, i.e. after all entity persisters are registered,
+ * all collection persisters. Every request then waits for its persister.
+ * The constructors build the entity metamodels, the tuplizers and proxy
+ * factories, the property mappings and the SQL of the collection
+ * persisters. {@code postInstantiate()}, which generates the SQL and the
+ * loaders of the entity persisters, is still called by
+ * {@code MetamodelImpl} in its order on the calling thread.
+ *
+ * <p>The cache access strategies are determined on the calling thread
+ * before the persisters are submitted. A persister requested with other
+ * strategies is constructed on the calling thread.
+ *
+ * <p>Install it with {@link #INITIATOR}, {@link #PARALLELISM} sets the
+ * number of threads.
+ *
+ * @author Andrej Golovnin
+ */
+public class ParallelPersisterFactory
+    implements PersisterFactory, ServiceRegistryAwareService
+{
+
+    /**
+     * The number of threads constructing the persisters, the number of
+     * processors by default. With 1 the persisters are constructed on the
+     * calling thread.
+     */
+    public static final String PARALLELISM = "hibernate.persister.parallelism";
+
+    public static final StandardServiceInitiator<PersisterFactory> INITIATOR =
+        new Initiator();
+
+    private final PersisterFactoryImpl delegate = new PersisterFactoryImpl();
+    private final int parallelism;
+
+    private Build build;
+
+    public ParallelPersisterFactory(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    public void injectServices(ServiceRegistryImplementor serviceRegistry) {
+        delegate.injectServices(serviceRegistry);
+    }
+
+    @Override
+    public synchronized EntityPersister createEntityPersister(
+        PersistentClass entityBinding,
+        EntityRegionAccessStrategy entityCacheAccessStrategy,
+        NaturalIdRegionAccessStrategy naturalIdCacheAccessStrategy,
+        PersisterCreationContext creationContext)
+    {
+        if (parallelism <= 1) {
+            return delegate.createEntityPersister(entityBinding,
+                entityCacheAccessStrategy, naturalIdCacheAccessStrategy,
+                creationContext);
+        }
+        return build(creationContext).entityPersister(entityBinding,
+            entityCacheAccessStrategy, naturalIdCacheAccessStrategy);
+    }
+
+    @Override
+    public synchronized CollectionPersister createCollectionPersister(
+        Collection collectionBinding,
+        CollectionRegionAccessStrategy cacheAccessStrategy,
+        PersisterCreationContext creationContext)
+    {
+        if (parallelism <= 1) {
+            return delegate.createCollectionPersister(collectionBinding,
+                cacheAccessStrategy, creationContext);
+        }
+        return build(creationContext).collectionPersister(collectionBinding,
+            cacheAccessStrategy);
+    }
+
+    private Build build(PersisterCreationContext creationContext) {
+        // Every session factory built with the registry has its own
+        // creation context.
+        if (build == null || build.creationContext != creationContext) {
+            if (build != null) {
+                build.close();
+            }
+            build = new Build(creationContext);
+        }
+        return build;
+    }
+
+    /**
+     * The persisters of one session factory.
+     */
+    private final class Build {
+
+        private final PersisterCreationContext creationContext;
+        private final ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+        private Map<PersistentClass, Prepared<EntityPersister>>
+            entityPersisters;
+        private Map<Collection, Prepared<CollectionPersister>>
+            collectionPersisters;
+
+        Build(PersisterCreationContext creationContext) {
+            this.creationContext = creationContext;
+        }
+
+        EntityPersister entityPersister(PersistentClass entityBinding,
+            EntityRegionAccessStrategy cacheAccessStrategy,
+            NaturalIdRegionAccessStrategy naturalIdCacheAccessStrategy)
+        {
+            if (entityPersisters == null) {
+                submitEntityPersisters();
+            }
+            Prepared<EntityPersister> prepared =
+                entityPersisters.remove(entityBinding);
+            try {
+                if (prepared == null
+                    || !prepared.isPreparedWith(cacheAccessStrategy,
+                        naturalIdCacheAccessStrategy))
+                {
+                    return delegate.createEntityPersister(entityBinding,
+                        cacheAccessStrategy, naturalIdCacheAccessStrategy,
+                        creationContext);
+                }
+                return prepared.join();
+            } finally {
+                if (entityPersisters.isEmpty()
+                    && creationContext.getMetadata().getCollectionBindings()
+                        .isEmpty())
+                {
+                    close();
+                }
+            }
+        }
+
+        CollectionPersister collectionPersister(
+            Collection collectionBinding,
+            CollectionRegionAccessStrategy cacheAccessStrategy)
+        {
+            if (collectionPersisters == null) {
+                submitCollectionPersisters();
+            }
+            Prepared<CollectionPersister> prepared =
+                collectionPersisters.remove(collectionBinding);
+            try {
+                if (prepared == null
+                    || !prepared.isPreparedWith(cacheAccessStrategy, null))
+                {
+                    return delegate.createCollectionPersister(
+                        collectionBinding, cacheAccessStrategy,
+                        creationContext);
+                }
+                return prepared.join();
+            } finally {
+                if (collectionPersisters.isEmpty()) {
+                    close();
+                }
+            }
+        }
+
+        private void submitEntityPersisters() {
+            CacheImplementor cache =
+                creationContext.getSessionFactory().getCache();
+            entityPersisters = new IdentityHashMap<>();
+            for (PersistentClass binding
+                : creationContext.getMetadata().getEntityBindings())
+            {
+                EntityRegionAccessStrategy cacheAccessStrategy =
+                    cache.determineEntityRegionAccessStrategy(binding);
+                NaturalIdRegionAccessStrategy naturalIdCacheAccessStrategy =
+                    cache.determineNaturalIdRegionAccessStrategy(binding);
+                entityPersisters.put(binding, new Prepared<>(
+                    pool.submit(() -> delegate.createEntityPersister(binding,
+                        cacheAccessStrategy, naturalIdCacheAccessStrategy,
+                        creationContext)),
+                    cacheAccessStrategy, naturalIdCacheAccessStrategy));
+            }
+        }
+
+        private void submitCollectionPersisters() {
+            CacheImplementor cache =
+                creationContext.getSessionFactory().getCache();
+            collectionPersisters = new IdentityHashMap<>();
+            for (Collection binding
+                : creationContext.getMetadata().getCollectionBindings())
+            {
+                CollectionRegionAccessStrategy cacheAccessStrategy =
+                    cache.determineCollectionRegionAccessStrategy(binding);
+                collectionPersisters.put(binding, new Prepared<>(
+                    pool.submit(() -> delegate.createCollectionPersister(
+                        binding, cacheAccessStrategy, creationContext)),
+                    cacheAccessStrategy, null));
+            }
+        }
+
+        void close() {
+            pool.shutdownNow();
+            if (build == this) {
+                build = null;
+            }
+        }
+
+        /**
+         * A persister submitted to the pool.
+         */
+        private final class Prepared<T> {
+
+            private final ForkJoinTask<T> task;
+            private final Object cacheAccessStrategy;
+            private final Object naturalIdCacheAccessStrategy;
+
+            Prepared(ForkJoinTask<T> task, Object cacheAccessStrategy,
+                Object naturalIdCacheAccessStrategy)
+            {
+                this.task = task;
+                this.cacheAccessStrategy = cacheAccessStrategy;
+                this.naturalIdCacheAccessStrategy =
+                    naturalIdCacheAccessStrategy;
+            }
+
+            boolean isPreparedWith(Object cacheAccessStrategy,
+                Object naturalIdCacheAccessStrategy)
+            {
+                if (this.cacheAccessStrategy == cacheAccessStrategy
+                    && this.naturalIdCacheAccessStrategy
+                        == naturalIdCacheAccessStrategy)
+                {
+                    return true;
+                }
+                task.cancel(false);
+                return false;
+            }
+
+            T join() {
+                try {
+                    return task.join();
+                } catch (RuntimeException | Error e) {
+                    // The session factory fails, drop the other persisters.
+                    Build.this.close();
+                    throw e;
+                }
+            }
+
+        }
+
+    }
+
+    private static final class Initiator
+        implements StandardServiceInitiator<PersisterFactory>
+    {
+
+        @Override
+        public Class<PersisterFactory> getServiceInitiated() {
+            return PersisterFactory.class;
+        }
+
+        @Override
+        public PersisterFactory initiateService(Map configurationValues,
+            ServiceRegistryImplementor registry)
+        {
+            return new ParallelPersisterFactory(ConfigurationHelper.getInt(
+                PARALLELISM, configurationValues,
+                Runtime.getRuntime().availableProcessors()));
+        }
+
+    }
+
+}
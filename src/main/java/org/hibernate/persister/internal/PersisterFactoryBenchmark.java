@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.persister.internal;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.BootstrapServiceRegistryBuilder;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.jmh.jdbc.MockConnectionProvider;
+import org.hibernate.jmh.model.GeneratedModel;
+import org.hibernate.persister.collection.AbstractCollectionPersister;
+import org.hibernate.persister.collection.CollectionPersister;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.type.Type;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@code Metadata#buildSessionFactory()} for a
+ * {@link GeneratedModel} of {@code entities} classes with the persisters
+ * constructed by {@link ParallelPersisterFactory} on {@code parallelism}
+ * threads. With a parallelism of 1 the persisters are constructed serially
+ * as by {@link PersisterFactoryImpl}.
+ *
+ * <p>The metadata is built before every iteration. The setup checks that
+ * the persisters constructed in parallel are the same as the serially
+ * constructed ones.
+ *
+ * @author Andrej Golovnin
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@State(Scope.Benchmark)
+public class PersisterFactoryBenchmark {
+
+    @Param({"500", "2000"})
+    private int entities;
+
+    @Param({"1", "4", "16"})
+    private int parallelism;
+
+    private GeneratedModel model;
+    private StandardServiceRegistry registry;
+    private Metadata metadata;
+    private SessionFactoryImplementor sessionFactory;
+
+    @Setup
+    public void setup() throws IOException {
+        model = GeneratedModel.compile(entities);
+        if (parallelism > 1) {
+            assertSamePersisters();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        model.close();
+    }
+
+    @Setup(Level.Iteration)
+    public void buildMetadata() {
+        registry = buildServiceRegistry(parallelism);
+        metadata = buildMetadata(registry);
+    }
+
+    @TearDown(Level.Iteration)
+    public void close() {
+        if (sessionFactory != null) {
+            sessionFactory.close();
+            sessionFactory = null;
+        }
+        StandardServiceRegistryBuilder.destroy(registry);
+    }
+
+    @Benchmark
+    public SessionFactoryImplementor buildSessionFactory() {
+        sessionFactory =
+            (SessionFactoryImplementor) metadata.buildSessionFactory();
+        return sessionFactory;
+    }
+
+    private void assertSamePersisters() {
+        Map<String, String> expected = describePersisters(1);
+        Map<String, String> actual = describePersisters(parallelism);
+        if (!expected.equals(actual)) {
+            throw new IllegalStateException(
+                "The persisters constructed in parallel differ");
+        }
+    }
+
+    private Map<String, String> describePersisters(int parallelism) {
+        StandardServiceRegistry registry = buildServiceRegistry(parallelism);
+        try (SessionFactoryImplementor factory = (SessionFactoryImplementor)
+            buildMetadata(registry).buildSessionFactory())
+        {
+            Map<String, String> persisters = new TreeMap<>();
+            for (EntityPersister persister
+                : factory.getMetamodel().entityPersisters().values())
+            {
+                AbstractEntityPersister p =
+                    (AbstractEntityPersister) persister;
+                persisters.put(p.getEntityName(), describe(
+                    p.getClass().getName(),
+                    p.getTableName(),
+                    p.selectFragment("a", "_"),
+                    Arrays.toString(p.getIdentifierColumnNames()),
+                    Arrays.toString(p.getPropertyNames()),
+                    typeNames(p.getPropertyTypes())));
+            }
+            for (CollectionPersister persister
+                : factory.getMetamodel().collectionPersisters().values())
+            {
+                AbstractCollectionPersister p =
+                    (AbstractCollectionPersister) persister;
+                persisters.put(p.getRole(), describe(
+                    p.getClass().getName(),
+                    p.getTableName(),
+                    p.selectFragment("a", "_"),
+                    Arrays.toString(p.getKeyColumnNames()),
+                    p.getElementType().getName()));
+            }
+            return persisters;
+        } finally {
+            StandardServiceRegistryBuilder.destroy(registry);
+        }
+    }
+
+    private static String describe(String... parts) {
+        return Arrays.toString(parts);
+    }
+
+    private static String typeNames(Type[] types) {
+        return Arrays.stream(types).map(Type::getName)
+            .collect(Collectors.joining(", "));
+    }
+
+    private Metadata buildMetadata(StandardServiceRegistry registry) {
+        MetadataSources sources = new MetadataSources(registry);
+        for (Class<?> entityClass : model.getEntityClasses()) {
+            sources.addAnnotatedClass(entityClass);
+        }
+        return sources.buildMetadata();
+    }
+
+    private StandardServiceRegistry buildServiceRegistry(int parallelism) {
+        return new StandardServiceRegistryBuilder(
+            new BootstrapServiceRegistryBuilder()
+                .applyClassLoader(model.getClassLoader())
+                .build())
+            .applySetting(AvailableSettings.DIALECT, H2Dialect.class.getName())
+            .applySetting("hibernate.temp.use_jdbc_metadata_defaults", "false")
+            .applySetting(AvailableSettings.CONNECTION_PROVIDER,
+                new MockConnectionProvider())
+            .applySetting(ParallelPersisterFactory.PARALLELISM,
+                Integer.toString(parallelism))
+            .addInitiator(ParallelPersisterFactory.INITIATOR)
+            .build();
+    }
+
+}
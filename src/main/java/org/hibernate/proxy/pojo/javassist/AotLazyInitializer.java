@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.proxy.pojo.javassist;
+
+import java.io.Serializable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.proxy.pojo.BasicLazyInitializer;
+import org.hibernate.type.CompositeType;
+
+/**
+ * The lazy initializer of an {@link AotProxy}. The generated proxy calls
+ * the public methods of the implementation directly, only the non-public
+ * methods and {@code writeReplace()} go through
+ * {@link BasicLazyInitializer#invoke(Method, Object[], Object)}.
+ *
+ * @author Andrej Golovnin
+ */
+public class AotLazyInitializer extends BasicLazyInitializer {
+
+    private static final Method WRITE_REPLACE;
+
+    static {
+        try {
+            WRITE_REPLACE = HibernateProxy.class.getMethod("writeReplace");
+        } catch (NoSuchMethodException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static final Object[] NO_ARGS = new Object[0];
+
+    private final Class[] interfaces;
+
+    public AotLazyInitializer(String entityName, Class persistentClass,
+        Class[] interfaces, Serializable id, Method getIdentifierMethod,
+        Method setIdentifierMethod, CompositeType componentIdType,
+        SharedSessionContractImplementor session, boolean overridesEquals)
+    {
+        super(entityName, persistentClass, id, getIdentifierMethod,
+            setIdentifierMethod, componentIdType, session, overridesEquals);
+        this.interfaces = interfaces;
+    }
+
+    /**
+     * Called by {@code writeReplace()} of the proxy.
+     */
+    public Object writeReplace(Object proxy) {
+        return invokeNonPublic(WRITE_REPLACE, NO_ARGS, proxy);
+    }
+
+    /**
+     * Called by the non-public methods of the proxy, invokes the method on
+     * the implementation by reflection like {@link JavassistLazyInitializer},
+     * which returns the proxy, if the method returns the implementation.
+     */
+    public Object invokeNonPublic(Method method, Object[] args, Object proxy) {
+        try {
+            Object result = invoke(method, args, proxy);
+            if (result != INVOKE_IMPLEMENTATION) {
+                return result;
+            }
+            Object target = getImplementation();
+            result = method.invoke(target, args);
+            if (result == target && result.getClass().isInstance(proxy)) {
+                return proxy;
+            }
+            return result;
+        } catch (InvocationTargetException e) {
+            throw AotLazyInitializer.<RuntimeException>rethrow(e.getCause());
+        } catch (Throwable e) {
+            throw AotLazyInitializer.<RuntimeException>rethrow(e);
+        }
+    }
+
+    @Override
+    protected Object serializableProxy() {
+        return new SerializableProxy(getEntityName(), persistentClass,
+            interfaces, getIdentifier(),
+            isReadOnlySettingAvailable()
+                ? Boolean.valueOf(isReadOnly())
+                : isReadOnlyBeforeAttachedToSession(),
+            getIdentifierMethod, setIdentifierMethod, componentIdType);
+    }
+
+    /**
+     * Throws a checked exception of a proxied method unchanged.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T extends Throwable> T rethrow(Throwable e) throws T {
+        throw (T) e;
+    }
+
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.proxy.pojo.javassist;
+
+import org.hibernate.proxy.HibernateProxy;
+
+/**
+ * A proxy class generated by {@link AotProxyGenerator}.
+ *
+ * @author Andrej Golovnin
+ */
+public interface AotProxy extends HibernateProxy {
+
+    /**
+     * Creates a new proxy of the same class without reflection.
+     *
+     * @param lazyInitializer the lazy initializer of the new proxy
+     * @return the new proxy
+     */
+    AotProxy newProxy(AotLazyInitializer lazyInitializer);
+
+}
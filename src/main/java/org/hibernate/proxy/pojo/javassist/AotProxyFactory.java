@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.proxy.pojo.javassist;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.hibernate.HibernateException;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.internal.util.ReflectHelper;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.proxy.ProxyFactory;
+import org.hibernate.type.CompositeType;
+
+/**
+ * Prototype of a {@link ProxyFactory}, which uses proxy classes generated
+ * at build time by {@link AotProxyGenerator} instead of generating them with
+ * Javassist in {@link #postInstantiate(String, Class, Set, Method, Method,
+ * CompositeType)}.
+ *
+ * <p>{@link JavassistProxyFactory} creates a proxy with
+ * {@code Class#newInstance()} and every call of a proxy method goes through
+ * {@link JavassistLazyInitializer#invoke(Object, Method, Method, Object[])}
+ * and {@code Method#invoke()}. Here a proxy is created by a constructor call
+ * of the generated class and its public methods call the implementation
+ * directly.
+ *
+ * <p>The factory falls back to {@link JavassistProxyFactory}, when there is
+ * no generated class for the entity, the entity has a proxy interface or a
+ * composite identifier, or the identifier methods of the mapping
+ * differ from the ones the generated class was built for.
+ *
+ * <p>A deserialized factory looks up the generated class again, in the class
+ * loader of the entity class.
+ *
+ * @author Andrej Golovnin
+ */
+public class AotProxyFactory implements ProxyFactory, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The suffix of the name of a generated proxy class.
+     */
+    public static final String PROXY_CLASS_SUFFIX = "$HibernateProxy$Aot";
+
+    /**
+     * The names of the static fields of a generated class with the names of
+     * the identifier getter and setter, it was built for.
+     */
+    static final String ID_GETTER_FIELD = "_hibernate_idGetter";
+    static final String ID_SETTER_FIELD = "_hibernate_idSetter";
+
+    private final transient ClassLoader classLoader;
+
+    private String entityName;
+    private Class persistentClass;
+    private Class[] interfaces;
+    private Method getIdentifierMethod;
+    private Method setIdentifierMethod;
+    private CompositeType componentIdType;
+    private boolean overridesEquals;
+    private transient AotProxy prototype;
+    private JavassistProxyFactory fallback;
+
+    public AotProxyFactory() {
+        this(null);
+    }
+
+    /**
+     * @param classLoader the class loader of the generated classes, the one
+     *        of the entity class, if {@code null}
+     */
+    public AotProxyFactory(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    @Override
+    public void postInstantiate(String entityName, Class persistentClass,
+        Set<Class> interfaces, Method getIdentifierMethod,
+        Method setIdentifierMethod, CompositeType componentIdType)
+        throws HibernateException
+    {
+        this.entityName = entityName;
+        this.persistentClass = persistentClass;
+        this.interfaces = interfaces.toArray(new Class[interfaces.size()]);
+        this.getIdentifierMethod = getIdentifierMethod;
+        this.setIdentifierMethod = setIdentifierMethod;
+        this.componentIdType = componentIdType;
+        this.overridesEquals = ReflectHelper.overridesEquals(persistentClass);
+        prototype = findPrototype();
+        if (prototype == null) {
+            fallback = newFallback();
+        }
+    }
+
+    @Override
+    public HibernateProxy getProxy(Serializable id,
+        SharedSessionContractImplementor session) throws HibernateException
+    {
+        if (prototype == null) {
+            return fallback.getProxy(id, session);
+        }
+        return prototype.newProxy(new AotLazyInitializer(entityName,
+            persistentClass, interfaces, id, getIdentifierMethod,
+            setIdentifierMethod, componentIdType, session, overridesEquals));
+    }
+
+    /**
+     * @return {@code true}, if the proxies are instances of a generated class
+     */
+    public boolean isAheadOfTime() {
+        return prototype != null;
+    }
+
+    private void readObject(ObjectInputStream in)
+        throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+        prototype = findPrototype();
+        if (prototype == null && fallback == null) {
+            fallback = newFallback();
+        }
+    }
+
+    private JavassistProxyFactory newFallback() {
+        JavassistProxyFactory factory = new JavassistProxyFactory();
+        factory.postInstantiate(entityName, persistentClass,
+            new LinkedHashSet<>(Arrays.asList(interfaces)),
+            getIdentifierMethod, setIdentifierMethod, componentIdType);
+        return factory;
+    }
+
+    private AotProxy findPrototype() {
+        if (componentIdType != null) {
+            return null;
+        }
+        for (Class iface : interfaces) {
+            if (iface != HibernateProxy.class) {
+                return null;
+            }
+        }
+        ClassLoader loader = classLoader == null
+            ? persistentClass.getClassLoader()
+            : classLoader;
+        Class<?> proxyClass;
+        try {
+            proxyClass = Class.forName(
+                persistentClass.getName() + PROXY_CLASS_SUFFIX, true, loader);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+        try {
+            if (!Objects.equals(proxyClass.getField(ID_GETTER_FIELD).get(null),
+                    name(getIdentifierMethod))
+                || !Objects.equals(proxyClass.getField(ID_SETTER_FIELD).get(null),
+                    name(setIdentifierMethod)))
+            {
+                return null;
+            }
+            return (AotProxy) proxyClass
+                .getConstructor(AotLazyInitializer.class)
+                .newInstance(new Object[] {null});
+        } catch (ReflectiveOperationException e) {
+            throw new HibernateException(
+                "Could not instantiate the proxy class " + proxyClass.getName(),
+                e);
+        }
+    }
+
+    private static String name(Method method) {
+        return method == null ? null : method.getName();
+    }
+
+    /**
+     * Returns the methods a proxy of the entity class has to override:
+     * every public, protected and package-private instance method, which is
+     * neither final nor {@code finalize()}, declared by the class or its
+     * superclasses, ordered by name and parameter types.
+     *
+     * @param entityClass the entity class
+     * @param publicMethods whether to return the public methods or the other
+     *        ones
+     * @return the methods, accessible
+     */
+    public static Method[] proxiedMethods(Class<?> entityClass,
+        boolean publicMethods)
+    {
+        Map<String, Method> methods = new LinkedHashMap<>();
+        for (Class<?> c = entityClass; c != null; c = c.getSuperclass()) {
+            for (Method method : c.getDeclaredMethods()) {
+                int modifiers = method.getModifiers();
+                if (Modifier.isStatic(modifiers)
+                    || Modifier.isPrivate(modifiers)
+                    || method.isBridge()
+                    || method.isSynthetic())
+                {
+                    continue;
+                }
+                String key = method.getName()
+                    + Arrays.toString(method.getParameterTypes());
+                if (methods.containsKey(key)) {
+                    continue;
+                }
+                methods.put(key, method);
+            }
+        }
+        List<Method> result = new ArrayList<>();
+        for (Method method : methods.values()) {
+            int modifiers = method.getModifiers();
+            if (Modifier.isFinal(modifiers)
+                || (method.getName().equals("finalize")
+                    && method.getParameterCount() == 0)
+                || Modifier.isPublic(modifiers) != publicMethods
+                || (isPackagePrivate(modifiers)
+                    && !samePackage(method.getDeclaringClass(), entityClass)))
+            {
+                continue;
+            }
+            if (!publicMethods) {
+                method.setAccessible(true);
+            }
+            result.add(method);
+        }
+        result.sort(Comparator.comparing((Method m) -> m.getName())
+            .thenComparing(m -> Arrays.toString(m.getParameterTypes())));
+        return result.toArray(new Method[result.size()]);
+    }
+
+    private static boolean isPackagePrivate(int modifiers) {
+        return !Modifier.isPublic(modifiers)
+            && !Modifier.isProtected(modifiers);
+    }
+
+    private static boolean samePackage(Class<?> a, Class<?> b) {
+        return Objects.equals(a.getPackage(), b.getPackage())
+            && a.getClassLoader() == b.getClassLoader();
+    }
+
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.proxy.pojo.javassist;
+
+import java.io.IOException;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import javax.persistence.EmbeddedId;
+import javax.persistence.Id;
+
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtMethod;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+import javassist.NotFoundException;
+import org.hibernate.internal.util.ReflectHelper;
+
+/**
+ * Generates the proxy classes for {@link AotProxyFactory} at build time.
+ * Run it after the compilation of the entities with the output directory
+ * and the names of the entity classes as arguments, e.g. with the
+ * {@code exec-maven-plugin} in the {@code process-classes} phase:
+ * <pre>
+ *     java AotProxyGenerator target/classes com.acme.Customer com.acme.Order
+ * </pre>
+ *
+ * <p>The proxy class {@code Customer$HibernateProxy$Aot} extends the entity
+ * class and holds an {@link AotLazyInitializer}. Its public methods call the
+ * implementation directly, {@code equals()} and {@code hashCode()}, if the
+ * entity does not override them, and the identifier getter of an
+ * uninitialized proxy behave like in {@code BasicLazyInitializer}. The other
+ * methods are invoked by reflection. Like in
+ * {@code JavassistLazyInitializer}, a method returning the implementation
+ * itself, e.g. a fluent setter, returns the proxy instead.
+ *
+ * <p>The identifier getter and setter are taken from the {@link Id} or
+ * {@link EmbeddedId} annotation of a getter. With the annotation on a field
+ * Hibernate uses field access and passes no identifier methods to the proxy
+ * factory, so neither does the generator.
+ *
+ * @author Andrej Golovnin
+ */
+public final class AotProxyGenerator {
+
+    private static final String LAZY_INITIALIZER_FIELD =
+        "_hibernate_lazyInitializer";
+    private static final String METHODS_FIELD = "_hibernate_methods";
+
+    private AotProxyGenerator() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: AotProxyGenerator <output directory>"
+                + " <entity class>...");
+            System.exit(1);
+        }
+        Path outputDirectory = Paths.get(args[0]);
+        for (int i = 1; i < args.length; i++) {
+            write(outputDirectory, Class.forName(args[i]));
+        }
+    }
+
+    /**
+     * Writes the proxy class of the entity class to the output directory.
+     *
+     * @return the class file
+     */
+    public static Path write(Path outputDirectory, Class<?> entityClass)
+        throws IOException, NotFoundException, CannotCompileException
+    {
+        Path classFile = outputDirectory.resolve(
+            proxyClassName(entityClass).replace('.', '/') + ".class");
+        Files.createDirectories(classFile.getParent());
+        Files.write(classFile, generate(entityClass));
+        return classFile;
+    }
+
+    /**
+     * Generates the proxy class of the entity class.
+     *
+     * @return the bytecode of the class
+     */
+    public static byte[] generate(Class<?> entityClass)
+        throws IOException, NotFoundException, CannotCompileException
+    {
+        ClassPool pool = new ClassPool(true);
+        pool.appendClassPath(new LoaderClassPath(entityClass.getClassLoader()));
+        pool.appendClassPath(
+            new LoaderClassPath(AotProxyGenerator.class.getClassLoader()));
+
+        String entity = entityClass.getName();
+        String lazyInitializer = AotLazyInitializer.class.getName();
+        CtClass proxy = pool.makeClass(proxyClassName(entityClass),
+            pool.get(entity));
+        proxy.addInterface(pool.get(AotProxy.class.getName()));
+
+        proxy.addField(CtField.make("private final " + lazyInitializer + " "
+            + LAZY_INITIALIZER_FIELD + ";", proxy));
+        proxy.addField(CtField.make("private static final "
+            + Method.class.getName() + "[] " + METHODS_FIELD + ";", proxy));
+        Method idGetter = identifierGetter(entityClass);
+        Method idSetter = identifierSetter(entityClass, idGetter);
+        addNameField(proxy, AotProxyFactory.ID_GETTER_FIELD, idGetter);
+        addNameField(proxy, AotProxyFactory.ID_SETTER_FIELD, idSetter);
+        proxy.makeClassInitializer().insertBefore(METHODS_FIELD + " = "
+            + AotProxyFactory.class.getName() + ".proxiedMethods("
+            + entity + ".class, false);");
+
+        proxy.addConstructor(CtNewConstructor.make("public "
+            + proxy.getSimpleName() + "(" + lazyInitializer + " li) {"
+            + " super(); " + LAZY_INITIALIZER_FIELD + " = li; }", proxy));
+        proxy.addMethod(CtNewMethod.make("public "
+            + AotProxy.class.getName() + " newProxy(" + lazyInitializer
+            + " li) { return new " + proxy.getName() + "(li); }", proxy));
+        proxy.addMethod(CtNewMethod.make("public "
+            + "org.hibernate.proxy.LazyInitializer getHibernateLazyInitializer()"
+            + " { return " + LAZY_INITIALIZER_FIELD + "; }", proxy));
+        proxy.addMethod(CtNewMethod.make("public Object writeReplace()"
+            + " { return " + LAZY_INITIALIZER_FIELD + ".writeReplace(this); }",
+            proxy));
+
+        boolean overridesEquals = ReflectHelper.overridesEquals(entityClass);
+        for (Method method : AotProxyFactory.proxiedMethods(entityClass, true)) {
+            if (isProxyMethod(method)) {
+                continue;
+            }
+            String body;
+            if (!overridesEquals && isEquals(method)) {
+                body = "return this == $1;";
+            } else if (!overridesEquals && isHashCode(method)) {
+                body = "return System.identityHashCode(this);";
+            } else if (method.equals(idGetter)) {
+                body = "if (" + LAZY_INITIALIZER_FIELD + ".isUninitialized())"
+                    + " { return ($r) " + LAZY_INITIALIZER_FIELD
+                    + ".getIdentifier(); } " + delegate(entityClass, method);
+            } else if (method.equals(idSetter)) {
+                body = LAZY_INITIALIZER_FIELD + ".initialize(); "
+                    + LAZY_INITIALIZER_FIELD + ".setIdentifier("
+                    + "(java.io.Serializable) ($w) $1); "
+                    + delegate(entityClass, method);
+            } else {
+                body = delegate(entityClass, method);
+            }
+            proxy.addMethod(override(pool, proxy, method, body));
+        }
+        Method[] nonPublicMethods =
+            AotProxyFactory.proxiedMethods(entityClass, false);
+        for (int i = 0; i < nonPublicMethods.length; i++) {
+            Method method = nonPublicMethods[i];
+            String call = LAZY_INITIALIZER_FIELD + ".invokeNonPublic("
+                + METHODS_FIELD + "[" + i + "], $args, this)";
+            proxy.addMethod(override(pool, proxy, method,
+                method.getReturnType() == void.class
+                    ? call + ";"
+                    : "return ($r) " + call + ";"));
+        }
+        byte[] bytecode = proxy.toBytecode();
+        proxy.detach();
+        return bytecode;
+    }
+
+    static String proxyClassName(Class<?> entityClass) {
+        return entityClass.getName() + AotProxyFactory.PROXY_CLASS_SUFFIX;
+    }
+
+    private static String delegate(Class<?> entityClass, Method method) {
+        String entity = entityClass.getName();
+        Class<?> returnType = method.getReturnType();
+        if (returnType.isPrimitive()
+            || !returnType.isAssignableFrom(entityClass))
+        {
+            String call = "((" + entity + ") " + LAZY_INITIALIZER_FIELD
+                + ".getImplementation())." + method.getName() + "($$)";
+            return returnType == void.class
+                ? call + ";"
+                : "return " + call + ";";
+        }
+        // The method may return the implementation itself, hand out the
+        // proxy instead like JavassistLazyInitializer does.
+        return entity + " target = (" + entity + ") " + LAZY_INITIALIZER_FIELD
+            + ".getImplementation(); " + returnType.getName() + " result = "
+            + "target." + method.getName() + "($$); "
+            + "if (result == target && result.getClass().isInstance(this))"
+            + " { return this; } return result;";
+    }
+
+    private static CtMethod override(ClassPool pool, CtClass proxy,
+        Method method, String body)
+        throws NotFoundException, CannotCompileException
+    {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        CtClass[] parameters = new CtClass[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            parameters[i] = pool.get(parameterTypes[i].getName());
+        }
+        Class<?>[] exceptionTypes = method.getExceptionTypes();
+        CtClass[] exceptions = new CtClass[exceptionTypes.length];
+        for (int i = 0; i < exceptionTypes.length; i++) {
+            exceptions[i] = pool.get(exceptionTypes[i].getName());
+        }
+        return CtNewMethod.make(
+            method.getModifiers() & (Modifier.PUBLIC | Modifier.PROTECTED),
+            pool.get(method.getReturnType().getName()), method.getName(),
+            parameters, exceptions, "{ " + body + " }", proxy);
+    }
+
+    private static void addNameField(CtClass proxy, String name,
+        Method method) throws CannotCompileException
+    {
+        CtField field = CtField.make(
+            "public static final String " + name + ";", proxy);
+        if (method == null) {
+            proxy.addField(field, "null");
+        } else {
+            proxy.addField(field,
+                CtField.Initializer.constant(method.getName()));
+        }
+    }
+
+    private static Method identifierGetter(Class<?> entityClass) {
+        for (Class<?> c = entityClass; c != null; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (isIdentifier(field)) {
+                    return null;
+                }
+            }
+            for (Method method : c.getDeclaredMethods()) {
+                if (isIdentifier(method)) {
+                    return method;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Method identifierSetter(Class<?> entityClass,
+        Method idGetter)
+    {
+        if (idGetter == null) {
+            return null;
+        }
+        String property = idGetter.getName()
+            .substring(idGetter.getName().startsWith("is") ? 2 : 3);
+        for (Class<?> c = entityClass; c != null; c = c.getSuperclass()) {
+            try {
+                return c.getDeclaredMethod("set" + property,
+                    idGetter.getReturnType());
+            } catch (NoSuchMethodException e) {
+                // try the superclass
+            }
+        }
+        return null;
+    }
+
+    private static boolean isIdentifier(AnnotatedElement element) {
+        return element.isAnnotationPresent(Id.class)
+            || element.isAnnotationPresent(EmbeddedId.class);
+    }
+
+    private static boolean isProxyMethod(Method method) {
+        return method.getParameterCount() == 0
+            && (method.getName().equals("writeReplace")
+                || method.getName().equals("getHibernateLazyInitializer"));
+    }
+
+    private static boolean isEquals(Method method) {
+        return method.getName().equals("equals")
+            && method.getParameterCount() == 1
+            && method.getParameterTypes()[0] == Object.class;
+    }
+
+    private static boolean isHashCode(Method method) {
+        return method.getName().equals("hashCode")
+            && method.getParameterCount() == 0;
+    }
+
+}
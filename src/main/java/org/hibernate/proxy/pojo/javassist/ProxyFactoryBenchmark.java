@@ -0,0 +1,337 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.proxy.pojo.javassist;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+import org.hibernate.Session;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.jmh.jdbc.MockConnectionProvider;
+import org.hibernate.jmh.jdbc.MockDatabase;
+import org.hibernate.jmh.jdbc.MockQuery;
+import org.hibernate.jmh.jdbc.MockResultProvider;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.proxy.ProxyFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the proxies of {@link JavassistProxyFactory} and of
+ * {@link AotProxyFactory} with proxy classes generated ahead of time by
+ * {@link AotProxyGenerator}. The generated classes are written to
+ * a temporary directory at the start of the trial, that's the build step.
+ *
+ * <ul>
+ *     <li>{@code getProxy} - creates an uninitialized proxy, like the
+ *     hydration of a lazy many-to-one does for every row. Run it with
+ *     {@code -prof gc} for the allocation per proxy.</li>
+ *     <li>{@code initializeProxy} - creates a proxy and calls a getter, which
+ *     initializes it. The entity is found in the persistence context, so it
+ *     is the cost of the proxy and not of the database.</li>
+ *     <li>{@code invokeInitialized} - calls a getter of an initialized
+ *     proxy.</li>
+ *     <li>{@code postInstantiate} - the work at the start of the session
+ *     factory: the proxy factories of three entities, i.e. the generation of
+ *     their proxy classes with Javassist, or the loading of the generated
+ *     classes in a new class loader. The cache of Javassist proxy classes is
+ *     disabled, so every invocation generates new classes.</li>
+ * </ul>
+ *
+ * @author Andrej Golovnin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10, time = 3)
+@Measurement(iterations = 10, time = 3)
+@State(Scope.Benchmark)
+public class ProxyFactoryBenchmark {
+
+    private static final int ENTITIES = 1024;
+
+    private static final Class<?>[] ENTITY_CLASSES = {
+        Customer.class, PurchaseOrder.class, Product.class
+    };
+
+    private static final Set<Class> PROXY_INTERFACES =
+        Collections.singleton(HibernateProxy.class);
+
+    @Param({"JAVASSIST", "AOT"})
+    private String factory;
+
+    private boolean useCache;
+    private Path generatedClasses;
+    private URLClassLoader proxyClassLoader;
+    private SessionFactoryImplementor sessionFactory;
+    private Session session;
+    private ProxyFactory proxyFactory;
+    private Customer[] initializedProxies;
+    private int next;
+
+    @Setup
+    public void setup() throws Exception {
+        useCache = javassist.util.proxy.ProxyFactory.useCache;
+        generatedClasses = Files.createTempDirectory("aot-proxies");
+        for (Class<?> entityClass : ENTITY_CLASSES) {
+            AotProxyGenerator.write(generatedClasses, entityClass);
+        }
+        proxyClassLoader = newProxyClassLoader();
+
+        StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
+            .applySetting(AvailableSettings.DIALECT, H2Dialect.class.getName())
+            .applySetting("hibernate.temp.use_jdbc_metadata_defaults", "false")
+            .applySetting(AvailableSettings.CONNECTION_PROVIDER,
+                new MockConnectionProvider(
+                    new MockDatabase().addResultProvider(new CustomerRows())))
+            .build();
+        try {
+            MetadataSources sources = new MetadataSources(registry);
+            for (Class<?> entityClass : ENTITY_CLASSES) {
+                sources.addAnnotatedClass(entityClass);
+            }
+            sessionFactory = (SessionFactoryImplementor) sources
+                .buildMetadata()
+                .buildSessionFactory();
+        } catch (RuntimeException e) {
+            StandardServiceRegistryBuilder.destroy(registry);
+            throw e;
+        }
+        session = sessionFactory.openSession();
+        session.beginTransaction();
+        Long[] ids = new Long[ENTITIES];
+        for (int i = 0; i < ENTITIES; i++) {
+            ids[i] = i + 1L;
+        }
+        session.byMultipleIds(Customer.class).multiLoad(ids);
+
+        proxyFactory = newProxyFactory(Customer.class, proxyClassLoader);
+        if (proxyFactory instanceof AotProxyFactory
+            && !((AotProxyFactory) proxyFactory).isAheadOfTime())
+        {
+            throw new IllegalStateException(
+                "No generated proxy class for " + Customer.class);
+        }
+        initializedProxies = new Customer[ENTITIES];
+        for (int i = 0; i < ENTITIES; i++) {
+            initializedProxies[i] = (Customer) getProxy();
+            initializedProxies[i].getName();
+        }
+        javassist.util.proxy.ProxyFactory.useCache = false;
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        javassist.util.proxy.ProxyFactory.useCache = useCache;
+        session.getTransaction().commit();
+        session.close();
+        sessionFactory.close();
+        proxyClassLoader.close();
+        try (Stream<Path> files = Files.walk(generatedClasses)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> {
+                try {
+                    Files.delete(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    @Benchmark
+    public HibernateProxy getProxy() {
+        return proxyFactory.getProxy(nextId(), (SessionImplementor) session);
+    }
+
+    @Benchmark
+    public String initializeProxy() {
+        return ((Customer) getProxy()).getName();
+    }
+
+    @Benchmark
+    public String invokeInitialized() {
+        return initializedProxies[next++ & (ENTITIES - 1)].getName();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 10)
+    public List<ProxyFactory> postInstantiate() throws IOException {
+        List<ProxyFactory> factories = new ArrayList<>();
+        try (URLClassLoader classLoader = newProxyClassLoader()) {
+            for (Class<?> entityClass : ENTITY_CLASSES) {
+                factories.add(newProxyFactory(entityClass, classLoader));
+            }
+        }
+        return factories;
+    }
+
+    private ProxyFactory newProxyFactory(Class<?> entityClass,
+        ClassLoader classLoader)
+    {
+        ProxyFactory proxyFactory = "AOT".equals(factory)
+            ? new AotProxyFactory(classLoader)
+            : new JavassistProxyFactory();
+        proxyFactory.postInstantiate(entityClass.getName(), entityClass,
+            PROXY_INTERFACES, null, null, null);
+        return proxyFactory;
+    }
+
+    private URLClassLoader newProxyClassLoader() throws MalformedURLException {
+        return new URLClassLoader(
+            new URL[] {generatedClasses.toUri().toURL()},
+            getClass().getClassLoader());
+    }
+
+    private Long nextId() {
+        return (long) (next++ & (ENTITIES - 1)) + 1;
+    }
+
+    /**
+     * Serves a row for every id a query of the customers asks for.
+     */
+    private static final class CustomerRows implements MockResultProvider {
+
+        @Override
+        public List<Object[]> getRows(MockQuery query) {
+            if (!query.getSql().contains(" from Customer ")) {
+                return null;
+            }
+            Set<Object> ids = new LinkedHashSet<>();
+            for (int i = 1; i <= query.getParameterCount(); i++) {
+                ids.add(query.getParameter(i));
+            }
+            List<Object[]> rows = new ArrayList<>(ids.size());
+            Map<String, Object> values = new HashMap<>();
+            for (Object id : ids) {
+                values.put("id", id);
+                values.put("name", "Customer " + id);
+                values.put("email", "customer" + id + "@example.com");
+                values.put("city", "City " + id);
+                rows.add(query.row(values));
+            }
+            return rows;
+        }
+
+    }
+
+    @Entity(name = "Customer")
+    public static class Customer {
+
+        @Id
+        private Long id;
+
+        private String name;
+
+        private String email;
+
+        private String city;
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getEmail() {
+            return email;
+        }
+
+        public String getCity() {
+            return city;
+        }
+
+    }
+
+    @Entity(name = "PurchaseOrder")
+    public static class PurchaseOrder {
+
+        @Id
+        private Long id;
+
+        private String status;
+
+        private BigDecimal total;
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public BigDecimal getTotal() {
+            return total;
+        }
+
+    }
+
+    @Entity(name = "Product")
+    public static class Product {
+
+        @Id
+        private Long id;
+
+        private String name;
+
+        private BigDecimal price;
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public BigDecimal getPrice() {
+            return price;
+        }
+
+    }
+
+}
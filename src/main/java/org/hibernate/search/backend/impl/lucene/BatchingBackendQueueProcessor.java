@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.search.backend.impl.lucene;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+
+import org.hibernate.search.backend.AddLuceneWork;
+import org.hibernate.search.backend.DeleteLuceneWork;
+import org.hibernate.search.backend.IndexingMonitor;
+import org.hibernate.search.backend.LuceneWork;
+import org.hibernate.search.backend.UpdateLuceneWork;
+import org.hibernate.search.backend.spi.BackendQueueProcessor;
+import org.hibernate.search.exception.ErrorHandler;
+import org.hibernate.search.indexes.spi.DirectoryBasedIndexManager;
+import org.hibernate.search.spi.WorkerBuildContext;
+
+/**
+ * Prototype of an asynchronous {@link BackendQueueProcessor}, which merges
+ * the work of all transactions per document and applies it in batches.
+ *
+ * <p>{@link #applyWork(List, IndexingMonitor)} only queues the work. The
+ * queue keeps one work per entity class, tenant and document id: a later
+ * add or update of a queued document replaces the queued work with an
+ * update, a later delete with the delete. A thread per index takes the whole
+ * queue, applies it with a synchronous {@link LuceneBackendQueueProcessor}
+ * and takes the work queued in the meantime, so the batches grow with the
+ * load.
+ *
+ * <p>Work without a document id, e.g. purge all or optimize, work with an
+ * {@link IndexingMonitor} and stream work are applied on the calling thread
+ * after the queued work.
+ *
+ * <p>Install it with {@code hibernate.search.default.worker.backend} set to
+ * the name of this class.
+ *
+ * @author Andrej Golovnin
+ */
+public class BatchingBackendQueueProcessor implements BackendQueueProcessor {
+
+    private final LuceneBackendQueueProcessor delegate =
+        new LuceneBackendQueueProcessor();
+
+    /**
+     * Guards the delegate, only one batch is applied at a time.
+     */
+    private final Object applyLock = new Object();
+
+    private final LongAdder queuedWorks = new LongAdder();
+    private final LongAdder appliedWorks = new LongAdder();
+
+    private LinkedHashMap<DocumentKey, LuceneWork> queue =
+        new LinkedHashMap<>();
+    private int applying;
+    private boolean closed;
+
+    private ErrorHandler errorHandler;
+    private Thread worker;
+
+    @Override
+    public void initialize(Properties props, WorkerBuildContext context,
+        DirectoryBasedIndexManager indexManager)
+    {
+        Properties delegateProps = new Properties(props);
+        delegateProps.setProperty("worker.execution", "sync");
+        delegate.initialize(delegateProps, context, indexManager);
+        errorHandler = context.getErrorHandler();
+        worker = new Thread(this::applyQueuedWork,
+            "Hibernate Search: batching backend of "
+                + indexManager.getIndexName());
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        delegate.close();
+    }
+
+    @Override
+    public void applyWork(List<LuceneWork> workList,
+        IndexingMonitor monitor)
+    {
+        if (monitor == null && workList.stream().allMatch(
+            BatchingBackendQueueProcessor::isMergeable))
+        {
+            synchronized (this) {
+                for (LuceneWork work : workList) {
+                    queue.merge(new DocumentKey(work), work,
+                        BatchingBackendQueueProcessor::merge);
+                }
+                queuedWorks.add(workList.size());
+                notifyAll();
+            }
+        } else {
+            synchronized (applyLock) {
+                applyQueue();
+                delegate.applyWork(workList, monitor);
+            }
+        }
+    }
+
+    @Override
+    public void applyStreamWork(LuceneWork singleOperation,
+        IndexingMonitor monitor)
+    {
+        synchronized (applyLock) {
+            applyQueue();
+            delegate.applyStreamWork(singleOperation, monitor);
+        }
+    }
+
+    @Override
+    public Lock getExclusiveWriteLock() {
+        return delegate.getExclusiveWriteLock();
+    }
+
+    @Override
+    public void indexMappingChanged() {
+        delegate.indexMappingChanged();
+    }
+
+    /**
+     * Waits until the work queued so far is applied.
+     */
+    public synchronized void awaitApplied() throws InterruptedException {
+        while (!queue.isEmpty() || applying > 0) {
+            wait();
+        }
+    }
+
+    /**
+     * @return the number of works passed to {@code applyWork()} and queued
+     */
+    public long getQueuedWorks() {
+        return queuedWorks.sum();
+    }
+
+    /**
+     * @return the number of queued works applied after merging
+     */
+    public long getAppliedWorks() {
+        return appliedWorks.sum();
+    }
+
+    private void applyQueuedWork() {
+        while (true) {
+            synchronized (this) {
+                while (queue.isEmpty() && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (queue.isEmpty()) {
+                    return;
+                }
+            }
+            synchronized (applyLock) {
+                try {
+                    applyQueue();
+                } catch (RuntimeException e) {
+                    errorHandler.handleException(
+                        "Failed to apply the queued work", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the queued work, the caller holds {@link #applyLock}.
+     */
+    private void applyQueue() {
+        List<LuceneWork> batch;
+        synchronized (this) {
+            if (queue.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<>(queue.values());
+            queue = new LinkedHashMap<>();
+            applying++;
+        }
+        try {
+            delegate.applyWork(batch, null);
+            appliedWorks.add(batch.size());
+        } finally {
+            synchronized (this) {
+                applying--;
+                notifyAll();
+            }
+        }
+    }
+
+    private static boolean isMergeable(LuceneWork work) {
+        return work.getId() != null
+            && (work instanceof AddLuceneWork
+                || work instanceof UpdateLuceneWork
+                || work instanceof DeleteLuceneWork);
+    }
+
+    private static LuceneWork merge(LuceneWork queued, LuceneWork work) {
+        if (work instanceof DeleteLuceneWork) {
+            return work;
+        }
+        // The queued work may have added the document already.
+        return new UpdateLuceneWork(work.getTenantId(), work.getId(),
+            work.getIdInString(), work.getEntityClass(), work.getDocument(),
+            work.getFieldToAnalyzerMap());
+    }
+
+    /**
+     * The document a work applies to.
+     */
+    private static final class DocumentKey {
+
+        private final Class<?> entityClass;
+        private final String tenantId;
+        private final String id;
+
+        DocumentKey(LuceneWork work) {
+            this.entityClass = work.getEntityClass();
+            this.tenantId = work.getTenantId();
+            this.id = work.getIdInString();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof DocumentKey)) {
+                return false;
+            }
+            DocumentKey other = (DocumentKey) obj;
+            return entityClass == other.entityClass
+                && id.equals(other.id)
+                && Objects.equals(tenantId, other.tenantId);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * entityClass.hashCode() + id.hashCode();
+        }
+
+    }
+
+}
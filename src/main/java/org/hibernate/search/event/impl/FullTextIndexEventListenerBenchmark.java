@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.search.event.impl;
+
+import java.util.concurrent.TimeUnit;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.transaction.Synchronization;
+
+import org.hibernate.Session;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.jmh.jdbc.MockConnectionProvider;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.search.annotations.Field;
+import org.hibernate.search.annotations.Indexed;
+import org.hibernate.search.backend.TransactionContext;
+import org.hibernate.search.backend.impl.lucene.BatchingBackendQueueProcessor;
+import org.hibernate.search.backend.spi.Work;
+import org.hibernate.search.backend.spi.WorkType;
+import org.hibernate.search.backend.spi.Worker;
+import org.hibernate.search.hcore.util.impl.ContextHelper;
+import org.hibernate.search.indexes.spi.DirectoryBasedIndexManager;
+import org.hibernate.search.spi.SearchIntegrator;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures transactions, which update {@code entities} detached indexed
+ * entities and commit, with the index in a RAM directory. The entities are
+ * taken in turn from {@code documents} entities, so with as many documents
+ * as entities every transaction updates the same documents.
+ *
+ * <ul>
+ *     <li>{@code commit} - the latency of one transaction, i.e. the work
+ *     {@link FullTextIndexEventListener} adds to the flush and the indexing
+ *     on the transaction path.</li>
+ *     <li>{@code indexDocuments} - {@value #COMMITS} transactions and the
+ *     wait until their documents are indexed. The {@code documents}
+ *     counter reports the indexed documents per second.</li>
+ * </ul>
+ *
+ * <p>{@code FullTextIndexEventListener} of Hibernate Search 5.5 is not
+ * binary compatible with Hibernate ORM 5.2, it fails in the flush with a
+ * {@code NoSuchMethodError} for {@code EventSource#getTransactionCoordinator()}.
+ * Its listeners are therefore disabled with the manual indexing strategy.
+ * {@link IndexingEventListener} passes the updates to the {@link Worker} of
+ * Hibernate Search like {@code FullTextIndexEventListener#onPostUpdate()}
+ * does.
+ *
+ * <p>{@code indexing}:
+ * <ul>
+ *     <li>{@code NONE} - no indexing, the baseline.</li>
+ *     <li>{@code SYNC} - the synchronous Lucene backend.</li>
+ *     <li>{@code BATCHING} - {@link BatchingBackendQueueProcessor}.</li>
+ * </ul>
+ *
+ * <p>The number of merged works of {@code BATCHING} is printed at the end of
+ * every trial.
+ *
+ * @author Andrej Golovnin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10, time = 3)
+@Measurement(iterations = 10, time = 3)
+@State(Scope.Benchmark)
+public class FullTextIndexEventListenerBenchmark {
+
+    private static final int COMMITS = 10;
+
+    @Param({"10", "100"})
+    private int entities;
+
+    @Param({"100", "10000"})
+    private int documents;
+
+    @Param({"NONE", "SYNC", "BATCHING"})
+    private String indexing;
+
+    private SessionFactoryImplementor sessionFactory;
+    private BatchingBackendQueueProcessor batchingProcessor;
+    private PurchaseOrder[] orders;
+    private int next;
+    private int revision;
+
+    @Setup
+    public void setup() {
+        StandardServiceRegistryBuilder builder = new StandardServiceRegistryBuilder()
+            .applySetting(AvailableSettings.DIALECT, H2Dialect.class.getName())
+            .applySetting("hibernate.temp.use_jdbc_metadata_defaults", "false")
+            .applySetting(AvailableSettings.CONNECTION_PROVIDER,
+                new MockConnectionProvider())
+            .applySetting("hibernate.search.autoregister_listeners",
+                !"NONE".equals(indexing))
+            .applySetting("hibernate.search.indexing_strategy", "manual")
+            .applySetting("hibernate.search.default.directory_provider", "ram");
+        if ("BATCHING".equals(indexing)) {
+            builder.applySetting("hibernate.search.default.worker.backend",
+                BatchingBackendQueueProcessor.class.getName());
+        }
+        StandardServiceRegistry registry = builder.build();
+        try {
+            sessionFactory = (SessionFactoryImplementor) new MetadataSources(registry)
+                .addAnnotatedClass(PurchaseOrder.class)
+                .buildMetadata()
+                .buildSessionFactory();
+        } catch (RuntimeException e) {
+            StandardServiceRegistryBuilder.destroy(registry);
+            throw e;
+        }
+        if (!"NONE".equals(indexing)) {
+            SearchIntegrator searchIntegrator =
+                ContextHelper.getSearchintegratorBySFI(sessionFactory);
+            sessionFactory.getServiceRegistry()
+                .getService(EventListenerRegistry.class)
+                .appendListeners(EventType.POST_UPDATE,
+                    new IndexingEventListener(searchIntegrator.getWorker()));
+            if ("BATCHING".equals(indexing)) {
+                DirectoryBasedIndexManager indexManager =
+                    (DirectoryBasedIndexManager) searchIntegrator
+                        .getIndexManager(PurchaseOrder.class.getName());
+                batchingProcessor = (BatchingBackendQueueProcessor)
+                    indexManager.getBackendQueueProcessor();
+            }
+        }
+        orders = new PurchaseOrder[documents];
+        for (int i = 0; i < documents; i++) {
+            orders[i] = new PurchaseOrder(i, "Customer " + i % 100, i * 10L);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        awaitIndexed();
+        if (batchingProcessor != null) {
+            System.out.println();
+            System.out.println("Works merged into "
+                + batchingProcessor.getAppliedWorks() + " of "
+                + batchingProcessor.getQueuedWorks());
+        }
+        sessionFactory.close();
+    }
+
+    @TearDown(Level.Iteration)
+    public void awaitIndexed() throws InterruptedException {
+        if (batchingProcessor != null) {
+            batchingProcessor.awaitApplied();
+        }
+    }
+
+    @Benchmark
+    public int commit() {
+        String status = "STATUS-" + revision++ % 4;
+        try (Session session = sessionFactory.openSession()) {
+            session.beginTransaction();
+            for (int i = 0; i < entities; i++) {
+                PurchaseOrder order = orders[next];
+                next = (next + 1) % documents;
+                order.status = status;
+                session.update(order);
+            }
+            session.getTransaction().commit();
+        }
+        return next;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void indexDocuments(IndexedDocuments indexed)
+        throws InterruptedException
+    {
+        for (int i = 0; i < COMMITS; i++) {
+            commit();
+        }
+        awaitIndexed();
+        indexed.documents += COMMITS * entities;
+    }
+
+    /**
+     * Passes every update of an indexed entity to the {@link Worker}, which
+     * indexes the entities of a transaction after its completion.
+     */
+    private static final class IndexingEventListener
+        implements PostUpdateEventListener
+    {
+
+        private final Worker worker;
+
+        IndexingEventListener(Worker worker) {
+            this.worker = worker;
+        }
+
+        @Override
+        public void onPostUpdate(PostUpdateEvent event) {
+            worker.performWork(
+                new Work(event.getEntity(), event.getId(), WorkType.UPDATE),
+                new SessionTransactionContext(event.getSession()));
+        }
+
+        @Override
+        public boolean requiresPostCommitHanding(EntityPersister persister) {
+            return false;
+        }
+
+    }
+
+    /**
+     * The transaction of a session.
+     */
+    private static final class SessionTransactionContext
+        implements TransactionContext
+    {
+
+        private final EventSource session;
+
+        SessionTransactionContext(EventSource session) {
+            this.session = session;
+        }
+
+        @Override
+        public boolean isTransactionInProgress() {
+            return session.isTransactionInProgress();
+        }
+
+        @Override
+        public Object getTransactionIdentifier() {
+            return session;
+        }
+
+        @Override
+        public void registerSynchronization(Synchronization synchronization) {
+            session.accessTransaction()
+                .registerSynchronization(synchronization);
+        }
+
+    }
+
+    /**
+     * The documents updated by {@code indexDocuments}.
+     */
+    @AuxCounters
+    @State(Scope.Thread)
+    public static class IndexedDocuments {
+
+        public long documents;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            documents = 0;
+        }
+
+    }
+
+    @Entity
+    @Indexed
+    public static class PurchaseOrder {
+
+        @Id
+        private long id;
+
+        @Field
+        private String customer;
+
+        @Field
+        private String status;
+
+        @Field
+        private long amount;
+
+        public PurchaseOrder() {
+        }
+
+        PurchaseOrder(long id, String customer, long amount) {
+            this.id = id;
+            this.customer = customer;
+            this.amount = amount;
+        }
+
+    }
+
+}
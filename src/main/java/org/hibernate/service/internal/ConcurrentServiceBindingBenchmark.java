@@ -51,6 +51,7 @@ import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
 import org.openjdk.jmh.annotations.Warmup;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.IdentityHashMap;
 import java.util.Map;
@@ -75,7 +76,7 @@ public class ConcurrentServiceBindingBenchmark {
     /**
      * This keys are used in a real world project.
      */
-    private static final Class<?>[] KEYS = {
+    static final Class<?>[] KEYS = {
         CfgXmlAccessService.class,
         ClassLoaderService.class,
         StrategySelector.class,
@@ -113,16 +114,19 @@ public class ConcurrentServiceBindingBenchmark {
     private ConcurrentServiceBinding<Class<?>, String> baseCsb;
     private IHMConcurrentServiceBinding<Class<?>, String> ihmCsb;
     private CHMConcurrentServiceBinding<Class<?>, String> chmCsb;
+    private PHConcurrentServiceBinding<Class<?>, String> phCsb;
 
     @Setup
     public void setup() {
         baseCsb = new ConcurrentServiceBinding<>();
         ihmCsb = new IHMConcurrentServiceBinding<>();
         chmCsb = new CHMConcurrentServiceBinding<>();
+        phCsb = new PHConcurrentServiceBinding<>();
         for (Class<?> key : KEYS) {
             baseCsb.put(key, "value");
             ihmCsb.put(key, "value");
             chmCsb.put(key, "value");
+            phCsb.put(key, "value");
         }
     }
 
@@ -156,6 +160,16 @@ public class ConcurrentServiceBindingBenchmark {
         return chmCsb.get(JdbcServices.class);
     }
 
+    @Benchmark
+    public String phConcurrentServiceBindingGetEventListenerRegistry() {
+        return phCsb.get(EventListenerRegistry.class);
+    }
+
+    @Benchmark
+    public String phConcurrentServiceBindingGetJdbcServices() {
+        return phCsb.get(JdbcServices.class);
+    }
+
     public static final class IHMConcurrentServiceBinding<K,V> {
 
         private volatile Map<K, V> map = Collections.emptyMap();
@@ -202,4 +216,161 @@ public class ConcurrentServiceBindingBenchmark {
 
     }
 
+    /**
+     * Copy-on-write binding backed by a perfect hash table. Every time the
+     * key set changes we search for a multiplier which maps the identity
+     * hash codes of all keys to distinct slots, so {@code #get()} of a bound
+     * key needs exactly one array access and no probing. If there is no
+     * such multiplier, e.g. because two keys have the same identity hash
+     * code, the table falls back to linear probing.
+     */
+    public static final class PHConcurrentServiceBinding<K,V> {
+
+        /**
+         * Number of multipliers we try before we double the size of the table.
+         */
+        private static final int MAX_ATTEMPTS = 64;
+
+        /**
+         * Number of times we double the size of the table before we fall
+         * back to linear probing.
+         */
+        private static final int MAX_DOUBLINGS = 4;
+
+        private static final Table EMPTY_TABLE =
+            new Table(new Object[2], new Object[2], 1, 31);
+
+        @SuppressWarnings("unchecked")
+        private volatile Table<K, V> table = EMPTY_TABLE;
+
+        @SuppressWarnings("unchecked")
+        public synchronized void clear() {
+            table = EMPTY_TABLE;
+        }
+
+        public synchronized void put(final K key, final V value) {
+            Map<K, V> tmp = new IdentityHashMap<>(table.toMap());
+            tmp.put(key, value);
+            table = Table.build(tmp);
+        }
+
+        public V get(final K key) {
+            return table.get(key);
+        }
+
+        public Iterable<V> values() {
+            return table.toMap().values();
+        }
+
+        private static final class Table<K,V> {
+
+            private final Object[] keys;
+            private final Object[] values;
+            private final int multiplier;
+            private final int shift;
+
+            Table(Object[] keys, Object[] values, int multiplier, int shift) {
+                this.keys = keys;
+                this.values = values;
+                this.multiplier = multiplier;
+                this.shift = shift;
+            }
+
+            @SuppressWarnings("unchecked")
+            V get(K key) {
+                int index = (System.identityHashCode(key) * multiplier) >>> shift;
+                Object candidate;
+                while ((candidate = keys[index]) != null) {
+                    if (candidate == key) {
+                        return (V) values[index];
+                    }
+                    index = (index + 1) & (keys.length - 1);
+                }
+                return null;
+            }
+
+            @SuppressWarnings("unchecked")
+            Map<K, V> toMap() {
+                Map<K, V> map = new IdentityHashMap<>();
+                for (int i = 0; i < keys.length; i++) {
+                    if (keys[i] != null) {
+                        map.put((K) keys[i], (V) values[i]);
+                    }
+                }
+                return map;
+            }
+
+            static <K,V> Table<K, V> build(Map<K, V> map) {
+                Object[] mapKeys = map.keySet().toArray();
+                int[] hashes = new int[mapKeys.length];
+                for (int i = 0; i < mapKeys.length; i++) {
+                    hashes[i] = System.identityHashCode(mapKeys[i]);
+                }
+                // Start with a load factor of at most 0.25, otherwise
+                // collision free multipliers are hard to find.
+                int minBits = Math.max(1,
+                    32 - Integer.numberOfLeadingZeros(mapKeys.length * 4 - 1));
+                int maxBits = Math.min(30, minBits + MAX_DOUBLINGS);
+                int seed = 0x9E3779B9;
+                for (int bits = minBits; bits <= maxBits; bits++) {
+                    int size = 1 << bits;
+                    int shift = 32 - bits;
+                    boolean[] used = new boolean[size];
+                    for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+                        seed = seed * 1664525 + 1013904223;
+                        int multiplier = seed | 1;
+                        if (isPerfect(hashes, multiplier, shift, used)) {
+                            Object[] keys = new Object[size];
+                            Object[] values = new Object[size];
+                            for (Object key : mapKeys) {
+                                int index = (System.identityHashCode(key)
+                                    * multiplier) >>> shift;
+                                keys[index] = key;
+                                values[index] = map.get(key);
+                            }
+                            return new Table<>(keys, values, multiplier, shift);
+                        }
+                        Arrays.fill(used, false);
+                    }
+                }
+                return probing(map, mapKeys, minBits);
+            }
+
+            private static <K,V> Table<K, V> probing(Map<K, V> map,
+                Object[] mapKeys, int bits)
+            {
+                int size = 1 << bits;
+                int shift = 32 - bits;
+                int multiplier = 0x9E3779B9;
+                Object[] keys = new Object[size];
+                Object[] values = new Object[size];
+                for (Object key : mapKeys) {
+                    int index = (System.identityHashCode(key) * multiplier)
+                        >>> shift;
+                    while (keys[index] != null) {
+                        index = (index + 1) & (size - 1);
+                    }
+                    keys[index] = key;
+                    values[index] = map.get(key);
+                }
+                return new Table<>(keys, values, multiplier, shift);
+            }
+
+            private static boolean isPerfect(int[] hashes, int multiplier,
+                int shift, boolean[] used)
+            {
+                for (int hash : hashes) {
+                    int index = (hash * multiplier) >>> shift;
+                    if (used[index]) {
+                        return false;
+                    }
+                    used[index] = true;
+                }
+                return true;
+            }
+
+        }
+
+    }
+
 }
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.service.internal;
+
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.service.internal.ConcurrentServiceBindingBenchmark.CHMConcurrentServiceBinding;
+import org.hibernate.service.internal.ConcurrentServiceBindingBenchmark.IHMConcurrentServiceBinding;
+import org.hibernate.service.internal.ConcurrentServiceBindingBenchmark.PHConcurrentServiceBinding;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hibernate.service.internal.ConcurrentServiceBindingBenchmark.KEYS;
+
+/**
+ * Measures the implementations of {@code ConcurrentServiceBinding} under
+ * concurrent access. The {@code *ReadWrite} groups run 32 reader threads
+ * against a single writer thread which keeps re-binding services, the
+ * {@code *Threads*} methods run readers only with an increasing number of
+ * threads.
+ *
+ * @author Andrej Golovnin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10, time = 3)
+@Measurement(iterations = 10, time = 3)
+@State(Scope.Benchmark)
+public class ConcurrentServiceBindingContentionBenchmark {
+
+    private static final int READERS = 32;
+
+    private ConcurrentServiceBinding<Class<?>, String> baseCsb;
+    private IHMConcurrentServiceBinding<Class<?>, String> ihmCsb;
+    private CHMConcurrentServiceBinding<Class<?>, String> chmCsb;
+    private PHConcurrentServiceBinding<Class<?>, String> phCsb;
+
+    @Setup
+    public void setup() {
+        baseCsb = new ConcurrentServiceBinding<>();
+        ihmCsb = new IHMConcurrentServiceBinding<>();
+        chmCsb = new CHMConcurrentServiceBinding<>();
+        phCsb = new PHConcurrentServiceBinding<>();
+        for (Class<?> key : KEYS) {
+            baseCsb.put(key, "value");
+            ihmCsb.put(key, "value");
+            chmCsb.put(key, "value");
+            phCsb.put(key, "value");
+        }
+    }
+
+    /*
+     * Read/write mixes.
+     */
+
+    @Benchmark
+    @Group("baseConcurrentServiceBindingReadWrite")
+    @GroupThreads(READERS)
+    public String baseConcurrentServiceBindingGet() {
+        return baseCsb.get(EventListenerRegistry.class);
+    }
+
+    @Benchmark
+    @Group("baseConcurrentServiceBindingReadWrite")
+    @GroupThreads(1)
+    public void baseConcurrentServiceBindingPut(Writer writer) {
+        baseCsb.put(writer.nextKey(), "value");
+    }
+
+    @Benchmark
+    @Group("ihmConcurrentServiceBindingReadWrite")
+    @GroupThreads(READERS)
+    public String ihmConcurrentServiceBindingGet() {
+        return ihmCsb.get(EventListenerRegistry.class);
+    }
+
+    @Benchmark
+    @Group("ihmConcurrentServiceBindingReadWrite")
+    @GroupThreads(1)
+    public void ihmConcurrentServiceBindingPut(Writer writer) {
+        ihmCsb.put(writer.nextKey(), "value");
+    }
+
+    @Benchmark
+    @Group("chmConcurrentServiceBindingReadWrite")
+    @GroupThreads(READERS)
+    public String chmConcurrentServiceBindingGet() {
+        return chmCsb.get(EventListenerRegistry.class);
+    }
+
+    @Benchmark
+    @Group("chmConcurrentServiceBindingReadWrite")
+    @GroupThreads(1)
+    public void chmConcurrentServiceBindingPut(Writer writer) {
+        chmCsb.put(writer.nextKey(), "value");
+    }
+
+    @Benchmark
+    @Group("phConcurrentServiceBindingReadWrite")
+    @GroupThreads(READERS)
+    public String phConcurrentServiceBindingGet() {
+        return phCsb.get(EventListenerRegistry.class);
+    }
+
+    @Benchmark
+    @Group("phConcurrentServiceBindingReadWrite")
+    @GroupThreads(1)
+    public void phConcurrentServiceBindingPut(Writer writer) {
+        phCsb.put(writer.nextKey(), "value");
+    }
+
+    /*
+     * Read only thread sweep.
+     */
+
+    @Benchmark
+    @Threads(1)
+    public String baseConcurrentServiceBindingGetThreads1() {
+        return baseCsb.get(EventListenerRegistry.class);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String baseConcurrentServiceBindingGetThreads4() {
+        return baseCsb.get(EventListenerRegistry.class);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String baseConcurrentServiceBindingGetThreadsMax() {
+        return baseCsb.get(EventListenerRegistry.class);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String ihmConcurrentServiceBindingGetThreads1() {
+        return ihmCsb.get(EventListenerRegistry.class);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String ihmConcurrentServiceBindingGetThreads4() {
+        return ihmCsb.get(EventListenerRegistry.class);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String ihmConcurrentServiceBindingGetThreadsMax() {
+        return ihmCsb.get(EventListenerRegistry.class);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String chmConcurrentServiceBindingGetThreads1() {
+        return chmCsb.get(EventListenerRegistry.class);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String chmConcurrentServiceBindingGetThreads4() {
+        return chmCsb.get(EventListenerRegistry.class);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String chmConcurrentServiceBindingGetThreadsMax() {
+        return chmCsb.get(EventListenerRegistry.class);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String phConcurrentServiceBindingGetThreads1() {
+        return phCsb.get(EventListenerRegistry.class);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String phConcurrentServiceBindingGetThreads4() {
+        return phCsb.get(EventListenerRegistry.class);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String phConcurrentServiceBindingGetThreadsMax() {
+        return phCsb.get(EventListenerRegistry.class);
+    }
+
+    /**
+     * Cycles through the known keys, so the writer re-binds existing
+     * services and the size of the binding stays constant.
+     */
+    @State(Scope.Thread)
+    public static class Writer {
+
+        private int index;
+
+        Class<?> nextKey() {
+            Class<?> key = KEYS[index];
+            index = (index + 1) % KEYS.length;
+            return key;
+        }
+
+    }
+
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.service.internal;
+
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.boot.registry.classloading.spi.ClassLoaderService;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.engine.jdbc.spi.JdbcServices;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.integrator.spi.IntegratorService;
+import org.hibernate.service.Service;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.service.internal.ConcurrentServiceBindingBenchmark.IHMConcurrentServiceBinding;
+import org.hibernate.service.spi.ServiceRegistryImplementor;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.hibernate.service.spi.SessionFactoryServiceRegistryFactory;
+import org.hibernate.stat.spi.StatisticsImplementor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@code AbstractServiceRegistryImpl#getService()} on a real service
+ * registry hierarchy: bootstrap registry, standard registry and session
+ * factory registry. The session factory is built without any mapping and
+ * without a database, but with all integrators found on the classpath
+ * (Envers and Search).
+ *
+ * <p>The {@code cold*} methods measure the first lookup of a role, which
+ * includes the initialization of the service, on a freshly built registry.
+ * The {@code cached*} methods use {@link CachingServiceRegistry} to show the
+ * cost of the delegation chain.
+ *
+ * @author Andrej Golovnin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10, time = 3)
+@Measurement(iterations = 10, time = 3)
+@State(Scope.Benchmark)
+public class ServiceRegistryBenchmark {
+
+    /**
+     * Prevents Hibernate from opening a JDBC connection during bootstrap.
+     */
+    private static final String USE_JDBC_METADATA_DEFAULTS =
+        "hibernate.temp.use_jdbc_metadata_defaults";
+
+    private StandardServiceRegistry standardRegistry;
+    private SessionFactoryImplementor sessionFactory;
+    private ServiceRegistryImplementor sessionFactoryRegistry;
+    private CachingServiceRegistry cachingRegistry;
+
+    @Setup
+    public void setup() {
+        standardRegistry = buildStandardServiceRegistry();
+        sessionFactory = (SessionFactoryImplementor) new MetadataSources(
+            standardRegistry).buildMetadata().buildSessionFactory();
+        sessionFactoryRegistry = sessionFactory.getServiceRegistry();
+        cachingRegistry = new CachingServiceRegistry(sessionFactoryRegistry);
+    }
+
+    @TearDown
+    public void tearDown() {
+        sessionFactory.close();
+        StandardServiceRegistryBuilder.destroy(standardRegistry);
+    }
+
+    /*
+     * Warm lookups on the level the service is bound to.
+     */
+
+    @Benchmark
+    public ClassLoaderService bootstrapRegistryGetClassLoaderService() {
+        return standardRegistry.getParentServiceRegistry()
+            .getService(ClassLoaderService.class);
+    }
+
+    @Benchmark
+    public JdbcServices standardRegistryGetJdbcServices() {
+        return standardRegistry.getService(JdbcServices.class);
+    }
+
+    @Benchmark
+    public EventListenerRegistry sessionFactoryRegistryGetEventListenerRegistry() {
+        return sessionFactoryRegistry.getService(EventListenerRegistry.class);
+    }
+
+    /*
+     * Warm lookups through the parent delegation.
+     */
+
+    @Benchmark
+    public ClassLoaderService sessionFactoryRegistryGetClassLoaderService() {
+        return sessionFactoryRegistry.getService(ClassLoaderService.class);
+    }
+
+    @Benchmark
+    public IntegratorService sessionFactoryRegistryGetIntegratorService() {
+        return sessionFactoryRegistry.getService(IntegratorService.class);
+    }
+
+    @Benchmark
+    public JdbcServices sessionFactoryRegistryGetJdbcServices() {
+        return sessionFactoryRegistry.getService(JdbcServices.class);
+    }
+
+    /*
+     * Warm lookups through the per role cache.
+     */
+
+    @Benchmark
+    public ClassLoaderService cachedGetClassLoaderService() {
+        return cachingRegistry.getService(ClassLoaderService.class);
+    }
+
+    @Benchmark
+    public JdbcServices cachedGetJdbcServices() {
+        return cachingRegistry.getService(JdbcServices.class);
+    }
+
+    @Benchmark
+    public EventListenerRegistry cachedGetEventListenerRegistry() {
+        return cachingRegistry.getService(EventListenerRegistry.class);
+    }
+
+    /*
+     * Cold lookups.
+     */
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 20)
+    @Measurement(iterations = 100)
+    public JdbcServices coldStandardRegistryGetJdbcServices(ColdStandardRegistry cold) {
+        return cold.registry.getService(JdbcServices.class);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 20)
+    @Measurement(iterations = 100)
+    public EventListenerRegistry coldSessionFactoryRegistryGetEventListenerRegistry(
+        ColdSessionFactoryRegistry cold)
+    {
+        return cold.registry.getService(EventListenerRegistry.class);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 20)
+    @Measurement(iterations = 100)
+    public StatisticsImplementor coldSessionFactoryRegistryGetStatisticsImplementor(
+        ColdSessionFactoryRegistry cold)
+    {
+        return cold.registry.getService(StatisticsImplementor.class);
+    }
+
+    static StandardServiceRegistry buildStandardServiceRegistry() {
+        return new StandardServiceRegistryBuilder()
+            .applySetting(AvailableSettings.DIALECT, H2Dialect.class.getName())
+            .applySetting(USE_JDBC_METADATA_DEFAULTS, "false")
+            .build();
+    }
+
+    @State(Scope.Thread)
+    public static class ColdStandardRegistry {
+
+        StandardServiceRegistry registry;
+
+        @Setup(Level.Invocation)
+        public void setup() {
+            registry = buildStandardServiceRegistry();
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            StandardServiceRegistryBuilder.destroy(registry);
+        }
+
+    }
+
+    @State(Scope.Thread)
+    public static class ColdSessionFactoryRegistry {
+
+        SessionFactoryServiceRegistry registry;
+
+        @Setup(Level.Invocation)
+        public void setup(ServiceRegistryBenchmark benchmark) {
+            SessionFactoryImplementor sessionFactory = benchmark.sessionFactory;
+            registry = benchmark.sessionFactoryRegistry
+                .getService(SessionFactoryServiceRegistryFactory.class)
+                .buildServiceRegistry(sessionFactory,
+                    sessionFactory.getSessionFactoryOptions());
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            registry.destroy();
+        }
+
+    }
+
+    /**
+     * Remembers the service resolved by the wrapped registry for every role,
+     * so subsequent lookups need neither the parent delegation nor the
+     * {@code ServiceBinding} indirection.
+     */
+    public static final class CachingServiceRegistry implements ServiceRegistry {
+
+        private final ServiceRegistry delegate;
+        private final IHMConcurrentServiceBinding<Class<?>, Service> cache =
+            new IHMConcurrentServiceBinding<>();
+
+        public CachingServiceRegistry(ServiceRegistry delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public ServiceRegistry getParentServiceRegistry() {
+            return delegate.getParentServiceRegistry();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <R extends Service> R getService(Class<R> serviceRole) {
+            Service service = cache.get(serviceRole);
+            if (service == null) {
+                service = delegate.getService(serviceRole);
+                if (service != null) {
+                    cache.put(serviceRole, service);
+                }
+            }
+            return (R) service;
+        }
+
+    }
+
+}
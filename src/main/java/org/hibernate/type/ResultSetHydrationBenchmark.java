@@ -0,0 +1,519 @@
+/*
+ * Copyright (c) 2016, Andrej Golovnin. All rights reserved.
+ *
+ * JMH tests for Hibernate ORM
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later.
+ * See the lgpl.txt file in the root directory or <http://www.gnu.org/licenses/lgpl-2.1.html>.
+ */
+
+package org.hibernate.type;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.Embeddable;
+import javax.persistence.Embedded;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+import javax.persistence.OneToMany;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+import org.hibernate.LockMode;
+import org.hibernate.Session;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.engine.internal.TwoPhaseLoad;
+import org.hibernate.engine.jdbc.ColumnNameCache;
+import org.hibernate.engine.jdbc.ResultSetWrapperProxy;
+import org.hibernate.engine.spi.EntityKey;
+import org.hibernate.engine.spi.PersistenceContext;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.engine.spi.Status;
+import org.hibernate.jmh.jdbc.MockConnectionProvider;
+import org.hibernate.jmh.jdbc.MockResultSet;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.persister.entity.Loadable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the per row and per column part of {@code Loader}: for every row
+ * of a result set the identifier is read, the entity is instantiated and
+ * registered in the persistence context and the values of its properties are
+ * hydrated ({@link Type#hydrate}) and resolved ({@link Type#resolve}). One
+ * operation processes a whole result set of {@code rows} rows.
+ * {@code properties} selects the kind of the processed properties: basic,
+ * embedded, many-to-one, collection or all of them.
+ *
+ * <ul>
+ *     <li>{@code hydrateByLabel} - the types read the columns by their
+ *     labels, so the driver has to resolve the label of every column in
+ *     every row.</li>
+ *     <li>{@code hydrateByLabelColumnNameCache} - the same through the
+ *     {@code ColumnNameCache} proxy Hibernate uses for
+ *     {@code hibernate.jdbc.wrap_result_sets}.</li>
+ *     <li>{@code hydrateByIndex} - {@link IndexedRowReader}, a prototype
+ *     which resolves the labels to column indexes once per result set and
+ *     reads the basic values by index.</li>
+ * </ul>
+ *
+ * @author Andrej Golovnin
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10, time = 3)
+@Measurement(iterations = 10, time = 3)
+@State(Scope.Benchmark)
+public class ResultSetHydrationBenchmark {
+
+    private static final String SUFFIX = "0_";
+
+    private static final int CUSTOMERS = 100;
+
+    public enum Properties {
+        BASIC, COMPONENT, MANY_TO_ONE, COLLECTION, ALL
+    }
+
+    @Param({"1000", "50000"})
+    private int rows;
+
+    @Param({"BASIC", "COMPONENT", "MANY_TO_ONE", "COLLECTION", "ALL"})
+    private Properties properties;
+
+    private SessionFactoryImplementor sessionFactory;
+    private Session session;
+    private Loadable persister;
+    private EntityPersister customerPersister;
+    private Type[] types;
+    private String idLabel;
+    private String[][] propertyLabels;
+    private int[] processedProperties;
+    private String[] labels;
+    private List<Object[]> resultRows;
+
+    @Setup
+    public void setup() {
+        sessionFactory = buildSessionFactory();
+        session = sessionFactory.openSession();
+        persister = (Loadable) sessionFactory.getMetamodel()
+            .entityPersister(Invoice.class);
+        customerPersister = sessionFactory.getMetamodel()
+            .entityPersister(Customer.class);
+        types = persister.getPropertyTypes();
+
+        List<String> allLabels = new ArrayList<>();
+        idLabel = persister.getIdentifierAliases(SUFFIX)[0];
+        allLabels.add(idLabel);
+        propertyLabels = new String[types.length][];
+        List<Integer> processed = new ArrayList<>();
+        for (int i = 0; i < types.length; i++) {
+            propertyLabels[i] = persister.getPropertyAliases(SUFFIX, i);
+            allLabels.addAll(Arrays.asList(propertyLabels[i]));
+            if (isProcessed(types[i])) {
+                processed.add(i);
+            }
+        }
+        labels = allLabels.toArray(new String[0]);
+        processedProperties = processed.stream().mapToInt(i -> i).toArray();
+
+        resultRows = new ArrayList<>(rows);
+        for (int row = 0; row < rows; row++) {
+            List<Object> values = new ArrayList<>(labels.length);
+            values.add(row + 1L);
+            for (Type type : types) {
+                addColumnValues(type, row, values);
+            }
+            resultRows.add(values.toArray());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        session.close();
+        sessionFactory.close();
+    }
+
+    @Benchmark
+    public int hydrateByLabel(Query query) throws SQLException {
+        return processByLabel(query.resultSet);
+    }
+
+    @Benchmark
+    public int hydrateByLabelColumnNameCache(Query query) throws SQLException {
+        return processByLabel(ResultSetWrapperProxy.generateProxy(
+            query.resultSet, new ColumnNameCache(labels.length),
+            sessionFactory.getServiceRegistry()));
+    }
+
+    @Benchmark
+    public int hydrateByIndex(Query query) throws SQLException {
+        ResultSet rs = query.resultSet;
+        SharedSessionContractImplementor s = sessionImplementor();
+        IndexedRowReader reader = new IndexedRowReader(rs, idLabel, types,
+            propertyLabels, processedProperties, sessionFactory);
+        Object[] values = new Object[types.length];
+        int count = 0;
+        while (rs.next()) {
+            Serializable id = reader.readId(rs);
+            Object entity = addUninitializedEntity(id, s);
+            reader.hydrate(rs, s, entity, values);
+            resolve(values, s, entity);
+            count++;
+        }
+        return count;
+    }
+
+    private int processByLabel(ResultSet rs) throws SQLException {
+        SharedSessionContractImplementor s = sessionImplementor();
+        Object[] values = new Object[types.length];
+        int count = 0;
+        while (rs.next()) {
+            Serializable id = (Serializable) persister.getIdentifierType()
+                .nullSafeGet(rs, idLabel, s, null);
+            Object entity = addUninitializedEntity(id, s);
+            for (int i : processedProperties) {
+                values[i] = types[i].hydrate(rs, propertyLabels[i], s, entity);
+            }
+            resolve(values, s, entity);
+            count++;
+        }
+        return count;
+    }
+
+    private Object addUninitializedEntity(Serializable id,
+        SharedSessionContractImplementor s)
+    {
+        Object entity = persister.instantiate(id, s);
+        EntityKey key = s.generateEntityKey(id, persister);
+        TwoPhaseLoad.addUninitializedEntity(key, entity, persister,
+            LockMode.NONE, s);
+        return entity;
+    }
+
+    private void resolve(Object[] values, SharedSessionContractImplementor s,
+        Object entity)
+    {
+        for (int i : processedProperties) {
+            values[i] = types[i].resolve(values[i], s, entity);
+        }
+    }
+
+    private SharedSessionContractImplementor sessionImplementor() {
+        return (SharedSessionContractImplementor) session;
+    }
+
+    private boolean isProcessed(Type type) {
+        switch (properties) {
+            case BASIC:
+                return !type.isAssociationType() && !type.isComponentType();
+            case COMPONENT:
+                return type.isComponentType();
+            case MANY_TO_ONE:
+                return type.isEntityType();
+            case COLLECTION:
+                return type.isCollectionType();
+            default:
+                return true;
+        }
+    }
+
+    private void addColumnValues(Type type, int row, List<Object> values) {
+        if (type.isComponentType()) {
+            for (Type subtype : ((CompositeType) type).getSubtypes()) {
+                addColumnValues(subtype, row, values);
+            }
+        } else if (type.isEntityType()) {
+            values.add((long) (row % CUSTOMERS) + 1L);
+        } else if (!type.isCollectionType()) {
+            Class<?> javaType = type.getReturnedClass();
+            if (javaType == String.class) {
+                values.add("Value " + row);
+            } else if (javaType == Integer.class) {
+                values.add(row);
+            } else if (javaType == Long.class) {
+                values.add((long) row);
+            } else if (javaType == BigDecimal.class) {
+                values.add(BigDecimal.valueOf(row, 2));
+            } else if (javaType == Boolean.class) {
+                values.add(row % 2 == 0);
+            } else if (javaType == Date.class) {
+                values.add(new Timestamp(1466000000000L + row));
+            } else {
+                throw new IllegalArgumentException(type.getName());
+            }
+        }
+    }
+
+    private static SessionFactoryImplementor buildSessionFactory() {
+        StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
+            .applySetting(AvailableSettings.DIALECT, H2Dialect.class.getName())
+            .applySetting("hibernate.temp.use_jdbc_metadata_defaults", "false")
+            .applySetting(AvailableSettings.CONNECTION_PROVIDER,
+                new MockConnectionProvider())
+            .build();
+        try {
+            return (SessionFactoryImplementor) new MetadataSources(registry)
+                .addAnnotatedClass(Invoice.class)
+                .addAnnotatedClass(InvoiceLine.class)
+                .addAnnotatedClass(Customer.class)
+                .buildMetadata()
+                .buildSessionFactory();
+        } catch (RuntimeException e) {
+            StandardServiceRegistryBuilder.destroy(registry);
+            throw e;
+        }
+    }
+
+    /**
+     * A fresh result set over the canned rows and a persistence context which
+     * contains only the customers referenced by the invoices, like after
+     * the execution of the query.
+     */
+    @State(Scope.Thread)
+    public static class Query {
+
+        ResultSet resultSet;
+
+        @Setup(Level.Invocation)
+        public void setup(ResultSetHydrationBenchmark benchmark) {
+            SharedSessionContractImplementor s = benchmark.sessionImplementor();
+            PersistenceContext persistenceContext = s.getPersistenceContext();
+            persistenceContext.clear();
+            EntityPersister customerPersister = benchmark.customerPersister;
+            for (long id = 1; id <= CUSTOMERS; id++) {
+                Customer customer = new Customer(id, "Customer " + id);
+                persistenceContext.addEntity(customer, Status.MANAGED,
+                    new Object[] {customer.name},
+                    s.generateEntityKey(id, customerPersister), null,
+                    LockMode.NONE, true, customerPersister, false);
+            }
+            resultSet = new MockResultSet(null, benchmark.labels,
+                benchmark.resultRows);
+        }
+
+    }
+
+    /**
+     * Resolves the labels of the columns to indexes once per result set and
+     * reads the columns of the basic types, the columns of the basic types in
+     * components and the foreign keys of many-to-one associations by index.
+     * The readers for the basic types use the getters of {@code ResultSet}
+     * directly, so there is neither a lookup of the column by its label nor
+     * a {@code ValueExtractor} per column and row. Other types are hydrated
+     * by label as before.
+     */
+    static final class IndexedRowReader {
+
+        private final ColumnReader idReader;
+        private final ColumnReader[] readers;
+        private final int[] processedProperties;
+
+        IndexedRowReader(ResultSet rs, String idLabel, Type[] types,
+            String[][] labels, int[] processedProperties,
+            SessionFactoryImplementor factory) throws SQLException
+        {
+            this.idReader = basicReader(LongType.INSTANCE, rs.findColumn(idLabel));
+            this.readers = new ColumnReader[types.length];
+            this.processedProperties = processedProperties;
+            for (int i : processedProperties) {
+                readers[i] = reader(rs, types[i], labels[i], 0, factory);
+            }
+        }
+
+        Serializable readId(ResultSet rs) throws SQLException {
+            return (Serializable) idReader.read(rs, null, null);
+        }
+
+        void hydrate(ResultSet rs, SharedSessionContractImplementor session,
+            Object owner, Object[] values) throws SQLException
+        {
+            for (int i : processedProperties) {
+                values[i] = readers[i].read(rs, session, owner);
+            }
+        }
+
+        private static ColumnReader reader(ResultSet rs, Type type,
+            String[] labels, int offset, SessionFactoryImplementor factory)
+            throws SQLException
+        {
+            if (type.isComponentType()) {
+                return componentReader(rs, (CompositeType) type, labels,
+                    offset, factory);
+            } else if (type instanceof ManyToOneType) {
+                Type idType = ((ManyToOneType) type)
+                    .getIdentifierOrUniqueKeyType(factory);
+                ColumnReader reader = basicReader(idType,
+                    rs.findColumn(labels[offset]));
+                if (reader != null) {
+                    return reader;
+                }
+            } else if (type.getColumnSpan(factory) == 1) {
+                ColumnReader reader = basicReader(type,
+                    rs.findColumn(labels[offset]));
+                if (reader != null) {
+                    return reader;
+                }
+            }
+            String[] names = Arrays.copyOfRange(labels, offset,
+                offset + type.getColumnSpan(factory));
+            return (r, session, owner) -> type.hydrate(r, names, session, owner);
+        }
+
+        /**
+         * Returns the same values as {@code ComponentType#hydrate()}: the
+         * hydrated values of the subtypes or {@code null}, when all of them
+         * are {@code null}.
+         */
+        private static ColumnReader componentReader(ResultSet rs,
+            CompositeType type, String[] labels, int offset,
+            SessionFactoryImplementor factory) throws SQLException
+        {
+            Type[] subtypes = type.getSubtypes();
+            ColumnReader[] subreaders = new ColumnReader[subtypes.length];
+            for (int i = 0; i < subtypes.length; i++) {
+                subreaders[i] = reader(rs, subtypes[i], labels, offset, factory);
+                offset += subtypes[i].getColumnSpan(factory);
+            }
+            return (r, session, owner) -> {
+                Object[] values = new Object[subreaders.length];
+                boolean notNull = false;
+                for (int i = 0; i < subreaders.length; i++) {
+                    Object value = subreaders[i].read(r, session, owner);
+                    values[i] = value;
+                    notNull |= value != null;
+                }
+                return notNull ? values : null;
+            };
+        }
+
+        private static ColumnReader basicReader(Type type, int index) {
+            if (type == StringType.INSTANCE) {
+                return (rs, session, owner) -> rs.getString(index);
+            } else if (type == LongType.INSTANCE) {
+                return (rs, session, owner) -> {
+                    long value = rs.getLong(index);
+                    return rs.wasNull() ? null : value;
+                };
+            } else if (type == IntegerType.INSTANCE) {
+                return (rs, session, owner) -> {
+                    int value = rs.getInt(index);
+                    return rs.wasNull() ? null : value;
+                };
+            } else if (type == BooleanType.INSTANCE) {
+                return (rs, session, owner) -> {
+                    boolean value = rs.getBoolean(index);
+                    return rs.wasNull() ? null : value;
+                };
+            } else if (type == BigDecimalType.INSTANCE) {
+                return (rs, session, owner) -> rs.getBigDecimal(index);
+            } else if (type == TimestampType.INSTANCE) {
+                return (rs, session, owner) -> rs.getTimestamp(index);
+            }
+            return null;
+        }
+
+    }
+
+    @FunctionalInterface
+    interface ColumnReader {
+
+        Object read(ResultSet rs, SharedSessionContractImplementor session,
+            Object owner) throws SQLException;
+
+    }
+
+    @Entity
+    public static class Invoice {
+
+        @Id
+        private Long id;
+
+        private String number;
+
+        private String description;
+
+        private Integer quantity;
+
+        private BigDecimal amount;
+
+        @Temporal(TemporalType.TIMESTAMP)
+        private Date created;
+
+        private Boolean paid;
+
+        @Embedded
+        private Address address;
+
+        @ManyToOne
+        private Customer customer;
+
+        @OneToMany(mappedBy = "invoice")
+        private List<InvoiceLine> lines;
+
+    }
+
+    @Embeddable
+    public static class Address {
+
+        private String street;
+
+        private String city;
+
+        private String zip;
+
+    }
+
+    @Entity
+    public static class InvoiceLine {
+
+        @Id
+        private Long id;
+
+        @ManyToOne
+        private Invoice invoice;
+
+    }
+
+    @Entity
+    public static class Customer {
+
+        @Id
+        private Long id;
+
+        private String name;
+
+        public Customer() {
+        }
+
+        Customer(Long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+    }
+
+}